@@ -2,6 +2,7 @@ package org.joml.geom;
 
 import java.util.Collection;
 
+import org.joml.Matrix4f;
 import org.joml.Vector3f;
 
 /**
@@ -14,7 +15,7 @@ import org.joml.Vector3f;
  * <li>The 'origin' of a {@link Aabbf} is simply the location of the center of the {@link Aabbf}.
  * </ul>
  **/
-public class Aabbf {
+public class Aabbf implements SupportMapping {
 	
 	public static final Aabbf createNewAabbFromMinMax(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
 		Aabbf aabb = new Aabbf();
@@ -801,6 +802,32 @@ public class Aabbf {
 		return movementOnZ;
 	}
 	
+	/**
+	 * Transforms this {@link Aabbf} by the given affine matrix, so it contains the transformed box.
+	 * This uses the method of Arvo: The origin is transformed, and the extent is transformed by the absolute values of the matrix.
+	 * To transform many boxes at once, see {@link Transformations#transformBoxes}.
+	 * @return This {@link Aabbf}.
+	 **/
+	public Aabbf transform(Matrix4f load) {
+		float ox = originX, oy = originY, oz = originZ;
+		originX = load.m00 * ox + load.m10 * oy + load.m20 * oz + load.m30;
+		originY = load.m01 * ox + load.m11 * oy + load.m21 * oz + load.m31;
+		originZ = load.m02 * ox + load.m12 * oy + load.m22 * oz + load.m32;
+		
+		float ex = extentX, ey = extentY, ez = extentZ;
+		extentX = Math.abs(load.m00) * ex + Math.abs(load.m10) * ey + Math.abs(load.m20) * ez;
+		extentY = Math.abs(load.m01) * ex + Math.abs(load.m11) * ey + Math.abs(load.m21) * ez;
+		extentZ = Math.abs(load.m02) * ex + Math.abs(load.m12) * ey + Math.abs(load.m22) * ez;
+		return this;
+	}
+	
+	@Override
+	public void getSupport(float dirX, float dirY, float dirZ, float[] store, int offset) {
+		store[offset  ] = dirX < 0 ? originX - extentX : originX + extentX;
+		store[offset+1] = dirY < 0 ? originY - extentY : originY + extentY;
+		store[offset+2] = dirZ < 0 ? originZ - extentZ : originZ + extentZ;
+	}
+	
 	public static final void interpolate(Aabbf a, Aabbf b, float lerp, Aabbf out) {
 		out.extentX = a.extentX + (lerp * (b.extentX - a.extentX));
 		out.extentY = a.extentY + (lerp * (b.extentY - a.extentY));
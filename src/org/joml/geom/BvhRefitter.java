@@ -0,0 +1,311 @@
+package org.joml.geom;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Updates the bounds of a {@link Bvhf} after its primitives moved, without changing the shape of the hierarchy.
+ * This is meant for animated or deforming geometry, where the primitives move every frame but stay the same.
+ *
+ * <br><br>
+ * Refitting keeps the tree valid, but the quality of the tree degrades as the primitives move away from where they were when it was built.
+ * The refitter measures this with the surface area heuristic (SAH):
+ * The cost of every node is remembered when the refitter is created (the 'reference'),
+ * and every refit reports the current cost relative to it (see {@link #getDegradation()}).
+ * Partial rebuilds move the reference of the subtrees they rebuild, but never the reference of the whole tree, so the degradation keeps reporting the drift since the last {@link #resetReference()}.
+ * <br>
+ * With {@link #setRebuildThreshold(float)} the refitter also <i>partially rebuilds</i> degraded subtrees:
+ * The primitives of such a subtree are re-partitioned along their centroids, keeping the shape of the subtree (and therefore all node indices) the same.
+ * Since the subtree still holds the same primitives, the bounds of all nodes above it stay the same.
+ * <br>
+ * Large subtrees are refitted in parallel.
+ **/
+public class BvhRefitter {
+	
+	private final Bvhf bvh;
+	private final int[] subtreeCounts;
+	private final float[] costs;
+	// normalized by the area of the node, updated when a subtree is rebuilt
+	private final float[] referenceCosts;
+	// the normalized cost of the whole tree, only updated by resetReference
+	private float referenceCost;
+	
+	private ForkJoinPool pool;
+	private int grainSize;
+	private float rebuildThreshold;
+	
+	private int rebuiltSubtrees;
+	
+	/**
+	 * Creates a new {@link BvhRefitter} for the given hierarchy, using its current bounds as the reference for the tree quality.
+	 * @param bvh The hierarchy to refit.
+	 **/
+	public BvhRefitter(Bvhf bvh) {
+		this.bvh = bvh;
+		this.subtreeCounts = new int[bvh.nodeCount];
+		this.costs = new float[bvh.nodeCount];
+		this.referenceCosts = new float[bvh.nodeCount];
+		this.pool = ForkJoinPool.commonPool();
+		this.grainSize = 4096;
+		this.rebuildThreshold = Float.POSITIVE_INFINITY;
+		
+		// children are stored after their parents, so a reverse walk visits them first
+		for(int node = bvh.nodeCount-1; node >= 0; node--) {
+			if(bvh.isLeaf(node)) {
+				subtreeCounts[node] = bvh.getLeafCount(node);
+			} else {
+				subtreeCounts[node] = subtreeCounts[bvh.nodes[node*2]] + subtreeCounts[bvh.nodes[node*2+1]];
+			}
+			costs[node] = nodeCost(node);
+		}
+		
+		resetReference();
+	}
+	
+	/**
+	 * Sets the pool that runs the parallel refit.
+	 * @return This {@link BvhRefitter}.
+	 **/
+	public BvhRefitter setPool(ForkJoinPool pool) {
+		this.pool = pool;
+		return this;
+	}
+	
+	/**
+	 * Sets the number of primitives below which a subtree is refitted by a single thread.
+	 * @return This {@link BvhRefitter}.
+	 **/
+	public BvhRefitter setGrainSize(int grainSize) {
+		this.grainSize = Math.max(1, grainSize);
+		return this;
+	}
+	
+	/**
+	 * Enables partial rebuilds: A subtree is rebuilt when its (area normalized) cost grew by more than the given factor since the reference, or since it was last rebuilt.
+	 * @param threshold The degradation factor, e.g. 1.5. Positive infinity disables partial rebuilds (the default).
+	 * @return This {@link BvhRefitter}.
+	 **/
+	public BvhRefitter setRebuildThreshold(float threshold) {
+		this.rebuildThreshold = threshold;
+		return this;
+	}
+	
+	/**
+	 * Uses the current state of the hierarchy as the reference for the tree quality.
+	 * Call this after rebuilding the hierarchy.
+	 **/
+	public void resetReference() {
+		for(int node = 0; node < bvh.nodeCount; node++)
+			referenceCosts[node] = normalizedCost(node);
+		referenceCost = bvh.nodeCount > 0 ? referenceCosts[0] : 0;
+	}
+	
+	/**
+	 * Recomputes all bounds of the hierarchy from the given primitive bounds, and rebuilds degraded subtrees if enabled.
+	 * @param primitiveBounds The new bounds of the primitives, six floats per primitive.
+	 * @return The degradation of the whole tree, see {@link #getDegradation()}.
+	 **/
+	public float refit(float[] primitiveBounds) {
+		rebuiltSubtrees = 0;
+		
+		if(bvh.nodeCount == 0)
+			return 1f;
+		
+		if(subtreeCounts[0] <= grainSize) {
+			refitSubtree(primitiveBounds, 0);
+		} else {
+			pool.invoke(new RefitTask(primitiveBounds, 0, false));
+		}
+		
+		if(rebuildThreshold < Float.POSITIVE_INFINITY) {
+			if(subtreeCounts[0] <= grainSize) {
+				rebuildDegraded(primitiveBounds, 0);
+			} else {
+				pool.invoke(new RefitTask(primitiveBounds, 0, true));
+			}
+		}
+		
+		return getDegradation();
+	}
+	
+	private void refitSubtree(float[] primitiveBounds, int node) {
+		if(!bvh.isLeaf(node)) {
+			refitSubtree(primitiveBounds, bvh.nodes[node*2]);
+			refitSubtree(primitiveBounds, bvh.nodes[node*2+1]);
+		}
+		refitNode(primitiveBounds, node);
+	}
+	
+	// Recomputes the bounds and the cost of a single node, assuming its children are already up to date.
+	private void refitNode(float[] primitiveBounds, int node) {
+		int a = bvh.nodes[node*2];
+		int b = bvh.nodes[node*2+1];
+		
+		if(a < 0) {
+			Bvhf.computeBounds(primitiveBounds, bvh.primitives, ~a, b, bvh.bounds, node*6);
+		} else {
+			float[] bounds = bvh.bounds;
+			int o = node*6;
+			a *= 6;
+			b *= 6;
+			bounds[o  ] = Math.min(bounds[a  ], bounds[b  ]);
+			bounds[o+1] = Math.min(bounds[a+1], bounds[b+1]);
+			bounds[o+2] = Math.min(bounds[a+2], bounds[b+2]);
+			bounds[o+3] = Math.max(bounds[a+3], bounds[b+3]);
+			bounds[o+4] = Math.max(bounds[a+4], bounds[b+4]);
+			bounds[o+5] = Math.max(bounds[a+5], bounds[b+5]);
+		}
+		
+		costs[node] = nodeCost(node);
+	}
+	
+	// The SAH cost of the subtree below the given node, not yet divided by the area of the root.
+	private float nodeCost(int node) {
+		float area = halfArea(bvh.bounds, node*6);
+		if(bvh.isLeaf(node))
+			return area * bvh.getLeafCount(node);
+		return area + costs[bvh.nodes[node*2]] + costs[bvh.nodes[node*2+1]];
+	}
+	
+	private static float halfArea(float[] bounds, int o) {
+		float dx = bounds[o+3] - bounds[o  ];
+		float dy = bounds[o+4] - bounds[o+1];
+		float dz = bounds[o+5] - bounds[o+2];
+		return dx*dy + dy*dz + dz*dx;
+	}
+	
+	private boolean isDegraded(int node) {
+		if(bvh.isLeaf(node))
+			return false;
+		
+		// the costs are normalized by the area of the node, so moving or scaling a subtree as a whole does not count as degradation
+		float reference = referenceCosts[node];
+		return reference > 0 && normalizedCost(node) > reference * rebuildThreshold;
+	}
+	
+	// Walks down from the given node, rebuilds the topmost degraded subtrees, and updates the costs on the way back up.
+	private void rebuildDegraded(float[] primitiveBounds, int node) {
+		if(bvh.isLeaf(node))
+			return;
+		
+		if(isDegraded(node)) {
+			rebuildSubtree(primitiveBounds, node);
+			return;
+		}
+		
+		rebuildDegraded(primitiveBounds, bvh.nodes[node*2]);
+		rebuildDegraded(primitiveBounds, bvh.nodes[node*2+1]);
+		costs[node] = nodeCost(node);
+	}
+	
+	private void rebuildSubtree(float[] primitiveBounds, int node) {
+		synchronized(this) {
+			rebuiltSubtrees++;
+		}
+		repartition(primitiveBounds, node, firstPrimitive(node));
+	}
+	
+	private int firstPrimitive(int node) {
+		if(bvh.isLeaf(node))
+			return bvh.getLeafFirst(node);
+		return Math.min(firstPrimitive(bvh.nodes[node*2]), firstPrimitive(bvh.nodes[node*2+1]));
+	}
+	
+	// Re-partitions the primitives of a subtree, keeping the number of primitives in every node the same.
+	private void repartition(float[] primitiveBounds, int node, int first) {
+		int count = subtreeCounts[node];
+		
+		if(bvh.isLeaf(node)) {
+			bvh.nodes[node*2] = ~first;
+		} else {
+			int l = bvh.nodes[node*2];
+			int r = bvh.nodes[node*2+1];
+			int leftCount = subtreeCounts[l];
+			
+			int axis = Bvhf.largestCentroidAxis(primitiveBounds, bvh.primitives, first, count);
+			Bvhf.selectByCentroid(primitiveBounds, bvh.primitives, first, first+count-1, first+leftCount, axis);
+			
+			repartition(primitiveBounds, l, first);
+			repartition(primitiveBounds, r, first+leftCount);
+		}
+		
+		refitNode(primitiveBounds, node);
+		referenceCosts[node] = normalizedCost(node);
+	}
+	
+	private float normalizedCost(int node) {
+		float area = halfArea(bvh.bounds, node*6);
+		return area > 0 ? costs[node] / area : 0;
+	}
+	
+	/**
+	 * @return The SAH cost of the whole tree, relative to the area of the root. Lower is better.
+	 **/
+	public float getCost() {
+		return bvh.nodeCount > 0 ? normalizedCost(0) : 0;
+	}
+	
+	/**
+	 * @return The SAH cost of the whole tree when the reference was taken, relative to the area of the root. Partial rebuilds do not change it.
+	 **/
+	public float getReferenceCost() {
+		return referenceCost;
+	}
+	
+	/**
+	 * @return The current cost divided by the reference cost. A value much larger than one means the tree should be fully rebuilt.
+	 **/
+	public float getDegradation() {
+		float reference = getReferenceCost();
+		return reference > 0 ? getCost() / reference : 1f;
+	}
+	
+	/**
+	 * @return The number of subtrees that were rebuilt by the last refit.
+	 **/
+	public int getRebuiltSubtrees() {
+		return rebuiltSubtrees;
+	}
+	
+	private class RefitTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		
+		private final float[] primitiveBounds;
+		private final int node;
+		private final boolean rebuild;
+		
+		RefitTask(float[] primitiveBounds, int node, boolean rebuild) {
+			this.primitiveBounds = primitiveBounds;
+			this.node = node;
+			this.rebuild = rebuild;
+		}
+		
+		@Override
+		protected void compute() {
+			if(subtreeCounts[node] <= grainSize || bvh.isLeaf(node)) {
+				if(rebuild) {
+					rebuildDegraded(primitiveBounds, node);
+				} else {
+					refitSubtree(primitiveBounds, node);
+				}
+				return;
+			}
+			
+			if(rebuild && isDegraded(node)) {
+				rebuildSubtree(primitiveBounds, node);
+				return;
+			}
+			
+			invokeAll(
+					new RefitTask(primitiveBounds, bvh.nodes[node*2], rebuild),
+					new RefitTask(primitiveBounds, bvh.nodes[node*2+1], rebuild));
+			
+			if(rebuild) {
+				costs[node] = nodeCost(node);
+			} else {
+				refitNode(primitiveBounds, node);
+			}
+		}
+	}
+
+}
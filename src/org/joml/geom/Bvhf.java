@@ -0,0 +1,663 @@
+package org.joml.geom;
+
+import org.joml.FrustumCuller;
+
+/**
+ * A bounding volume hierarchy over arbitrary primitives, stored in flat arrays.
+ *
+ * <br><br>
+ * <b>Layout:</b>
+ * <ul>
+ * <li>{@link #bounds} holds six floats per node: minX, minY, minZ, maxX, maxY, maxZ.
+ * <li>{@link #nodes} holds two ints per node.
+ *     For a inner node these are the indices of the left and the right child.
+ *     For a leaf the first int is the bitwise complement (~) of the offset of its first primitive in {@link #primitives},
+ *     and the second int is the number of primitives in the leaf.
+ * <li>The root is always node 0, and children are always stored <i>after</i> their parent.
+ * <li>The primitives of every subtree occupy a contiguous range of {@link #primitives}.
+ * </ul>
+ * The primitives themselves are not stored in the hierarchy, only their indices.
+ * Their bounds are passed in as a packed float array (six floats per primitive, in the same order as the node bounds).
+ **/
+public class Bvhf {
+	
+	/** The initial size of the traversal stack. The stack grows if a hierarchy is deeper than this. **/
+	public static final int STACK_SIZE = 64;
+	
+	/** The bounds of the nodes, six floats per node. **/
+	public float[] bounds;
+	/** The links of the nodes, two ints per node. **/
+	public int[] nodes;
+	/** The primitive indices referenced by the leaves. **/
+	public int[] primitives;
+	/** The number of nodes in use. **/
+	public int nodeCount;
+	/** The number of primitives in this hierarchy. **/
+	public int primitiveCount;
+	
+	/**
+	 * Creates a new, empty {@link Bvhf} with enough room for a hierarchy over the given number of primitives.
+	 * @param primitiveCount The number of primitives.
+	 **/
+	public Bvhf(int primitiveCount) {
+		int maxNodes = primitiveCount > 0 ? primitiveCount*2 - 1 : 0;
+		this.bounds = new float[maxNodes * 6];
+		this.nodes = new int[maxNodes * 2];
+		this.primitives = new int[primitiveCount];
+		this.nodeCount = 0;
+		this.primitiveCount = primitiveCount;
+	}
+	
+	/**
+	 * Builds a hierarchy by recursively splitting the primitives at the median of their centroids,
+	 * along the axis where the centroids are spread the most.
+	 * <br>
+	 * This is the cheapest builder that still gives balanced trees.
+	 *
+	 * @param primitiveBounds The bounds of the primitives, six floats per primitive: minX, minY, minZ, maxX, maxY, maxZ.
+	 * @param primitiveCount The number of primitives.
+	 * @param maxLeafSize The maximum number of primitives in a leaf.
+	 * @return The new {@link Bvhf}.
+	 **/
+	public static Bvhf build(float[] primitiveBounds, int primitiveCount, int maxLeafSize) {
+		Bvhf bvh = new Bvhf(primitiveCount);
+		
+		for(int i = 0; i < primitiveCount; i++)
+			bvh.primitives[i] = i;
+		
+		if(primitiveCount > 0) {
+			bvh.nodeCount = 1;
+			bvh.buildMedian(primitiveBounds, 0, 0, primitiveCount, Math.max(1, maxLeafSize));
+		}
+		
+		return bvh;
+	}
+	
+	/**
+	 * Builds a hierarchy over some of the primitives, e.g. the live entries of a table with free slots.
+	 * The hierarchy references the given primitive indices, not their position in the array.
+	 * @see #build(float[], int, int)
+	 *
+	 * @param primitiveBounds The bounds of the primitives, six floats per primitive, indexed by the primitive indices.
+	 * @param primitives The primitive indices. The array is copied.
+	 * @param primitiveCount The number of primitive indices.
+	 * @param maxLeafSize The maximum number of primitives in a leaf.
+	 * @return The new {@link Bvhf}.
+	 **/
+	public static Bvhf build(float[] primitiveBounds, int[] primitives, int primitiveCount, int maxLeafSize) {
+		return build(primitiveBounds, primitives, primitiveCount, maxLeafSize, null);
+	}
+	
+	// Like build(float[], int[], int, int), with the node bounds stored in the given array (room for primitiveCount*2-1 nodes), or in a new one if null.
+	static Bvhf build(float[] primitiveBounds, int[] primitives, int primitiveCount, int maxLeafSize, float[] boundsStore) {
+		Bvhf bvh;
+		if(boundsStore != null) {
+			bvh = new Bvhf(0);
+			int maxNodes = primitiveCount > 0 ? primitiveCount*2 - 1 : 0;
+			bvh.bounds = boundsStore;
+			bvh.nodes = new int[maxNodes * 2];
+			bvh.primitives = new int[primitiveCount];
+			bvh.primitiveCount = primitiveCount;
+		} else {
+			bvh = new Bvhf(primitiveCount);
+		}
+		System.arraycopy(primitives, 0, bvh.primitives, 0, primitiveCount);
+		
+		if(primitiveCount > 0) {
+			bvh.nodeCount = 1;
+			bvh.buildMedian(primitiveBounds, 0, 0, primitiveCount, Math.max(1, maxLeafSize));
+		}
+		
+		return bvh;
+	}
+	
+	private void buildMedian(float[] primitiveBounds, int node, int first, int count, int maxLeafSize) {
+		computeBounds(primitiveBounds, primitives, first, count, bounds, node*6);
+		
+		if(count <= maxLeafSize) {
+			nodes[node*2  ] = ~first;
+			nodes[node*2+1] = count;
+			return;
+		}
+		
+		int axis = largestCentroidAxis(primitiveBounds, primitives, first, count);
+		int half = count >>> 1;
+		selectByCentroid(primitiveBounds, primitives, first, first+count-1, first+half, axis);
+		
+		int left = nodeCount;
+		nodeCount += 2;
+		nodes[node*2  ] = left;
+		nodes[node*2+1] = left+1;
+		
+		buildMedian(primitiveBounds, left  , first     , half      , maxLeafSize);
+		buildMedian(primitiveBounds, left+1, first+half, count-half, maxLeafSize);
+	}
+	
+	/**
+	 * Merges the bounds of a range of primitives.
+	 * @param primitiveBounds The bounds of the primitives, six floats per primitive.
+	 * @param primitives The primitive indices.
+	 * @param first The first entry of 'primitives' to merge.
+	 * @param count The number of entries to merge.
+	 * @param store The array to store the merged bounds in.
+	 * @param offset The offset in 'store'.
+	 **/
+	public static void computeBounds(float[] primitiveBounds, int[] primitives, int first, int count, float[] store, int offset) {
+		float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+		float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+		
+		for(int i = first, end = first+count; i < end; i++) {
+			int p = primitives[i]*6;
+			minX = primitiveBounds[p  ] < minX ? primitiveBounds[p  ] : minX;
+			minY = primitiveBounds[p+1] < minY ? primitiveBounds[p+1] : minY;
+			minZ = primitiveBounds[p+2] < minZ ? primitiveBounds[p+2] : minZ;
+			maxX = primitiveBounds[p+3] > maxX ? primitiveBounds[p+3] : maxX;
+			maxY = primitiveBounds[p+4] > maxY ? primitiveBounds[p+4] : maxY;
+			maxZ = primitiveBounds[p+5] > maxZ ? primitiveBounds[p+5] : maxZ;
+		}
+		
+		store[offset  ] = minX;
+		store[offset+1] = minY;
+		store[offset+2] = minZ;
+		store[offset+3] = maxX;
+		store[offset+4] = maxY;
+		store[offset+5] = maxZ;
+	}
+	
+	/**
+	 * @return The axis (0=X, 1=Y, 2=Z) along which the centroids of the given primitives are spread the most.
+	 **/
+	static int largestCentroidAxis(float[] primitiveBounds, int[] primitives, int first, int count) {
+		float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+		float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+		
+		for(int i = first, end = first+count; i < end; i++) {
+			int p = primitives[i]*6;
+			// twice the centroid, good enough for comparisons
+			float cX = primitiveBounds[p  ] + primitiveBounds[p+3];
+			float cY = primitiveBounds[p+1] + primitiveBounds[p+4];
+			float cZ = primitiveBounds[p+2] + primitiveBounds[p+5];
+			minX = cX < minX ? cX : minX;
+			minY = cY < minY ? cY : minY;
+			minZ = cZ < minZ ? cZ : minZ;
+			maxX = cX > maxX ? cX : maxX;
+			maxY = cY > maxY ? cY : maxY;
+			maxZ = cZ > maxZ ? cZ : maxZ;
+		}
+		
+		float sX = maxX-minX;
+		float sY = maxY-minY;
+		float sZ = maxZ-minZ;
+		
+		if(sX >= sY && sX >= sZ) return 0;
+		return sY >= sZ ? 1 : 2;
+	}
+	
+	/**
+	 * Partially sorts the range [lo,hi] of 'primitives', so that the entry at 'nth' is the one that would be there if the range was sorted by centroid.
+	 **/
+	static void selectByCentroid(float[] primitiveBounds, int[] primitives, int lo, int hi, int nth, int axis) {
+		while(hi > lo) {
+			float pivot = centroid(primitiveBounds, primitives[(lo+hi) >>> 1], axis);
+			int i = lo;
+			int j = hi;
+			
+			while(i <= j) {
+				while(centroid(primitiveBounds, primitives[i], axis) < pivot) i++;
+				while(centroid(primitiveBounds, primitives[j], axis) > pivot) j--;
+				if(i <= j) {
+					int swap = primitives[i];
+					primitives[i] = primitives[j];
+					primitives[j] = swap;
+					i++;
+					j--;
+				}
+			}
+			
+			if(nth <= j) hi = j;
+			else if(nth >= i) lo = i;
+			else return;
+		}
+	}
+	
+	private static float centroid(float[] primitiveBounds, int primitive, int axis) {
+		return primitiveBounds[primitive*6+axis] + primitiveBounds[primitive*6+3+axis];
+	}
+	
+	/**
+	 * @return True, if the given node is a leaf.
+	 **/
+	public boolean isLeaf(int node) {
+		return nodes[node*2] < 0;
+	}
+	
+	/**
+	 * @return The offset of the first primitive of the given leaf in {@link #primitives}.
+	 **/
+	public int getLeafFirst(int node) {
+		return ~nodes[node*2];
+	}
+	
+	/**
+	 * @return The number of primitives in the given leaf.
+	 **/
+	public int getLeafCount(int node) {
+		return nodes[node*2+1];
+	}
+	
+	/**
+	 * Stores the bounds of the given node in the given {@link Aabbf}.
+	 * @param node The node.
+	 * @param store The {@link Aabbf} to store the bounds in.
+	 * @return The {@link Aabbf}.
+	 **/
+	public Aabbf getBounds(int node, Aabbf store) {
+		int b = node*6;
+		store.extentX = (bounds[b+3] - bounds[b  ]) / 2f;
+		store.extentY = (bounds[b+4] - bounds[b+1]) / 2f;
+		store.extentZ = (bounds[b+5] - bounds[b+2]) / 2f;
+		store.originX = (bounds[b+3] + bounds[b  ]) / 2f;
+		store.originY = (bounds[b+4] + bounds[b+1]) / 2f;
+		store.originZ = (bounds[b+5] + bounds[b+2]) / 2f;
+		return store;
+	}
+	
+	/**
+	 * @return The number of bytes used by the arrays of this hierarchy.
+	 **/
+	public long sizeInBytes() {
+		return 4L * (bounds.length + nodes.length + primitives.length);
+	}
+	
+	/**
+	 * Finds the nearest primitive hit by the given ray.
+	 * @param ray The ray.
+	 * @param intersector The ray test for a single primitive.
+	 * @return The distance to the nearest 'hit point', or positive infinity if there is no hit.
+	 **/
+	public float intersectRay(Rayf ray, PrimitiveIntersector intersector) {
+		return intersectRay(ray, intersector, null);
+	}
+	
+	/**
+	 * Finds the nearest primitive hit by the given ray.
+	 * @param ray The ray.
+	 * @param intersector The ray test for a single primitive.
+	 * @param primitiveStore If not null, the index of the hit primitive (or -1) is stored at index 0.
+	 * @return The distance to the nearest 'hit point', or positive infinity if there is no hit.
+	 **/
+	public float intersectRay(Rayf ray, PrimitiveIntersector intersector, int[] primitiveStore) {
+		return intersectRay(ray, Float.POSITIVE_INFINITY, intersector, primitiveStore);
+	}
+	
+	/**
+	 * Finds the nearest primitive hit by the given ray, closer than the given distance.
+	 * @param ray The ray.
+	 * @param maxDistance Only hits closer than this are reported. Nodes behind it are skipped.
+	 * @param intersector The ray test for a single primitive.
+	 * @param primitiveStore If not null, the index of the hit primitive (or -1) is stored at index 0.
+	 * @return The distance to the nearest 'hit point', or positive infinity if there is no hit closer than maxDistance.
+	 **/
+	public float intersectRay(Rayf ray, float maxDistance, PrimitiveIntersector intersector, int[] primitiveStore) {
+		long startTime = GeometryMetrics.ENABLED ? GeometryMetrics.startQuery() : 0;
+		int visited = 0;
+		float closest = maxDistance;
+		int closestPrimitive = -1;
+		
+		if(nodeCount > 0) {
+			float orgX = ray.originX;
+			float orgY = ray.originY;
+			float orgZ = ray.originZ;
+			float invDirX = 1f / ray.directionX;
+			float invDirY = 1f / ray.directionY;
+			float invDirZ = 1f / ray.directionZ;
+			
+			TraversalStack traversal = TraversalStack.acquire();
+			try {
+				int[] stack = traversal.nodes;
+				float[] stackT = traversal.distances;
+				int sp = 0;
+				
+				float t = intersectRayWithNode(0, orgX, orgY, orgZ, invDirX, invDirY, invDirZ);
+				if(t < closest) {
+					stack[sp] = 0;
+					stackT[sp++] = t;
+				}
+				
+				while(sp > 0) {
+					int node = stack[--sp];
+					
+					// a closer hit was found after this node was pushed
+					if(stackT[sp] >= closest)
+						continue;
+					
+					visited++;
+					int a = nodes[node*2];
+					int b = nodes[node*2+1];
+					
+					if(a < 0) {
+						for(int i = ~a, end = ~a+b; i < end; i++) {
+							float tp = intersector.intersectRay(primitives[i], ray);
+							if(tp < closest) {
+								closest = tp;
+								closestPrimitive = primitives[i];
+							}
+						}
+						continue;
+					}
+					
+					if(sp + 2 > stack.length) {
+						traversal.grow();
+						stack = traversal.nodes;
+						stackT = traversal.distances;
+					}
+					
+					float ta = intersectRayWithNode(a, orgX, orgY, orgZ, invDirX, invDirY, invDirZ);
+					float tb = intersectRayWithNode(b, orgX, orgY, orgZ, invDirX, invDirY, invDirZ);
+					
+					// push the far child first, so the near child is visited first
+					if(ta > tb) {
+						int swap = a; a = b; b = swap;
+						float swapT = ta; ta = tb; tb = swapT;
+					}
+					if(tb < closest) {
+						stack[sp] = b;
+						stackT[sp++] = tb;
+					}
+					if(ta < closest) {
+						stack[sp] = a;
+						stackT[sp++] = ta;
+					}
+				}
+			} finally {
+				traversal.release();
+			}
+		}
+		
+		if(primitiveStore != null)
+			primitiveStore[0] = closestPrimitive;
+		
+		if(GeometryMetrics.ENABLED) GeometryMetrics.countQuery(GeometryMetrics.QUERY_RAY, startTime, visited);
+		return closestPrimitive < 0 ? Float.POSITIVE_INFINITY : closest;
+	}
+	
+	/**
+	 * Finds the primitive nearest to the given point, closer than the given distance.
+	 * The nodes are visited nearest first, and nodes farther than the nearest primitive found so far are skipped.
+	 * @param maxDistance Only primitives closer than this are found, e.g. the width of a narrow band. Positive infinity for no limit.
+	 * @param distance The distance to a single primitive.
+	 * @param primitiveStore If not null, the index of the nearest primitive (or -1) is stored at index 0.
+	 * @return The distance to the nearest primitive, or positive infinity if there is no primitive closer than maxDistance.
+	 **/
+	public float findNearest(float x, float y, float z, float maxDistance, PrimitiveDistance distance, int[] primitiveStore) {
+		long startTime = GeometryMetrics.ENABLED ? GeometryMetrics.startQuery() : 0;
+		int visited = 0;
+		float closest = maxDistance < Float.POSITIVE_INFINITY ? maxDistance*maxDistance : Float.POSITIVE_INFINITY;
+		int closestPrimitive = -1;
+		
+		if(nodeCount > 0) {
+			TraversalStack traversal = TraversalStack.acquire();
+			try {
+				int[] stack = traversal.nodes;
+				float[] stackD = traversal.distances;
+				int sp = 0;
+				
+				float d = distanceSquaredToNode(0, x, y, z);
+				if(d < closest) {
+					stack[sp] = 0;
+					stackD[sp++] = d;
+				}
+				
+				while(sp > 0) {
+					int node = stack[--sp];
+					
+					// a nearer primitive was found after this node was pushed
+					if(stackD[sp] >= closest)
+						continue;
+					
+					visited++;
+					int a = nodes[node*2];
+					int b = nodes[node*2+1];
+					
+					if(a < 0) {
+						for(int i = ~a, end = ~a+b; i < end; i++) {
+							float dp = distance.distanceSquared(primitives[i], x, y, z);
+							if(dp < closest) {
+								closest = dp;
+								closestPrimitive = primitives[i];
+							}
+						}
+						continue;
+					}
+					
+					if(sp + 2 > stack.length) {
+						traversal.grow();
+						stack = traversal.nodes;
+						stackD = traversal.distances;
+					}
+					
+					float da = distanceSquaredToNode(a, x, y, z);
+					float db = distanceSquaredToNode(b, x, y, z);
+					
+					// push the far child first, so the near child is visited first
+					if(da > db) {
+						int swap = a; a = b; b = swap;
+						float swapD = da; da = db; db = swapD;
+					}
+					if(db < closest) {
+						stack[sp] = b;
+						stackD[sp++] = db;
+					}
+					if(da < closest) {
+						stack[sp] = a;
+						stackD[sp++] = da;
+					}
+				}
+			} finally {
+				traversal.release();
+			}
+		}
+		
+		if(primitiveStore != null)
+			primitiveStore[0] = closestPrimitive;
+		
+		if(GeometryMetrics.ENABLED) GeometryMetrics.countQuery(GeometryMetrics.QUERY_NEAREST, startTime, visited);
+		return closestPrimitive < 0 ? Float.POSITIVE_INFINITY : (float) Math.sqrt(closest);
+	}
+	
+	private float distanceSquaredToNode(int node, float x, float y, float z) {
+		int b = node*6;
+		float dX = Math.max(0, Math.max(bounds[b  ] - x, x - bounds[b+3]));
+		float dY = Math.max(0, Math.max(bounds[b+1] - y, y - bounds[b+4]));
+		float dZ = Math.max(0, Math.max(bounds[b+2] - z, z - bounds[b+5]));
+		return dX*dX + dY*dY + dZ*dZ;
+	}
+	
+	private float intersectRayWithNode(int node, float orgX, float orgY, float orgZ, float invDirX, float invDirY, float invDirZ) {
+		int b = node*6;
+		return Intersections.intersectRayWithBox(orgX, orgY, orgZ, invDirX, invDirY, invDirZ,
+				bounds[b], bounds[b+1], bounds[b+2], bounds[b+3], bounds[b+4], bounds[b+5]);
+	}
+	
+	/**
+	 * Visits all primitives whose bounds overlap the given {@link Aabbf}.
+	 * @param aabb The box to query with.
+	 * @param visitor The visitor that receives the primitives.
+	 * @return False, if the visitor stopped the query. True if not.
+	 **/
+	public boolean queryAabb(Aabbf aabb, PrimitiveVisitor visitor) {
+		return queryBox(
+				aabb.originX - aabb.extentX, aabb.originY - aabb.extentY, aabb.originZ - aabb.extentZ,
+				aabb.originX + aabb.extentX, aabb.originY + aabb.extentY, aabb.originZ + aabb.extentZ,
+				visitor);
+	}
+	
+	/**
+	 * Visits all primitives whose bounds overlap the given box.
+	 * @return False, if the visitor stopped the query. True if not.
+	 **/
+	public boolean queryBox(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, PrimitiveVisitor visitor) {
+		if(nodeCount == 0)
+			return true;
+		
+		long startTime = GeometryMetrics.ENABLED ? GeometryMetrics.startQuery() : 0;
+		int visited = 0;
+		TraversalStack traversal = TraversalStack.acquire();
+		try {
+			int[] stack = traversal.nodes;
+			int sp = 0;
+			stack[sp++] = 0;
+			
+			while(sp > 0) {
+				int node = stack[--sp];
+				int b = node*6;
+				visited++;
+				
+				if(bounds[b  ] > maxX || bounds[b+3] < minX) continue;
+				if(bounds[b+1] > maxY || bounds[b+4] < minY) continue;
+				if(bounds[b+2] > maxZ || bounds[b+5] < minZ) continue;
+				
+				int l = nodes[node*2];
+				int r = nodes[node*2+1];
+				
+				if(l < 0) {
+					for(int i = ~l, end = ~l+r; i < end; i++) {
+						if(!visitor.visit(primitives[i]))
+							return endQuery(GeometryMetrics.QUERY_BOX, startTime, visited, false);
+					}
+					continue;
+				}
+				
+				if(sp + 2 > stack.length) {
+					traversal.grow();
+					stack = traversal.nodes;
+				}
+				
+				stack[sp++] = r;
+				stack[sp++] = l;
+			}
+		} finally {
+			traversal.release();
+		}
+		
+		return endQuery(GeometryMetrics.QUERY_BOX, startTime, visited, true);
+	}
+	
+	/**
+	 * Visits all primitives whose bounds are inside or intersect the given frustum.
+	 * @param culler The frustum to query with.
+	 * @param visitor The visitor that receives the primitives.
+	 * @return False, if the visitor stopped the query. True if not.
+	 **/
+	public boolean queryFrustum(FrustumCuller culler, PrimitiveVisitor visitor) {
+		if(nodeCount == 0)
+			return true;
+		
+		long startTime = GeometryMetrics.ENABLED ? GeometryMetrics.startQuery() : 0;
+		int visited = 0;
+		TraversalStack traversal = TraversalStack.acquire();
+		try {
+			int[] stack = traversal.nodes;
+			int sp = 0;
+			stack[sp++] = 0;
+			
+			while(sp > 0) {
+				int node = stack[--sp];
+				int b = node*6;
+				visited++;
+				
+				if(culler.isAabInsideFrustum(bounds[b], bounds[b+1], bounds[b+2], bounds[b+3], bounds[b+4], bounds[b+5]) != -1)
+					continue;
+				
+				int l = nodes[node*2];
+				int r = nodes[node*2+1];
+				
+				if(l < 0) {
+					for(int i = ~l, end = ~l+r; i < end; i++) {
+						if(!visitor.visit(primitives[i]))
+							return endQuery(GeometryMetrics.QUERY_FRUSTUM, startTime, visited, false);
+					}
+					continue;
+				}
+				
+				if(sp + 2 > stack.length) {
+					traversal.grow();
+					stack = traversal.nodes;
+				}
+				
+				stack[sp++] = r;
+				stack[sp++] = l;
+			}
+		} finally {
+			traversal.release();
+		}
+		
+		return endQuery(GeometryMetrics.QUERY_FRUSTUM, startTime, visited, true);
+	}
+	
+	/**
+	 * Visits all primitives whose bounds are inside or intersect the given frustum.
+	 * Unlike {@link #queryFrustum(FrustumCuller, PrimitiveVisitor)}, the nodes below a node that is fully inside of the frustum are not tested any more.
+	 * @param frustum The frustum to query with.
+	 * @param visitor The visitor that receives the primitives.
+	 * @return False, if the visitor stopped the query. True if not.
+	 **/
+	public boolean queryFrustum(Frustumf frustum, PrimitiveVisitor visitor) {
+		if(nodeCount == 0)
+			return true;
+		
+		long startTime = GeometryMetrics.ENABLED ? GeometryMetrics.startQuery() : 0;
+		int visited = 0;
+		TraversalStack traversal = TraversalStack.acquire();
+		try {
+			int[] stack = traversal.nodes;
+			int sp = 0;
+			stack[sp++] = 0;
+			
+			while(sp > 0) {
+				// nodes below a node that is fully inside are pushed complemented
+				int entry = stack[--sp];
+				boolean inside = entry < 0;
+				int node = inside ? ~entry : entry;
+				int b = node*6;
+				visited++;
+				
+				if(!inside) {
+					int result = frustum.classifyBox(bounds[b], bounds[b+1], bounds[b+2], bounds[b+3], bounds[b+4], bounds[b+5]);
+					if(result == Frustumf.OUTSIDE)
+						continue;
+					inside = result == Frustumf.INSIDE;
+				}
+				
+				int l = nodes[node*2];
+				int r = nodes[node*2+1];
+				
+				if(l < 0) {
+					for(int i = ~l, end = ~l+r; i < end; i++) {
+						if(!visitor.visit(primitives[i]))
+							return endQuery(GeometryMetrics.QUERY_FRUSTUM, startTime, visited, false);
+					}
+					continue;
+				}
+				
+				if(sp + 2 > stack.length) {
+					traversal.grow();
+					stack = traversal.nodes;
+				}
+				
+				stack[sp++] = inside ? ~r : r;
+				stack[sp++] = inside ? ~l : l;
+			}
+		} finally {
+			traversal.release();
+		}
+		
+		return endQuery(GeometryMetrics.QUERY_FRUSTUM, startTime, visited, true);
+	}
+	
+	private static boolean endQuery(int query, long startTime, int visited, boolean result) {
+		if(GeometryMetrics.ENABLED) GeometryMetrics.countQuery(query, startTime, visited);
+		return result;
+	}
+
+}
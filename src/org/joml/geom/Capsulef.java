@@ -0,0 +1,83 @@
+package org.joml.geom;
+
+import org.joml.Vector3f;
+
+/**
+ * A capsule: All points within a given radius of a line segment.
+ * Capsules fit long, thin and rotated objects (limbs, characters, projectiles) much tighter than boxes or spheres.
+ **/
+public class Capsulef implements SupportMapping {
+	
+	/** The first end of the segment. **/
+	public float aX, aY, aZ;
+	/** The second end of the segment. **/
+	public float bX, bY, bZ;
+	/** The radius around the segment. **/
+	public float radius;
+	
+	/**
+	 * Creates a new {@link Capsulef} from (0,-1,0) to (0,1,0) with a radius of one.
+	 **/
+	public Capsulef() {
+		aY = -1;
+		bY = 1;
+		radius = 1;
+	}
+	
+	public Capsulef(float aX, float aY, float aZ, float bX, float bY, float bZ, float radius) {
+		set(aX, aY, aZ, bX, bY, bZ, radius);
+	}
+	
+	public Capsulef(Vector3f a, Vector3f b, float radius) {
+		set(a.x, a.y, a.z, b.x, b.y, b.z, radius);
+	}
+	
+	public Capsulef set(float aX, float aY, float aZ, float bX, float bY, float bZ, float radius) {
+		this.aX = aX;
+		this.aY = aY;
+		this.aZ = aZ;
+		this.bX = bX;
+		this.bY = bY;
+		this.bZ = bZ;
+		this.radius = radius;
+		return this;
+	}
+	
+	public Capsulef move(float x, float y, float z) {
+		aX += x; aY += y; aZ += z;
+		bX += x; bY += y; bZ += z;
+		return this;
+	}
+	
+	/**
+	 * @return True, if the given point is inside this {@link Capsulef}.
+	 **/
+	public boolean inside(float px, float py, float pz) {
+		return Intersections.distanceSquaredPointSegment(px, py, pz, aX, aY, aZ, bX, bY, bZ) <= radius*radius;
+	}
+	
+	@Override
+	public void getSupport(float dirX, float dirY, float dirZ, float[] store, int offset) {
+		float length = (float) Math.sqrt(dirX*dirX + dirY*dirY + dirZ*dirZ);
+		float scale = length > 0 ? radius / length : 0;
+		boolean useB = (bX-aX)*dirX + (bY-aY)*dirY + (bZ-aZ)*dirZ > 0;
+		store[offset  ] = (useB ? bX : aX) + dirX * scale;
+		store[offset+1] = (useB ? bY : aY) + dirY * scale;
+		store[offset+2] = (useB ? bZ : aZ) + dirZ * scale;
+	}
+	
+	/**
+	 * Computes the smallest {@link Aabbf} containing this {@link Capsulef}.
+	 * @return The store.
+	 **/
+	public Aabbf getBounds(Aabbf store) {
+		store.originX = (aX + bX) * 0.5f;
+		store.originY = (aY + bY) * 0.5f;
+		store.originZ = (aZ + bZ) * 0.5f;
+		store.extentX = Math.abs(bX - aX) * 0.5f + radius;
+		store.extentY = Math.abs(bY - aY) * 0.5f + radius;
+		store.extentZ = Math.abs(bZ - aZ) * 0.5f + radius;
+		return store;
+	}
+
+}
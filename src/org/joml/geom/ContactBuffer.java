@@ -0,0 +1,97 @@
+package org.joml.geom;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of contacts, stored as one array per component (structure of arrays), so a solver can loop over them without any per-contact objects.
+ * Contact i is made of the elements at index i of all arrays, see {@link Contacts} for how they are generated.
+ *
+ * <br><br>
+ * The normal points from body A to body B, and has unit length. Moving body B by normal * depth separates the bodies.
+ * The point lies halfway between the surfaces of the bodies.
+ * <br>
+ * Clearing the buffer keeps the memory, so a buffer reused every step stops allocating.
+ **/
+public class ContactBuffer {
+	
+	/** The bodies of each contact, as given by the pairs. **/
+	public int[] bodyA, bodyB;
+	/** The contact points. **/
+	public float[] pointX, pointY, pointZ;
+	/** The contact normals, from body A to body B. **/
+	public float[] normalX, normalY, normalZ;
+	/** The penetration depths, positive if the bodies overlap. **/
+	public float[] depth;
+	/** The number of contacts in the buffer, only the first {@link #size} elements of the arrays are in use. **/
+	public int size;
+	
+	public ContactBuffer() {
+		this(64);
+	}
+	
+	/**
+	 * @param capacity The initial capacity.
+	 **/
+	public ContactBuffer(int capacity) {
+		capacity = Math.max(1, capacity);
+		bodyA = new int[capacity];
+		bodyB = new int[capacity];
+		pointX = new float[capacity];
+		pointY = new float[capacity];
+		pointZ = new float[capacity];
+		normalX = new float[capacity];
+		normalY = new float[capacity];
+		normalZ = new float[capacity];
+		depth = new float[capacity];
+	}
+	
+	public void add(int a, int b, float pX, float pY, float pZ, float nX, float nY, float nZ, float d) {
+		if(size == depth.length)
+			ensureCapacity(size*2);
+		
+		bodyA[size] = a;
+		bodyB[size] = b;
+		pointX[size] = pX;
+		pointY[size] = pY;
+		pointZ[size] = pZ;
+		normalX[size] = nX;
+		normalY[size] = nY;
+		normalZ[size] = nZ;
+		depth[size] = d;
+		size++;
+	}
+	
+	/**
+	 * Grows the arrays, so they hold at least the given number of contacts.
+	 **/
+	public void ensureCapacity(int capacity) {
+		if(capacity <= depth.length)
+			return;
+		
+		bodyA = Arrays.copyOf(bodyA, capacity);
+		bodyB = Arrays.copyOf(bodyB, capacity);
+		pointX = Arrays.copyOf(pointX, capacity);
+		pointY = Arrays.copyOf(pointY, capacity);
+		pointZ = Arrays.copyOf(pointZ, capacity);
+		normalX = Arrays.copyOf(normalX, capacity);
+		normalY = Arrays.copyOf(normalY, capacity);
+		normalZ = Arrays.copyOf(normalZ, capacity);
+		depth = Arrays.copyOf(depth, capacity);
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	
+	/**
+	 * Removes all contacts, but keeps the memory.
+	 **/
+	public void clear() {
+		size = 0;
+	}
+
+}
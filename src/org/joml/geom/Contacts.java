@@ -0,0 +1,246 @@
+package org.joml.geom;
+
+/**
+ * Generates contact manifolds for overlapping pairs of boxes and spheres, e.g. the pairs found by a broadphase, and stores them in a {@link ContactBuffer}.
+ *
+ * <br><br>
+ * The batch methods take the shapes as packed float arrays: six floats per box (minX, minY, minZ, maxX, maxY, maxZ, the layout of {@link Bvhf#build(float[], int, int)}),
+ * and four floats per sphere (centerX, centerY, centerZ, radius).
+ * The pairs are two ints per pair, the indices of body A and body B; these indices are stored in the contacts.
+ * <br>
+ * Box-box pairs get up to four contacts, the corners of the overlap region on the axis of the smallest penetration.
+ * Pairs with a sphere get one contact. Shapes that only touch get no contacts.
+ **/
+public final class Contacts {
+	
+	private Contacts() {
+	}
+	
+	/**
+	 * Generates the contacts of the given pairs of boxes.
+	 * @param boxes The boxes, six floats per box.
+	 * @param pairs The pairs of box indices, two ints per pair.
+	 * @param pairCount The number of pairs.
+	 * @param store The buffer to add the contacts to.
+	 * @return The number of contacts added.
+	 **/
+	public static int collideAabbs(float[] boxes, int[] pairs, int pairCount, ContactBuffer store) {
+		int start = store.size;
+		for(int i = 0; i < pairCount; i++) {
+			int a = pairs[i*2], b = pairs[i*2+1];
+			int oa = a*6, ob = b*6;
+			aabbWithAabb(a, b,
+					boxes[oa], boxes[oa+1], boxes[oa+2], boxes[oa+3], boxes[oa+4], boxes[oa+5],
+					boxes[ob], boxes[ob+1], boxes[ob+2], boxes[ob+3], boxes[ob+4], boxes[ob+5], store);
+		}
+		return store.size - start;
+	}
+	
+	/**
+	 * Generates the contacts of the given pairs of spheres.
+	 * @param spheres The spheres, four floats per sphere.
+	 * @param pairs The pairs of sphere indices, two ints per pair.
+	 * @param pairCount The number of pairs.
+	 * @param store The buffer to add the contacts to.
+	 * @return The number of contacts added.
+	 **/
+	public static int collideSpheres(float[] spheres, int[] pairs, int pairCount, ContactBuffer store) {
+		int start = store.size;
+		for(int i = 0; i < pairCount; i++) {
+			int a = pairs[i*2], b = pairs[i*2+1];
+			int oa = a*4, ob = b*4;
+			sphereWithSphere(a, b, spheres[oa], spheres[oa+1], spheres[oa+2], spheres[oa+3], spheres[ob], spheres[ob+1], spheres[ob+2], spheres[ob+3], store);
+		}
+		return store.size - start;
+	}
+	
+	/**
+	 * Generates the contacts of the given pairs of a sphere (body A) and a box (body B).
+	 * @param spheres The spheres, four floats per sphere.
+	 * @param boxes The boxes, six floats per box.
+	 * @param pairs The pairs, two ints per pair: the index of the sphere, then the index of the box.
+	 * @param pairCount The number of pairs.
+	 * @param store The buffer to add the contacts to.
+	 * @return The number of contacts added.
+	 **/
+	public static int collideSpheresWithAabbs(float[] spheres, float[] boxes, int[] pairs, int pairCount, ContactBuffer store) {
+		int start = store.size;
+		for(int i = 0; i < pairCount; i++) {
+			int a = pairs[i*2], b = pairs[i*2+1];
+			int oa = a*4, ob = b*6;
+			sphereWithAabb(a, b, spheres[oa], spheres[oa+1], spheres[oa+2], spheres[oa+3],
+					boxes[ob], boxes[ob+1], boxes[ob+2], boxes[ob+3], boxes[ob+4], boxes[ob+5], store);
+		}
+		return store.size - start;
+	}
+	
+	/**
+	 * Generates the contacts of two boxes.
+	 * @param bodyA The index stored as body A of the contacts.
+	 * @param bodyB The index stored as body B of the contacts.
+	 * @return True, if the boxes overlap.
+	 **/
+	public static boolean collide(Aabbf a, Aabbf b, int bodyA, int bodyB, ContactBuffer store) {
+		return aabbWithAabb(bodyA, bodyB,
+				a.getMinX(), a.getMinY(), a.getMinZ(), a.getMaxX(), a.getMaxY(), a.getMaxZ(),
+				b.getMinX(), b.getMinY(), b.getMinZ(), b.getMaxX(), b.getMaxY(), b.getMaxZ(), store);
+	}
+	
+	/**
+	 * Generates the contact of two spheres.
+	 * @param bodyA The index stored as body A of the contact.
+	 * @param bodyB The index stored as body B of the contact.
+	 * @return True, if the spheres overlap.
+	 **/
+	public static boolean collide(Spheref a, Spheref b, int bodyA, int bodyB, ContactBuffer store) {
+		return sphereWithSphere(bodyA, bodyB, a.centerX, a.centerY, a.centerZ, a.radius, b.centerX, b.centerY, b.centerZ, b.radius, store);
+	}
+	
+	/**
+	 * Generates the contact of a sphere and a box.
+	 * @param bodyA The index stored as body A (the sphere) of the contact.
+	 * @param bodyB The index stored as body B (the box) of the contact.
+	 * @return True, if the sphere and the box overlap.
+	 **/
+	public static boolean collide(Spheref a, Aabbf b, int bodyA, int bodyB, ContactBuffer store) {
+		return sphereWithAabb(bodyA, bodyB, a.centerX, a.centerY, a.centerZ, a.radius,
+				b.getMinX(), b.getMinY(), b.getMinZ(), b.getMaxX(), b.getMaxY(), b.getMaxZ(), store);
+	}
+	
+	private static boolean aabbWithAabb(int a, int b,
+			float aMinX, float aMinY, float aMinZ, float aMaxX, float aMaxY, float aMaxZ,
+			float bMinX, float bMinY, float bMinZ, float bMaxX, float bMaxY, float bMaxZ,
+			ContactBuffer store) {
+		// the overlap region
+		float minX = Math.max(aMinX, bMinX), maxX = Math.min(aMaxX, bMaxX);
+		float minY = Math.max(aMinY, bMinY), maxY = Math.min(aMaxY, bMaxY);
+		float minZ = Math.max(aMinZ, bMinZ), maxZ = Math.min(aMaxZ, bMaxZ);
+		float dX = maxX - minX, dY = maxY - minY, dZ = maxZ - minZ;
+		if(dX <= 0 || dY <= 0 || dZ <= 0)
+			return false;
+		
+		// the axis of the smallest penetration, pointing from the center of A to the center of B
+		float d;
+		int axis;
+		if(dX <= dY && dX <= dZ) {
+			d = dX;
+			axis = 0;
+		} else if(dY <= dZ) {
+			d = dY;
+			axis = 1;
+		} else {
+			d = dZ;
+			axis = 2;
+		}
+		float sign;
+		if(axis == 0) {
+			sign = bMinX + bMaxX >= aMinX + aMaxX ? 1 : -1;
+		} else if(axis == 1) {
+			sign = bMinY + bMaxY >= aMinY + aMaxY ? 1 : -1;
+		} else {
+			sign = bMinZ + bMaxZ >= aMinZ + aMaxZ ? 1 : -1;
+		}
+		float nX = axis == 0 ? sign : 0;
+		float nY = axis == 1 ? sign : 0;
+		float nZ = axis == 2 ? sign : 0;
+		
+		// the corners of the overlap region on the mid plane of the penetration axis
+		// (touching boxes are rejected above, so the region is never flat and the corners are distinct)
+		float midX = (minX + maxX) * 0.5f, midY = (minY + maxY) * 0.5f, midZ = (minZ + maxZ) * 0.5f;
+		for(int i = 0; i < 4; i++) {
+			boolean u = (i & 1) != 0, v = (i & 2) != 0;
+			float pX, pY, pZ;
+			if(axis == 0) {
+				pX = midX; pY = u ? maxY : minY; pZ = v ? maxZ : minZ;
+			} else if(axis == 1) {
+				pX = u ? maxX : minX; pY = midY; pZ = v ? maxZ : minZ;
+			} else {
+				pX = u ? maxX : minX; pY = v ? maxY : minY; pZ = midZ;
+			}
+			store.add(a, b, pX, pY, pZ, nX, nY, nZ, d);
+		}
+		return true;
+	}
+	
+	private static boolean sphereWithSphere(int a, int b, float aX, float aY, float aZ, float aR, float bX, float bY, float bZ, float bR, ContactBuffer store) {
+		float dX = bX - aX, dY = bY - aY, dZ = bZ - aZ;
+		float r = aR + bR;
+		float distanceSquared = dX*dX + dY*dY + dZ*dZ;
+		if(distanceSquared >= r*r)
+			return false;
+		
+		float distance = (float) Math.sqrt(distanceSquared);
+		float nX, nY, nZ;
+		if(distance > 0) {
+			float invDistance = 1f / distance;
+			nX = dX * invDistance;
+			nY = dY * invDistance;
+			nZ = dZ * invDistance;
+		} else {
+			// concentric spheres, any normal separates them
+			nX = 0;
+			nY = 1;
+			nZ = 0;
+		}
+		
+		float d = r - distance;
+		float s = aR - d * 0.5f;
+		store.add(a, b, aX + nX*s, aY + nY*s, aZ + nZ*s, nX, nY, nZ, d);
+		return true;
+	}
+	
+	private static boolean sphereWithAabb(int a, int b, float cX, float cY, float cZ, float r,
+			float minX, float minY, float minZ, float maxX, float maxY, float maxZ, ContactBuffer store) {
+		// the closest point of the box
+		float pX = Math.max(minX, Math.min(cX, maxX));
+		float pY = Math.max(minY, Math.min(cY, maxY));
+		float pZ = Math.max(minZ, Math.min(cZ, maxZ));
+		float dX = pX - cX, dY = pY - cY, dZ = pZ - cZ;
+		float distanceSquared = dX*dX + dY*dY + dZ*dZ;
+		if(distanceSquared >= r*r)
+			return false;
+		
+		float nX, nY, nZ, d;
+		if(distanceSquared > 0) {
+			float distance = (float) Math.sqrt(distanceSquared);
+			float invDistance = 1f / distance;
+			nX = dX * invDistance;
+			nY = dY * invDistance;
+			nZ = dZ * invDistance;
+			d = r - distance;
+		} else {
+			// the center is inside of the box: push the box away through the nearest face
+			float toMinX = cX - minX, toMaxX = maxX - cX;
+			float toMinY = cY - minY, toMaxY = maxY - cY;
+			float toMinZ = cZ - minZ, toMaxZ = maxZ - cZ;
+			float face = Math.min(Math.min(Math.min(toMinX, toMaxX), Math.min(toMinY, toMaxY)), Math.min(toMinZ, toMaxZ));
+			nX = nY = nZ = 0;
+			if(face == toMinX) {
+				nX = 1;
+				pX = minX;
+			} else if(face == toMaxX) {
+				nX = -1;
+				pX = maxX;
+			} else if(face == toMinY) {
+				nY = 1;
+				pY = minY;
+			} else if(face == toMaxY) {
+				nY = -1;
+				pY = maxY;
+			} else if(face == toMinZ) {
+				nZ = 1;
+				pZ = minZ;
+			} else {
+				nZ = -1;
+				pZ = maxZ;
+			}
+			d = r + face;
+		}
+		
+		// halfway between the surface of the sphere and the surface of the box
+		float s = d * 0.5f;
+		store.add(a, b, pX + nX*s, pY + nY*s, pZ + nZ*s, nX, nY, nZ, d);
+		return true;
+	}
+
+}
@@ -0,0 +1,235 @@
+package org.joml.geom;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.joml.Matrix4f;
+
+/**
+ * Finds the overlapping primitives of two {@link Bvhf}s by traversing both hierarchies at once.
+ *
+ * <br><br>
+ * The second hierarchy is placed in the space of the first one by a relative matrix, e.g. inverse(worldA) * worldB.
+ * Its node bounds are transformed on the fly (see {@link Transformations#transformBox(Matrix4f, float[], int, float[], int)}),
+ * so neither hierarchy has to be rebuilt when the objects move.
+ * <br>
+ * The traversal visits pairs of nodes whose bounds overlap, and always splits the larger node of a pair, until both are leaves.
+ * Every primitive of one leaf is then paired with every primitive of the other, the visitor does the exact test
+ * (e.g. {@link Intersections#intersectTriangleWithTriangle}, as done by {@link #queryTriangleOverlaps(TriangleMeshf, Bvhf, TriangleMeshf, Bvhf, Matrix4f, PairVisitor)}).
+ * <br>
+ * The parallel queries first split the root pair into enough overlapping subtree pairs, and then traverse these in parallel.
+ * Their visitor is called by several threads at once, and stopping it stops the remaining subtree pairs.
+ **/
+public final class DualTreeQuery {
+	
+	// the number of subtree pairs per thread the parallel queries aim for
+	private static final int PAIRS_PER_THREAD = 8;
+	
+	private DualTreeQuery() {
+	}
+	
+	/**
+	 * Visits all pairs of primitives whose leaves overlap.
+	 * @param bToA The matrix that transforms the space of b into the space of a.
+	 * @return False, if the visitor stopped the query. True if not.
+	 **/
+	public static boolean queryOverlaps(Bvhf a, Bvhf b, Matrix4f bToA, PairVisitor visitor) {
+		if(a.nodeCount == 0 || b.nodeCount == 0)
+			return true;
+		return traverse(a, b, bToA, 0, 0, visitor, null);
+	}
+	
+	/**
+	 * Visits all pairs of primitives whose leaves overlap, in parallel.
+	 * The visitor has to be thread safe. If the pool is null, this is the same as {@link #queryOverlaps(Bvhf, Bvhf, Matrix4f, PairVisitor)}.
+	 * @param bToA The matrix that transforms the space of b into the space of a.
+	 * @return False, if the visitor stopped the query. True if not.
+	 **/
+	public static boolean queryOverlaps(ForkJoinPool pool, final Bvhf a, final Bvhf b, final Matrix4f bToA, final PairVisitor visitor) {
+		if(pool == null)
+			return queryOverlaps(a, b, bToA, visitor);
+		if(a.nodeCount == 0 || b.nodeCount == 0)
+			return true;
+		
+		// split the pairs breadth first, until there are enough of them or only pairs of leaves are left
+		PrimitiveList pairs = new PrimitiveList(), next = new PrimitiveList();
+		pairs.add(0);
+		pairs.add(0);
+		float[] box = new float[6];
+		int target = pool.getParallelism() * PAIRS_PER_THREAD;
+		while(pairs.size/2 < target) {
+			boolean split = false;
+			next.clear();
+			for(int i = 0; i < pairs.size; i += 2) {
+				int nodeA = pairs.elements[i], nodeB = pairs.elements[i+1];
+				int lA = a.nodes[nodeA*2], lB = b.nodes[nodeB*2];
+				if(lA < 0 && lB < 0) {
+					next.add(nodeA);
+					next.add(nodeB);
+					continue;
+				}
+				
+				split = true;
+				Transformations.transformBox(bToA, b.bounds, nodeB*6, box, 0);
+				if(splitA(a, nodeA, lB, box)) {
+					for(int child = 0; child < 2; child++) {
+						int c = a.nodes[nodeA*2 + child];
+						if(overlaps(a.bounds, c*6, box)) {
+							next.add(c);
+							next.add(nodeB);
+						}
+					}
+				} else {
+					for(int child = 0; child < 2; child++) {
+						int c = b.nodes[nodeB*2 + child];
+						Transformations.transformBox(bToA, b.bounds, c*6, box, 0);
+						if(overlaps(a.bounds, nodeA*6, box)) {
+							next.add(nodeA);
+							next.add(c);
+						}
+					}
+				}
+			}
+			
+			PrimitiveList swap = pairs;
+			pairs = next;
+			next = swap;
+			if(!split)
+				break;
+		}
+		
+		final int[] subtrees = pairs.elements;
+		final AtomicBoolean stopped = new AtomicBoolean();
+		Parallel.forRange(pool, 0, pairs.size/2, 1, new Parallel.Body() {
+			public void run(int from, int to) {
+				for(int i = from; i < to && !stopped.get(); i++) {
+					if(!traverse(a, b, bToA, subtrees[i*2], subtrees[i*2+1], visitor, stopped))
+						stopped.set(true);
+				}
+			}
+		});
+		return !stopped.get();
+	}
+	
+	/**
+	 * Visits all pairs of overlapping triangles of two meshes.
+	 * @param bvhA The hierarchy over the triangles of meshA, see {@link TriangleMeshf#buildBvh(int)}.
+	 * @param bvhB The hierarchy over the triangles of meshB.
+	 * @param bToA The matrix that transforms the space of meshB into the space of meshA.
+	 * @param visitor Receives the indices of the overlapping triangles.
+	 * @return False, if the visitor stopped the query. True if not.
+	 **/
+	public static boolean queryTriangleOverlaps(TriangleMeshf meshA, Bvhf bvhA, TriangleMeshf meshB, Bvhf bvhB, Matrix4f bToA, PairVisitor visitor) {
+		return queryOverlaps(bvhA, bvhB, bToA, triangleVisitor(meshA, meshB, bToA, visitor));
+	}
+	
+	/**
+	 * Visits all pairs of overlapping triangles of two meshes, in parallel. The visitor has to be thread safe.
+	 * @see #queryTriangleOverlaps(TriangleMeshf, Bvhf, TriangleMeshf, Bvhf, Matrix4f, PairVisitor)
+	 **/
+	public static boolean queryTriangleOverlaps(ForkJoinPool pool, TriangleMeshf meshA, Bvhf bvhA, TriangleMeshf meshB, Bvhf bvhB, Matrix4f bToA, PairVisitor visitor) {
+		return queryOverlaps(pool, bvhA, bvhB, bToA, triangleVisitor(meshA, meshB, bToA, visitor));
+	}
+	
+	private static PairVisitor triangleVisitor(final TriangleMeshf meshA, final TriangleMeshf meshB, final Matrix4f bToA, final PairVisitor visitor) {
+		final float m00 = bToA.m00, m01 = bToA.m01, m02 = bToA.m02;
+		final float m10 = bToA.m10, m11 = bToA.m11, m12 = bToA.m12;
+		final float m20 = bToA.m20, m21 = bToA.m21, m22 = bToA.m22;
+		final float m30 = bToA.m30, m31 = bToA.m31, m32 = bToA.m32;
+		
+		return new PairVisitor() {
+			public boolean visit(int triangleA, int triangleB) {
+				float[] vA = meshA.vertices, vB = meshB.vertices;
+				int a0 = meshA.indices[triangleA*3]*3, a1 = meshA.indices[triangleA*3+1]*3, a2 = meshA.indices[triangleA*3+2]*3;
+				int b0 = meshB.indices[triangleB*3]*3, b1 = meshB.indices[triangleB*3+1]*3, b2 = meshB.indices[triangleB*3+2]*3;
+				
+				float x0 = vB[b0], y0 = vB[b0+1], z0 = vB[b0+2];
+				float x1 = vB[b1], y1 = vB[b1+1], z1 = vB[b1+2];
+				float x2 = vB[b2], y2 = vB[b2+1], z2 = vB[b2+2];
+				boolean hit = Intersections.intersectTriangleWithTriangle(
+						vA[a0], vA[a0+1], vA[a0+2], vA[a1], vA[a1+1], vA[a1+2], vA[a2], vA[a2+1], vA[a2+2],
+						m00*x0 + m10*y0 + m20*z0 + m30, m01*x0 + m11*y0 + m21*z0 + m31, m02*x0 + m12*y0 + m22*z0 + m32,
+						m00*x1 + m10*y1 + m20*z1 + m30, m01*x1 + m11*y1 + m21*z1 + m31, m02*x1 + m12*y1 + m22*z1 + m32,
+						m00*x2 + m10*y2 + m20*z2 + m30, m01*x2 + m11*y2 + m21*z2 + m31, m02*x2 + m12*y2 + m22*z2 + m32);
+				return !hit || visitor.visit(triangleA, triangleB);
+			}
+		};
+	}
+	
+	private static boolean traverse(Bvhf a, Bvhf b, Matrix4f bToA, int rootA, int rootB, PairVisitor visitor, AtomicBoolean stopped) {
+		TraversalStack traversal = TraversalStack.acquire();
+		try {
+			int[] stack = traversal.nodes;
+			float[] box = traversal.children;
+			int sp = 0;
+			stack[sp++] = rootA;
+			stack[sp++] = rootB;
+			
+			while(sp > 0) {
+				int nodeB = stack[--sp];
+				int nodeA = stack[--sp];
+				
+				Transformations.transformBox(bToA, b.bounds, nodeB*6, box, 0);
+				if(!overlaps(a.bounds, nodeA*6, box))
+					continue;
+				
+				int lA = a.nodes[nodeA*2], rA = a.nodes[nodeA*2+1];
+				int lB = b.nodes[nodeB*2], rB = b.nodes[nodeB*2+1];
+				
+				if(lA < 0 && lB < 0) {
+					for(int i = ~lA, endA = ~lA+rA; i < endA; i++) {
+						for(int j = ~lB, endB = ~lB+rB; j < endB; j++) {
+							if(!visitor.visit(a.primitives[i], b.primitives[j]))
+								return false;
+						}
+					}
+					// another subtree pair stopped the query
+					if(stopped != null && stopped.get())
+						return false;
+					continue;
+				}
+				
+				if(sp + 4 > stack.length) {
+					traversal.grow();
+					stack = traversal.nodes;
+				}
+				
+				if(splitA(a, nodeA, lB, box)) {
+					stack[sp++] = rA;
+					stack[sp++] = nodeB;
+					stack[sp++] = lA;
+					stack[sp++] = nodeB;
+				} else {
+					stack[sp++] = nodeA;
+					stack[sp++] = rB;
+					stack[sp++] = nodeA;
+					stack[sp++] = lB;
+				}
+			}
+		} finally {
+			traversal.release();
+		}
+		return true;
+	}
+	
+	// If the node of a should be split, rather than the node of b: The larger one, unless it is a leaf.
+	private static boolean splitA(Bvhf a, int nodeA, int linkB, float[] boxB) {
+		if(a.nodes[nodeA*2] < 0)
+			return false;
+		if(linkB < 0)
+			return true;
+		
+		float[] bounds = a.bounds;
+		int o = nodeA*6;
+		float sizeA = (bounds[o+3] - bounds[o]) + (bounds[o+4] - bounds[o+1]) + (bounds[o+5] - bounds[o+2]);
+		float sizeB = (boxB[3] - boxB[0]) + (boxB[4] - boxB[1]) + (boxB[5] - boxB[2]);
+		return sizeA >= sizeB;
+	}
+	
+	private static boolean overlaps(float[] bounds, int o, float[] box) {
+		return bounds[o] <= box[3] && bounds[o+3] >= box[0]
+				&& bounds[o+1] <= box[4] && bounds[o+4] >= box[1]
+				&& bounds[o+2] <= box[5] && bounds[o+5] >= box[2];
+	}
+
+}
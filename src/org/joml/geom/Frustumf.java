@@ -0,0 +1,182 @@
+package org.joml.geom;
+
+import org.joml.Matrix4f;
+
+/**
+ * The six planes of a view frustum, for culling tests that tell objects that are fully inside apart from those that only intersect the frustum.
+ * A {@link org.joml.FrustumCuller} only answers 'visible or not', which is not enough to skip the tests below a subtree that is fully inside,
+ * or to pick the first shadow cascade that contains a object completely.
+ *
+ * <br><br>
+ * <b>Layout:</b> The planes are stored as structure of arrays: {@link #normalX}[i], {@link #normalY}[i], {@link #normalZ}[i], {@link #distance}[i] is plane i,
+ * in the order left, right, bottom, top, near, far. The normals are normalized and point into the frustum, so a point p is inside of plane i if
+ * normal[i] dot p + distance[i] &gt;= 0.
+ * <br>
+ * The batch methods test packed shapes (four floats per sphere, six floats per box, like {@link Overlaps}) against all six planes, with the planes held in locals.
+ **/
+public class Frustumf {
+	
+	/** The shape is completely outside of the frustum. **/
+	public static final int OUTSIDE = 0;
+	/** The shape is partly inside of the frustum. **/
+	public static final int INTERSECTING = 1;
+	/** The shape is completely inside of the frustum. **/
+	public static final int INSIDE = 2;
+	
+	/** The number of planes. **/
+	public static final int PLANES = 6;
+	
+	/** The normals of the planes, pointing inside. **/
+	public final float[] normalX = new float[PLANES], normalY = new float[PLANES], normalZ = new float[PLANES];
+	/** The distances of the planes: The negated distance of the plane from the origin, along its normal. **/
+	public final float[] distance = new float[PLANES];
+	
+	/**
+	 * Creates a frustum whose planes are not set yet, see {@link #set(Matrix4f)} and {@link #setPlane(int, float, float, float, float)}.
+	 **/
+	public Frustumf() {
+	}
+	
+	/**
+	 * Creates the frustum of the given view-projection matrix.
+	 **/
+	public Frustumf(Matrix4f matrix) {
+		set(matrix);
+	}
+	
+	/**
+	 * Extracts the planes of the given view-projection matrix.
+	 * @return This {@link Frustumf}.
+	 **/
+	public Frustumf set(Matrix4f m) {
+		// every plane is the last row of the matrix plus or minus one of the other rows
+		setPlane(0, m.m03 + m.m00, m.m13 + m.m10, m.m23 + m.m20, m.m33 + m.m30);
+		setPlane(1, m.m03 - m.m00, m.m13 - m.m10, m.m23 - m.m20, m.m33 - m.m30);
+		setPlane(2, m.m03 + m.m01, m.m13 + m.m11, m.m23 + m.m21, m.m33 + m.m31);
+		setPlane(3, m.m03 - m.m01, m.m13 - m.m11, m.m23 - m.m21, m.m33 - m.m31);
+		setPlane(4, m.m03 + m.m02, m.m13 + m.m12, m.m23 + m.m22, m.m33 + m.m32);
+		setPlane(5, m.m03 - m.m02, m.m13 - m.m12, m.m23 - m.m22, m.m33 - m.m32);
+		return this;
+	}
+	
+	/**
+	 * Sets a plane. The normal is normalized.
+	 * @param plane The index of the plane.
+	 * @return This {@link Frustumf}.
+	 **/
+	public Frustumf setPlane(int plane, float x, float y, float z, float w) {
+		float length = (float) Math.sqrt(x*x + y*y + z*z);
+		if(!(length > 0))
+			throw new IllegalArgumentException("The normal of plane " + plane + " has no length");
+		
+		float invLength = 1f / length;
+		normalX[plane] = x * invLength;
+		normalY[plane] = y * invLength;
+		normalZ[plane] = z * invLength;
+		distance[plane] = w * invLength;
+		return this;
+	}
+	
+	/**
+	 * @return The signed distance of the point from the given plane, positive inside.
+	 **/
+	public float distanceToPlane(int plane, float x, float y, float z) {
+		return normalX[plane]*x + normalY[plane]*y + normalZ[plane]*z + distance[plane];
+	}
+	
+	/**
+	 * @return {@link #OUTSIDE}, {@link #INTERSECTING} or {@link #INSIDE}.
+	 **/
+	public int classifySphere(float centerX, float centerY, float centerZ, float radius) {
+		int result = INSIDE;
+		for(int i = 0; i < PLANES; i++) {
+			float d = normalX[i]*centerX + normalY[i]*centerY + normalZ[i]*centerZ + distance[i];
+			if(d < -radius)
+				return OUTSIDE;
+			if(d < radius)
+				result = INTERSECTING;
+		}
+		return result;
+	}
+	
+	/**
+	 * @return {@link #OUTSIDE}, {@link #INTERSECTING} or {@link #INSIDE}.
+	 **/
+	public int classifyBox(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+		float cX = (minX + maxX) * 0.5f, cY = (minY + maxY) * 0.5f, cZ = (minZ + maxZ) * 0.5f;
+		float eX = (maxX - minX) * 0.5f, eY = (maxY - minY) * 0.5f, eZ = (maxZ - minZ) * 0.5f;
+		int result = INSIDE;
+		for(int i = 0; i < PLANES; i++) {
+			float d = normalX[i]*cX + normalY[i]*cY + normalZ[i]*cZ + distance[i];
+			// the extent of the box along the normal
+			float r = Math.abs(normalX[i])*eX + Math.abs(normalY[i])*eY + Math.abs(normalZ[i])*eZ;
+			if(d < -r)
+				return OUTSIDE;
+			if(d < r)
+				result = INTERSECTING;
+		}
+		return result;
+	}
+	
+	/**
+	 * Classifies the packed spheres.
+	 * @param spheres The spheres, four floats per sphere.
+	 * @param count The number of spheres.
+	 * @param store The array to store the result of every sphere in: {@link #OUTSIDE}, {@link #INTERSECTING} or {@link #INSIDE}.
+	 * @return The number of spheres that are not outside.
+	 **/
+	public int classifySpheres(float[] spheres, int count, byte[] store) {
+		float n0X = normalX[0], n0Y = normalY[0], n0Z = normalZ[0], d0 = distance[0];
+		float n1X = normalX[1], n1Y = normalY[1], n1Z = normalZ[1], d1 = distance[1];
+		float n2X = normalX[2], n2Y = normalY[2], n2Z = normalZ[2], d2 = distance[2];
+		float n3X = normalX[3], n3Y = normalY[3], n3Z = normalZ[3], d3 = distance[3];
+		float n4X = normalX[4], n4Y = normalY[4], n4Z = normalZ[4], d4 = distance[4];
+		float n5X = normalX[5], n5Y = normalY[5], n5Z = normalZ[5], d5 = distance[5];
+		
+		int visible = 0;
+		for(int i = 0; i < count; i++) {
+			int o = i*4;
+			float x = spheres[o], y = spheres[o+1], z = spheres[o+2], r = spheres[o+3];
+			// all six planes are evaluated, the nearest one decides
+			float min = Math.min(
+					Math.min(Math.min(n0X*x + n0Y*y + n0Z*z + d0, n1X*x + n1Y*y + n1Z*z + d1), n2X*x + n2Y*y + n2Z*z + d2),
+					Math.min(Math.min(n3X*x + n3Y*y + n3Z*z + d3, n4X*x + n4Y*y + n4Z*z + d4), n5X*x + n5Y*y + n5Z*z + d5));
+			int result = min < -r ? OUTSIDE : (min < r ? INTERSECTING : INSIDE);
+			store[i] = (byte) result;
+			visible += result != OUTSIDE ? 1 : 0;
+		}
+		return visible;
+	}
+	
+	/**
+	 * Classifies the packed boxes.
+	 * @param boxes The boxes, six floats per box.
+	 * @param count The number of boxes.
+	 * @param store The array to store the result of every box in: {@link #OUTSIDE}, {@link #INTERSECTING} or {@link #INSIDE}.
+	 * @return The number of boxes that are not outside.
+	 **/
+	public int classifyBoxes(float[] boxes, int count, byte[] store) {
+		int visible = 0;
+		for(int i = 0; i < count; i++) {
+			int o = i*6;
+			float cX = (boxes[o  ] + boxes[o+3]) * 0.5f, eX = (boxes[o+3] - boxes[o  ]) * 0.5f;
+			float cY = (boxes[o+1] + boxes[o+4]) * 0.5f, eY = (boxes[o+4] - boxes[o+1]) * 0.5f;
+			float cZ = (boxes[o+2] + boxes[o+5]) * 0.5f, eZ = (boxes[o+5] - boxes[o+2]) * 0.5f;
+			
+			// no early out: every plane is evaluated, and the results are combined without branches
+			boolean outside = false, inside = true;
+			for(int p = 0; p < PLANES; p++) {
+				float nX = normalX[p], nY = normalY[p], nZ = normalZ[p];
+				float d = nX*cX + nY*cY + nZ*cZ + distance[p];
+				float r = Math.abs(nX)*eX + Math.abs(nY)*eY + Math.abs(nZ)*eZ;
+				outside |= d < -r;
+				inside &= d >= r;
+			}
+			int result = outside ? OUTSIDE : (inside ? INSIDE : INTERSECTING);
+			store[i] = (byte) result;
+			visible += result != OUTSIDE ? 1 : 0;
+		}
+		return visible;
+	}
+
+}
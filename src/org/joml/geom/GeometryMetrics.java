@@ -0,0 +1,219 @@
+package org.joml.geom;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Optional instrumentation of the geometry queries: How many primitive tests of each type ran and how many of them hit,
+ * how many nodes the hierarchy traversals visited, and how long the queries took.
+ *
+ * <br><br>
+ * The metrics are enabled by starting the JVM with <code>-Djoml.geom.metrics=true</code>.
+ * Every call site is guarded by the constant {@link #ENABLED}, so when the metrics are disabled the JIT removes the instrumentation completely.
+ * <br>
+ * Every thread counts into its own stripe, without any synchronization, so the counting threads never contend.
+ * The getters sum up all stripes; while queries are running, the sums are only approximate.
+ * Stripes of threads that terminated are kept, so their counts are not lost.
+ **/
+public final class GeometryMetrics {
+	
+	/** If the metrics are collected. Read once from the system property 'joml.geom.metrics'. **/
+	public static final boolean ENABLED = Boolean.getBoolean("joml.geom.metrics");
+	
+	// the types of primitive tests
+	public static final int RAY_BOX = 0;
+	public static final int RAY_TRIANGLE = 1;
+	public static final int RAY_SPHERE = 2;
+	public static final int RAY_OBB = 3;
+	public static final int RAY_CAPSULE = 4;
+	public static final int AABB_AABB = 5;
+	public static final int AABB_SPHERE = 6;
+	public static final int AABB_FRUSTUM = 7;
+	public static final int SPHERE_SPHERE = 8;
+	public static final int SPHERE_FRUSTUM = 9;
+	public static final int OBB_OBB = 10;
+	public static final int OBB_AABB = 11;
+	public static final int CAPSULE_CAPSULE = 12;
+	public static final int CAPSULE_AABB = 13;
+	/** The number of primitive test types. **/
+	public static final int TEST_TYPES = 14;
+	
+	// the types of hierarchy queries
+	public static final int QUERY_RAY = 0;
+	public static final int QUERY_BOX = 1;
+	public static final int QUERY_FRUSTUM = 2;
+	public static final int QUERY_SPHERE = 3;
+	public static final int QUERY_NEAREST = 4;
+	/** The number of query types. **/
+	public static final int QUERY_TYPES = 5;
+	
+	/**
+	 * The number of buckets of a latency histogram.
+	 * Bucket i counts the queries that took between 2^i and 2^(i+1) nanoseconds, the last bucket also counts all slower queries.
+	 **/
+	public static final int LATENCY_BUCKETS = 32;
+	
+	private static final class Stripe {
+		final long[] tests = new long[TEST_TYPES];
+		final long[] hits = new long[TEST_TYPES];
+		final long[] queries = new long[QUERY_TYPES];
+		final long[] nodes = new long[QUERY_TYPES];
+		final long[] latencies = new long[QUERY_TYPES * LATENCY_BUCKETS];
+	}
+	
+	private static final List<Stripe> stripes = new CopyOnWriteArrayList<Stripe>();
+	private static final ThreadLocal<Stripe> stripe = new ThreadLocal<Stripe>() {
+		@Override
+		protected Stripe initialValue() {
+			// allocated by the thread that uses it, so stripes of different threads do not share cache lines
+			Stripe stripe = new Stripe();
+			stripes.add(stripe);
+			return stripe;
+		}
+	};
+	
+	private GeometryMetrics() {
+	}
+	
+	/**
+	 * Counts a primitive test.
+	 * @param test The type of the test, e.g. {@link #RAY_BOX}.
+	 * @param hit If the test was a hit.
+	 **/
+	public static void countTest(int test, boolean hit) {
+		Stripe s = stripe.get();
+		s.tests[test]++;
+		if(hit)
+			s.hits[test]++;
+	}
+	
+	/**
+	 * @return The start time of a query, to be passed to {@link #countQuery(int, long, int)}.
+	 **/
+	public static long startQuery() {
+		return System.nanoTime();
+	}
+	
+	/**
+	 * Counts a hierarchy query.
+	 * @param query The type of the query, e.g. {@link #QUERY_RAY}.
+	 * @param startTime The time returned by {@link #startQuery()}.
+	 * @param nodesVisited The number of nodes visited by the query.
+	 **/
+	public static void countQuery(int query, long startTime, int nodesVisited) {
+		long duration = System.nanoTime() - startTime;
+		Stripe s = stripe.get();
+		s.queries[query]++;
+		s.nodes[query] += nodesVisited;
+		
+		int bucket = 63 - Long.numberOfLeadingZeros(Math.max(1, duration));
+		s.latencies[query*LATENCY_BUCKETS + Math.min(bucket, LATENCY_BUCKETS-1)]++;
+	}
+	
+	/**
+	 * @return The number of primitive tests of the given type.
+	 **/
+	public static long getTests(int test) {
+		long sum = 0;
+		for(Stripe s : stripes)
+			sum += s.tests[test];
+		return sum;
+	}
+	
+	/**
+	 * @return The number of primitive tests of the given type that were hits.
+	 **/
+	public static long getHits(int test) {
+		long sum = 0;
+		for(Stripe s : stripes)
+			sum += s.hits[test];
+		return sum;
+	}
+	
+	/**
+	 * @return The fraction of the primitive tests of the given type that were hits, zero if there were no tests.
+	 **/
+	public static float getHitRatio(int test) {
+		long tests = getTests(test);
+		return tests > 0 ? (float) getHits(test) / tests : 0;
+	}
+	
+	/**
+	 * @return The number of queries of the given type.
+	 **/
+	public static long getQueries(int query) {
+		long sum = 0;
+		for(Stripe s : stripes)
+			sum += s.queries[query];
+		return sum;
+	}
+	
+	/**
+	 * @return The number of nodes visited by all queries of the given type.
+	 **/
+	public static long getNodesVisited(int query) {
+		long sum = 0;
+		for(Stripe s : stripes)
+			sum += s.nodes[query];
+		return sum;
+	}
+	
+	/**
+	 * Stores the latency histogram of the given query type, see {@link #LATENCY_BUCKETS}.
+	 * @param query The type of the query.
+	 * @param store The array to store the counts in, at least {@link #LATENCY_BUCKETS} long. If null, a new array is created.
+	 * @return The array.
+	 **/
+	public static long[] getLatencyHistogram(int query, long[] store) {
+		if(store == null)
+			store = new long[LATENCY_BUCKETS];
+		
+		for(int i = 0; i < LATENCY_BUCKETS; i++)
+			store[i] = 0;
+		for(Stripe s : stripes) {
+			for(int i = 0; i < LATENCY_BUCKETS; i++)
+				store[i] += s.latencies[query*LATENCY_BUCKETS + i];
+		}
+		return store;
+	}
+	
+	/**
+	 * Sets all counts to zero.
+	 * Counts made by other threads while this runs may be lost.
+	 **/
+	public static void reset() {
+		for(Stripe s : stripes) {
+			Arrays.fill(s.tests, 0);
+			Arrays.fill(s.hits, 0);
+			Arrays.fill(s.queries, 0);
+			Arrays.fill(s.nodes, 0);
+			Arrays.fill(s.latencies, 0);
+		}
+	}
+	
+	/**
+	 * @return A readable summary of all non-zero counts.
+	 **/
+	public static String summary() {
+		String[] tests = {
+				"ray/box", "ray/triangle", "ray/sphere", "ray/obb", "ray/capsule",
+				"aabb/aabb", "aabb/sphere", "aabb/frustum", "sphere/sphere", "sphere/frustum",
+				"obb/obb", "obb/aabb", "capsule/capsule", "capsule/aabb" };
+		String[] queries = { "ray", "box", "frustum", "sphere", "nearest" };
+		
+		StringBuilder builder = new StringBuilder();
+		for(int i = 0; i < TEST_TYPES; i++) {
+			long count = getTests(i);
+			if(count > 0)
+				builder.append(tests[i]).append(": ").append(count).append(" tests, ").append(getHits(i)).append(" hits\n");
+		}
+		for(int i = 0; i < QUERY_TYPES; i++) {
+			long count = getQueries(i);
+			if(count > 0)
+				builder.append(queries[i]).append(" queries: ").append(count).append(", ").append(getNodesVisited(i)).append(" nodes visited\n");
+		}
+		return builder.toString();
+	}
+
+}
@@ -0,0 +1,699 @@
+package org.joml.geom;
+
+/**
+ * Overlap, distance and penetration depth of two convex shapes, given by their {@link SupportMapping support functions}.
+ *
+ * <br><br>
+ * The overlap and distance queries use the Gilbert-Johnson-Keerthi algorithm (GJK):
+ * A simplex of points of the Minkowski difference A-B is moved towards the origin, until it contains the origin (overlap)
+ * or can not get closer to it (the distance).
+ * The penetration depth of overlapping shapes is found by the Expanding Polytope Algorithm (EPA), starting from the final simplex of GJK.
+ * <br>
+ * Every query starts searching in the direction where the previous query ended (the closest point of its final simplex).
+ * Shapes move little between frames, so keeping one {@link Gjk} per pair of shapes usually makes the next query end after a few iterations.
+ * All working memory is allocated once per {@link Gjk}, the queries allocate nothing.
+ * A {@link Gjk} must not be used by several threads at once.
+ **/
+public class Gjk {
+	
+	/** The maximum number of iterations of GJK, and of EPA. **/
+	public static final int MAX_ITERATIONS = 64;
+	
+	private static final int MAX_VERTICES = 4 + MAX_ITERATIONS;
+	private static final int MAX_FACES = 2 * MAX_VERTICES;
+	
+	// relative tolerances for the convergence of both algorithms; EPA needs a larger one, since its faces are built from differences of support points
+	private static final float TOLERANCE = 1e-5f;
+	private static final float EPA_TOLERANCE = 1e-4f;
+	
+	// the simplex: for every vertex the point of A-B, and the points of A and B it was made from (9 floats)
+	private final float[] simplex = new float[4*9];
+	// the barycentric coordinates of the point of the simplex closest to the origin
+	private final float[] weights = new float[4];
+	private final float[] candidate = new float[4];
+	private final float[] segmentCandidate = new float[4];
+	private int size;
+	
+	// the simplex before the last step, restored if the step made no progress
+	private final float[] previousSimplex = new float[4*9];
+	private final float[] previousWeights = new float[4];
+	private int previousSize;
+	
+	// the point of the simplex closest to the origin
+	private float vX, vY, vZ;
+	// the search direction where the previous query ended
+	private float cachedX = 1, cachedY, cachedZ;
+	
+	private final float[] support = new float[6];
+	
+	// the polytope of EPA: vertices like the simplex, faces as three vertex indices, and a normal plus the distance to the origin per face
+	private final float[] polytope = new float[MAX_VERTICES*9];
+	private final int[] faces = new int[MAX_FACES*3];
+	private final float[] planes = new float[MAX_FACES*4];
+	private final int[] edges = new int[MAX_FACES*3*2];
+	private int faceCount;
+	private int edgeCount;
+	
+	/**
+	 * @return True, if the given shapes overlap (or touch). False if not.
+	 **/
+	public boolean intersect(SupportMapping a, SupportMapping b) {
+		return solve(a, b, true);
+	}
+	
+	/**
+	 * Computes the distance between the given shapes.
+	 * @param closestStore If not null, the closest point of A is stored at indices 0 to 2, and the closest point of B at indices 3 to 5.
+	 * @return The distance between the shapes, or zero if they overlap.
+	 **/
+	public float distance(SupportMapping a, SupportMapping b, float[] closestStore) {
+		if(solve(a, b, false))
+			return 0;
+		
+		if(closestStore != null)
+			storeWitnessPoints(simplex, weights, size, closestStore, 0);
+		
+		return (float) Math.sqrt(vX*vX + vY*vY + vZ*vZ);
+	}
+	
+	/**
+	 * Computes how deep the given shapes overlap, and in which direction.
+	 * Moving B by the normal times the depth separates the shapes.
+	 * @param store If not null, the normal (pointing from A to B) is stored at indices 0 to 2,
+	 *        the deepest point of A inside B at indices 3 to 5, and the deepest point of B inside A at indices 6 to 8.
+	 *        Nothing is stored if the shapes do not overlap.
+	 * @return The penetration depth, or zero if the shapes do not overlap.
+	 **/
+	public float penetration(SupportMapping a, SupportMapping b, float[] store) {
+		if(!solve(a, b, false))
+			return 0;
+		
+		if(!buildTetrahedron(a, b))
+			return 0;
+		
+		return expand(a, b, store);
+	}
+	
+	// GJK: Returns true if the shapes overlap. Leaves the final simplex, its weights and closest point behind.
+	private boolean solve(SupportMapping a, SupportMapping b, boolean stopIfSeparated) {
+		if(cachedX == 0 && cachedY == 0 && cachedZ == 0)
+			cachedX = 1;
+		
+		computeSupport(a, b, -cachedX, -cachedY, -cachedZ, simplex, 0);
+		size = 1;
+		weights[0] = 1;
+		vX = simplex[0];
+		vY = simplex[1];
+		vZ = simplex[2];
+		
+		for(int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+			float vv = vX*vX + vY*vY + vZ*vZ;
+			
+			// the origin is (numerically) on the simplex
+			if(vv <= TOLERANCE * TOLERANCE * maxVertexLengthSquared())
+				return true;
+			
+			int o = size*9;
+			computeSupport(a, b, -vX, -vY, -vZ, simplex, o);
+			float vw = vX*simplex[o] + vY*simplex[o+1] + vZ*simplex[o+2];
+			
+			// all of A-B is on the far side of the plane through w with normal v: the shapes are separated
+			if(stopIfSeparated && vw > 0) {
+				cache();
+				return false;
+			}
+			
+			// the new point is not closer to the origin than the simplex: v is the closest point of A-B
+			if(vv - vw <= TOLERANCE * vv || isInSimplex(o)) {
+				cache();
+				return false;
+			}
+			
+			System.arraycopy(simplex, 0, previousSimplex, 0, size*9);
+			System.arraycopy(weights, 0, previousWeights, 0, size);
+			previousSize = size;
+			float previousX = vX, previousY = vY, previousZ = vZ;
+			
+			size++;
+			if(!reduceSimplex()) {
+				// the origin is inside the tetrahedron
+				return true;
+			}
+			
+			// rounding errors keep the simplex from getting closer, the previous one was closer
+			if(vX*vX + vY*vY + vZ*vZ >= vv) {
+				System.arraycopy(previousSimplex, 0, simplex, 0, previousSize*9);
+				System.arraycopy(previousWeights, 0, weights, 0, previousSize);
+				size = previousSize;
+				vX = previousX;
+				vY = previousY;
+				vZ = previousZ;
+				cache();
+				return false;
+			}
+		}
+		
+		cache();
+		return false;
+	}
+	
+	private void cache() {
+		cachedX = vX;
+		cachedY = vY;
+		cachedZ = vZ;
+	}
+	
+	// Stores the point of A-B farthest in the given direction, followed by the points of A and B it was made from.
+	private void computeSupport(SupportMapping a, SupportMapping b, float dirX, float dirY, float dirZ, float[] store, int offset) {
+		a.getSupport(dirX, dirY, dirZ, support, 0);
+		b.getSupport(-dirX, -dirY, -dirZ, support, 3);
+		store[offset  ] = support[0] - support[3];
+		store[offset+1] = support[1] - support[4];
+		store[offset+2] = support[2] - support[5];
+		store[offset+3] = support[0];
+		store[offset+4] = support[1];
+		store[offset+5] = support[2];
+		store[offset+6] = support[3];
+		store[offset+7] = support[4];
+		store[offset+8] = support[5];
+	}
+	
+	private boolean isInSimplex(int o) {
+		for(int i = 0; i < size; i++) {
+			int s = i*9;
+			if(simplex[s] == simplex[o] && simplex[s+1] == simplex[o+1] && simplex[s+2] == simplex[o+2])
+				return true;
+		}
+		return false;
+	}
+	
+	private float maxVertexLengthSquared() {
+		float max = 0;
+		for(int i = 0; i < size; i++) {
+			int s = i*9;
+			max = Math.max(max, simplex[s]*simplex[s] + simplex[s+1]*simplex[s+1] + simplex[s+2]*simplex[s+2]);
+		}
+		return max;
+	}
+	
+	// Finds the point of the simplex closest to the origin, and removes the vertices not needed to express it.
+	// Returns false if the simplex is a tetrahedron containing the origin.
+	private boolean reduceSimplex() {
+		float[] w = weights;
+		w[0] = w[1] = w[2] = w[3] = 0;
+		
+		if(size == 2) {
+			closestOnSegment(0, 1, w);
+		} else if(size == 3) {
+			closestOnTriangle(0, 1, 2, w);
+		} else if(!closestOnTetrahedron()) {
+			w[0] = w[1] = w[2] = w[3] = 0.25f;
+			vX = vY = vZ = 0;
+			return false;
+		}
+		
+		// keep the vertices with a weight, in order
+		int kept = 0;
+		vX = vY = vZ = 0;
+		for(int i = 0; i < size; i++) {
+			if(w[i] <= 0)
+				continue;
+			
+			if(kept != i)
+				System.arraycopy(simplex, i*9, simplex, kept*9, 9);
+			w[kept] = w[i];
+			
+			int s = kept*9;
+			vX += simplex[s  ] * w[kept];
+			vY += simplex[s+1] * w[kept];
+			vZ += simplex[s+2] * w[kept];
+			kept++;
+		}
+		size = kept;
+		return true;
+	}
+	
+	// The weights of the point of the segment (i, j) closest to the origin. Returns the squared distance.
+	private float closestOnSegment(int i, int j, float[] store) {
+		int a = i*9, b = j*9;
+		float abX = simplex[b] - simplex[a], abY = simplex[b+1] - simplex[a+1], abZ = simplex[b+2] - simplex[a+2];
+		float abab = abX*abX + abY*abY + abZ*abZ;
+		float t = abab > 0 ? -(simplex[a]*abX + simplex[a+1]*abY + simplex[a+2]*abZ) / abab : 0;
+		
+		if(t <= 0) {
+			store[i] = 1;
+			return lengthSquared(a);
+		}
+		if(t >= 1) {
+			store[j] = 1;
+			return lengthSquared(b);
+		}
+		
+		store[i] = 1 - t;
+		store[j] = t;
+		float x = simplex[a] + abX*t, y = simplex[a+1] + abY*t, z = simplex[a+2] + abZ*t;
+		return x*x + y*y + z*z;
+	}
+	
+	// The weights of the point of the triangle (i, j, k) closest to the origin. Returns the squared distance.
+	// See 'Real-Time Collision Detection' by Christer Ericson, chapter 5.1.5, with the origin as the query point.
+	private float closestOnTriangle(int i, int j, int k, float[] store) {
+		int a = i*9, b = j*9, c = k*9;
+		float aX = simplex[a], aY = simplex[a+1], aZ = simplex[a+2];
+		float abX = simplex[b] - aX, abY = simplex[b+1] - aY, abZ = simplex[b+2] - aZ;
+		float acX = simplex[c] - aX, acY = simplex[c+1] - aY, acZ = simplex[c+2] - aZ;
+		
+		float d1 = -(abX*aX + abY*aY + abZ*aZ);
+		float d2 = -(acX*aX + acY*aY + acZ*aZ);
+		if(d1 <= 0 && d2 <= 0) {
+			store[i] = 1;
+			return lengthSquared(a);
+		}
+		
+		float d3 = -(abX*simplex[b] + abY*simplex[b+1] + abZ*simplex[b+2]);
+		float d4 = -(acX*simplex[b] + acY*simplex[b+1] + acZ*simplex[b+2]);
+		if(d3 >= 0 && d4 <= d3) {
+			store[j] = 1;
+			return lengthSquared(b);
+		}
+		
+		float vc = d1*d4 - d3*d2;
+		if(vc <= 0 && d1 >= 0 && d3 <= 0) {
+			float v = d1 / (d1 - d3);
+			store[i] = 1 - v;
+			store[j] = v;
+			return lengthSquared(aX + abX*v, aY + abY*v, aZ + abZ*v);
+		}
+		
+		float d5 = -(abX*simplex[c] + abY*simplex[c+1] + abZ*simplex[c+2]);
+		float d6 = -(acX*simplex[c] + acY*simplex[c+1] + acZ*simplex[c+2]);
+		if(d6 >= 0 && d5 <= d6) {
+			store[k] = 1;
+			return lengthSquared(c);
+		}
+		
+		float vb = d5*d2 - d1*d6;
+		if(vb <= 0 && d2 >= 0 && d6 <= 0) {
+			float w = d2 / (d2 - d6);
+			store[i] = 1 - w;
+			store[k] = w;
+			return lengthSquared(aX + acX*w, aY + acY*w, aZ + acZ*w);
+		}
+		
+		float va = d3*d6 - d5*d4;
+		if(va <= 0 && d4 - d3 >= 0 && d5 - d6 >= 0) {
+			float w = (d4 - d3) / ((d4 - d3) + (d5 - d6));
+			store[j] = 1 - w;
+			store[k] = w;
+			return lengthSquared(
+					simplex[b  ] + (simplex[c  ] - simplex[b  ])*w,
+					simplex[b+1] + (simplex[c+1] - simplex[b+1])*w,
+					simplex[b+2] + (simplex[c+2] - simplex[b+2])*w);
+		}
+		
+		float denom = va + vb + vc;
+		// a degenerate triangle, fall back to its edges
+		if(!(denom > 0)) {
+			float best = closestOnSegment(i, j, store);
+			best = closestOnOtherSegment(i, k, store, best);
+			return closestOnOtherSegment(j, k, store, best);
+		}
+		
+		float v = vb / denom;
+		float w = vc / denom;
+		store[i] = 1 - v - w;
+		store[j] = v;
+		store[k] = w;
+		return lengthSquared(aX + abX*v + acX*w, aY + abY*v + acY*w, aZ + abZ*v + acZ*w);
+	}
+	
+	// Replaces the weights in 'store' if the segment (i, j) is closer than 'best'.
+	private float closestOnOtherSegment(int i, int j, float[] store, float best) {
+		float[] c = segmentCandidate;
+		c[0] = c[1] = c[2] = c[3] = 0;
+		float distance = closestOnSegment(i, j, c);
+		if(distance >= best)
+			return best;
+		System.arraycopy(c, 0, store, 0, 4);
+		return distance;
+	}
+	
+	// Finds the closest point of the tetrahedron (0, 1, 2, 3), returns false if it contains the origin.
+	// Only the faces whose plane separates the origin from the fourth vertex can contain the closest point.
+	private boolean closestOnTetrahedron() {
+		float[] w = weights;
+		float[] c = candidate;
+		float best = Float.POSITIVE_INFINITY;
+		boolean outside = false;
+		
+		for(int face = 0; face < 4; face++) {
+			// the faces (0,1,2), (0,2,3), (0,3,1) and (1,3,2), with the remaining vertex
+			int i = face == 3 ? 1 : 0;
+			int j = face == 0 ? 1 : (face == 1 ? 2 : 3);
+			int k = face == 0 ? 2 : (face == 1 ? 3 : (face == 2 ? 1 : 2));
+			int l = 6 - i - j - k;
+			
+			if(!isOriginOutsideOfFace(i, j, k, l))
+				continue;
+			
+			outside = true;
+			c[0] = c[1] = c[2] = c[3] = 0;
+			float distance = closestOnTriangle(i, j, k, c);
+			if(distance < best) {
+				best = distance;
+				System.arraycopy(c, 0, w, 0, 4);
+			}
+		}
+		
+		return outside;
+	}
+	
+	private boolean isOriginOutsideOfFace(int i, int j, int k, int l) {
+		int a = i*9, b = j*9, c = k*9, d = l*9;
+		float aX = simplex[a], aY = simplex[a+1], aZ = simplex[a+2];
+		float abX = simplex[b] - aX, abY = simplex[b+1] - aY, abZ = simplex[b+2] - aZ;
+		float acX = simplex[c] - aX, acY = simplex[c+1] - aY, acZ = simplex[c+2] - aZ;
+		float nX = abY*acZ - abZ*acY;
+		float nY = abZ*acX - abX*acZ;
+		float nZ = abX*acY - abY*acX;
+		
+		float signOrigin = -(aX*nX + aY*nY + aZ*nZ);
+		float signD = (simplex[d]-aX)*nX + (simplex[d+1]-aY)*nY + (simplex[d+2]-aZ)*nZ;
+		
+		// a flat tetrahedron has no inside, all of its faces have to be checked
+		if(signD*signD <= TOLERANCE * TOLERANCE * (nX*nX + nY*nY + nZ*nZ) * maxVertexLengthSquared())
+			return true;
+		
+		return signOrigin * signD < 0;
+	}
+	
+	private float lengthSquared(int o) {
+		return simplex[o]*simplex[o] + simplex[o+1]*simplex[o+1] + simplex[o+2]*simplex[o+2];
+	}
+	
+	private static float lengthSquared(float x, float y, float z) {
+		return x*x + y*y + z*z;
+	}
+	
+	private static void storeWitnessPoints(float[] vertices, float[] weights, int count, float[] store, int offset) {
+		float aX = 0, aY = 0, aZ = 0, bX = 0, bY = 0, bZ = 0;
+		for(int i = 0; i < count; i++) {
+			int s = i*9;
+			float w = weights[i];
+			aX += vertices[s+3]*w; aY += vertices[s+4]*w; aZ += vertices[s+5]*w;
+			bX += vertices[s+6]*w; bY += vertices[s+7]*w; bZ += vertices[s+8]*w;
+		}
+		store[offset  ] = aX;
+		store[offset+1] = aY;
+		store[offset+2] = aZ;
+		store[offset+3] = bX;
+		store[offset+4] = bY;
+		store[offset+5] = bZ;
+	}
+	
+	// Grows the final simplex of GJK into a tetrahedron around the origin, which EPA starts from.
+	// GJK can end with less than four vertices if the origin is on the surface of the simplex (the shapes touch).
+	private boolean buildTetrahedron(SupportMapping a, SupportMapping b) {
+		float[] s = simplex;
+		
+		if(size == 1) {
+			// any other point of A-B makes a segment
+			for(int axis = 0; axis < 6 && size == 1; axis++) {
+				float sign = axis < 3 ? 1 : -1;
+				computeSupport(a, b, axis%3 == 0 ? sign : 0, axis%3 == 1 ? sign : 0, axis%3 == 2 ? sign : 0, s, 9);
+				if(lengthSquared(s[9]-s[0], s[10]-s[1], s[11]-s[2]) > 0)
+					size = 2;
+			}
+		}
+		
+		if(size == 2) {
+			// search perpendicular to the segment, for a point off its line
+			float dX = s[9]-s[0], dY = s[10]-s[1], dZ = s[11]-s[2];
+			float ax = Math.abs(dX), ay = Math.abs(dY), az = Math.abs(dZ);
+			// the cross product with the axis least parallel to the segment
+			float pX, pY, pZ;
+			if(ax <= ay && ax <= az) {
+				pX = 0; pY = dZ; pZ = -dY;
+			} else if(ay <= az) {
+				pX = -dZ; pY = 0; pZ = dX;
+			} else {
+				pX = dY; pY = -dX; pZ = 0;
+			}
+			float qX = dY*pZ - dZ*pY, qY = dZ*pX - dX*pZ, qZ = dX*pY - dY*pX;
+			
+			for(int attempt = 0; attempt < 4 && size == 2; attempt++) {
+				float sign = attempt < 2 ? 1 : -1;
+				if((attempt & 1) == 0) {
+					computeSupport(a, b, pX*sign, pY*sign, pZ*sign, s, 18);
+				} else {
+					computeSupport(a, b, qX*sign, qY*sign, qZ*sign, s, 18);
+				}
+				float eX = s[18]-s[0], eY = s[19]-s[1], eZ = s[20]-s[2];
+				if(lengthSquared(dY*eZ - dZ*eY, dZ*eX - dX*eZ, dX*eY - dY*eX) > TOLERANCE * TOLERANCE * lengthSquared(dX, dY, dZ) * lengthSquared(eX, eY, eZ))
+					size = 3;
+			}
+		}
+		
+		if(size == 3) {
+			// search along the normal of the triangle, on both sides
+			float abX = s[9]-s[0], abY = s[10]-s[1], abZ = s[11]-s[2];
+			float acX = s[18]-s[0], acY = s[19]-s[1], acZ = s[20]-s[2];
+			float nX = abY*acZ - abZ*acY, nY = abZ*acX - abX*acZ, nZ = abX*acY - abY*acX;
+			float nn = lengthSquared(nX, nY, nZ);
+			
+			for(int attempt = 0; attempt < 2 && size == 3; attempt++) {
+				float sign = attempt == 0 ? 1 : -1;
+				computeSupport(a, b, nX*sign, nY*sign, nZ*sign, s, 27);
+				float distance = (s[27]-s[0])*nX + (s[28]-s[1])*nY + (s[29]-s[2])*nZ;
+				if(distance*distance > TOLERANCE * TOLERANCE * nn * maxVertexLengthSquared())
+					size = 4;
+			}
+		}
+		
+		// the Minkowski difference is flat, the shapes can only touch
+		return size == 4;
+	}
+	
+	// EPA: Expands the polytope towards the surface of A-B, until the face closest to the origin is on the surface.
+	private float expand(SupportMapping a, SupportMapping b, float[] store) {
+		System.arraycopy(simplex, 0, polytope, 0, 4*9);
+		int vertexCount = 4;
+		
+		faceCount = 0;
+		addFace(0, 1, 2, 3);
+		addFace(0, 3, 1, 2);
+		addFace(0, 2, 3, 1);
+		addFace(1, 3, 2, 0);
+		
+		// the closest face so far; the distance of the closest face only grows, unless rounding errors break the polytope
+		int bestA = 0, bestB = 0, bestC = 0;
+		float bestX = 0, bestY = 0, bestZ = 0, bestDistance = Float.NEGATIVE_INFINITY;
+		
+		for(int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+			int closest = closestFace();
+			int p = closest*4, f = closest*3;
+			float nX = planes[p], nY = planes[p+1], nZ = planes[p+2], distance = planes[p+3];
+			
+			if(distance < bestDistance)
+				break;
+			
+			bestA = faces[f]; bestB = faces[f+1]; bestC = faces[f+2];
+			bestX = nX; bestY = nY; bestZ = nZ; bestDistance = distance;
+			
+			if(vertexCount == MAX_VERTICES)
+				break;
+			
+			int o = vertexCount*9;
+			computeSupport(a, b, nX, nY, nZ, polytope, o);
+			float reach = nX*polytope[o] + nY*polytope[o+1] + nZ*polytope[o+2];
+			
+			// the face is on the surface of A-B
+			if(reach - distance <= EPA_TOLERANCE * Math.max(1f, Math.abs(distance)))
+				break;
+			
+			// a vertex found before, rounding errors kept the face from reaching the surface
+			if(isInPolytope(o, vertexCount))
+				break;
+			
+			// remove the faces that can see the new vertex, remembering the border of the hole (the 'horizon')
+			// Starting at the closest face, which can see the vertex, and growing over the edges keeps the hole in one piece.
+			edgeCount = 0;
+			removeFace(closest);
+			for(int e = 0; e < edgeCount; e += 2) {
+				int neighbor = findFace(edges[e+1], edges[e]);
+				if(neighbor >= 0 && isVisible(neighbor, o)) {
+					removeFace(neighbor);
+					// the edges changed, start over
+					e = -2;
+				}
+			}
+			
+			// the hole is closed by one face per edge of the horizon; this only overflows if rounding errors broke the polytope
+			if(faceCount + edgeCount/2 > MAX_FACES)
+				break;
+			
+			// close the hole with faces to the new vertex
+			boolean degenerate = false;
+			for(int e = 0; e < edgeCount; e += 2)
+				degenerate |= !addFace(edges[e], edges[e+1], vertexCount, -1);
+			
+			vertexCount++;
+			
+			// a flat face has no normal to tell its visible side, so it could not be removed correctly later on
+			if(degenerate)
+				break;
+		}
+		
+		if(store != null) {
+			store[0] = bestX;
+			store[1] = bestY;
+			store[2] = bestZ;
+			
+			// the barycentric coordinates of the origin, projected onto the closest face
+			float[] w = candidate;
+			barycentric(bestA, bestB, bestC, bestX*bestDistance, bestY*bestDistance, bestZ*bestDistance, w);
+			float aX = 0, aY = 0, aZ = 0, bX = 0, bY = 0, bZ = 0;
+			for(int i = 0; i < 3; i++) {
+				int v = (i == 0 ? bestA : (i == 1 ? bestB : bestC))*9;
+				aX += polytope[v+3]*w[i]; aY += polytope[v+4]*w[i]; aZ += polytope[v+5]*w[i];
+				bX += polytope[v+6]*w[i]; bY += polytope[v+7]*w[i]; bZ += polytope[v+8]*w[i];
+			}
+			store[3] = aX; store[4] = aY; store[5] = aZ;
+			store[6] = bX; store[7] = bY; store[8] = bZ;
+		}
+		
+		// the origin was pushed out of the cached direction, start the next query from the normal
+		cachedX = bestX;
+		cachedY = bestY;
+		cachedZ = bestZ;
+		
+		return Math.max(0, bestDistance);
+	}
+	
+	// Adds the face (i, j, k) with its normal pointing away from the origin, returns false if the face is degenerate.
+	// For the first tetrahedron, the vertex 'opposite' decides the orientation; for later faces, the winding of the horizon does.
+	private boolean addFace(int i, int j, int k, int opposite) {
+		int a = i*9, b = j*9, c = k*9;
+		float abX = polytope[b] - polytope[a], abY = polytope[b+1] - polytope[a+1], abZ = polytope[b+2] - polytope[a+2];
+		float acX = polytope[c] - polytope[a], acY = polytope[c+1] - polytope[a+1], acZ = polytope[c+2] - polytope[a+2];
+		float nX = abY*acZ - abZ*acY, nY = abZ*acX - abX*acZ, nZ = abX*acY - abY*acX;
+		
+		if(opposite >= 0) {
+			int d = opposite*9;
+			if(nX*(polytope[d]-polytope[a]) + nY*(polytope[d+1]-polytope[a+1]) + nZ*(polytope[d+2]-polytope[a+2]) > 0) {
+				int swap = j; j = k; k = swap;
+				nX = -nX; nY = -nY; nZ = -nZ;
+			}
+		}
+		
+		float length = (float) Math.sqrt(nX*nX + nY*nY + nZ*nZ);
+		int f = faceCount*3, p = faceCount*4;
+		faces[f  ] = i;
+		faces[f+1] = j;
+		faces[f+2] = k;
+		if(length > 0) {
+			planes[p  ] = nX / length;
+			planes[p+1] = nY / length;
+			planes[p+2] = nZ / length;
+			planes[p+3] = (nX*polytope[a] + nY*polytope[a+1] + nZ*polytope[a+2]) / length;
+		} else {
+			// a degenerate face is never the closest one
+			planes[p] = planes[p+1] = planes[p+2] = 0;
+			planes[p+3] = Float.POSITIVE_INFINITY;
+		}
+		faceCount++;
+		return length > 0;
+	}
+	
+	// Faces whose plane (nearly) contains the vertex count as visible as well:
+	// Keeping them would fold the new faces over them, since polytopes of boxes have many coplanar vertices.
+	private boolean isVisible(int face, int o) {
+		int q = face*4;
+		int v = faces[face*3]*9;
+		float side = planes[q]*(polytope[o]-polytope[v]) + planes[q+1]*(polytope[o+1]-polytope[v+1]) + planes[q+2]*(polytope[o+2]-polytope[v+2]);
+		return side > -TOLERANCE * Math.max(1f, Math.abs(planes[q+3]));
+	}
+	
+	private boolean isInPolytope(int o, int vertexCount) {
+		for(int i = 0; i < vertexCount; i++) {
+			int v = i*9;
+			if(polytope[v] == polytope[o] && polytope[v+1] == polytope[o+1] && polytope[v+2] == polytope[o+2])
+				return true;
+		}
+		return false;
+	}
+	
+	private void removeFace(int face) {
+		int f = face*3;
+		addEdge(faces[f  ], faces[f+1]);
+		addEdge(faces[f+1], faces[f+2]);
+		addEdge(faces[f+2], faces[f  ]);
+		
+		faceCount--;
+		System.arraycopy(faces, faceCount*3, faces, f, 3);
+		System.arraycopy(planes, faceCount*4, planes, face*4, 4);
+	}
+	
+	// Finds the face containing the directed edge (from, to), or returns -1.
+	private int findFace(int from, int to) {
+		for(int face = 0, f = 0; face < faceCount; face++, f += 3) {
+			if((faces[f] == from && faces[f+1] == to) || (faces[f+1] == from && faces[f+2] == to) || (faces[f+2] == from && faces[f] == to))
+				return face;
+		}
+		return -1;
+	}
+	
+	// Adds a edge of a removed face to the horizon, or removes it if the face on its other side was removed as well.
+	private void addEdge(int from, int to) {
+		for(int e = 0; e < edgeCount; e += 2) {
+			if(edges[e] == to && edges[e+1] == from) {
+				edgeCount -= 2;
+				edges[e  ] = edges[edgeCount  ];
+				edges[e+1] = edges[edgeCount+1];
+				return;
+			}
+		}
+		edges[edgeCount++] = from;
+		edges[edgeCount++] = to;
+	}
+	
+	private int closestFace() {
+		int closest = 0;
+		float best = Float.POSITIVE_INFINITY;
+		for(int face = 0; face < faceCount; face++) {
+			float distance = planes[face*4+3];
+			if(distance < best) {
+				best = distance;
+				closest = face;
+			}
+		}
+		return closest;
+	}
+	
+	// The barycentric coordinates of the point p in the triangle (i, j, k) of the polytope.
+	private void barycentric(int i, int j, int k, float pX, float pY, float pZ, float[] store) {
+		int a = i*9, b = j*9, c = k*9;
+		float v0X = polytope[b] - polytope[a], v0Y = polytope[b+1] - polytope[a+1], v0Z = polytope[b+2] - polytope[a+2];
+		float v1X = polytope[c] - polytope[a], v1Y = polytope[c+1] - polytope[a+1], v1Z = polytope[c+2] - polytope[a+2];
+		float v2X = pX - polytope[a], v2Y = pY - polytope[a+1], v2Z = pZ - polytope[a+2];
+		float d00 = v0X*v0X + v0Y*v0Y + v0Z*v0Z;
+		float d01 = v0X*v1X + v0Y*v1Y + v0Z*v1Z;
+		float d11 = v1X*v1X + v1Y*v1Y + v1Z*v1Z;
+		float d20 = v2X*v0X + v2Y*v0Y + v2Z*v0Z;
+		float d21 = v2X*v1X + v2Y*v1Y + v2Z*v1Z;
+		float denom = d00*d11 - d01*d01;
+		
+		if(!(denom > 0)) {
+			store[0] = 1;
+			store[1] = store[2] = 0;
+			return;
+		}
+		
+		float v = (d11*d20 - d01*d21) / denom;
+		float w = (d00*d21 - d01*d20) / denom;
+		store[0] = 1 - v - w;
+		store[1] = v;
+		store[2] = w;
+	}
+
+}
@@ -0,0 +1,154 @@
+package org.joml.geom;
+
+/**
+ * A two level hierarchy: A {@link Bvhf} over the world space bounds of {@link Instancef instances} (the 'top level'),
+ * where every instance points at a shared hierarchy in object space (the 'bottom level').
+ *
+ * <br><br>
+ * The geometry of a instance is never copied or transformed.
+ * Instead, rays are moved into the object space of each instance they reach, using the cached inverse transformation of the instance.
+ * A scene with thousands of copies of the same mesh therefore only needs memory for the mesh once, plus a few floats per instance.
+ * <br>
+ * The direction of the object space rays is not normalized, so distances along them are the same as in world space.
+ * After moving instances, call {@link #refit()} (cheap, keeps the top level) or {@link #update()} (rebuilds the top level).
+ * <br>
+ * The {@link GeometryMetrics} count a ray query as one query of the top level, plus one query of the bottom level of every instance the ray reaches.
+ **/
+public class InstancedBvhf {
+	
+	/** The instances, indexed by the primitives of the top level. **/
+	public Instancef[] instances;
+	/** The number of instances in use. **/
+	public int instanceCount;
+	/** The world space bounds of the instances, six floats per instance. **/
+	public float[] instanceBounds;
+	/** The hierarchy over the instance bounds. **/
+	public Bvhf top;
+	
+	private BvhRefitter refitter;
+	// the ray query of every thread, reused so ray queries do not allocate
+	private final ThreadLocal<RayQuery> rayQueries = new ThreadLocal<RayQuery>() {
+		@Override
+		protected RayQuery initialValue() {
+			return new RayQuery();
+		}
+	};
+	
+	/**
+	 * Creates a new {@link InstancedBvhf} and builds its top level.
+	 * @param instances The instances, the array is used directly.
+	 * @param instanceCount The number of instances in use.
+	 **/
+	public InstancedBvhf(Instancef[] instances, int instanceCount) {
+		this.instances = instances;
+		this.instanceCount = instanceCount;
+		this.instanceBounds = new float[instanceCount*6];
+		update();
+	}
+	
+	/**
+	 * Recomputes the bounds of all instances and rebuilds the top level.
+	 * Use this when instances were added or moved far.
+	 **/
+	public void update() {
+		if(instanceBounds.length < instanceCount*6)
+			instanceBounds = new float[instanceCount*6];
+		
+		computeInstanceBounds();
+		top = new SahBuilder().setMaxLeafSize(2).build(instanceBounds, instanceCount);
+		refitter = null;
+	}
+	
+	/**
+	 * Recomputes the bounds of all instances and refits the top level, keeping its shape.
+	 * The number of instances must not have changed since the last {@link #update()}.
+	 **/
+	public void refit() {
+		computeInstanceBounds();
+		if(refitter == null)
+			refitter = new BvhRefitter(top);
+		refitter.refit(instanceBounds);
+	}
+	
+	private void computeInstanceBounds() {
+		for(int i = 0; i < instanceCount; i++)
+			instances[i].computeBounds(instanceBounds, i*6);
+	}
+	
+	/**
+	 * Finds the nearest primitive of any instance hit by the given ray.
+	 * @param ray The ray, in world space.
+	 * @param hitStore If not null, the index of the hit instance is stored at index 0, and the index of the hit primitive at index 1 (both -1 if there is no hit).
+	 * @return The distance to the nearest 'hit point', or positive infinity if there is no hit.
+	 **/
+	public float intersectRay(Rayf ray, int[] hitStore) {
+		RayQuery query = rayQueries.get();
+		if(query.used) {
+			// a query from inside of a query, e.g. by a intersector of a instance
+			query = new RayQuery();
+		}
+		
+		query.reset();
+		query.used = true;
+		try {
+			float t = top.intersectRay(ray, query, null);
+			
+			if(hitStore != null) {
+				hitStore[0] = query.closestInstance;
+				hitStore[1] = query.closestPrimitive;
+			}
+			
+			return t;
+		} finally {
+			query.used = false;
+		}
+	}
+	
+	/**
+	 * Visits all instances whose world space bounds overlap the given box.
+	 * @param visitor The visitor that receives the instance indices.
+	 * @return False, if the visitor stopped the query. True if not.
+	 **/
+	public boolean queryInstances(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, PrimitiveVisitor visitor) {
+		return top.queryBox(minX, minY, minZ, maxX, maxY, maxZ, visitor);
+	}
+	
+	/**
+	 * @return The memory used by the top level and the instance bounds, in bytes. Shared bottom levels are not included.
+	 **/
+	public long sizeInBytes() {
+		return top.sizeInBytes() + instanceBounds.length*4L;
+	}
+	
+	// The ray test for the top level: Moves the ray into the space of the instance and traverses its bottom level.
+	private class RayQuery implements PrimitiveIntersector {
+		private final Rayf local = new Rayf();
+		private final int[] primitive = new int[1];
+		
+		boolean used;
+		float closest;
+		int closestInstance;
+		int closestPrimitive;
+		
+		void reset() {
+			closest = Float.POSITIVE_INFINITY;
+			closestInstance = -1;
+			closestPrimitive = -1;
+		}
+		
+		@Override
+		public float intersectRay(int instance, Rayf ray) {
+			Instancef inst = instances[instance];
+			local.set(ray).transform(inst.inverse, false);
+			
+			float t = inst.bvh.intersectRay(local, closest, inst.intersector, primitive);
+			if(t < closest) {
+				closest = t;
+				closestInstance = instance;
+				closestPrimitive = primitive[0];
+			}
+			return t;
+		}
+	}
+
+}
@@ -0,0 +1,64 @@
+package org.joml.geom;
+
+import org.joml.Matrix4f;
+
+/**
+ * A placement of a shared hierarchy (the 'bottom level') in the world, for use in a {@link InstancedBvhf}.
+ *
+ * <br><br>
+ * Many instances can share the same {@link Bvhf} and {@link PrimitiveIntersector}; only the matrices are stored per instance.
+ * The inverse of the transformation is cached, so rays can be moved into the space of the bottom level without inverting a matrix per ray.
+ **/
+public class Instancef {
+	
+	/** The hierarchy of the instanced geometry, in object space. **/
+	public final Bvhf bvh;
+	/** The ray test for the primitives of the hierarchy. **/
+	public final PrimitiveIntersector intersector;
+	/** The transformation from object space to world space. **/
+	public final Matrix4f transform;
+	/** The transformation from world space to object space, the inverse of {@link #transform}. **/
+	public final Matrix4f inverse;
+	
+	/**
+	 * Creates a new {@link Instancef}.
+	 * @param bvh The hierarchy of the instanced geometry.
+	 * @param intersector The ray test for the primitives of the hierarchy.
+	 *        The rays passed to it are in object space, and their direction is not normalized.
+	 * @param transform The transformation from object space to world space, copied into the instance.
+	 **/
+	public Instancef(Bvhf bvh, PrimitiveIntersector intersector, Matrix4f transform) {
+		this.bvh = bvh;
+		this.intersector = intersector;
+		this.transform = new Matrix4f();
+		this.inverse = new Matrix4f();
+		setTransform(transform);
+	}
+	
+	/**
+	 * Sets the transformation of this instance and updates the cached inverse.
+	 * The {@link InstancedBvhf} containing this instance has to be updated afterwards.
+	 * @return This {@link Instancef}.
+	 **/
+	public Instancef setTransform(Matrix4f transform) {
+		this.transform.set(transform);
+		transform.invert(inverse);
+		return this;
+	}
+	
+	/**
+	 * Computes the world space bounds of this instance, by transforming the bounds of the root of its hierarchy (see {@link Transformations#transformBox}).
+	 * @param store The array to store minX, minY, minZ, maxX, maxY, maxZ in.
+	 * @param offset The index of minX in the array.
+	 **/
+	public void computeBounds(float[] store, int offset) {
+		if(bvh.nodeCount == 0) {
+			store[offset  ] = store[offset+1] = store[offset+2] = Float.POSITIVE_INFINITY;
+			store[offset+3] = store[offset+4] = store[offset+5] = Float.NEGATIVE_INFINITY;
+			return;
+		}
+		
+		Transformations.transformBox(transform, bvh.bounds, 0, store, offset);
+	}
+
+}
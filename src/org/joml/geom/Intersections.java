@@ -23,7 +23,7 @@ public class Intersections {
 	 * @return True, if the given {@link Aabbf} intersects the given frustum.
 	 **/
 	public static final boolean intersectAabbWithFrustum(Aabbf aabb, FrustumCuller culler) {
-		return culler.isAabInsideFrustum(
+		boolean hit = culler.isAabInsideFrustum(
 				aabb.originX - aabb.extentX,
 				aabb.originY - aabb.extentY,
 				aabb.originZ - aabb.extentZ,
@@ -31,6 +31,8 @@ public class Intersections {
 				aabb.originY + aabb.extentY,
 				aabb.originZ + aabb.extentZ
 		) == -1;
+		if(GeometryMetrics.ENABLED) GeometryMetrics.countTest(GeometryMetrics.AABB_FRUSTUM, hit);
+		return hit;
 	}
 	
 	/**
@@ -40,7 +42,9 @@ public class Intersections {
 	 * @return True, if the given {@link Aabbf} overlaps with the sphere defined by the given position and radius. False if not.
 	 **/
 	public static final boolean intersectAabbWithSphere(Aabbf aabb, Vector3f position, float radius) {
-		return aabb.minDistanceSquared(position) <= (radius*radius);
+		boolean hit = aabb.minDistanceSquared(position) <= (radius*radius);
+		if(GeometryMetrics.ENABLED) GeometryMetrics.countTest(GeometryMetrics.AABB_SPHERE, hit);
+		return hit;
 	}
 	
 	/**
@@ -49,11 +53,15 @@ public class Intersections {
 	 * @return True, if the given {@link Aabbf} overlaps with the given sphere. False if not.
 	 **/
 	public static final boolean intersectAabbWithSphere(Aabbf aabb, Spheref sphere) {
-		return aabb.minDistanceSquared(sphere.centerX,sphere.centerY,sphere.centerZ) <= sphere.getRadiusSquared();
+		boolean hit = aabb.minDistanceSquared(sphere.centerX,sphere.centerY,sphere.centerZ) <= sphere.getRadiusSquared();
+		if(GeometryMetrics.ENABLED) GeometryMetrics.countTest(GeometryMetrics.AABB_SPHERE, hit);
+		return hit;
 	}
 	
 	public static final boolean intersectAabbWithAabb(Aabbf aabbA, Aabbf aabbB) {
-		return aabbA.intersect(aabbB);
+		boolean hit = aabbA.intersect(aabbB);
+		if(GeometryMetrics.ENABLED) GeometryMetrics.countTest(GeometryMetrics.AABB_AABB, hit);
+		return hit;
 	}
 	
 	public static final boolean intersectAabbWithAabb(Aabbf aabb,
@@ -80,11 +88,52 @@ public class Intersections {
 	}
 	
 	public static final boolean intersectSphereWithSphere(Spheref sphereA, Spheref sphereB) {
-		return sphereA.intersect(sphereB);
+		boolean hit = sphereA.intersect(sphereB);
+		if(GeometryMetrics.ENABLED) GeometryMetrics.countTest(GeometryMetrics.SPHERE_SPHERE, hit);
+		return hit;
 	}
 	
 	public static final boolean intersectSphereWithFrustum(Spheref sphere, FrustumCuller culler) {
-		return culler.isSphereInsideFrustum(sphere.centerX, sphere.centerY, sphere.centerZ, sphere.radius);
+		return intersectSphereWithFrustum(sphere.centerX, sphere.centerY, sphere.centerZ, sphere.radius, culler);
+	}
+	
+	public static final boolean intersectSphereWithFrustum(float centerX, float centerY, float centerZ, float radius, FrustumCuller culler) {
+		boolean hit = culler.isSphereInsideFrustum(centerX, centerY, centerZ, radius);
+		if(GeometryMetrics.ENABLED) GeometryMetrics.countTest(GeometryMetrics.SPHERE_FRUSTUM, hit);
+		return hit;
+	}
+	
+	/**
+	 * Classifies the {@link Aabbf} against the frustum, keeping apart boxes that are fully inside from those that only intersect it.
+	 * @return {@link Frustumf#OUTSIDE}, {@link Frustumf#INTERSECTING} or {@link Frustumf#INSIDE}.
+	 **/
+	public static final int classifyAabbWithFrustum(Aabbf aabb, Frustumf frustum) {
+		int result = frustum.classifyBox(
+				aabb.originX - aabb.extentX,
+				aabb.originY - aabb.extentY,
+				aabb.originZ - aabb.extentZ,
+				aabb.originX + aabb.extentX,
+				aabb.originY + aabb.extentY,
+				aabb.originZ + aabb.extentZ);
+		if(GeometryMetrics.ENABLED) GeometryMetrics.countTest(GeometryMetrics.AABB_FRUSTUM, result != Frustumf.OUTSIDE);
+		return result;
+	}
+	
+	/**
+	 * Classifies the {@link Spheref} against the frustum, keeping apart spheres that are fully inside from those that only intersect it.
+	 * @return {@link Frustumf#OUTSIDE}, {@link Frustumf#INTERSECTING} or {@link Frustumf#INSIDE}.
+	 **/
+	public static final int classifySphereWithFrustum(Spheref sphere, Frustumf frustum) {
+		return classifySphereWithFrustum(sphere.centerX, sphere.centerY, sphere.centerZ, sphere.radius, frustum);
+	}
+	
+	/**
+	 * @return {@link Frustumf#OUTSIDE}, {@link Frustumf#INTERSECTING} or {@link Frustumf#INSIDE}.
+	 **/
+	public static final int classifySphereWithFrustum(float centerX, float centerY, float centerZ, float radius, Frustumf frustum) {
+		int result = frustum.classifySphere(centerX, centerY, centerZ, radius);
+		if(GeometryMetrics.ENABLED) GeometryMetrics.countTest(GeometryMetrics.SPHERE_FRUSTUM, result != Frustumf.OUTSIDE);
+		return result;
 	}
 	
 	/** Warning: Not yet tested. **/
@@ -212,6 +261,12 @@ public class Intersections {
 	
 	/** Warning: Not yet tested. **/
 	public static final float intersectRayWithSphere(Rayf ray, float centerX, float centerY, float centerZ, float radius) {
+		float t = rayWithSphere(ray, centerX, centerY, centerZ, radius);
+		if(GeometryMetrics.ENABLED) GeometryMetrics.countTest(GeometryMetrics.RAY_SPHERE, t < Float.POSITIVE_INFINITY);
+		return t;
+	}
+	
+	private static float rayWithSphere(Rayf ray, float centerX, float centerY, float centerZ, float radius) {
 		// unwrap ray onto stack
 		float rayOrgX = ray.originX;
 		float rayOrgY = ray.originY;
@@ -241,17 +296,94 @@ public class Intersections {
 		return (t1 > 0 ? t1 : t2);
 	}
 	
+	/**
+	 * @return The distance to the first face of the {@link Aabbf} the ray crosses (the exit, if the origin is inside), or positive infinity if there is no hit.
+	 **/
 	public static final float intersectRayWithAabb(Rayf ray, Aabbf aabb) {
-		float tTop   = intersectRayWithPlaneInBox(ray, Intersections.UP   , 0,aabb.getMaxY(),0, aabb);
-		float tBottom= intersectRayWithPlaneInBox(ray, Intersections.DOWN , 0,aabb.getMinY(),0, aabb);
-		
-		float tLeft  = intersectRayWithPlaneInBox(ray, Intersections.LEFT , aabb.getMinX(),0,0, aabb);
-		float tRight = intersectRayWithPlaneInBox(ray, Intersections.RIGHT, aabb.getMaxX(),0,0, aabb);
+		// clipping the ray against the slabs, instead of testing the hit point of every face plane against the box:
+		// the hit point of a face is rounded, and often lands just outside of the box
+		float tmin = Float.NEGATIVE_INFINITY;
+		float tmax = Float.POSITIVE_INFINITY;
+		for(int axis = 0; axis < 3; axis++) {
+			float org = axis == 0 ? ray.originX : (axis == 1 ? ray.originY : ray.originZ);
+			float dir = axis == 0 ? ray.directionX : (axis == 1 ? ray.directionY : ray.directionZ);
+			float min = axis == 0 ? aabb.getMinX() : (axis == 1 ? aabb.getMinY() : aabb.getMinZ());
+			float max = axis == 0 ? aabb.getMaxX() : (axis == 1 ? aabb.getMaxY() : aabb.getMaxZ());
+			
+			if(dir == 0) {
+				// parallel to the slab: either always or never inside of it
+				if(org < min || org > max)
+					return Float.POSITIVE_INFINITY;
+				continue;
+			}
+			
+			float t1 = (min - org) / dir;
+			float t2 = (max - org) / dir;
+			tmin = Math.max(tmin, Math.min(t1, t2));
+			tmax = Math.min(tmax, Math.max(t1, t2));
+		}
 		
-		float tFront = intersectRayWithPlaneInBox(ray, Intersections.FRONT, 0,0,aabb.getMaxZ(), aabb);
-		float tBack  = intersectRayWithPlaneInBox(ray, Intersections.BACK , 0,0,aabb.getMinZ(), aabb);
+		if(!(tmin <= tmax))
+			return Float.POSITIVE_INFINITY;
+		if(tmin > 0)
+			return tmin;
+		return tmax > 0 ? tmax : Float.POSITIVE_INFINITY;
+	}
+	
+	/**
+	 * Slab test of a ray against a box given by its minimum and maximum corner.
+	 * <br>
+	 * This is the test used by the bounding volume hierarchies, which is why it takes the <i>inverse</i> ray direction:
+	 * The division is done once per ray, and not once per box.
+	 * A ray parallel to a axis that starts exactly on a face of the box counts as inside of that slab (the slab test alone would produce NaN there).
+	 *
+	 * @return The distance to the point where the ray enters the box, zero if the origin is inside the box, or positive infinity if there is no hit.
+	 **/
+	public static final float intersectRayWithBox(
+			float orgX, float orgY, float orgZ,
+			float invDirX, float invDirY, float invDirZ,
+			float minX, float minY, float minZ,
+			float maxX, float maxY, float maxZ) {
+		float t = rayWithBox(orgX, orgY, orgZ, invDirX, invDirY, invDirZ, minX, minY, minZ, maxX, maxY, maxZ);
+		if(GeometryMetrics.ENABLED) GeometryMetrics.countTest(GeometryMetrics.RAY_BOX, t < Float.POSITIVE_INFINITY);
+		return t;
+	}
+	
+	private static float rayWithBox(
+			float orgX, float orgY, float orgZ,
+			float invDirX, float invDirY, float invDirZ,
+			float minX, float minY, float minZ,
+			float maxX, float maxY, float maxZ) {
+		// a ray parallel to a slab gives infinite distances, or NaN (zero times infinity) if it starts exactly on one of its planes:
+		// NaN fails both comparisons, so that slab does not clip the ray, just like a slab the ray runs inside of
+		float tmin = Float.NEGATIVE_INFINITY;
+		float tmax = Float.POSITIVE_INFINITY;
+		
+		float t1 = (minX - orgX) * invDirX;
+		float t2 = (maxX - orgX) * invDirX;
+		float near = Math.min(t1, t2), far = Math.max(t1, t2);
+		if(near > tmin) tmin = near;
+		if(far < tmax) tmax = far;
+		
+		t1 = (minY - orgY) * invDirY;
+		t2 = (maxY - orgY) * invDirY;
+		near = Math.min(t1, t2);
+		far = Math.max(t1, t2);
+		if(near > tmin) tmin = near;
+		if(far < tmax) tmax = far;
+		
+		t1 = (minZ - orgZ) * invDirZ;
+		t2 = (maxZ - orgZ) * invDirZ;
+		near = Math.min(t1, t2);
+		far = Math.max(t1, t2);
+		if(near > tmin) tmin = near;
+		if(far < tmax) tmax = far;
+		
+		// box is behind the ray, or the ray misses it
+		if (tmax < 0 || tmin > tmax)
+			return Float.POSITIVE_INFINITY;
 		
-		return Math.min(tTop, Math.min(tBottom, Math.min(tLeft, Math.min(tRight, Math.min(tFront, tBack)))));
+		return tmin > 0 ? tmin : 0;
 	}
 	
 	public static final float intersectRayWithAabb_doesNotWork_doNotUse(Rayf ray, Aabbf aabb) {
@@ -394,6 +526,22 @@ public class Intersections {
 	}
 	
 	public static final float intersectRayWithTriangle(Rayf ray, Vector3f point1, Vector3f point2, Vector3f point3){
+		return intersectRayWithTriangle(ray, point1.x, point1.y, point1.z, point2.x, point2.y, point2.z, point3.x, point3.y, point3.z);
+	}
+	
+	public static final float intersectRayWithTriangle(Rayf ray,
+			float p1X, float p1Y, float p1Z,
+			float p2X, float p2Y, float p2Z,
+			float p3X, float p3Y, float p3Z) {
+		float t = rayWithTriangle(ray, p1X, p1Y, p1Z, p2X, p2Y, p2Z, p3X, p3Y, p3Z);
+		if(GeometryMetrics.ENABLED) GeometryMetrics.countTest(GeometryMetrics.RAY_TRIANGLE, t < Float.POSITIVE_INFINITY);
+		return t;
+	}
+	
+	private static float rayWithTriangle(Rayf ray,
+			float p1X, float p1Y, float p1Z,
+			float p2X, float p2Y, float p2Z,
+			float p3X, float p3Y, float p3Z) {
 		// unwrap ray onto stack
 		float rayOrgX = ray.originX;
 		float rayOrgY = ray.originY;
@@ -402,13 +550,13 @@ public class Intersections {
 		float rayDirY = ray.directionY;
 		float rayDirZ = ray.directionZ;
 		
-		float edge1X = point2.x - point1.x;
-		float edge1Y = point2.y - point1.y;
-		float edge1Z = point2.z - point1.z;
+		float edge1X = p2X - p1X;
+		float edge1Y = p2Y - p1Y;
+		float edge1Z = p2Z - p1Z;
 		
-		float edge2X = point3.x - point1.x;
-		float edge2Y = point3.y - point1.y;
-		float edge2Z = point3.z - point1.z;
+		float edge2X = p3X - p1X;
+		float edge2Y = p3Y - p1Y;
+		float edge2Z = p3Z - p1Z;
 		
 		// Find the cross product of edge2 and the ray direction
 		float s1X = rayDirY * edge2Z - rayDirZ * edge2Y;
@@ -428,9 +576,9 @@ public class Intersections {
 		
 		// Calculate the first barycentic coordinate. Barycentic coordinates
 		// are between 0.0 and 1.0
-		final float distanceX = rayOrgX - point1.x;
-		final float distanceY = rayOrgY - point1.y;
-		final float distanceZ = rayOrgZ - point1.z;
+		final float distanceX = rayOrgX - p1X;
+		final float distanceY = rayOrgY - p1Y;
+		final float distanceZ = rayOrgZ - p1Z;
 		
 		final float barycCoord_1 = (distanceX*s1X+distanceY*s1Y+distanceZ*s1Z) * invDivisor;
 		
@@ -622,6 +770,377 @@ public class Intersections {
 		return pointPtr;
 	}
 	
+	/**
+	 * Separating axis test of two {@link Obbf}s, over the three axes of each box and the nine cross products of their axes.
+	 * The test stops at the first separating axis; the axes of the boxes come first, since they separate most pairs.
+	 * @return True, if the boxes overlap. False if not.
+	 **/
+	public static final boolean intersectObbWithObb(Obbf a, Obbf b) {
+		// the rotation of b in the space of a: r[i][j] = dot(axis i of a, axis j of b)
+		float r00 = a.xAxisX*b.xAxisX + a.xAxisY*b.xAxisY + a.xAxisZ*b.xAxisZ;
+		float r01 = a.xAxisX*b.yAxisX + a.xAxisY*b.yAxisY + a.xAxisZ*b.yAxisZ;
+		float r02 = a.xAxisX*b.zAxisX + a.xAxisY*b.zAxisY + a.xAxisZ*b.zAxisZ;
+		float r10 = a.yAxisX*b.xAxisX + a.yAxisY*b.xAxisY + a.yAxisZ*b.xAxisZ;
+		float r11 = a.yAxisX*b.yAxisX + a.yAxisY*b.yAxisY + a.yAxisZ*b.yAxisZ;
+		float r12 = a.yAxisX*b.zAxisX + a.yAxisY*b.zAxisY + a.yAxisZ*b.zAxisZ;
+		float r20 = a.zAxisX*b.xAxisX + a.zAxisY*b.xAxisY + a.zAxisZ*b.xAxisZ;
+		float r21 = a.zAxisX*b.yAxisX + a.zAxisY*b.yAxisY + a.zAxisZ*b.yAxisZ;
+		float r22 = a.zAxisX*b.zAxisX + a.zAxisY*b.zAxisY + a.zAxisZ*b.zAxisZ;
+		
+		// the translation from a to b, in the space of a
+		float dX = b.originX - a.originX;
+		float dY = b.originY - a.originY;
+		float dZ = b.originZ - a.originZ;
+		float t0 = dX*a.xAxisX + dY*a.xAxisY + dZ*a.xAxisZ;
+		float t1 = dX*a.yAxisX + dY*a.yAxisY + dZ*a.yAxisZ;
+		float t2 = dX*a.zAxisX + dY*a.zAxisY + dZ*a.zAxisZ;
+		
+		boolean hit = !separatingAxisExists(a.extentX, a.extentY, a.extentZ, b.extentX, b.extentY, b.extentZ,
+				r00, r01, r02, r10, r11, r12, r20, r21, r22, t0, t1, t2);
+		if(GeometryMetrics.ENABLED) GeometryMetrics.countTest(GeometryMetrics.OBB_OBB, hit);
+		return hit;
+	}
+	
+	/**
+	 * Separating axis test of a {@link Obbf} and a {@link Aabbf}.
+	 * This is the OBB-OBB test, but the rotation is simply the axes of the OBB, since the AABB is aligned with the world.
+	 * @return True, if the boxes overlap. False if not.
+	 **/
+	public static final boolean intersectObbWithAabb(Obbf obb, Aabbf aabb) {
+		boolean hit = !separatingAxisExists(aabb.extentX, aabb.extentY, aabb.extentZ, obb.extentX, obb.extentY, obb.extentZ,
+				obb.xAxisX, obb.yAxisX, obb.zAxisX,
+				obb.xAxisY, obb.yAxisY, obb.zAxisY,
+				obb.xAxisZ, obb.yAxisZ, obb.zAxisZ,
+				obb.originX - aabb.originX, obb.originY - aabb.originY, obb.originZ - aabb.originZ);
+		if(GeometryMetrics.ENABLED) GeometryMetrics.countTest(GeometryMetrics.OBB_AABB, hit);
+		return hit;
+	}
+	
+	// The 15 axis test for two boxes, with b given by its rotation (r) and translation (t) in the space of a.
+	// See 'Real-Time Collision Detection' by Christer Ericson, chapter 4.4.1.
+	private static boolean separatingAxisExists(
+			float ae0, float ae1, float ae2, float be0, float be1, float be2,
+			float r00, float r01, float r02, float r10, float r11, float r12, float r20, float r21, float r22,
+			float t0, float t1, float t2) {
+		// the epsilon keeps the cross products of (nearly) parallel axes from separating due to rounding errors
+		final float epsilon = 1e-6f;
+		float a00 = abs(r00) + epsilon, a01 = abs(r01) + epsilon, a02 = abs(r02) + epsilon;
+		float a10 = abs(r10) + epsilon, a11 = abs(r11) + epsilon, a12 = abs(r12) + epsilon;
+		float a20 = abs(r20) + epsilon, a21 = abs(r21) + epsilon, a22 = abs(r22) + epsilon;
+		
+		// axes of a
+		if(abs(t0) > ae0 + be0*a00 + be1*a01 + be2*a02) return true;
+		if(abs(t1) > ae1 + be0*a10 + be1*a11 + be2*a12) return true;
+		if(abs(t2) > ae2 + be0*a20 + be1*a21 + be2*a22) return true;
+		
+		// axes of b
+		if(abs(t0*r00 + t1*r10 + t2*r20) > ae0*a00 + ae1*a10 + ae2*a20 + be0) return true;
+		if(abs(t0*r01 + t1*r11 + t2*r21) > ae0*a01 + ae1*a11 + ae2*a21 + be1) return true;
+		if(abs(t0*r02 + t1*r12 + t2*r22) > ae0*a02 + ae1*a12 + ae2*a22 + be2) return true;
+		
+		// cross products of the axes of a and b
+		if(abs(t2*r10 - t1*r20) > ae1*a20 + ae2*a10 + be1*a02 + be2*a01) return true;
+		if(abs(t2*r11 - t1*r21) > ae1*a21 + ae2*a11 + be0*a02 + be2*a00) return true;
+		if(abs(t2*r12 - t1*r22) > ae1*a22 + ae2*a12 + be0*a01 + be1*a00) return true;
+		if(abs(t0*r20 - t2*r00) > ae0*a20 + ae2*a00 + be1*a12 + be2*a11) return true;
+		if(abs(t0*r21 - t2*r01) > ae0*a21 + ae2*a01 + be0*a12 + be2*a10) return true;
+		if(abs(t0*r22 - t2*r02) > ae0*a22 + ae2*a02 + be0*a11 + be1*a10) return true;
+		if(abs(t1*r00 - t0*r10) > ae0*a10 + ae1*a00 + be1*a22 + be2*a21) return true;
+		if(abs(t1*r01 - t0*r11) > ae0*a11 + ae1*a01 + be0*a22 + be2*a20) return true;
+		if(abs(t1*r02 - t0*r12) > ae0*a12 + ae1*a02 + be0*a21 + be1*a20) return true;
+		
+		return false;
+	}
+	
+	/**
+	 * @return True, if the given {@link Capsulef}s overlap. False if not.
+	 **/
+	public static final boolean intersectCapsuleWithCapsule(Capsulef a, Capsulef b) {
+		float r = a.radius + b.radius;
+		boolean hit = distanceSquaredSegmentSegment(a.aX, a.aY, a.aZ, a.bX, a.bY, a.bZ, b.aX, b.aY, b.aZ, b.bX, b.bY, b.bZ) <= r*r;
+		if(GeometryMetrics.ENABLED) GeometryMetrics.countTest(GeometryMetrics.CAPSULE_CAPSULE, hit);
+		return hit;
+	}
+	
+	/**
+	 * @return True, if the given {@link Capsulef} overlaps with the given {@link Aabbf}. False if not.
+	 **/
+	public static final boolean intersectCapsuleWithAabb(Capsulef capsule, Aabbf aabb) {
+		boolean hit = capsuleWithAabb(capsule, aabb);
+		if(GeometryMetrics.ENABLED) GeometryMetrics.countTest(GeometryMetrics.CAPSULE_AABB, hit);
+		return hit;
+	}
+	
+	private static boolean capsuleWithAabb(Capsulef capsule, Aabbf aabb) {
+		float r = capsule.radius;
+		float minX = aabb.originX - aabb.extentX, maxX = aabb.originX + aabb.extentX;
+		float minY = aabb.originY - aabb.extentY, maxY = aabb.originY + aabb.extentY;
+		float minZ = aabb.originZ - aabb.extentZ, maxZ = aabb.originZ + aabb.extentZ;
+		
+		// the bounds of the capsule do not touch the box
+		if(Math.max(capsule.aX, capsule.bX) + r < minX || Math.min(capsule.aX, capsule.bX) - r > maxX) return false;
+		if(Math.max(capsule.aY, capsule.bY) + r < minY || Math.min(capsule.aY, capsule.bY) - r > maxY) return false;
+		if(Math.max(capsule.aZ, capsule.bZ) + r < minZ || Math.min(capsule.aZ, capsule.bZ) - r > maxZ) return false;
+		
+		// one of the ends is close enough
+		float rr = r*r;
+		if(aabb.minDistanceSquared(capsule.aX, capsule.aY, capsule.aZ) <= rr) return true;
+		if(aabb.minDistanceSquared(capsule.bX, capsule.bY, capsule.bZ) <= rr) return true;
+		
+		// the segment passes through the box
+		float dX = capsule.bX - capsule.aX;
+		float dY = capsule.bY - capsule.aY;
+		float dZ = capsule.bZ - capsule.aZ;
+		if(intersectRayWithBox(capsule.aX, capsule.aY, capsule.aZ, 1f/dX, 1f/dY, 1f/dZ, minX, minY, minZ, maxX, maxY, maxZ) <= 1f)
+			return true;
+		
+		// otherwise the point of the box closest to the segment is on one of its twelve edges
+		for(int i = 0; i < 4; i++) {
+			float y = (i & 1) == 0 ? minY : maxY, z = (i & 2) == 0 ? minZ : maxZ;
+			if(distanceSquaredSegmentSegment(capsule.aX, capsule.aY, capsule.aZ, capsule.bX, capsule.bY, capsule.bZ, minX, y, z, maxX, y, z) <= rr)
+				return true;
+			
+			float x = (i & 1) == 0 ? minX : maxX;
+			if(distanceSquaredSegmentSegment(capsule.aX, capsule.aY, capsule.aZ, capsule.bX, capsule.bY, capsule.bZ, x, minY, z, x, maxY, z) <= rr)
+				return true;
+			
+			y = (i & 2) == 0 ? minY : maxY;
+			if(distanceSquaredSegmentSegment(capsule.aX, capsule.aY, capsule.aZ, capsule.bX, capsule.bY, capsule.bZ, x, y, minZ, x, y, maxZ) <= rr)
+				return true;
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * @return The distance to the point where the ray enters the {@link Obbf}, zero if the origin is inside, or positive infinity if there is no hit.
+	 **/
+	public static final float intersectRayWithObb(Rayf ray, Obbf obb) {
+		// the ray in the space of the box; the axes are normalized, so distances stay the same
+		float oX = ray.originX - obb.originX;
+		float oY = ray.originY - obb.originY;
+		float oZ = ray.originZ - obb.originZ;
+		float dirX = ray.directionX*obb.xAxisX + ray.directionY*obb.xAxisY + ray.directionZ*obb.xAxisZ;
+		float dirY = ray.directionX*obb.yAxisX + ray.directionY*obb.yAxisY + ray.directionZ*obb.yAxisZ;
+		float dirZ = ray.directionX*obb.zAxisX + ray.directionY*obb.zAxisY + ray.directionZ*obb.zAxisZ;
+		
+		float t = rayWithBox(
+				oX*obb.xAxisX + oY*obb.xAxisY + oZ*obb.xAxisZ,
+				oX*obb.yAxisX + oY*obb.yAxisY + oZ*obb.yAxisZ,
+				oX*obb.zAxisX + oY*obb.zAxisY + oZ*obb.zAxisZ,
+				1f/dirX, 1f/dirY, 1f/dirZ,
+				-obb.extentX, -obb.extentY, -obb.extentZ,
+				obb.extentX, obb.extentY, obb.extentZ);
+		if(GeometryMetrics.ENABLED) GeometryMetrics.countTest(GeometryMetrics.RAY_OBB, t < Float.POSITIVE_INFINITY);
+		return t;
+	}
+	
+	/**
+	 * @return The distance to the point where the ray enters the {@link Capsulef}, zero if the origin is inside, or positive infinity if there is no hit.
+	 **/
+	public static final float intersectRayWithCapsule(Rayf ray, Capsulef capsule) {
+		return intersectRayWithCapsule(ray.originX, ray.originY, ray.originZ, ray.directionX, ray.directionY, ray.directionZ,
+				capsule.aX, capsule.aY, capsule.aZ, capsule.bX, capsule.bY, capsule.bZ, capsule.radius);
+	}
+	
+	/**
+	 * The direction does not have to be normalized, the result is measured in multiples of it.
+	 * @return The distance to the point where the ray enters the capsule from a to b, zero if the origin is inside, or positive infinity if there is no hit.
+	 **/
+	public static final float intersectRayWithCapsule(
+			float rX, float rY, float rZ, float dX, float dY, float dZ,
+			float aX, float aY, float aZ, float bX, float bY, float bZ, float r) {
+		float t = rayWithCapsule(rX, rY, rZ, dX, dY, dZ, aX, aY, aZ, bX, bY, bZ, r);
+		if(GeometryMetrics.ENABLED) GeometryMetrics.countTest(GeometryMetrics.RAY_CAPSULE, t < Float.POSITIVE_INFINITY);
+		return t;
+	}
+	
+	private static float rayWithCapsule(
+			float rX, float rY, float rZ, float dX, float dY, float dZ,
+			float aX, float aY, float aZ, float bX, float bY, float bZ, float r) {
+		if(distanceSquaredPointSegment(rX, rY, rZ, aX, aY, aZ, bX, bY, bZ) <= r*r)
+			return 0;
+		
+		float baX = bX - aX, baY = bY - aY, baZ = bZ - aZ;
+		float oaX = rX - aX, oaY = rY - aY, oaZ = rZ - aZ;
+		
+		float baba = baX*baX + baY*baY + baZ*baZ;
+		float bard = baX*dX + baY*dY + baZ*dZ;
+		float baoa = baX*oaX + baY*oaY + baZ*oaZ;
+		float rdoa = dX*oaX + dY*oaY + dZ*oaZ;
+		float oaoa = oaX*oaX + oaY*oaY + oaZ*oaZ;
+		float rdrd = dX*dX + dY*dY + dZ*dZ;
+		
+		// the side of the capsule: a infinite cylinder, limited to the segment
+		float t = Float.POSITIVE_INFINITY;
+		float a = baba*rdrd - bard*bard;
+		float b = baba*rdoa - baoa*bard;
+		float c = baba*oaoa - baoa*baoa - r*r*baba;
+		float h = b*b - a*c;
+		if(a > 0 && h >= 0) {
+			float tSide = (-b - (float) Math.sqrt(h)) / a;
+			float y = baoa + tSide*bard;
+			if(y > 0 && y < baba)
+				t = tSide;
+		}
+		
+		// the spheres at the ends; the origin is outside, so the nearest entry of the three parts is the entry of the capsule
+		t = Math.min(t, rayEntryIntoSphere(oaX, oaY, oaZ, dX, dY, dZ, rdrd, r));
+		t = Math.min(t, rayEntryIntoSphere(rX - bX, rY - bY, rZ - bZ, dX, dY, dZ, rdrd, r));
+		
+		// the capsule is convex, if its entry is behind the origin, all of it is
+		return t >= 0 ? t : Float.POSITIVE_INFINITY;
+	}
+	
+	// The entry of a ray into a sphere, given the vector from the center to the origin. The direction does not have to be normalized.
+	private static float rayEntryIntoSphere(float ocX, float ocY, float ocZ, float dirX, float dirY, float dirZ, float dirDot, float radius) {
+		float b = dirX*ocX + dirY*ocY + dirZ*ocZ;
+		float c = ocX*ocX + ocY*ocY + ocZ*ocZ - radius*radius;
+		float h = b*b - dirDot*c;
+		return h >= 0 ? (-b - (float) Math.sqrt(h)) / dirDot : Float.POSITIVE_INFINITY;
+	}
+	
+	/**
+	 * @return The squared distance between the point p and the segment from a to b.
+	 **/
+	static float distanceSquaredPointSegment(float pX, float pY, float pZ, float aX, float aY, float aZ, float bX, float bY, float bZ) {
+		float abX = bX - aX, abY = bY - aY, abZ = bZ - aZ;
+		float apX = pX - aX, apY = pY - aY, apZ = pZ - aZ;
+		float abab = abX*abX + abY*abY + abZ*abZ;
+		float t = abab > 0 ? (abX*apX + abY*apY + abZ*apZ) / abab : 0;
+		t = t < 0 ? 0 : (t > 1 ? 1 : t);
+		float dX = apX - abX*t, dY = apY - abY*t, dZ = apZ - abZ*t;
+		return dX*dX + dY*dY + dZ*dZ;
+	}
+	
+	/**
+	 * @return The squared distance between the segment from p1 to q1 and the segment from p2 to q2.
+	 * See 'Real-Time Collision Detection' by Christer Ericson, chapter 5.1.9.
+	 **/
+	static float distanceSquaredSegmentSegment(
+			float p1X, float p1Y, float p1Z, float q1X, float q1Y, float q1Z,
+			float p2X, float p2Y, float p2Z, float q2X, float q2Y, float q2Z) {
+		float d1X = q1X - p1X, d1Y = q1Y - p1Y, d1Z = q1Z - p1Z;
+		float d2X = q2X - p2X, d2Y = q2Y - p2Y, d2Z = q2Z - p2Z;
+		float rX = p1X - p2X, rY = p1Y - p2Y, rZ = p1Z - p2Z;
+		float a = d1X*d1X + d1Y*d1Y + d1Z*d1Z;
+		float e = d2X*d2X + d2Y*d2Y + d2Z*d2Z;
+		float f = d2X*rX + d2Y*rY + d2Z*rZ;
+		float s, t;
+		
+		if(a <= 0 && e <= 0) {
+			// both segments are points
+			s = t = 0;
+		} else if(a <= 0) {
+			s = 0;
+			t = clamp01(f / e);
+		} else {
+			float c = d1X*rX + d1Y*rY + d1Z*rZ;
+			if(e <= 0) {
+				t = 0;
+				s = clamp01(-c / a);
+			} else {
+				float b = d1X*d2X + d1Y*d2Y + d1Z*d2Z;
+				float denom = a*e - b*b;
+				// parallel segments have no unique closest pair, any s works
+				s = denom > 0 ? clamp01((b*f - c*e) / denom) : 0;
+				t = (b*s + f) / e;
+				if(t < 0) {
+					t = 0;
+					s = clamp01(-c / a);
+				} else if(t > 1) {
+					t = 1;
+					s = clamp01((b - c) / a);
+				}
+			}
+		}
+		
+		float dX = rX + d1X*s - d2X*t;
+		float dY = rY + d1Y*s - d2Y*t;
+		float dZ = rZ + d1Z*s - d2Z*t;
+		return dX*dX + dY*dY + dZ*dZ;
+	}
+	
+	/**
+	 * Separating axis test of the triangles a and b: Over the normals of both triangles, the nine cross products of their edges,
+	 * and for (nearly) coplanar triangles, the normals of the edges in the plane.
+	 * Triangles that only touch overlap.
+	 * @return True, if the triangles overlap. False if not.
+	 **/
+	public static final boolean intersectTriangleWithTriangle(
+			float a0X, float a0Y, float a0Z, float a1X, float a1Y, float a1Z, float a2X, float a2Y, float a2Z,
+			float b0X, float b0Y, float b0Z, float b1X, float b1Y, float b1Z, float b2X, float b2Y, float b2Z) {
+		// relative to the first vertex of a, to keep the products small
+		b0X -= a0X; b0Y -= a0Y; b0Z -= a0Z;
+		b1X -= a0X; b1Y -= a0Y; b1Z -= a0Z;
+		b2X -= a0X; b2Y -= a0Y; b2Z -= a0Z;
+		a1X -= a0X; a1Y -= a0Y; a1Z -= a0Z;
+		a2X -= a0X; a2Y -= a0Y; a2Z -= a0Z;
+		
+		// the edges
+		float eA0X = a1X, eA0Y = a1Y, eA0Z = a1Z;
+		float eA1X = a2X - a1X, eA1Y = a2Y - a1Y, eA1Z = a2Z - a1Z;
+		float eA2X = -a2X, eA2Y = -a2Y, eA2Z = -a2Z;
+		float eB0X = b1X - b0X, eB0Y = b1Y - b0Y, eB0Z = b1Z - b0Z;
+		float eB1X = b2X - b1X, eB1Y = b2Y - b1Y, eB1Z = b2Z - b1Z;
+		float eB2X = b0X - b2X, eB2Y = b0Y - b2Y, eB2Z = b0Z - b2Z;
+		
+		// the normals
+		float nAX = eA0Y*eA1Z - eA0Z*eA1Y, nAY = eA0Z*eA1X - eA0X*eA1Z, nAZ = eA0X*eA1Y - eA0Y*eA1X;
+		float nBX = eB0Y*eB1Z - eB0Z*eB1Y, nBY = eB0Z*eB1X - eB0X*eB1Z, nBZ = eB0X*eB1Y - eB0Y*eB1X;
+		
+		boolean hit = !(separated(nAX, nAY, nAZ, a1X, a1Y, a1Z, a2X, a2Y, a2Z, b0X, b0Y, b0Z, b1X, b1Y, b1Z, b2X, b2Y, b2Z)
+				|| separated(nBX, nBY, nBZ, a1X, a1Y, a1Z, a2X, a2Y, a2Z, b0X, b0Y, b0Z, b1X, b1Y, b1Z, b2X, b2Y, b2Z)
+				|| separatedOnCross(eA0X, eA0Y, eA0Z, eB0X, eB0Y, eB0Z, a1X, a1Y, a1Z, a2X, a2Y, a2Z, b0X, b0Y, b0Z, b1X, b1Y, b1Z, b2X, b2Y, b2Z)
+				|| separatedOnCross(eA0X, eA0Y, eA0Z, eB1X, eB1Y, eB1Z, a1X, a1Y, a1Z, a2X, a2Y, a2Z, b0X, b0Y, b0Z, b1X, b1Y, b1Z, b2X, b2Y, b2Z)
+				|| separatedOnCross(eA0X, eA0Y, eA0Z, eB2X, eB2Y, eB2Z, a1X, a1Y, a1Z, a2X, a2Y, a2Z, b0X, b0Y, b0Z, b1X, b1Y, b1Z, b2X, b2Y, b2Z)
+				|| separatedOnCross(eA1X, eA1Y, eA1Z, eB0X, eB0Y, eB0Z, a1X, a1Y, a1Z, a2X, a2Y, a2Z, b0X, b0Y, b0Z, b1X, b1Y, b1Z, b2X, b2Y, b2Z)
+				|| separatedOnCross(eA1X, eA1Y, eA1Z, eB1X, eB1Y, eB1Z, a1X, a1Y, a1Z, a2X, a2Y, a2Z, b0X, b0Y, b0Z, b1X, b1Y, b1Z, b2X, b2Y, b2Z)
+				|| separatedOnCross(eA1X, eA1Y, eA1Z, eB2X, eB2Y, eB2Z, a1X, a1Y, a1Z, a2X, a2Y, a2Z, b0X, b0Y, b0Z, b1X, b1Y, b1Z, b2X, b2Y, b2Z)
+				|| separatedOnCross(eA2X, eA2Y, eA2Z, eB0X, eB0Y, eB0Z, a1X, a1Y, a1Z, a2X, a2Y, a2Z, b0X, b0Y, b0Z, b1X, b1Y, b1Z, b2X, b2Y, b2Z)
+				|| separatedOnCross(eA2X, eA2Y, eA2Z, eB1X, eB1Y, eB1Z, a1X, a1Y, a1Z, a2X, a2Y, a2Z, b0X, b0Y, b0Z, b1X, b1Y, b1Z, b2X, b2Y, b2Z)
+				|| separatedOnCross(eA2X, eA2Y, eA2Z, eB2X, eB2Y, eB2Z, a1X, a1Y, a1Z, a2X, a2Y, a2Z, b0X, b0Y, b0Z, b1X, b1Y, b1Z, b2X, b2Y, b2Z));
+		
+		if(hit) {
+			// the cross products of the edges vanish for coplanar triangles, so test the normals of the edges in the plane as well
+			float cX = nAY*nBZ - nAZ*nBY, cY = nAZ*nBX - nAX*nBZ, cZ = nAX*nBY - nAY*nBX;
+			float nA = nAX*nAX + nAY*nAY + nAZ*nAZ, nB = nBX*nBX + nBY*nBY + nBZ*nBZ;
+			if(cX*cX + cY*cY + cZ*cZ <= 1e-6f * nA * nB) {
+				hit = !(separatedOnCross(nAX, nAY, nAZ, eA0X, eA0Y, eA0Z, a1X, a1Y, a1Z, a2X, a2Y, a2Z, b0X, b0Y, b0Z, b1X, b1Y, b1Z, b2X, b2Y, b2Z)
+						|| separatedOnCross(nAX, nAY, nAZ, eA1X, eA1Y, eA1Z, a1X, a1Y, a1Z, a2X, a2Y, a2Z, b0X, b0Y, b0Z, b1X, b1Y, b1Z, b2X, b2Y, b2Z)
+						|| separatedOnCross(nAX, nAY, nAZ, eA2X, eA2Y, eA2Z, a1X, a1Y, a1Z, a2X, a2Y, a2Z, b0X, b0Y, b0Z, b1X, b1Y, b1Z, b2X, b2Y, b2Z)
+						|| separatedOnCross(nAX, nAY, nAZ, eB0X, eB0Y, eB0Z, a1X, a1Y, a1Z, a2X, a2Y, a2Z, b0X, b0Y, b0Z, b1X, b1Y, b1Z, b2X, b2Y, b2Z)
+						|| separatedOnCross(nAX, nAY, nAZ, eB1X, eB1Y, eB1Z, a1X, a1Y, a1Z, a2X, a2Y, a2Z, b0X, b0Y, b0Z, b1X, b1Y, b1Z, b2X, b2Y, b2Z)
+						|| separatedOnCross(nAX, nAY, nAZ, eB2X, eB2Y, eB2Z, a1X, a1Y, a1Z, a2X, a2Y, a2Z, b0X, b0Y, b0Z, b1X, b1Y, b1Z, b2X, b2Y, b2Z));
+			}
+		}
+		return hit;
+	}
+	
+	private static boolean separatedOnCross(float uX, float uY, float uZ, float vX, float vY, float vZ,
+			float a1X, float a1Y, float a1Z, float a2X, float a2Y, float a2Z,
+			float b0X, float b0Y, float b0Z, float b1X, float b1Y, float b1Z, float b2X, float b2Y, float b2Z) {
+		return separated(uY*vZ - uZ*vY, uZ*vX - uX*vZ, uX*vY - uY*vX, a1X, a1Y, a1Z, a2X, a2Y, a2Z, b0X, b0Y, b0Z, b1X, b1Y, b1Z, b2X, b2Y, b2Z);
+	}
+	
+	// If the axis separates the triangles; the first vertex of a is the origin. A zero axis never separates.
+	private static boolean separated(float axisX, float axisY, float axisZ,
+			float a1X, float a1Y, float a1Z, float a2X, float a2Y, float a2Z,
+			float b0X, float b0Y, float b0Z, float b1X, float b1Y, float b1Z, float b2X, float b2Y, float b2Z) {
+		float pA1 = axisX*a1X + axisY*a1Y + axisZ*a1Z;
+		float pA2 = axisX*a2X + axisY*a2Y + axisZ*a2Z;
+		float pB0 = axisX*b0X + axisY*b0Y + axisZ*b0Z;
+		float pB1 = axisX*b1X + axisY*b1Y + axisZ*b1Z;
+		float pB2 = axisX*b2X + axisY*b2Y + axisZ*b2Z;
+		float minA = Math.min(0, Math.min(pA1, pA2)), maxA = Math.max(0, Math.max(pA1, pA2));
+		float minB = Math.min(pB0, Math.min(pB1, pB2)), maxB = Math.max(pB0, Math.max(pB1, pB2));
+		return maxA < minB || maxB < minA;
+	}
+	
+	private static float clamp01(float x) {
+		return x < 0 ? 0 : (x > 1 ? 1 : x);
+	}
+	
 	private static float abs(final float x) {
 		return Float.intBitsToFloat(0x7fffffff & Float.floatToRawIntBits(x));
 	}
@@ -0,0 +1,497 @@
+package org.joml.geom;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Builds a {@link Bvhf} in parallel by sorting the primitives along a Morton curve (a 'linear' BVH).
+ *
+ * <br><br>
+ * The build runs in five steps, all of which are split over the threads of a {@link ForkJoinPool}:
+ * <ol>
+ * <li>The centroids of the primitives are quantized and interleaved into 30 bit or 63 bit Morton codes.
+ * <li>The codes are sorted with a least significant digit radix sort (8 bits per pass).
+ * <li>The binary radix tree over the sorted codes is emitted, one inner node per thread and loop iteration (Karras 2012).
+ * <li>The bounds are computed bottom-up, where the second thread to arrive at a node merges its children.
+ * <li>The tree is written out in the layout of {@link Bvhf}, collapsing small subtrees into leaves.
+ * </ol>
+ * The trees are of lower quality than median or SAH trees, but they are built a lot faster.
+ * <br>
+ * A builder keeps its scratch arrays between builds, so it should not be shared between threads.
+ **/
+public class LbvhBuilder {
+	
+	private ForkJoinPool pool = ForkJoinPool.commonPool();
+	private int grainSize = 8192;
+	private int mortonBits = 30;
+	private int maxLeafSize = 4;
+	
+	// scratch arrays, grown as needed
+	private long[] keys = new long[0];
+	private long[] keysSwap = new long[0];
+	private int[] values = new int[0];
+	private int[] valuesSwap = new int[0];
+	private int[] left = new int[0];
+	private int[] right = new int[0];
+	private int[] parents = new int[0];
+	private int[] rangeFirst = new int[0];
+	private int[] rangeCount = new int[0];
+	private int[] sizes = new int[0];
+	private float[] innerBounds = new float[0];
+	
+	/**
+	 * Sets the pool that runs the build.
+	 * @return This {@link LbvhBuilder}.
+	 **/
+	public LbvhBuilder setPool(ForkJoinPool pool) {
+		this.pool = pool;
+		return this;
+	}
+	
+	/**
+	 * Sets the number of primitives below which a step of the build is not split any further.
+	 * @return This {@link LbvhBuilder}.
+	 **/
+	public LbvhBuilder setGrainSize(int grainSize) {
+		this.grainSize = Math.max(1, grainSize);
+		return this;
+	}
+	
+	/**
+	 * Sets the number of bits of the Morton codes.
+	 * 30 bits (10 per axis) sort faster, 63 bits (21 per axis) separate primitives in large scenes better.
+	 * @param bits Either 30 or 63.
+	 * @return This {@link LbvhBuilder}.
+	 **/
+	public LbvhBuilder setMortonBits(int bits) {
+		if(bits != 30 && bits != 63)
+			throw new IllegalArgumentException("bits must be 30 or 63: " + bits);
+		this.mortonBits = bits;
+		return this;
+	}
+	
+	/**
+	 * Sets the maximum number of primitives in a leaf.
+	 * @return This {@link LbvhBuilder}.
+	 **/
+	public LbvhBuilder setMaxLeafSize(int maxLeafSize) {
+		this.maxLeafSize = Math.max(1, maxLeafSize);
+		return this;
+	}
+	
+	/**
+	 * Spreads the lower 10 bits of the given value, so there are two zero bits between each of them.
+	 **/
+	public static int expandBits10(int v) {
+		v &= 0x3FF;
+		v = (v | (v << 16)) & 0x030000FF;
+		v = (v | (v <<  8)) & 0x0300F00F;
+		v = (v | (v <<  4)) & 0x030C30C3;
+		v = (v | (v <<  2)) & 0x09249249;
+		return v;
+	}
+	
+	/**
+	 * Spreads the lower 21 bits of the given value, so there are two zero bits between each of them.
+	 **/
+	public static long expandBits21(long v) {
+		v &= 0x1FFFFFL;
+		v = (v | (v << 32)) & 0x001F00000000FFFFL;
+		v = (v | (v << 16)) & 0x001F0000FF0000FFL;
+		v = (v | (v <<  8)) & 0x100F00F00F00F00FL;
+		v = (v | (v <<  4)) & 0x10C30C30C30C30C3L;
+		v = (v | (v <<  2)) & 0x1249249249249249L;
+		return v;
+	}
+	
+	/**
+	 * @return The 30 bit Morton code of the given point, with each coordinate in the range [0,1].
+	 **/
+	public static int mortonCode30(float x, float y, float z) {
+		return (expandBits10(quantize(x, 1023)) << 2) | (expandBits10(quantize(y, 1023)) << 1) | expandBits10(quantize(z, 1023));
+	}
+	
+	/**
+	 * @return The 63 bit Morton code of the given point, with each coordinate in the range [0,1].
+	 **/
+	public static long mortonCode63(float x, float y, float z) {
+		return (expandBits21(quantize(x, 0x1FFFFF)) << 2) | (expandBits21(quantize(y, 0x1FFFFF)) << 1) | expandBits21(quantize(z, 0x1FFFFF));
+	}
+	
+	private static int quantize(float v, int max) {
+		int q = (int) (v * max);
+		return q < 0 ? 0 : (q > max ? max : q);
+	}
+	
+	/**
+	 * Builds a new {@link Bvhf}.
+	 * @param primitiveBounds The bounds of the primitives, six floats per primitive: minX, minY, minZ, maxX, maxY, maxZ.
+	 * @param primitiveCount The number of primitives.
+	 * @return The new {@link Bvhf}.
+	 **/
+	public Bvhf build(final float[] primitiveBounds, final int primitiveCount) {
+		final Bvhf bvh = new Bvhf(primitiveCount);
+		final int n = primitiveCount;
+		
+		if(n == 0)
+			return bvh;
+		
+		if(n == 1) {
+			bvh.nodeCount = 1;
+			bvh.nodes[0] = ~0;
+			bvh.nodes[1] = 1;
+			System.arraycopy(primitiveBounds, 0, bvh.bounds, 0, 6);
+			return bvh;
+		}
+		
+		ensureCapacity(n);
+		
+		// Step 1: Morton codes of the centroids
+		final float[] centroidBounds = centroidBounds(primitiveBounds, n);
+		Parallel.forRange(pool, 0, n, grainSize, new Parallel.Body() {
+			public void run(int from, int to) {
+				float minX = centroidBounds[0], minY = centroidBounds[1], minZ = centroidBounds[2];
+				float scaleX = scale(centroidBounds[3] - minX);
+				float scaleY = scale(centroidBounds[4] - minY);
+				float scaleZ = scale(centroidBounds[5] - minZ);
+				
+				for(int i = from; i < to; i++) {
+					int p = i*6;
+					float x = ((primitiveBounds[p  ] + primitiveBounds[p+3]) * 0.5f - minX) * scaleX;
+					float y = ((primitiveBounds[p+1] + primitiveBounds[p+4]) * 0.5f - minY) * scaleY;
+					float z = ((primitiveBounds[p+2] + primitiveBounds[p+5]) * 0.5f - minZ) * scaleZ;
+					keys[i] = mortonBits == 30 ? mortonCode30(x, y, z) : mortonCode63(x, y, z);
+					values[i] = i;
+				}
+			}
+		});
+		
+		// Step 2: sort
+		sort(n, mortonBits == 30 ? 4 : 8);
+		System.arraycopy(values, 0, bvh.primitives, 0, n);
+		
+		// Step 3: the radix tree, inner nodes are 0..n-2, leaf i is ~i
+		Parallel.forRange(pool, 0, n-1, grainSize, new Parallel.Body() {
+			public void run(int from, int to) {
+				for(int i = from; i < to; i++)
+					emitInnerNode(i, n);
+			}
+		});
+		parents[0] = -1;
+		
+		// Step 4: bounds and sizes, bottom-up
+		final AtomicIntegerArray visits = new AtomicIntegerArray(n-1);
+		Parallel.forRange(pool, 0, n, grainSize, new Parallel.Body() {
+			public void run(int from, int to) {
+				for(int i = from; i < to; i++)
+					climb(i, n, primitiveBounds, visits);
+			}
+		});
+		
+		// Step 5: write out, the root is inner node 0
+		bvh.nodeCount = sizes[0];
+		if(n <= grainSize || pool == null) {
+			writeOut(bvh, primitiveBounds, 0, 0);
+		} else {
+			pool.invoke(new WriteOutTask(bvh, primitiveBounds, 0, 0));
+		}
+		
+		return bvh;
+	}
+	
+	private static float scale(float size) {
+		return size > 0 ? 1f / size : 0;
+	}
+	
+	private void ensureCapacity(int n) {
+		if(keys.length < n) {
+			keys = new long[n];
+			keysSwap = new long[n];
+			values = new int[n];
+			valuesSwap = new int[n];
+			left = new int[n];
+			right = new int[n];
+			parents = new int[n*2];
+			rangeFirst = new int[n];
+			rangeCount = new int[n];
+			sizes = new int[n];
+			innerBounds = new float[n*6];
+		}
+	}
+	
+	private float[] centroidBounds(final float[] primitiveBounds, final int n) {
+		final int chunks = Math.max(1, (n + grainSize - 1) / grainSize);
+		final float[] partial = new float[chunks*6];
+		
+		Parallel.forRange(pool, 0, chunks, 1, new Parallel.Body() {
+			public void run(int from, int to) {
+				for(int c = from; c < to; c++) {
+					float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+					float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+					
+					for(int i = c*grainSize, end = Math.min(i+grainSize, n); i < end; i++) {
+						int p = i*6;
+						float x = (primitiveBounds[p  ] + primitiveBounds[p+3]) * 0.5f;
+						float y = (primitiveBounds[p+1] + primitiveBounds[p+4]) * 0.5f;
+						float z = (primitiveBounds[p+2] + primitiveBounds[p+5]) * 0.5f;
+						minX = x < minX ? x : minX;
+						minY = y < minY ? y : minY;
+						minZ = z < minZ ? z : minZ;
+						maxX = x > maxX ? x : maxX;
+						maxY = y > maxY ? y : maxY;
+						maxZ = z > maxZ ? z : maxZ;
+					}
+					
+					partial[c*6  ] = minX; partial[c*6+1] = minY; partial[c*6+2] = minZ;
+					partial[c*6+3] = maxX; partial[c*6+4] = maxY; partial[c*6+5] = maxZ;
+				}
+			}
+		});
+		
+		float[] result = new float[] {
+				Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY,
+				Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY};
+		for(int c = 0; c < chunks; c++) {
+			for(int axis = 0; axis < 3; axis++) {
+				result[axis  ] = Math.min(result[axis  ], partial[c*6+axis  ]);
+				result[axis+3] = Math.max(result[axis+3], partial[c*6+axis+3]);
+			}
+		}
+		return result;
+	}
+	
+	// Parallel least significant digit radix sort of keys/values, 8 bits per pass.
+	private void sort(final int n, int passes) {
+		final int chunks = Math.max(1, Math.min((n + grainSize - 1) / grainSize, 256));
+		final int chunkSize = (n + chunks - 1) / chunks;
+		final int[] histograms = new int[chunks*256];
+		
+		for(int pass = 0; pass < passes; pass++) {
+			final int shift = pass*8;
+			final long[] srcKeys = keys;
+			final int[] srcValues = values;
+			final long[] dstKeys = keysSwap;
+			final int[] dstValues = valuesSwap;
+			
+			Arrays.fill(histograms, 0);
+			Parallel.forRange(pool, 0, chunks, 1, new Parallel.Body() {
+				public void run(int from, int to) {
+					for(int c = from; c < to; c++) {
+						for(int i = c*chunkSize, end = Math.min(i+chunkSize, n); i < end; i++)
+							histograms[c*256 + (int) ((srcKeys[i] >>> shift) & 0xFF)]++;
+					}
+				}
+			});
+			
+			// exclusive prefix sum, digit-major, so equal digits keep the order of their chunks (the sort is stable)
+			int sum = 0;
+			boolean trivial = false;
+			for(int digit = 0; digit < 256; digit++) {
+				int digitTotal = 0;
+				for(int c = 0; c < chunks; c++) {
+					int count = histograms[c*256 + digit];
+					histograms[c*256 + digit] = sum;
+					sum += count;
+					digitTotal += count;
+				}
+				// all keys share this digit, the pass would not change anything
+				if(digitTotal == n)
+					trivial = true;
+			}
+			if(trivial)
+				continue;
+			
+			Parallel.forRange(pool, 0, chunks, 1, new Parallel.Body() {
+				public void run(int from, int to) {
+					for(int c = from; c < to; c++) {
+						for(int i = c*chunkSize, end = Math.min(i+chunkSize, n); i < end; i++) {
+							int slot = histograms[c*256 + (int) ((srcKeys[i] >>> shift) & 0xFF)]++;
+							dstKeys[slot] = srcKeys[i];
+							dstValues[slot] = srcValues[i];
+						}
+					}
+				}
+			});
+			
+			keys = dstKeys;
+			keysSwap = srcKeys;
+			values = dstValues;
+			valuesSwap = srcValues;
+		}
+	}
+	
+	// The length of the common prefix of the codes of the sorted primitives i and j, or -1 if j is out of range.
+	private int delta(int i, int j, int n) {
+		if(j < 0 || j >= n)
+			return -1;
+		long a = keys[i];
+		long b = keys[j];
+		if(a == b)
+			// duplicate codes are told apart by their index
+			return 64 + Integer.numberOfLeadingZeros(i ^ j);
+		return Long.numberOfLeadingZeros(a ^ b);
+	}
+	
+	private void emitInnerNode(int i, int n) {
+		// the direction of the range of this node
+		int d = delta(i, i+1, n) - delta(i, i-1, n) >= 0 ? 1 : -1;
+		int deltaMin = delta(i, i-d, n);
+		
+		// upper bound for the length of the range, then binary search for the other end
+		int lengthMax = 2;
+		while(delta(i, i + lengthMax*d, n) > deltaMin)
+			lengthMax <<= 1;
+		
+		int length = 0;
+		for(int t = lengthMax >>> 1; t >= 1; t >>>= 1) {
+			if(delta(i, i + (length+t)*d, n) > deltaMin)
+				length += t;
+		}
+		int j = i + length*d;
+		
+		// binary search for the split position
+		int deltaNode = delta(i, j, n);
+		int split = 0;
+		int step = length;
+		do {
+			step = (step + 1) >>> 1;
+			if(delta(i, i + (split+step)*d, n) > deltaNode)
+				split += step;
+		} while(step > 1);
+		int gamma = i + split*d + Math.min(d, 0);
+		
+		int first = Math.min(i, j);
+		int last = Math.max(i, j);
+		
+		left[i] = first == gamma ? ~gamma : gamma;
+		right[i] = last == gamma+1 ? ~(gamma+1) : gamma+1;
+		setParent(left[i], i, n);
+		setParent(right[i], i, n);
+		
+		rangeFirst[i] = first;
+		rangeCount[i] = last - first + 1;
+	}
+	
+	// The parents of the inner nodes come first, then the parents of the leaves.
+	private void setParent(int child, int parent, int n) {
+		if(child < 0) {
+			parents[n-1 + ~child] = parent;
+		} else {
+			parents[child] = parent;
+		}
+	}
+	
+	// Walks up from a leaf. The second visitor of a inner node computes its bounds and size, the first one stops.
+	private void climb(int leaf, int n, float[] primitiveBounds, AtomicIntegerArray visits) {
+		int node = parents[n-1 + leaf];
+		
+		while(node >= 0) {
+			// the other child is not done yet, its visitor will continue from here
+			if(visits.getAndIncrement(node) == 0)
+				return;
+			
+			float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+			float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+			
+			for(int side = 0; side < 2; side++) {
+				int child = side == 0 ? left[node] : right[node];
+				float[] src = child < 0 ? primitiveBounds : innerBounds;
+				int o = child < 0 ? values[~child]*6 : child*6;
+				minX = Math.min(minX, src[o  ]); minY = Math.min(minY, src[o+1]); minZ = Math.min(minZ, src[o+2]);
+				maxX = Math.max(maxX, src[o+3]); maxY = Math.max(maxY, src[o+4]); maxZ = Math.max(maxZ, src[o+5]);
+			}
+			
+			innerBounds[node*6  ] = minX;
+			innerBounds[node*6+1] = minY;
+			innerBounds[node*6+2] = minZ;
+			innerBounds[node*6+3] = maxX;
+			innerBounds[node*6+4] = maxY;
+			innerBounds[node*6+5] = maxZ;
+			
+			// small subtrees are collapsed into a single leaf by the write out
+			sizes[node] = rangeCount[node] <= maxLeafSize ? 1 : 1 + outputSize(left[node]) + outputSize(right[node]);
+			
+			node = parents[node];
+		}
+	}
+	
+	// The number of nodes the subtree below the given child takes in the output.
+	private int outputSize(int child) {
+		return child < 0 ? 1 : sizes[child];
+	}
+	
+	// Writes the subtree below the given inner node to the output, in pre-order.
+	private void writeOut(Bvhf bvh, float[] primitiveBounds, int node, int index) {
+		System.arraycopy(innerBounds, node*6, bvh.bounds, index*6, 6);
+		
+		if(rangeCount[node] <= maxLeafSize) {
+			bvh.nodes[index*2  ] = ~rangeFirst[node];
+			bvh.nodes[index*2+1] = rangeCount[node];
+			return;
+		}
+		
+		int l = left[node];
+		int r = right[node];
+		int leftIndex = index + 1;
+		int rightIndex = leftIndex + outputSize(l);
+		bvh.nodes[index*2  ] = leftIndex;
+		bvh.nodes[index*2+1] = rightIndex;
+		
+		writeChild(bvh, primitiveBounds, l, leftIndex);
+		writeChild(bvh, primitiveBounds, r, rightIndex);
+	}
+	
+	private void writeChild(Bvhf bvh, float[] primitiveBounds, int child, int index) {
+		if(child < 0) {
+			// a leaf of the radix tree, 'child' already is the complement of its sorted position
+			System.arraycopy(primitiveBounds, values[~child]*6, bvh.bounds, index*6, 6);
+			bvh.nodes[index*2  ] = child;
+			bvh.nodes[index*2+1] = 1;
+		} else {
+			writeOut(bvh, primitiveBounds, child, index);
+		}
+	}
+	
+	private class WriteOutTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		
+		private final Bvhf bvh;
+		private final float[] primitiveBounds;
+		private final int node;
+		private final int index;
+		
+		WriteOutTask(Bvhf bvh, float[] primitiveBounds, int node, int index) {
+			this.bvh = bvh;
+			this.primitiveBounds = primitiveBounds;
+			this.node = node;
+			this.index = index;
+		}
+		
+		@Override
+		protected void compute() {
+			if(rangeCount[node] <= grainSize) {
+				writeOut(bvh, primitiveBounds, node, index);
+				return;
+			}
+			
+			// same as writeOut, but the two subtrees are written in parallel
+			System.arraycopy(innerBounds, node*6, bvh.bounds, index*6, 6);
+			int l = left[node];
+			int r = right[node];
+			int leftIndex = index + 1;
+			int rightIndex = leftIndex + outputSize(l);
+			bvh.nodes[index*2  ] = leftIndex;
+			bvh.nodes[index*2+1] = rightIndex;
+			
+			if(l < 0 || r < 0) {
+				writeChild(bvh, primitiveBounds, l, leftIndex);
+				writeChild(bvh, primitiveBounds, r, rightIndex);
+			} else {
+				invokeAll(new WriteOutTask(bvh, primitiveBounds, l, leftIndex), new WriteOutTask(bvh, primitiveBounds, r, rightIndex));
+			}
+		}
+	}
+
+}
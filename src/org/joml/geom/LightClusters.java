@@ -0,0 +1,403 @@
+package org.joml.geom;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import org.joml.Matrix4f;
+
+/**
+ * Assigns light volumes to the clusters of a view frustum, for clustered shading on the CPU.
+ *
+ * <br><br>
+ * <b>Usage:</b>
+ * <ol>
+ * <li>{@link #setPerspective(float, float, float, float)} with the projection of the camera, whenever it changes.
+ * <li>{@link #assign(Matrix4f, Spheref[], int)} or {@link #assign(Matrix4f, float[], int)} with the view matrix and the bounding spheres of the lights, once per frame.
+ * <li>Look up the cluster of a view space position with {@link #getCluster(float, float, float)}, and shade it with the lights
+ * {@link #indices}[{@link #getFirst(int)}] to {@link #indices}[{@link #getFirst(int)} + {@link #getCount(int)} - 1].
+ * </ol>
+ * The frustum is split into {@link #tilesX} x {@link #tilesY} tiles on the screen, and into {@link #slices} slices along the view direction.
+ * The slices get exponentially thicker with the distance, so the clusters stay roughly cube shaped.
+ * <br>
+ * View space is the space of the view matrix: The camera looks down -z, and the depth of a point is -z.
+ * <br>
+ * A light is assigned to a cluster if its sphere is not outside of any of the four side planes of the cluster's tile, and overlaps the view space bounds of the cluster.
+ * The side planes cut off the corners of the bounds, which would otherwise pick up many lights that only touch the bounds outside of the frustum.
+ * <br>
+ * The slices are assigned in parallel. The result is a compact list of light indices for every cluster, stored one after another in {@link #indices}.
+ **/
+public class LightClusters {
+	
+	/** The number of tiles on the screen, and the number of depth slices. **/
+	public final int tilesX, tilesY, slices;
+	
+	/**
+	 * The view space bounds of every cluster, six floats per cluster: minX, minY, minZ, maxX, maxY, maxZ.
+	 * Set by {@link #setPerspective(float, float, float, float)}.
+	 **/
+	public final float[] bounds;
+	
+	/** The start of the lights of every cluster in {@link #indices}, followed by the total number of indices. **/
+	public final int[] offsets;
+	/** The indices of the lights of all clusters. Only the first {@link #offsets}[{@link #getClusterCount()}] entries are used. **/
+	public int[] indices = new int[256];
+	
+	// the side planes of the tiles through the eye: x + columnZ[i]*z >= 0 is to the right of column boundary i, scaled by columnScale[i] to a distance
+	private final float[] columnZ, columnScale;
+	private final float[] rowZ, rowScale;
+	// the depth of the near side of every slice, followed by the far depth
+	private final float[] sliceDepths;
+	
+	// the lights in view space, and the range of slices each one overlaps
+	private float[] viewLights = new float[256];
+	private int[] firstSlices = new int[64], lastSlices = new int[64];
+	// the results of every slice: the number of lights per tile, and the light indices sorted by tile
+	private final int[][] sliceCounts;
+	private final int[][] sliceIndices;
+	private final int[] sliceIndexCounts;
+	// the scratch memory of every slice, kept between frames: pairs of tile and light, the columns a light touches, and the start of every tile
+	private final int[][] slicePairs;
+	private final boolean[][] sliceColumns;
+	private final int[][] sliceStarts;
+	private float[] packed;
+	
+	private ForkJoinPool pool = ForkJoinPool.commonPool();
+	
+	/**
+	 * Creates a new {@link LightClusters}. Typical sizes are 16x9 tiles with 24 slices.
+	 * @param tilesX The number of tiles along x.
+	 * @param tilesY The number of tiles along y.
+	 * @param slices The number of depth slices.
+	 **/
+	public LightClusters(int tilesX, int tilesY, int slices) {
+		if(tilesX <= 0 || tilesY <= 0 || slices <= 0)
+			throw new IllegalArgumentException("The cluster grid has to have a positive size: " + tilesX + "x" + tilesY + "x" + slices);
+		
+		this.tilesX = tilesX;
+		this.tilesY = tilesY;
+		this.slices = slices;
+		
+		int clusters = tilesX*tilesY*slices;
+		this.bounds = new float[clusters*6];
+		this.offsets = new int[clusters + 1];
+		
+		this.columnZ = new float[tilesX + 1];
+		this.columnScale = new float[tilesX + 1];
+		this.rowZ = new float[tilesY + 1];
+		this.rowScale = new float[tilesY + 1];
+		this.sliceDepths = new float[slices + 1];
+		
+		this.sliceCounts = new int[slices][tilesX*tilesY];
+		this.sliceIndices = new int[slices][64];
+		this.sliceIndexCounts = new int[slices];
+		this.slicePairs = new int[slices][64];
+		this.sliceColumns = new boolean[slices][tilesX];
+		this.sliceStarts = new int[slices][tilesX*tilesY];
+	}
+	
+	/**
+	 * Sets the pool that assigns the slices. If null, the slices are assigned by the calling thread.
+	 * @return This {@link LightClusters}.
+	 **/
+	public LightClusters setPool(ForkJoinPool pool) {
+		this.pool = pool;
+		return this;
+	}
+	
+	/**
+	 * Sets the projection of the camera, and computes the bounds of the clusters.
+	 * @param fovY The vertical field of view, in radians.
+	 * @param aspect The width of the screen divided by its height.
+	 * @param near The distance of the near plane, greater than zero.
+	 * @param far The distance of the far plane, greater than near.
+	 * @return This {@link LightClusters}.
+	 **/
+	public LightClusters setPerspective(float fovY, float aspect, float near, float far) {
+		if(!(fovY > 0 && fovY < Math.PI) || !(aspect > 0) || !(near > 0) || !(far > near))
+			throw new IllegalArgumentException("Invalid perspective: fovY " + fovY + ", aspect " + aspect + ", near " + near + ", far " + far);
+		
+		float tanY = (float) Math.tan(fovY * 0.5f), tanX = tanY * aspect;
+		// boundary i of the tiles is the plane x = slope*depth = -slope*z
+		for(int i = 0; i <= tilesX; i++) {
+			float slope = tanX * (2f*i/tilesX - 1);
+			columnZ[i] = slope;
+			columnScale[i] = (float) (1 / Math.sqrt(1 + slope*slope));
+		}
+		for(int i = 0; i <= tilesY; i++) {
+			float slope = tanY * (2f*i/tilesY - 1);
+			rowZ[i] = slope;
+			rowScale[i] = (float) (1 / Math.sqrt(1 + slope*slope));
+		}
+		
+		double ratio = (double) far / near;
+		for(int s = 0; s <= slices; s++)
+			sliceDepths[s] = (float) (near * Math.pow(ratio, (double) s / slices));
+		sliceDepths[0] = near;
+		sliceDepths[slices] = far;
+		
+		for(int s = 0; s < slices; s++) {
+			float depthNear = sliceDepths[s], depthFar = sliceDepths[s+1];
+			for(int y = 0; y < tilesY; y++) {
+				for(int x = 0; x < tilesX; x++) {
+					int o = getCluster(x, y, s)*6;
+					// the tile boundaries are lines through the eye, so the extremes are at the near or the far depth of the slice
+					float left = columnZ[x], right = columnZ[x+1], bottom = rowZ[y], top = rowZ[y+1];
+					bounds[o  ] = Math.min(left * depthNear, left * depthFar);
+					bounds[o+1] = Math.min(bottom * depthNear, bottom * depthFar);
+					bounds[o+2] = -depthFar;
+					bounds[o+3] = Math.max(right * depthNear, right * depthFar);
+					bounds[o+4] = Math.max(top * depthNear, top * depthFar);
+					bounds[o+5] = -depthNear;
+				}
+			}
+		}
+		Arrays.fill(offsets, 0);
+		return this;
+	}
+	
+	/**
+	 * @return The total number of clusters.
+	 **/
+	public int getClusterCount() {
+		return tilesX*tilesY*slices;
+	}
+	
+	/**
+	 * @return The index of the cluster.
+	 **/
+	public int getCluster(int x, int y, int slice) {
+		return (slice*tilesY + y)*tilesX + x;
+	}
+	
+	/**
+	 * @return The index of the cluster that contains the view space point, or -1 if the point is outside of the frustum.
+	 **/
+	public int getCluster(float x, float y, float z) {
+		float depth = -z;
+		int slice = getSlice(depth);
+		if(slice < 0)
+			return -1;
+		
+		int tileX = (int) Math.floor((x / (depth * columnZ[tilesX]) + 1) * 0.5f * tilesX);
+		int tileY = (int) Math.floor((y / (depth * rowZ[tilesY]) + 1) * 0.5f * tilesY);
+		if(tileX < 0 || tileX >= tilesX || tileY < 0 || tileY >= tilesY)
+			return -1;
+		return getCluster(tileX, tileY, slice);
+	}
+	
+	/**
+	 * @return The slice that contains the view space depth, or -1 if the depth is outside of [near,far).
+	 **/
+	public int getSlice(float depth) {
+		if(!(depth >= sliceDepths[0] && depth < sliceDepths[slices]))
+			return -1;
+		
+		int slice = (int) (Math.log(depth / sliceDepths[0]) / Math.log(sliceDepths[slices] / sliceDepths[0]) * slices);
+		// the logarithm is rounded, the depths of the slices decide
+		slice = Math.max(0, Math.min(slices - 1, slice));
+		while(slice > 0 && depth < sliceDepths[slice])
+			slice--;
+		while(slice < slices - 1 && depth >= sliceDepths[slice+1])
+			slice++;
+		return slice;
+	}
+	
+	/**
+	 * @return The index of the first light of the cluster in {@link #indices}.
+	 **/
+	public int getFirst(int cluster) {
+		return offsets[cluster];
+	}
+	
+	/**
+	 * @return The number of lights of the cluster.
+	 **/
+	public int getCount(int cluster) {
+		return offsets[cluster+1] - offsets[cluster];
+	}
+	
+	/**
+	 * Tests a view space sphere against a cluster, the same way {@link #assign(Matrix4f, float[], int)} does.
+	 * @return True, if the sphere is assigned to the cluster.
+	 **/
+	public boolean intersects(int cluster, float x, float y, float z, float radius) {
+		int tile = cluster % (tilesX*tilesY);
+		return insideColumn(tile % tilesX, x, z, radius) && insideRow(tile / tilesX, y, z, radius) && overlapsBounds(cluster, x, y, z, radius);
+	}
+	
+	/**
+	 * Assigns the lights to the clusters.
+	 * @param view The view matrix, from world space to view space.
+	 * @param lights The bounding spheres of the lights, in world space.
+	 * @param count The number of lights.
+	 * @return The total number of light indices of all clusters.
+	 **/
+	public int assign(Matrix4f view, Spheref[] lights, int count) {
+		if(packed == null || packed.length < count*4)
+			packed = new float[Math.max(count*4, 64)];
+		for(int i = 0; i < count; i++) {
+			Spheref light = lights[i];
+			packed[i*4  ] = light.centerX;
+			packed[i*4+1] = light.centerY;
+			packed[i*4+2] = light.centerZ;
+			packed[i*4+3] = light.radius;
+		}
+		return assign(view, packed, count);
+	}
+	
+	/**
+	 * Assigns the lights to the clusters. The lights of every cluster are stored in increasing order.
+	 * @param view The view matrix, from world space to view space. If it scales, the radii are scaled by its largest scale.
+	 * @param lights The bounding spheres of the lights, in world space, four floats per sphere: x, y, z, radius.
+	 * @param count The number of lights.
+	 * @return The total number of light indices of all clusters.
+	 **/
+	public int assign(Matrix4f view, float[] lights, int count) {
+		if(viewLights.length < count*4) {
+			viewLights = new float[Math.max(count*4, viewLights.length*2)];
+			firstSlices = new int[viewLights.length/4];
+			lastSlices = new int[viewLights.length/4];
+		}
+		transformLights(view, lights, count);
+		
+		final int lightCount = count;
+		Parallel.forRange(pool, 0, slices, 1, new Parallel.Body() {
+			public void run(int from, int to) {
+				for(int s = from; s < to; s++)
+					assignSlice(s, lightCount);
+			}
+		});
+		
+		// the slices are stored one after another, and every slice is already sorted by tile
+		int tiles = tilesX*tilesY;
+		int total = 0;
+		for(int s = 0; s < slices; s++) {
+			int[] counts = sliceCounts[s];
+			for(int t = 0; t < tiles; t++) {
+				offsets[s*tiles + t] = total;
+				total += counts[t];
+			}
+		}
+		offsets[slices*tiles] = total;
+		
+		if(indices.length < total)
+			indices = new int[Math.max(total, indices.length*2)];
+		for(int s = 0; s < slices; s++)
+			System.arraycopy(sliceIndices[s], 0, indices, offsets[s*tiles], sliceIndexCounts[s]);
+		return total;
+	}
+	
+	private void transformLights(Matrix4f m, float[] lights, int count) {
+		// the radius grows with the largest scale of the matrix
+		float scale = (float) Math.sqrt(Math.max(m.m00*m.m00 + m.m01*m.m01 + m.m02*m.m02,
+				Math.max(m.m10*m.m10 + m.m11*m.m11 + m.m12*m.m12, m.m20*m.m20 + m.m21*m.m21 + m.m22*m.m22)));
+		float nearDepth = sliceDepths[0], farDepth = sliceDepths[slices];
+		
+		for(int i = 0; i < count; i++) {
+			int o = i*4;
+			float x = lights[o], y = lights[o+1], z = lights[o+2];
+			float viewX = m.m00*x + m.m10*y + m.m20*z + m.m30;
+			float viewY = m.m01*x + m.m11*y + m.m21*z + m.m31;
+			float viewZ = m.m02*x + m.m12*y + m.m22*z + m.m32;
+			float radius = lights[o+3] * scale;
+			viewLights[o  ] = viewX;
+			viewLights[o+1] = viewY;
+			viewLights[o+2] = viewZ;
+			viewLights[o+3] = radius;
+			
+			float minDepth = -viewZ - radius, maxDepth = -viewZ + radius;
+			if(!(radius >= 0) || !(maxDepth >= nearDepth) || !(minDepth <= farDepth)) {
+				firstSlices[i] = 0;
+				lastSlices[i] = -1;
+				continue;
+			}
+			// one more slice on both sides, the bounds of the clusters decide
+			firstSlices[i] = Math.max(0, sliceOf(minDepth) - 1);
+			lastSlices[i] = Math.min(slices - 1, sliceOf(maxDepth) + 1);
+		}
+	}
+	
+	private int sliceOf(float depth) {
+		if(depth <= sliceDepths[0])
+			return 0;
+		if(depth >= sliceDepths[slices])
+			return slices - 1;
+		return getSlice(depth);
+	}
+	
+	private void assignSlice(int slice, int count) {
+		int tiles = tilesX*tilesY;
+		int[] counts = sliceCounts[slice];
+		Arrays.fill(counts, 0);
+		
+		// the lights of the slice as pairs of tile and light, in the order of the lights
+		int[] pairs = slicePairs[slice];
+		int pairCount = 0;
+		boolean[] columns = sliceColumns[slice];
+		float[] v = viewLights;
+		for(int i = 0; i < count; i++) {
+			if(slice < firstSlices[i] || slice > lastSlices[i])
+				continue;
+			
+			int o = i*4;
+			float x = v[o], y = v[o+1], z = v[o+2], r = v[o+3];
+			boolean anyColumn = false;
+			for(int tileX = 0; tileX < tilesX; tileX++)
+				anyColumn |= columns[tileX] = insideColumn(tileX, x, z, r);
+			if(!anyColumn)
+				continue;
+			
+			for(int tileY = 0; tileY < tilesY; tileY++) {
+				if(!insideRow(tileY, y, z, r))
+					continue;
+				
+				for(int tileX = 0; tileX < tilesX; tileX++) {
+					int tile = tileY*tilesX + tileX;
+					if(!columns[tileX] || !overlapsBounds(slice*tiles + tile, x, y, z, r))
+						continue;
+					
+					if(pairCount + 2 > pairs.length)
+						slicePairs[slice] = pairs = Arrays.copyOf(pairs, pairs.length*2);
+					pairs[pairCount++] = tile;
+					pairs[pairCount++] = i;
+					counts[tile]++;
+				}
+			}
+		}
+		
+		// sort the lights by tile, the order of the lights is kept
+		int lightCount = pairCount / 2;
+		int[] store = sliceIndices[slice];
+		if(store.length < lightCount)
+			sliceIndices[slice] = store = new int[Math.max(lightCount, store.length*2)];
+		int[] starts = sliceStarts[slice];
+		starts[0] = 0;
+		for(int t = 1; t < tiles; t++)
+			starts[t] = starts[t-1] + counts[t-1];
+		for(int p = 0; p < pairCount; p += 2)
+			store[starts[pairs[p]]++] = pairs[p+1];
+		sliceIndexCounts[slice] = lightCount;
+	}
+	
+	// the sphere is not outside of the left and the right side plane of the column
+	private boolean insideColumn(int tileX, float x, float z, float r) {
+		float left = (x + columnZ[tileX] * z) * columnScale[tileX];
+		float right = (x + columnZ[tileX+1] * z) * columnScale[tileX+1];
+		return left >= -r && right <= r;
+	}
+	
+	private boolean insideRow(int tileY, float y, float z, float r) {
+		float bottom = (y + rowZ[tileY] * z) * rowScale[tileY];
+		float top = (y + rowZ[tileY+1] * z) * rowScale[tileY+1];
+		return bottom >= -r && top <= r;
+	}
+	
+	private boolean overlapsBounds(int cluster, float x, float y, float z, float r) {
+		int o = cluster*6;
+		float dX = x < bounds[o  ] ? bounds[o  ] - x : (x > bounds[o+3] ? x - bounds[o+3] : 0);
+		float dY = y < bounds[o+1] ? bounds[o+1] - y : (y > bounds[o+4] ? y - bounds[o+4] : 0);
+		float dZ = z < bounds[o+2] ? bounds[o+2] - z : (z > bounds[o+5] ? z - bounds[o+5] : 0);
+		return dX*dX + dY*dY + dZ*dZ <= r*r;
+	}
+
+}
@@ -0,0 +1,442 @@
+package org.joml.geom;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.joml.FrustumCuller;
+
+/**
+ * A read-only {@link Bvhf} (optionally together with a {@link TriangleMeshf}) that is queried directly from a buffer,
+ * usually a file mapped into memory with {@link #map(Path)}. Loading a prebuilt hierarchy is therefore just a 'mmap'.
+ *
+ * <br><br>
+ * <b>File format:</b> All values are 32 bit and little endian.
+ * <ul>
+ * <li>Header (32 bytes): magic ({@link #MAGIC}), version ({@link #VERSION}), flags, nodeCount, primitiveCount, vertexCount, triangleCount, reserved.
+ * <li>The node bounds, six floats per node (see {@link Bvhf#bounds}).
+ * <li>The node links, two ints per node (see {@link Bvhf#nodes}).
+ * <li>The primitive indices (see {@link Bvhf#primitives}).
+ * <li>If the flag {@link #FLAG_MESH} is set: The vertices (three floats each) and the triangle indices (three ints each) of the mesh.
+ * </ul>
+ * All queries only use absolute reads, so a {@link MappedBvhf} can be queried by many threads at once.
+ * <br>
+ * The hierarchy is mapped as a single buffer, so it can be at most 2 GB ({@link Integer#MAX_VALUE} bytes) large.
+ * {@link #write(Path, Bvhf, TriangleMeshf)} refuses larger hierarchies, and {@link #map(Path)} refuses files whose header describes a larger one.
+ **/
+public class MappedBvhf {
+	
+	/** The magic number at the start of every file: 'JGBV'. **/
+	public static final int MAGIC = 0x4A474256;
+	/** The current version of the file format. **/
+	public static final int VERSION = 1;
+	/** Set if the file contains a triangle mesh. **/
+	public static final int FLAG_MESH = 1;
+	/** The size of the header in bytes. **/
+	public static final int HEADER_SIZE = 32;
+	
+	/** The node bounds, six floats per node. **/
+	public final FloatBuffer bounds;
+	/** The node links, two ints per node. **/
+	public final IntBuffer nodes;
+	/** The primitive indices referenced by the leaves. **/
+	public final IntBuffer primitives;
+	/** The mesh vertices, three floats per vertex, or null if there is no mesh. **/
+	public final FloatBuffer vertices;
+	/** The mesh triangles, three ints per triangle, or null if there is no mesh. **/
+	public final IntBuffer indices;
+	
+	public final int nodeCount;
+	public final int primitiveCount;
+	public final int vertexCount;
+	public final int triangleCount;
+	
+	/**
+	 * Wraps the given buffer, which must contain a hierarchy in the format described above.
+	 * @param buffer The buffer, with the header starting at its current position.
+	 * @throws IOException If the buffer does not contain a supported hierarchy, or is shorter than its header says.
+	 **/
+	public MappedBvhf(ByteBuffer buffer) throws IOException {
+		ByteBuffer header = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+		
+		long size = checkHeader(header);
+		if(size > header.remaining())
+			throw truncated(size, header.remaining());
+		
+		// the counts are not negative and all sections fit into the buffer, so the offsets below can not overflow
+		int flags = header.getInt(8);
+		nodeCount = header.getInt(12);
+		primitiveCount = header.getInt(16);
+		vertexCount = header.getInt(20);
+		triangleCount = header.getInt(24);
+		
+		int offset = HEADER_SIZE;
+		bounds = section(header, offset, nodeCount*6).asFloatBuffer();
+		offset += nodeCount*6*4;
+		nodes = section(header, offset, nodeCount*2).asIntBuffer();
+		offset += nodeCount*2*4;
+		primitives = section(header, offset, primitiveCount).asIntBuffer();
+		offset += primitiveCount*4;
+		
+		if((flags & FLAG_MESH) != 0) {
+			vertices = section(header, offset, vertexCount*3).asFloatBuffer();
+			offset += vertexCount*3*4;
+			indices = section(header, offset, triangleCount*3).asIntBuffer();
+		} else {
+			vertices = null;
+			indices = null;
+		}
+	}
+	
+	// Checks the header at the start of the given buffer, and returns the size of the whole hierarchy in bytes.
+	private static long checkHeader(ByteBuffer header) throws IOException {
+		if(header.remaining() < HEADER_SIZE || header.getInt(0) != MAGIC)
+			throw new IOException("not a hierarchy file");
+		if(header.getInt(4) != VERSION)
+			throw new IOException("unsupported hierarchy file version: " + header.getInt(4));
+		
+		boolean mesh = (header.getInt(8) & FLAG_MESH) != 0;
+		int nodeCount = header.getInt(12);
+		int primitiveCount = header.getInt(16);
+		int vertexCount = header.getInt(20);
+		int triangleCount = header.getInt(24);
+		if(nodeCount < 0 || primitiveCount < 0 || mesh && (vertexCount < 0 || triangleCount < 0))
+			throw new IOException("corrupt hierarchy file: negative count in header");
+		
+		return size(nodeCount, primitiveCount, mesh ? vertexCount : 0, mesh ? triangleCount : 0);
+	}
+	
+	// The size of a file with the given counts in bytes.
+	private static long size(int nodeCount, int primitiveCount, int vertexCount, int triangleCount) {
+		return HEADER_SIZE + 4L * (nodeCount*6L + nodeCount*2L + primitiveCount + vertexCount*3L + triangleCount*3L);
+	}
+	
+	private static IOException truncated(long size, long available) {
+		return new IOException("truncated hierarchy file: the header describes " + size + " bytes, but there are only " + available);
+	}
+	
+	private static ByteBuffer section(ByteBuffer buffer, int offset, int count) {
+		ByteBuffer section = buffer.duplicate();
+		section.position(offset);
+		section.limit(offset + count*4);
+		// 'slice' resets the byte order, so it has to be set again
+		return section.slice().order(ByteOrder.LITTLE_ENDIAN);
+	}
+	
+	/**
+	 * Maps the given file into memory and wraps it.
+	 * Only the hierarchy described by the header is mapped, data after it is ignored.
+	 * @param path The file.
+	 * @return The new {@link MappedBvhf}.
+	 * @throws IOException If the file can not be mapped, does not contain a supported hierarchy, is shorter than its header says, or the hierarchy is larger than 2 GB.
+	 **/
+	public static MappedBvhf map(Path path) throws IOException {
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			while(header.hasRemaining()) {
+				if(channel.read(header, header.position()) < 0)
+					break;
+			}
+			header.flip();
+			
+			long size = checkHeader(header);
+			if(size > channel.size())
+				throw truncated(size, channel.size());
+			if(size > Integer.MAX_VALUE)
+				throw new IOException("hierarchy file too large: the header describes " + size + " bytes, but at most 2 GB can be mapped");
+			
+			// the mapping stays valid after the channel is closed
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			return new MappedBvhf(buffer);
+		} finally {
+			channel.close();
+		}
+	}
+	
+	/**
+	 * Writes the given hierarchy (and mesh) to the given file.
+	 * @param path The file.
+	 * @param bvh The hierarchy.
+	 * @param mesh The mesh, may be null.
+	 * @throws IOException If the file can not be written.
+	 * @throws IllegalArgumentException If the file would be larger than 2 GB, and could not be mapped.
+	 **/
+	public static void write(Path path, Bvhf bvh, TriangleMeshf mesh) throws IOException {
+		long size = size(bvh.nodeCount, bvh.primitiveCount, mesh != null ? mesh.vertexCount : 0, mesh != null ? mesh.triangleCount : 0);
+		if(size > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("hierarchy too large to be mapped: " + size + " bytes, at most 2 GB are supported");
+		
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+			
+			buffer.putInt(MAGIC);
+			buffer.putInt(VERSION);
+			buffer.putInt(mesh != null ? FLAG_MESH : 0);
+			buffer.putInt(bvh.nodeCount);
+			buffer.putInt(bvh.primitiveCount);
+			buffer.putInt(mesh != null ? mesh.vertexCount : 0);
+			buffer.putInt(mesh != null ? mesh.triangleCount : 0);
+			buffer.putInt(0);
+			
+			writeFloats(channel, buffer, bvh.bounds, bvh.nodeCount*6);
+			writeInts(channel, buffer, bvh.nodes, bvh.nodeCount*2);
+			writeInts(channel, buffer, bvh.primitives, bvh.primitiveCount);
+			
+			if(mesh != null) {
+				writeFloats(channel, buffer, mesh.vertices, mesh.vertexCount*3);
+				writeInts(channel, buffer, mesh.indices, mesh.triangleCount*3);
+			}
+			
+			flush(channel, buffer);
+		} finally {
+			channel.close();
+		}
+	}
+	
+	private static void writeFloats(FileChannel channel, ByteBuffer buffer, float[] values, int count) throws IOException {
+		for(int i = 0; i < count; i++) {
+			if(buffer.remaining() < 4)
+				flush(channel, buffer);
+			buffer.putFloat(values[i]);
+		}
+	}
+	
+	private static void writeInts(FileChannel channel, ByteBuffer buffer, int[] values, int count) throws IOException {
+		for(int i = 0; i < count; i++) {
+			if(buffer.remaining() < 4)
+				flush(channel, buffer);
+			buffer.putInt(values[i]);
+		}
+	}
+	
+	private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while(buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+	
+	/**
+	 * Tests a ray against a triangle of the mapped mesh.
+	 * @param triangle The triangle.
+	 * @param ray The ray.
+	 * @return The distance to the 'hit point', or positive infinity if there is no hit.
+	 * @throws IllegalStateException If the file has no mesh.
+	 **/
+	public float intersectTriangle(int triangle, Rayf ray) {
+		if(indices == null)
+			throw new IllegalStateException("no mesh mapped");
+		
+		int a = indices.get(triangle*3  )*3;
+		int b = indices.get(triangle*3+1)*3;
+		int c = indices.get(triangle*3+2)*3;
+		return Intersections.intersectRayWithTriangle(ray,
+				vertices.get(a), vertices.get(a+1), vertices.get(a+2),
+				vertices.get(b), vertices.get(b+1), vertices.get(b+2),
+				vertices.get(c), vertices.get(c+1), vertices.get(c+2));
+	}
+	
+	/**
+	 * Finds the nearest triangle of the mapped mesh hit by the given ray.
+	 * @param ray The ray.
+	 * @param primitiveStore If not null, the index of the hit triangle (or -1) is stored at index 0.
+	 * @return The distance to the nearest 'hit point', or positive infinity if there is no hit.
+	 * @throws IllegalStateException If the file has no mesh.
+	 **/
+	public float intersectRay(Rayf ray, int[] primitiveStore) {
+		return intersectRay(ray, null, primitiveStore);
+	}
+	
+	/**
+	 * Finds the nearest primitive hit by the given ray.
+	 * @param ray The ray.
+	 * @param intersector The ray test for a single primitive, or null to test against the triangles of the mapped mesh.
+	 * @param primitiveStore If not null, the index of the hit primitive (or -1) is stored at index 0.
+	 * @return The distance to the nearest 'hit point', or positive infinity if there is no hit.
+	 * @throws IllegalStateException If the intersector is null and the file has no mesh.
+	 **/
+	public float intersectRay(Rayf ray, PrimitiveIntersector intersector, int[] primitiveStore) {
+		if(intersector == null && indices == null)
+			throw new IllegalStateException("no mesh mapped");
+		
+		long startTime = GeometryMetrics.ENABLED ? GeometryMetrics.startQuery() : 0;
+		int visited = 0;
+		float closest = Float.POSITIVE_INFINITY;
+		int closestPrimitive = -1;
+		
+		if(nodeCount > 0) {
+			float orgX = ray.originX;
+			float orgY = ray.originY;
+			float orgZ = ray.originZ;
+			float invDirX = 1f / ray.directionX;
+			float invDirY = 1f / ray.directionY;
+			float invDirZ = 1f / ray.directionZ;
+			
+			TraversalStack traversal = TraversalStack.acquire();
+			try {
+				int[] stack = traversal.nodes;
+				float[] stackT = traversal.distances;
+				int sp = 0;
+				
+				float t = intersectRayWithNode(0, orgX, orgY, orgZ, invDirX, invDirY, invDirZ);
+				if(t < closest) {
+					stack[sp] = 0;
+					stackT[sp++] = t;
+				}
+				
+				while(sp > 0) {
+					int node = stack[--sp];
+					
+					if(stackT[sp] >= closest)
+						continue;
+					
+					visited++;
+					int a = nodes.get(node*2);
+					int b = nodes.get(node*2+1);
+					
+					if(a < 0) {
+						for(int i = ~a, end = ~a+b; i < end; i++) {
+							int primitive = primitives.get(i);
+							float tp = intersector != null ? intersector.intersectRay(primitive, ray) : intersectTriangle(primitive, ray);
+							if(tp < closest) {
+								closest = tp;
+								closestPrimitive = primitive;
+							}
+						}
+						continue;
+					}
+					
+					if(sp + 2 > stack.length) {
+						traversal.grow();
+						stack = traversal.nodes;
+						stackT = traversal.distances;
+					}
+					
+					float ta = intersectRayWithNode(a, orgX, orgY, orgZ, invDirX, invDirY, invDirZ);
+					float tb = intersectRayWithNode(b, orgX, orgY, orgZ, invDirX, invDirY, invDirZ);
+					
+					if(ta > tb) {
+						int swap = a; a = b; b = swap;
+						float swapT = ta; ta = tb; tb = swapT;
+					}
+					if(tb < closest) {
+						stack[sp] = b;
+						stackT[sp++] = tb;
+					}
+					if(ta < closest) {
+						stack[sp] = a;
+						stackT[sp++] = ta;
+					}
+				}
+			} finally {
+				traversal.release();
+			}
+		}
+		
+		if(primitiveStore != null)
+			primitiveStore[0] = closestPrimitive;
+		
+		if(GeometryMetrics.ENABLED) GeometryMetrics.countQuery(GeometryMetrics.QUERY_RAY, startTime, visited);
+		return closest;
+	}
+	
+	private float intersectRayWithNode(int node, float orgX, float orgY, float orgZ, float invDirX, float invDirY, float invDirZ) {
+		int b = node*6;
+		return Intersections.intersectRayWithBox(orgX, orgY, orgZ, invDirX, invDirY, invDirZ,
+				bounds.get(b), bounds.get(b+1), bounds.get(b+2), bounds.get(b+3), bounds.get(b+4), bounds.get(b+5));
+	}
+	
+	/**
+	 * Visits all primitives whose bounds overlap the given {@link Aabbf}.
+	 * @return False, if the visitor stopped the query. True if not.
+	 **/
+	public boolean queryAabb(Aabbf aabb, PrimitiveVisitor visitor) {
+		return queryBox(
+				aabb.originX - aabb.extentX, aabb.originY - aabb.extentY, aabb.originZ - aabb.extentZ,
+				aabb.originX + aabb.extentX, aabb.originY + aabb.extentY, aabb.originZ + aabb.extentZ,
+				visitor);
+	}
+	
+	/**
+	 * Visits all primitives whose bounds overlap the given box.
+	 * @return False, if the visitor stopped the query. True if not.
+	 **/
+	public boolean queryBox(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, PrimitiveVisitor visitor) {
+		return query(minX, minY, minZ, maxX, maxY, maxZ, null, visitor);
+	}
+	
+	/**
+	 * Visits all primitives whose bounds are inside or intersect the given frustum.
+	 * @return False, if the visitor stopped the query. True if not.
+	 **/
+	public boolean queryFrustum(FrustumCuller culler, PrimitiveVisitor visitor) {
+		return query(0, 0, 0, 0, 0, 0, culler, visitor);
+	}
+	
+	private boolean query(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, FrustumCuller culler, PrimitiveVisitor visitor) {
+		if(nodeCount == 0)
+			return true;
+		
+		int query = culler != null ? GeometryMetrics.QUERY_FRUSTUM : GeometryMetrics.QUERY_BOX;
+		long startTime = GeometryMetrics.ENABLED ? GeometryMetrics.startQuery() : 0;
+		int visited = 0;
+		TraversalStack traversal = TraversalStack.acquire();
+		try {
+			int[] stack = traversal.nodes;
+			int sp = 0;
+			stack[sp++] = 0;
+			
+			while(sp > 0) {
+				int node = stack[--sp];
+				int b = node*6;
+				visited++;
+				
+				if(culler != null) {
+					if(culler.isAabInsideFrustum(bounds.get(b), bounds.get(b+1), bounds.get(b+2), bounds.get(b+3), bounds.get(b+4), bounds.get(b+5)) != -1)
+						continue;
+				} else {
+					if(bounds.get(b  ) > maxX || bounds.get(b+3) < minX) continue;
+					if(bounds.get(b+1) > maxY || bounds.get(b+4) < minY) continue;
+					if(bounds.get(b+2) > maxZ || bounds.get(b+5) < minZ) continue;
+				}
+				
+				int l = nodes.get(node*2);
+				int r = nodes.get(node*2+1);
+				
+				if(l < 0) {
+					for(int i = ~l, end = ~l+r; i < end; i++) {
+						if(!visitor.visit(primitives.get(i)))
+							return endQuery(query, startTime, visited, false);
+					}
+					continue;
+				}
+				
+				if(sp + 2 > stack.length) {
+					traversal.grow();
+					stack = traversal.nodes;
+				}
+				
+				stack[sp++] = r;
+				stack[sp++] = l;
+			}
+		} finally {
+			traversal.release();
+		}
+		
+		return endQuery(query, startTime, visited, true);
+	}
+	
+	private static boolean endQuery(int query, long startTime, int visited, boolean result) {
+		if(GeometryMetrics.ENABLED) GeometryMetrics.countQuery(query, startTime, visited);
+		return result;
+	}
+
+}
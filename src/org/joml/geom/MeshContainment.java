@@ -0,0 +1,207 @@
+package org.joml.geom;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Tests if points are inside of a closed {@link TriangleMeshf}, using a {@link Bvhf} over its triangles.
+ *
+ * <br><br>
+ * The test counts the crossings of the surface along a ray from the point in +x direction, signed by the side of the triangle that is crossed:
+ * The sum is the winding number of the point, which is non-zero inside of the mesh. Since the ray is parallel to the x axis,
+ * the hierarchy is pruned with a simple 2D test, and the triangles are tested in the yz plane.
+ * <br>
+ * Rays that pass exactly through an edge or a vertex are the weak spot of ray casting. Here the triangles are tested with edge functions that
+ * give exactly the opposite value for both triangles of a shared edge, and points on an edge belong to only one side of the edge (a 'top-left' rule, as in rasterizers).
+ * So every crossing of a closed mesh is counted exactly once, and no ray has to be cast again.
+ * <br>
+ * Batches of points are classified in parallel. Consecutive points of a batch that lie on the same line parallel to the x axis
+ * (e.g. the rows of a sampling grid) take a fast path: Only the crossings between the two points are counted, not those of the whole ray.
+ * <br>
+ * The results are undefined for points exactly on the surface, and for meshes that are not closed.
+ **/
+public class MeshContainment {
+	
+	// the number of points per parallel task
+	private static final int GRAIN_SIZE = 1024;
+	
+	private final TriangleMeshf mesh;
+	private final Bvhf bvh;
+	private ForkJoinPool pool = ForkJoinPool.commonPool();
+	
+	/**
+	 * @param mesh The closed mesh.
+	 * @param bvh The hierarchy over the triangles of the mesh, see {@link TriangleMeshf#buildBvh(int)}.
+	 **/
+	public MeshContainment(TriangleMeshf mesh, Bvhf bvh) {
+		this.mesh = mesh;
+		this.bvh = bvh;
+	}
+	
+	/**
+	 * Sets the pool that classifies the batches. If null, the batches are classified by the calling thread.
+	 * @return This {@link MeshContainment}.
+	 **/
+	public MeshContainment setPool(ForkJoinPool pool) {
+		this.pool = pool;
+		return this;
+	}
+	
+	/**
+	 * @return True, if the point is inside of the mesh.
+	 **/
+	public boolean isInside(float x, float y, float z) {
+		return getWindingNumber(x, y, z) != 0;
+	}
+	
+	/**
+	 * @return The winding number of the point: Zero outside of the mesh, and +1 or -1 inside (depending on the orientation of the triangles).
+	 **/
+	public int getWindingNumber(float x, float y, float z) {
+		return crossings(y, z, x, Float.POSITIVE_INFINITY);
+	}
+	
+	/**
+	 * Classifies a batch of points.
+	 * @param points The points, three floats per point.
+	 * @param count The number of points.
+	 * @param store The array to store the results in, true for the points inside of the mesh.
+	 * @return The store array.
+	 **/
+	public boolean[] classify(final float[] points, int count, final boolean[] store) {
+		Parallel.forRange(pool, 0, count, GRAIN_SIZE, new Parallel.Body() {
+			public void run(int from, int to) {
+				classify(points, from, to, store);
+			}
+		});
+		return store;
+	}
+	
+	/**
+	 * Counts the points of a batch that are inside of the mesh, e.g. to estimate the volume of the mesh from random samples.
+	 * @param points The points, three floats per point.
+	 * @param count The number of points.
+	 * @return The number of points inside of the mesh.
+	 **/
+	public int countInside(float[] points, int count) {
+		boolean[] inside = classify(points, count, new boolean[count]);
+		int sum = 0;
+		for(int i = 0; i < count; i++) {
+			if(inside[i])
+				sum++;
+		}
+		return sum;
+	}
+	
+	private void classify(float[] points, int from, int to, boolean[] store) {
+		float lastX = 0, lastY = Float.NaN, lastZ = Float.NaN;
+		int winding = 0;
+		for(int i = from; i < to; i++) {
+			float x = points[i*3], y = points[i*3+1], z = points[i*3+2];
+			if(y == lastY && z == lastZ) {
+				// on the ray of the last point: only count the crossings in between
+				if(x > lastX) {
+					winding -= crossings(y, z, lastX, x);
+				} else if(x < lastX) {
+					winding += crossings(y, z, x, lastX);
+				}
+			} else {
+				winding = crossings(y, z, x, Float.POSITIVE_INFINITY);
+			}
+			
+			store[i] = winding != 0;
+			lastX = x;
+			lastY = y;
+			lastZ = z;
+		}
+	}
+	
+	// The signed crossings of the surface with the line through (y,z) parallel to the x axis, in the range fromX < x <= toX.
+	private int crossings(float y, float z, float fromX, float toX) {
+		if(bvh.nodeCount == 0)
+			return 0;
+		
+		float[] bounds = bvh.bounds;
+		int[] nodes = bvh.nodes;
+		int sum = 0;
+		TraversalStack traversal = TraversalStack.acquire();
+		try {
+			int[] stack = traversal.nodes;
+			int sp = 0;
+			stack[sp++] = 0;
+			
+			while(sp > 0) {
+				int node = stack[--sp];
+				int b = node*6;
+				
+				if(bounds[b+1] > y || bounds[b+4] < y) continue;
+				if(bounds[b+2] > z || bounds[b+5] < z) continue;
+				if(bounds[b+3] <= fromX || bounds[b] > toX) continue;
+				
+				int l = nodes[node*2];
+				int r = nodes[node*2+1];
+				
+				if(l < 0) {
+					for(int i = ~l, end = ~l+r; i < end; i++)
+						sum += crossing(bvh.primitives[i], y, z, fromX, toX);
+					continue;
+				}
+				
+				if(sp + 2 > stack.length) {
+					traversal.grow();
+					stack = traversal.nodes;
+				}
+				
+				stack[sp++] = r;
+				stack[sp++] = l;
+			}
+		} finally {
+			traversal.release();
+		}
+		return sum;
+	}
+	
+	// +1 or -1 if the line crosses the triangle in the range, depending on the orientation of the triangle in the yz plane. 0 if not.
+	private int crossing(int triangle, float y, float z, float fromX, float toX) {
+		float[] v = mesh.vertices;
+		int a = mesh.indices[triangle*3  ]*3;
+		int b = mesh.indices[triangle*3+1]*3;
+		int c = mesh.indices[triangle*3+2]*3;
+		
+		float area = (v[b+1] - v[a+1])*(v[c+2] - v[a+2]) - (v[b+2] - v[a+2])*(v[c+1] - v[a+1]);
+		if(area == 0)
+			return 0;
+		
+		int sign = 1;
+		if(area < 0) {
+			// make the triangle counter clockwise, so the top-left rule applies
+			int t = b;
+			b = c;
+			c = t;
+			sign = -1;
+		}
+		
+		float wA = edge(v[b+1], v[b+2], v[c+1], v[c+2], y, z);
+		if(wA < 0 || (wA == 0 && !owns(v[b+1], v[b+2], v[c+1], v[c+2]))) return 0;
+		float wB = edge(v[c+1], v[c+2], v[a+1], v[a+2], y, z);
+		if(wB < 0 || (wB == 0 && !owns(v[c+1], v[c+2], v[a+1], v[a+2]))) return 0;
+		float wC = edge(v[a+1], v[a+2], v[b+1], v[b+2], y, z);
+		if(wC < 0 || (wC == 0 && !owns(v[a+1], v[a+2], v[b+1], v[b+2]))) return 0;
+		
+		float x = (wA*v[a] + wB*v[b] + wC*v[c]) / (wA + wB + wC);
+		return x > fromX && x <= toX ? sign : 0;
+	}
+	
+	// The edge function of the directed edge from p to q at (y,z), positive on the left.
+	// It is always evaluated from the smaller to the larger end point, so the reversed edge gives exactly the negated value.
+	private static float edge(float pY, float pZ, float qY, float qZ, float y, float z) {
+		if(pY < qY || (pY == qY && pZ < qZ))
+			return (qY - pY)*(z - pZ) - (qZ - pZ)*(y - pY);
+		return -((pY - qY)*(z - qZ) - (pZ - qZ)*(y - qY));
+	}
+	
+	// If points exactly on the directed edge from p to q belong to the triangle left of it. Exactly one direction of every edge owns its points.
+	private static boolean owns(float pY, float pZ, float qY, float qZ) {
+		return qZ > pZ || (qZ == pZ && qY < pY);
+	}
+
+}
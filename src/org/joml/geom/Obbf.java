@@ -0,0 +1,166 @@
+package org.joml.geom;
+
+import org.joml.Matrix4f;
+
+/**
+ * A oriented bounding box.
+ *
+ * <br><br>
+ * <b>Important:</b>
+ * <ul>
+ * <li>Like with {@link Aabbf}, the 'extent' of a {@link Obbf} is always <i>half the actual size</i> of the box, measured along its own axes.
+ * <li>The 'origin' of a {@link Obbf} is the location of the center of the box.
+ * <li>The three axes must be normalized and perpendicular to each other.
+ * </ul>
+ **/
+public class Obbf implements SupportMapping {
+	
+	/** The origin of the OBB on the X-Axis. **/
+	public float originX;
+	/** The origin of the OBB on the Y-Axis. **/
+	public float originY;
+	/** The origin of the OBB on the Z-Axis. **/
+	public float originZ;
+	
+	/** The extent of the OBB along its local X-axis. **/
+	public float extentX;
+	/** The extent of the OBB along its local Y-axis. **/
+	public float extentY;
+	/** The extent of the OBB along its local Z-axis. **/
+	public float extentZ;
+	
+	/** The local X-axis of the OBB, in world space. **/
+	public float xAxisX, xAxisY, xAxisZ;
+	/** The local Y-axis of the OBB, in world space. **/
+	public float yAxisX, yAxisY, yAxisZ;
+	/** The local Z-axis of the OBB, in world space. **/
+	public float zAxisX, zAxisY, zAxisZ;
+	
+	/**
+	 * Creates a new {@link Obbf} with a extent of (1,1,1) located at (0,0,0), aligned with the world axes.
+	 **/
+	public Obbf() {
+		extentX = 1;
+		extentY = 1;
+		extentZ = 1;
+		xAxisX = 1;
+		yAxisY = 1;
+		zAxisZ = 1;
+	}
+	
+	/**
+	 * Creates a new {@link Obbf} equal to the given {@link Aabbf}.
+	 **/
+	public Obbf(Aabbf aabb) {
+		set(aabb);
+	}
+	
+	/**
+	 * Creates a new {@link Obbf} containing the given {@link Aabbf}, transformed by the given matrix.
+	 * @see #set(Aabbf, Matrix4f)
+	 **/
+	public Obbf(Aabbf local, Matrix4f transform) {
+		set(local, transform);
+	}
+	
+	/**
+	 * Sets this {@link Obbf} to the given {@link Aabbf}.
+	 * @return This {@link Obbf}.
+	 **/
+	public Obbf set(Aabbf aabb) {
+		originX = aabb.originX;
+		originY = aabb.originY;
+		originZ = aabb.originZ;
+		extentX = aabb.extentX;
+		extentY = aabb.extentY;
+		extentZ = aabb.extentZ;
+		xAxisX = 1; xAxisY = 0; xAxisZ = 0;
+		yAxisX = 0; yAxisY = 1; yAxisZ = 0;
+		zAxisX = 0; zAxisY = 0; zAxisZ = 1;
+		return this;
+	}
+	
+	/**
+	 * Sets this {@link Obbf} to the given local space box, transformed by the given matrix.
+	 * The matrix may contain translation, rotation and (non-uniform) scaling, but no shearing.
+	 * @param local The box in local space.
+	 * @param transform The transformation from local space to world space.
+	 * @return This {@link Obbf}.
+	 **/
+	public Obbf set(Aabbf local, Matrix4f transform) {
+		Matrix4f m = transform;
+		originX = m.m00 * local.originX + m.m10 * local.originY + m.m20 * local.originZ + m.m30;
+		originY = m.m01 * local.originX + m.m11 * local.originY + m.m21 * local.originZ + m.m31;
+		originZ = m.m02 * local.originX + m.m12 * local.originY + m.m22 * local.originZ + m.m32;
+		
+		// the scale of each axis goes into the extent, the axes are normalized
+		float sx = (float) Math.sqrt(m.m00*m.m00 + m.m01*m.m01 + m.m02*m.m02);
+		float sy = (float) Math.sqrt(m.m10*m.m10 + m.m11*m.m11 + m.m12*m.m12);
+		float sz = (float) Math.sqrt(m.m20*m.m20 + m.m21*m.m21 + m.m22*m.m22);
+		extentX = local.extentX * sx;
+		extentY = local.extentY * sy;
+		extentZ = local.extentZ * sz;
+		xAxisX = m.m00 / sx; xAxisY = m.m01 / sx; xAxisZ = m.m02 / sx;
+		yAxisX = m.m10 / sy; yAxisY = m.m11 / sy; yAxisZ = m.m12 / sy;
+		zAxisX = m.m20 / sz; zAxisY = m.m21 / sz; zAxisZ = m.m22 / sz;
+		return this;
+	}
+	
+	public Obbf setOrigin(float x, float y, float z) {
+		originX = x;
+		originY = y;
+		originZ = z;
+		return this;
+	}
+	
+	public Obbf setExtent(float x, float y, float z) {
+		extentX = x;
+		extentY = y;
+		extentZ = z;
+		return this;
+	}
+	
+	public Obbf move(float x, float y, float z) {
+		originX += x;
+		originY += y;
+		originZ += z;
+		return this;
+	}
+	
+	/**
+	 * @return True, if the given point is inside this {@link Obbf}.
+	 **/
+	public boolean inside(float px, float py, float pz) {
+		float dx = px - originX;
+		float dy = py - originY;
+		float dz = pz - originZ;
+		return Math.abs(dx*xAxisX + dy*xAxisY + dz*xAxisZ) <= extentX
+				&& Math.abs(dx*yAxisX + dy*yAxisY + dz*yAxisZ) <= extentY
+				&& Math.abs(dx*zAxisX + dy*zAxisY + dz*zAxisZ) <= extentZ;
+	}
+	
+	@Override
+	public void getSupport(float dirX, float dirY, float dirZ, float[] store, int offset) {
+		float sx = dirX*xAxisX + dirY*xAxisY + dirZ*xAxisZ < 0 ? -extentX : extentX;
+		float sy = dirX*yAxisX + dirY*yAxisY + dirZ*yAxisZ < 0 ? -extentY : extentY;
+		float sz = dirX*zAxisX + dirY*zAxisY + dirZ*zAxisZ < 0 ? -extentZ : extentZ;
+		store[offset  ] = originX + xAxisX*sx + yAxisX*sy + zAxisX*sz;
+		store[offset+1] = originY + xAxisY*sx + yAxisY*sy + zAxisY*sz;
+		store[offset+2] = originZ + xAxisZ*sx + yAxisZ*sy + zAxisZ*sz;
+	}
+	
+	/**
+	 * Computes the smallest {@link Aabbf} containing this {@link Obbf}.
+	 * @return The store.
+	 **/
+	public Aabbf getBounds(Aabbf store) {
+		store.originX = originX;
+		store.originY = originY;
+		store.originZ = originZ;
+		store.extentX = Math.abs(xAxisX) * extentX + Math.abs(yAxisX) * extentY + Math.abs(zAxisX) * extentZ;
+		store.extentY = Math.abs(xAxisY) * extentX + Math.abs(yAxisY) * extentY + Math.abs(zAxisY) * extentZ;
+		store.extentZ = Math.abs(xAxisZ) * extentX + Math.abs(yAxisZ) * extentY + Math.abs(zAxisZ) * extentZ;
+		return store;
+	}
+
+}
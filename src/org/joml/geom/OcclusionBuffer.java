@@ -0,0 +1,330 @@
+package org.joml.geom;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import org.joml.Matrix4f;
+
+/**
+ * A software occlusion culler: Occluder triangles are rasterized on the CPU into a small depth buffer,
+ * and boxes are tested against it to find objects that are hidden behind the occluders.
+ *
+ * <br><br>
+ * <b>Usage</b>, once per frame:
+ * <ol>
+ * <li>{@link #begin(Matrix4f)} with the view-projection matrix of the camera.
+ * <li>Add the occluders, e.g. with {@link #addOccluders(TriangleMeshf)} or {@link #addOccluder(Aabbf)}. Good occluders are large and simple, like walls and buildings.
+ * <li>{@link #rasterize()}.
+ * <li>Test the objects with {@link #isVisible(Aabbf)}.
+ * </ol>
+ * The buffer is split into tiles of {@link #TILE_SIZE} pixels. Occluders are sorted into the tiles they cover,
+ * and the tiles are rasterized in parallel.
+ * <br>
+ * Depth is stored as NDC depth mapped to [0,1] (larger is farther), in a hierarchy of levels:
+ * Every texel of a level holds the <i>farthest</i> depth of the four texels below it, so a box that is behind a coarse texel is behind all pixels it covers.
+ * A box is tested against the level where its projected bounds cover only a few texels.
+ * <br>
+ * The test is conservative: Occluders that cross the near plane are skipped, and boxes that cross it are always visible.
+ **/
+public class OcclusionBuffer {
+	
+	/** The width and height of a tile, in pixels. **/
+	public static final int TILE_SIZE = 32;
+	
+	// the number of levels inside of a tile: the tile size is 2^(LEVELS-1)
+	private static final int LEVELS = 6;
+	// boxes are tested at the level where they cover at most this many texels in each direction
+	private static final int TEST_TEXELS = 4;
+	// occluder vertices closer than this (in clip space w) to the camera plane skip the triangle
+	private static final float NEAR_W = 1e-5f;
+	
+	/** The size of the buffer, in pixels. **/
+	public final int width, height;
+	
+	private final int tilesX, tilesY;
+	// the depth levels, level 0 has one texel per pixel
+	private final float[][] levels;
+	
+	// the screen space triangles: x, y and depth of each vertex
+	private float[] triangles = new float[9*256];
+	private int triangleCount;
+	// the triangles overlapping every tile
+	private final PrimitiveList[] bins;
+	
+	private final Matrix4f viewProjection = new Matrix4f();
+	private ForkJoinPool pool = ForkJoinPool.commonPool();
+	
+	/**
+	 * Creates a new {@link OcclusionBuffer}. A low resolution, like 256x128, is usually enough.
+	 * @param width The width in pixels, a multiple of {@link #TILE_SIZE}.
+	 * @param height The height in pixels, a multiple of {@link #TILE_SIZE}.
+	 **/
+	public OcclusionBuffer(int width, int height) {
+		if(width <= 0 || height <= 0 || width % TILE_SIZE != 0 || height % TILE_SIZE != 0)
+			throw new IllegalArgumentException("The size has to be a positive multiple of " + TILE_SIZE + ": " + width + "x" + height);
+		
+		this.width = width;
+		this.height = height;
+		this.tilesX = width / TILE_SIZE;
+		this.tilesY = height / TILE_SIZE;
+		
+		this.levels = new float[LEVELS][];
+		for(int level = 0; level < LEVELS; level++) {
+			levels[level] = new float[(width >> level) * (height >> level)];
+			Arrays.fill(levels[level], 1f);
+		}
+		
+		this.bins = new PrimitiveList[tilesX*tilesY];
+		for(int i = 0; i < bins.length; i++)
+			bins[i] = new PrimitiveList();
+	}
+	
+	/**
+	 * Sets the pool that rasterizes the tiles. If null, the tiles are rasterized by the calling thread.
+	 * @return This {@link OcclusionBuffer}.
+	 **/
+	public OcclusionBuffer setPool(ForkJoinPool pool) {
+		this.pool = pool;
+		return this;
+	}
+	
+	/**
+	 * Starts a new frame: Removes all occluders.
+	 * @param viewProjection The view-projection matrix, from world space to clip space.
+	 **/
+	public void begin(Matrix4f viewProjection) {
+		this.viewProjection.set(viewProjection);
+		triangleCount = 0;
+		for(PrimitiveList bin : bins)
+			bin.clear();
+	}
+	
+	/**
+	 * Adds all triangles of the mesh as occluders.
+	 **/
+	public void addOccluders(TriangleMeshf mesh) {
+		float[] v = mesh.vertices;
+		int[] indices = mesh.indices;
+		for(int i = 0, end = mesh.triangleCount*3; i < end; i += 3) {
+			int a = indices[i]*3, b = indices[i+1]*3, c = indices[i+2]*3;
+			addOccluder(v[a], v[a+1], v[a+2], v[b], v[b+1], v[b+2], v[c], v[c+1], v[c+2]);
+		}
+	}
+	
+	/**
+	 * Adds the faces of the box as occluders.
+	 **/
+	public void addOccluder(Aabbf aabb) {
+		float x0 = aabb.getMinX(), y0 = aabb.getMinY(), z0 = aabb.getMinZ();
+		float x1 = aabb.getMaxX(), y1 = aabb.getMaxY(), z1 = aabb.getMaxZ();
+		
+		// two triangles per face
+		addOccluder(x0, y0, z0, x1, y0, z0, x1, y1, z0); addOccluder(x0, y0, z0, x1, y1, z0, x0, y1, z0);
+		addOccluder(x0, y0, z1, x1, y1, z1, x1, y0, z1); addOccluder(x0, y0, z1, x0, y1, z1, x1, y1, z1);
+		addOccluder(x0, y0, z0, x0, y1, z1, x0, y0, z1); addOccluder(x0, y0, z0, x0, y1, z0, x0, y1, z1);
+		addOccluder(x1, y0, z0, x1, y0, z1, x1, y1, z1); addOccluder(x1, y0, z0, x1, y1, z1, x1, y1, z0);
+		addOccluder(x0, y0, z0, x1, y0, z1, x1, y0, z0); addOccluder(x0, y0, z0, x0, y0, z1, x1, y0, z1);
+		addOccluder(x0, y1, z0, x1, y1, z0, x1, y1, z1); addOccluder(x0, y1, z0, x1, y1, z1, x0, y1, z1);
+	}
+	
+	/**
+	 * Adds the triangle abc (in world space) as a occluder. Both sides of the triangle occlude.
+	 **/
+	public void addOccluder(float aX, float aY, float aZ, float bX, float bY, float bZ, float cX, float cY, float cZ) {
+		if(triangleCount*9 == triangles.length)
+			triangles = Arrays.copyOf(triangles, triangles.length*2);
+		
+		int o = triangleCount*9;
+		if(!project(aX, aY, aZ, triangles, o) || !project(bX, bY, bZ, triangles, o+3) || !project(cX, cY, cZ, triangles, o+6))
+			return;
+		
+		float minX = Math.min(triangles[o], Math.min(triangles[o+3], triangles[o+6]));
+		float maxX = Math.max(triangles[o], Math.max(triangles[o+3], triangles[o+6]));
+		float minY = Math.min(triangles[o+1], Math.min(triangles[o+4], triangles[o+7]));
+		float maxY = Math.max(triangles[o+1], Math.max(triangles[o+4], triangles[o+7]));
+		if(maxX < 0 || maxY < 0 || minX >= width || minY >= height)
+			return;
+		
+		int tileX0 = Math.max(0, (int) minX / TILE_SIZE), tileX1 = Math.min(tilesX-1, (int) maxX / TILE_SIZE);
+		int tileY0 = Math.max(0, (int) minY / TILE_SIZE), tileY1 = Math.min(tilesY-1, (int) maxY / TILE_SIZE);
+		for(int y = tileY0; y <= tileY1; y++) {
+			for(int x = tileX0; x <= tileX1; x++)
+				bins[y*tilesX + x].add(triangleCount);
+		}
+		triangleCount++;
+	}
+	
+	// Projects the point to pixel coordinates and depth. False, if the point is too close to (or behind) the camera.
+	private boolean project(float x, float y, float z, float[] store, int offset) {
+		Matrix4f m = viewProjection;
+		float w = m.m03*x + m.m13*y + m.m23*z + m.m33;
+		if(w < NEAR_W)
+			return false;
+		
+		float invW = 1f / w;
+		store[offset  ] = ((m.m00*x + m.m10*y + m.m20*z + m.m30) * invW * 0.5f + 0.5f) * width;
+		store[offset+1] = ((m.m01*x + m.m11*y + m.m21*z + m.m31) * invW * 0.5f + 0.5f) * height;
+		store[offset+2] = (m.m02*x + m.m12*y + m.m22*z + m.m32) * invW * 0.5f + 0.5f;
+		return true;
+	}
+	
+	/**
+	 * Rasterizes all occluders added since {@link #begin(Matrix4f)}, and builds the depth levels.
+	 **/
+	public void rasterize() {
+		Parallel.forRange(pool, 0, tilesX*tilesY, 1, new Parallel.Body() {
+			public void run(int from, int to) {
+				for(int tile = from; tile < to; tile++)
+					rasterizeTile(tile);
+			}
+		});
+	}
+	
+	private void rasterizeTile(int tile) {
+		int x0 = (tile % tilesX) * TILE_SIZE;
+		int y0 = (tile / tilesX) * TILE_SIZE;
+		int x1 = x0 + TILE_SIZE;
+		int y1 = y0 + TILE_SIZE;
+		float[] depth = levels[0];
+		
+		for(int y = y0; y < y1; y++)
+			Arrays.fill(depth, y*width + x0, y*width + x1, 1f);
+		
+		PrimitiveList bin = bins[tile];
+		for(int i = 0; i < bin.size; i++) {
+			int o = bin.elements[i]*9;
+			float ax = triangles[o  ], ay = triangles[o+1], ad = triangles[o+2];
+			float bx = triangles[o+3], by = triangles[o+4], bd = triangles[o+5];
+			float cx = triangles[o+6], cy = triangles[o+7], cd = triangles[o+8];
+			
+			float area = (bx - ax)*(cy - ay) - (by - ay)*(cx - ax);
+			if(area == 0)
+				continue;
+			if(area < 0) {
+				// make the winding counter clockwise, so both sides are rasterized the same way
+				float t = bx; bx = cx; cx = t;
+				t = by; by = cy; cy = t;
+				t = bd; bd = cd; cd = t;
+				area = -area;
+			}
+			float invArea = 1f / area;
+			
+			// the pixels whose centers are inside of the bounds of the triangle, limited to the tile
+			int minX = Math.max(x0, (int) Math.ceil(Math.min(ax, Math.min(bx, cx)) - 0.5f));
+			int maxX = Math.min(x1-1, (int) Math.floor(Math.max(ax, Math.max(bx, cx)) - 0.5f));
+			int minY = Math.max(y0, (int) Math.ceil(Math.min(ay, Math.min(by, cy)) - 0.5f));
+			int maxY = Math.min(y1-1, (int) Math.floor(Math.max(ay, Math.max(by, cy)) - 0.5f));
+			
+			for(int y = minY; y <= maxY; y++) {
+				float py = y + 0.5f;
+				for(int x = minX; x <= maxX; x++) {
+					float px = x + 0.5f;
+					// the edge functions are the barycentric coordinates, scaled by the area
+					float wa = (cx - bx)*(py - by) - (cy - by)*(px - bx);
+					float wb = (ax - cx)*(py - cy) - (ay - cy)*(px - cx);
+					float wc = (bx - ax)*(py - ay) - (by - ay)*(px - ax);
+					if(wa < 0 || wb < 0 || wc < 0)
+						continue;
+					
+					float d = (wa*ad + wb*bd + wc*cd) * invArea;
+					int p = y*width + x;
+					if(d < depth[p])
+						depth[p] = d;
+				}
+			}
+		}
+		
+		// the levels of the tile: every texel is the farthest of the four below it
+		for(int level = 1; level < LEVELS; level++) {
+			float[] below = levels[level-1];
+			float[] texels = levels[level];
+			int belowWidth = width >> (level-1);
+			int levelWidth = width >> level;
+			for(int y = y0 >> level, yEnd = y1 >> level; y < yEnd; y++) {
+				for(int x = x0 >> level, xEnd = x1 >> level; x < xEnd; x++) {
+					int b = (y*2)*belowWidth + x*2;
+					texels[y*levelWidth + x] = Math.max(
+							Math.max(below[b], below[b+1]),
+							Math.max(below[b+belowWidth], below[b+belowWidth+1]));
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @return False, if the {@link Aabbf} is hidden behind the occluders or outside of the screen. True if it may be visible.
+	 **/
+	public boolean isVisible(Aabbf aabb) {
+		return isVisible(aabb.getMinX(), aabb.getMinY(), aabb.getMinZ(), aabb.getMaxX(), aabb.getMaxY(), aabb.getMaxZ());
+	}
+	
+	/**
+	 * @return False, if the box from min to max is hidden behind the occluders or outside of the screen. True if it may be visible.
+	 **/
+	public boolean isVisible(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+		Matrix4f m = viewProjection;
+		float rectMinX = Float.POSITIVE_INFINITY, rectMinY = Float.POSITIVE_INFINITY, nearest = Float.POSITIVE_INFINITY;
+		float rectMaxX = Float.NEGATIVE_INFINITY, rectMaxY = Float.NEGATIVE_INFINITY;
+		int behind = 0;
+		
+		for(int corner = 0; corner < 8; corner++) {
+			float x = (corner & 1) == 0 ? minX : maxX;
+			float y = (corner & 2) == 0 ? minY : maxY;
+			float z = (corner & 4) == 0 ? minZ : maxZ;
+			
+			float w = m.m03*x + m.m13*y + m.m23*z + m.m33;
+			if(w < NEAR_W) {
+				behind++;
+				continue;
+			}
+			
+			float invW = 1f / w;
+			float sx = ((m.m00*x + m.m10*y + m.m20*z + m.m30) * invW * 0.5f + 0.5f) * width;
+			float sy = ((m.m01*x + m.m11*y + m.m21*z + m.m31) * invW * 0.5f + 0.5f) * height;
+			float d = (m.m02*x + m.m12*y + m.m22*z + m.m32) * invW * 0.5f + 0.5f;
+			rectMinX = Math.min(rectMinX, sx); rectMaxX = Math.max(rectMaxX, sx);
+			rectMinY = Math.min(rectMinY, sy); rectMaxY = Math.max(rectMaxY, sy);
+			nearest = Math.min(nearest, d);
+		}
+		
+		// completely behind the camera, or crossing the near plane
+		if(behind > 0)
+			return behind < 8;
+		
+		if(rectMaxX < 0 || rectMaxY < 0 || rectMinX >= width || rectMinY >= height)
+			return false;
+		
+		int px0 = Math.max(0, (int) rectMinX), px1 = Math.min(width-1, (int) rectMaxX);
+		int py0 = Math.max(0, (int) rectMinY), py1 = Math.min(height-1, (int) rectMaxY);
+		
+		// the finest level where the rectangle covers only a few texels
+		int level = 0;
+		while(level < LEVELS-1 && ((px1 >> level) - (px0 >> level) >= TEST_TEXELS || (py1 >> level) - (py0 >> level) >= TEST_TEXELS))
+			level++;
+		
+		float[] texels = levels[level];
+		int levelWidth = width >> level;
+		for(int y = py0 >> level, yEnd = py1 >> level; y <= yEnd; y++) {
+			for(int x = px0 >> level, xEnd = px1 >> level; x <= xEnd; x++) {
+				if(nearest <= texels[y*levelWidth + x])
+					return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * @return The depth of the given pixel, after {@link #rasterize()}. One where no occluder was rasterized.
+	 **/
+	public float getDepth(int x, int y) {
+		return levels[0][y*width + x];
+	}
+	
+	/**
+	 * @return The number of occluder triangles added since {@link #begin(Matrix4f)}, without those that were skipped.
+	 **/
+	public int getOccluderCount() {
+		return triangleCount;
+	}
+
+}
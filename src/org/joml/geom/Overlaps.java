@@ -0,0 +1,146 @@
+package org.joml.geom;
+
+/**
+ * Batch overlap tests of one sphere against many spheres or boxes, and of all pairs of spheres in a small cluster.
+ *
+ * <br><br>
+ * The shapes are packed float arrays: four floats per sphere (centerX, centerY, centerZ, radius),
+ * and six floats per box (minX, minY, minZ, maxX, maxY, maxZ), the layouts used by {@link Contacts}.
+ * The results are either a bitmask (bit i of word i/64 is set if shape i overlaps), or a list of the indices of the overlapping shapes.
+ * <br>
+ * The loops have no branches that depend on the data: every shape is tested, and the result is written unconditionally,
+ * so the JIT can unroll them and the branch predictor has nothing to mispredict.
+ * Shapes that only touch overlap, like in {@link Spheref#intersect(Spheref)}.
+ **/
+public final class Overlaps {
+	
+	private Overlaps() {
+	}
+	
+	/**
+	 * Tests the sphere against the packed spheres, and sets the bits of the overlapping spheres.
+	 * @param spheres The spheres, four floats per sphere.
+	 * @param count The number of spheres.
+	 * @param store The bitmask, at least (count+63)/64 words. All bits of the words in use are written.
+	 * @return The number of overlapping spheres.
+	 **/
+	public static int overlapSphereWithSpheres(float centerX, float centerY, float centerZ, float radius, float[] spheres, int count, long[] store) {
+		int hits = 0;
+		for(int w = 0, words = (count + 63) >>> 6; w < words; w++) {
+			long word = 0;
+			for(int i = w << 6, end = Math.min(count, i + 64); i < end; i++) {
+				int o = i*4;
+				float dX = spheres[o] - centerX, dY = spheres[o+1] - centerY, dZ = spheres[o+2] - centerZ;
+				float r = spheres[o+3] + radius;
+				word |= (dX*dX + dY*dY + dZ*dZ <= r*r ? 1L : 0L) << i;
+			}
+			store[w] = word;
+			hits += Long.bitCount(word);
+		}
+		return hits;
+	}
+	
+	/**
+	 * Tests the sphere against the packed spheres, and stores the indices of the overlapping spheres.
+	 * @param spheres The spheres, four floats per sphere.
+	 * @param count The number of spheres.
+	 * @param store The array to store the indices in, at least count long.
+	 * @return The number of overlapping spheres, the number of indices stored.
+	 **/
+	public static int overlapSphereWithSpheres(float centerX, float centerY, float centerZ, float radius, float[] spheres, int count, int[] store) {
+		int hits = 0;
+		for(int i = 0; i < count; i++) {
+			int o = i*4;
+			float dX = spheres[o] - centerX, dY = spheres[o+1] - centerY, dZ = spheres[o+2] - centerZ;
+			float r = spheres[o+3] + radius;
+			// always store, only advance on a hit
+			store[hits] = i;
+			hits += dX*dX + dY*dY + dZ*dZ <= r*r ? 1 : 0;
+		}
+		return hits;
+	}
+	
+	/**
+	 * Tests the sphere against the packed boxes, and sets the bits of the overlapping boxes.
+	 * @param boxes The boxes, six floats per box.
+	 * @param count The number of boxes.
+	 * @param store The bitmask, at least (count+63)/64 words. All bits of the words in use are written.
+	 * @return The number of overlapping boxes.
+	 **/
+	public static int overlapSphereWithBoxes(float centerX, float centerY, float centerZ, float radius, float[] boxes, int count, long[] store) {
+		float radiusSquared = radius*radius;
+		int hits = 0;
+		for(int w = 0, words = (count + 63) >>> 6; w < words; w++) {
+			long word = 0;
+			for(int i = w << 6, end = Math.min(count, i + 64); i < end; i++) {
+				int o = i*6;
+				// the distance to the box on each axis, zero inside of the slab
+				float dX = axisDistance(boxes[o  ], boxes[o+3], centerX);
+				float dY = axisDistance(boxes[o+1], boxes[o+4], centerY);
+				float dZ = axisDistance(boxes[o+2], boxes[o+5], centerZ);
+				word |= (dX*dX + dY*dY + dZ*dZ <= radiusSquared ? 1L : 0L) << i;
+			}
+			store[w] = word;
+			hits += Long.bitCount(word);
+		}
+		return hits;
+	}
+	
+	/**
+	 * Tests the sphere against the packed boxes, and stores the indices of the overlapping boxes.
+	 * @param boxes The boxes, six floats per box.
+	 * @param count The number of boxes.
+	 * @param store The array to store the indices in, at least count long.
+	 * @return The number of overlapping boxes, the number of indices stored.
+	 **/
+	public static int overlapSphereWithBoxes(float centerX, float centerY, float centerZ, float radius, float[] boxes, int count, int[] store) {
+		float radiusSquared = radius*radius;
+		int hits = 0;
+		for(int i = 0; i < count; i++) {
+			int o = i*6;
+			float dX = axisDistance(boxes[o  ], boxes[o+3], centerX);
+			float dY = axisDistance(boxes[o+1], boxes[o+4], centerY);
+			float dZ = axisDistance(boxes[o+2], boxes[o+5], centerZ);
+			store[hits] = i;
+			hits += dX*dX + dY*dY + dZ*dZ <= radiusSquared ? 1 : 0;
+		}
+		return hits;
+	}
+	
+	// The distance of x to the slab from min to max, zero inside of it.
+	// Plain comparisons are cheaper than Math.max, which also has to order NaN and negative zero. A NaN distance fails the overlap test.
+	private static float axisDistance(float min, float max, float x) {
+		float below = min - x, above = x - max;
+		float d = below > above ? below : above;
+		return d <= 0 ? 0 : d;
+	}
+	
+	/**
+	 * Tests all pairs of the packed spheres against each other, and stores the overlapping pairs.
+	 * The pairs can be passed to {@link Contacts#collideSpheres(float[], int[], int, ContactBuffer)}.
+	 * @param spheres The spheres, four floats per sphere.
+	 * @param count The number of spheres. The test is quadratic, so this is meant for small clusters.
+	 * @param store The array to store the pairs in, two ints per pair: i, j with i &lt; j. At least count*(count-1) long.
+	 * @return The number of overlapping pairs.
+	 **/
+	public static int overlapSpheres(float[] spheres, int count, int[] store) {
+		if(store.length < count*(count-1))
+			throw new IllegalArgumentException("The store has to hold " + count*(count-1) + " ints, but holds " + store.length);
+		
+		int pairs = 0;
+		for(int i = 0; i < count; i++) {
+			int a = i*4;
+			float x = spheres[a], y = spheres[a+1], z = spheres[a+2], radius = spheres[a+3];
+			for(int j = i+1; j < count; j++) {
+				int o = j*4;
+				float dX = spheres[o] - x, dY = spheres[o+1] - y, dZ = spheres[o+2] - z;
+				float r = spheres[o+3] + radius;
+				store[pairs*2  ] = i;
+				store[pairs*2+1] = j;
+				pairs += dX*dX + dY*dY + dZ*dZ <= r*r ? 1 : 0;
+			}
+		}
+		return pairs;
+	}
+
+}
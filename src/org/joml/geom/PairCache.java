@@ -0,0 +1,229 @@
+package org.joml.geom;
+
+import java.util.Arrays;
+
+/**
+ * Remembers the overlapping pairs of a broadphase from one frame to the next, and reports which pairs began, persisted or ended overlapping.
+ * Each pair can carry user data, e.g. the impulses of the last step to warm-start a solver.
+ *
+ * <br><br>
+ * <b>Usage</b>, once per frame:
+ * <ol>
+ * <li>{@link #beginFrame()}.
+ * <li>{@link #addPair(int, int)} for every overlapping pair found by the broadphase.
+ * <li>{@link #endFrame(Listener)}: Reports every pair, and removes the pairs that were not added this frame.
+ * </ol>
+ * The bodies are non-negative ints. A pair is unordered: (a,b) and (b,a) are the same pair, and it is always reported with the smaller body first.
+ * <br>
+ * The pairs are stored in an open-addressing hash table, keyed by both bodies packed into a long, so there are no objects per pair apart from the user data.
+ * A pair is identified by its slot in the table. Slots are valid until the next call to {@link #addPair(int, int)}, which may grow the table.
+ **/
+public class PairCache<T> {
+	
+	/** Receives the pairs at the end of a frame. **/
+	public interface Listener<T> {
+		/** The pair was added for the first time, or again after it ended. **/
+		public void began(PairCache<T> cache, int a, int b, int slot);
+		/** The pair was added this frame and the frame before. **/
+		public void persisted(PairCache<T> cache, int a, int b, int slot);
+		/** The pair was not added this frame. The pair is removed after this call. **/
+		public void ended(PairCache<T> cache, int a, int b, int slot);
+	}
+	
+	// the keys of free slots, and of slots whose pair was removed; pairs of non-negative bodies are non-negative
+	private static final long EMPTY = -1L;
+	private static final long REMOVED = -2L;
+	
+	private long[] keys;
+	// the frame the pair was last added in, and the frame it began in
+	private int[] seen;
+	private int[] began;
+	private Object[] data;
+	private int size;
+	private int removed;
+	private int frame;
+	
+	public PairCache() {
+		this(64);
+	}
+	
+	/**
+	 * @param capacity The number of pairs the cache can hold before it grows.
+	 **/
+	public PairCache(int capacity) {
+		allocate(Math.max(16, Integer.highestOneBit(Math.max(1, capacity*4/3)) << 1));
+	}
+	
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		Arrays.fill(keys, EMPTY);
+		seen = new int[capacity];
+		began = new int[capacity];
+		data = new Object[capacity];
+		size = 0;
+		removed = 0;
+	}
+	
+	/**
+	 * Starts a new frame.
+	 **/
+	public void beginFrame() {
+		frame++;
+	}
+	
+	/**
+	 * Adds an overlapping pair for this frame. Adding a pair twice in the same frame has no further effect.
+	 * @return The slot of the pair.
+	 **/
+	public int addPair(int a, int b) {
+		long key = key(a, b);
+		int slot = find(key);
+		if(slot >= 0) {
+			seen[slot] = frame;
+			return slot;
+		}
+		
+		if((size + removed + 1)*4 > keys.length*3) {
+			rehash(size*2 >= keys.length ? keys.length*2 : keys.length);
+		}
+		
+		slot = insert(key);
+		seen[slot] = frame;
+		began[slot] = frame;
+		return slot;
+	}
+	
+	/**
+	 * @return The slot of the pair, or -1 if the cache does not hold the pair.
+	 **/
+	public int findPair(int a, int b) {
+		return find(key(a, b));
+	}
+	
+	/**
+	 * Reports all pairs to the listener, and removes the pairs that were not added this frame.
+	 * The listener must not add pairs.
+	 * @param listener The listener, or null to only remove the ended pairs.
+	 **/
+	public void endFrame(Listener<T> listener) {
+		for(int slot = 0; slot < keys.length; slot++) {
+			long key = keys[slot];
+			if(key < 0)
+				continue;
+			
+			int a = (int) (key >>> 32), b = (int) key;
+			if(seen[slot] == frame) {
+				if(listener != null) {
+					if(began[slot] == frame) {
+						listener.began(this, a, b, slot);
+					} else {
+						listener.persisted(this, a, b, slot);
+					}
+				}
+			} else {
+				if(listener != null)
+					listener.ended(this, a, b, slot);
+				keys[slot] = REMOVED;
+				data[slot] = null;
+				size--;
+				removed++;
+			}
+		}
+	}
+	
+	/**
+	 * @return The smaller body of the pair in the slot.
+	 **/
+	public int getA(int slot) {
+		return (int) (keys[slot] >>> 32);
+	}
+	
+	/**
+	 * @return The larger body of the pair in the slot.
+	 **/
+	public int getB(int slot) {
+		return (int) keys[slot];
+	}
+	
+	@SuppressWarnings("unchecked")
+	public T getUserData(int slot) {
+		return (T) data[slot];
+	}
+	
+	public void setUserData(int slot, T userData) {
+		data[slot] = userData;
+	}
+	
+	/**
+	 * @return The number of pairs in the cache.
+	 **/
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Removes all pairs, without reporting them.
+	 **/
+	public void clear() {
+		Arrays.fill(keys, EMPTY);
+		Arrays.fill(data, null);
+		size = 0;
+		removed = 0;
+	}
+	
+	private static long key(int a, int b) {
+		if(a < 0 || b < 0 || a == b)
+			throw new IllegalArgumentException("A pair needs two different, non-negative bodies: " + a + ", " + b);
+		
+		return a < b ? ((long) a << 32) | b : ((long) b << 32) | a;
+	}
+	
+	private int home(long key) {
+		// fibonacci hashing: the high bits of the product are well mixed
+		return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & (keys.length - 1);
+	}
+	
+	private int find(long key) {
+		int mask = keys.length - 1;
+		for(int slot = home(key); ; slot = (slot + 1) & mask) {
+			long k = keys[slot];
+			if(k == key)
+				return slot;
+			if(k == EMPTY)
+				return -1;
+		}
+	}
+	
+	// Inserts a key that is not in the table yet, reusing the first removed slot on the way.
+	private int insert(long key) {
+		int mask = keys.length - 1;
+		int slot = home(key);
+		while(keys[slot] >= 0)
+			slot = (slot + 1) & mask;
+		
+		if(keys[slot] == REMOVED)
+			removed--;
+		keys[slot] = key;
+		size++;
+		return slot;
+	}
+	
+	private void rehash(int capacity) {
+		long[] oldKeys = keys;
+		int[] oldSeen = seen;
+		int[] oldBegan = began;
+		Object[] oldData = data;
+		
+		allocate(capacity);
+		for(int i = 0; i < oldKeys.length; i++) {
+			if(oldKeys[i] < 0)
+				continue;
+			
+			int slot = insert(oldKeys[i]);
+			seen[slot] = oldSeen[i];
+			began[slot] = oldBegan[i];
+			data[slot] = oldData[i];
+		}
+	}
+
+}
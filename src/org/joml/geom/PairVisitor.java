@@ -0,0 +1,15 @@
+package org.joml.geom;
+
+/**
+ * Receives the pairs of primitives found by a query over two spatial structures, see {@link DualTreeQuery}.
+ **/
+public interface PairVisitor {
+	
+	/**
+	 * @param primitiveA The index of the primitive of the first structure.
+	 * @param primitiveB The index of the primitive of the second structure.
+	 * @return True, if the query should continue. False, if the query should stop right away.
+	 **/
+	public boolean visit(int primitiveA, int primitiveB);
+
+}
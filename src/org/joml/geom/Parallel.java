@@ -0,0 +1,60 @@
+package org.joml.geom;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Splits loops over index ranges into fork/join tasks.
+ **/
+final class Parallel {
+	
+	/** The body of a loop, run for a part of the whole range. **/
+	interface Body {
+		public void run(int from, int to);
+	}
+	
+	private Parallel() {
+	}
+	
+	/**
+	 * Runs the given body over the range [from,to), split into parts of at most 'grain' indices.
+	 * The range is run by the calling thread if it is not larger than 'grain', or if the pool is null.
+	 **/
+	static void forRange(ForkJoinPool pool, int from, int to, int grain, Body body) {
+		if(to - from <= grain || pool == null) {
+			if(to > from)
+				body.run(from, to);
+			return;
+		}
+		
+		pool.invoke(new RangeTask(from, to, Math.max(1, grain), body));
+	}
+	
+	private static final class RangeTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		
+		private final int from;
+		private final int to;
+		private final int grain;
+		private final Body body;
+		
+		RangeTask(int from, int to, int grain, Body body) {
+			this.from = from;
+			this.to = to;
+			this.grain = grain;
+			this.body = body;
+		}
+		
+		@Override
+		protected void compute() {
+			if(to - from <= grain) {
+				body.run(from, to);
+				return;
+			}
+			
+			int middle = (from + to) >>> 1;
+			invokeAll(new RangeTask(from, middle, grain, body), new RangeTask(middle, to, grain, body));
+		}
+	}
+
+}
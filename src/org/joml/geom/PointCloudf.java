@@ -0,0 +1,61 @@
+package org.joml.geom;
+
+/**
+ * The convex hull of a set of points, e.g. the vertices of a convex mesh.
+ * The hull itself is never computed: The support function simply searches all points.
+ **/
+public class PointCloudf implements SupportMapping {
+	
+	/** The points, three floats per point. **/
+	public float[] points;
+	/** The number of points in use. **/
+	public int pointCount;
+	
+	/**
+	 * Creates a new {@link PointCloudf}.
+	 * @param points The points, three floats per point. The array is used directly.
+	 * @param pointCount The number of points in use.
+	 **/
+	public PointCloudf(float[] points, int pointCount) {
+		this.points = points;
+		this.pointCount = pointCount;
+	}
+	
+	@Override
+	public void getSupport(float dirX, float dirY, float dirZ, float[] store, int offset) {
+		int best = 0;
+		float bestDot = Float.NEGATIVE_INFINITY;
+		for(int i = 0, end = pointCount*3; i < end; i += 3) {
+			float dot = points[i]*dirX + points[i+1]*dirY + points[i+2]*dirZ;
+			if(dot > bestDot) {
+				bestDot = dot;
+				best = i;
+			}
+		}
+		store[offset  ] = points[best  ];
+		store[offset+1] = points[best+1];
+		store[offset+2] = points[best+2];
+	}
+	
+	/**
+	 * Computes the smallest {@link Aabbf} containing all points.
+	 * @return The store.
+	 **/
+	public Aabbf getBounds(Aabbf store) {
+		float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+		float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+		for(int i = 0, end = pointCount*3; i < end; i += 3) {
+			minX = Math.min(minX, points[i  ]); maxX = Math.max(maxX, points[i  ]);
+			minY = Math.min(minY, points[i+1]); maxY = Math.max(maxY, points[i+1]);
+			minZ = Math.min(minZ, points[i+2]); maxZ = Math.max(maxZ, points[i+2]);
+		}
+		store.originX = (minX + maxX) * 0.5f;
+		store.originY = (minY + maxY) * 0.5f;
+		store.originZ = (minZ + maxZ) * 0.5f;
+		store.extentX = (maxX - minX) * 0.5f;
+		store.extentY = (maxY - minY) * 0.5f;
+		store.extentZ = (maxZ - minZ) * 0.5f;
+		return store;
+	}
+
+}
@@ -0,0 +1,113 @@
+package org.joml.geom;
+
+import java.util.Arrays;
+
+/**
+ * A set of primitive indices, stored as one bit per primitive, and a {@link PrimitiveVisitor} that collects the results of a query.
+ * This is the better sink when the results of several queries overlap (every primitive is stored once),
+ * or when the results are looked up by primitive index.
+ * Clearing the set keeps the memory, so a set reused every frame stops allocating.
+ **/
+public class PrimitiveBitSet implements PrimitiveVisitor {
+	
+	/** The bits, 64 primitives per word. **/
+	public long[] words;
+	
+	public PrimitiveBitSet() {
+		this(64);
+	}
+	
+	/**
+	 * @param capacity The number of primitives the set can hold before it grows.
+	 **/
+	public PrimitiveBitSet(int capacity) {
+		this.words = new long[Math.max(1, (capacity + 63) >>> 6)];
+	}
+	
+	/**
+	 * Adds the primitive to the set.
+	 * @return True, if the primitive was not in the set before.
+	 **/
+	public boolean add(int primitive) {
+		int word = primitive >>> 6;
+		if(word >= words.length)
+			words = Arrays.copyOf(words, Math.max(words.length*2, word+1));
+		
+		long bit = 1L << primitive;
+		boolean added = (words[word] & bit) == 0;
+		words[word] |= bit;
+		return added;
+	}
+	
+	public void remove(int primitive) {
+		int word = primitive >>> 6;
+		if(word < words.length)
+			words[word] &= ~(1L << primitive);
+	}
+	
+	public boolean contains(int primitive) {
+		int word = primitive >>> 6;
+		return word < words.length && (words[word] & (1L << primitive)) != 0;
+	}
+	
+	/**
+	 * @return The number of primitives in the set.
+	 **/
+	public int size() {
+		int size = 0;
+		for(long word : words)
+			size += Long.bitCount(word);
+		return size;
+	}
+	
+	/**
+	 * @return The first primitive in the set that is not smaller than the given one, or -1.
+	 **/
+	public int next(int from) {
+		int word = from >>> 6;
+		if(word >= words.length)
+			return -1;
+		
+		long bits = words[word] & (-1L << from);
+		while(true) {
+			if(bits != 0)
+				return (word << 6) + Long.numberOfTrailingZeros(bits);
+			if(++word == words.length)
+				return -1;
+			bits = words[word];
+		}
+	}
+	
+	/**
+	 * Visits all primitives in the set, in ascending order.
+	 * @return False, if the visitor stopped early. True if not.
+	 **/
+	public boolean forEach(PrimitiveVisitor visitor) {
+		for(int word = 0; word < words.length; word++) {
+			long bits = words[word];
+			while(bits != 0) {
+				if(!visitor.visit((word << 6) + Long.numberOfTrailingZeros(bits)))
+					return false;
+				bits &= bits - 1;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Removes all primitives, but keeps the memory.
+	 **/
+	public void clear() {
+		Arrays.fill(words, 0);
+	}
+	
+	/**
+	 * Adds the primitive to the set.
+	 * @return Always true.
+	 **/
+	public boolean visit(int primitive) {
+		add(primitive);
+		return true;
+	}
+
+}
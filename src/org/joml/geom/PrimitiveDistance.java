@@ -0,0 +1,16 @@
+package org.joml.geom;
+
+/**
+ * Measures the distance from a point to a single primitive of a spatial structure, see {@link Bvhf#findNearest(float, float, float, float, PrimitiveDistance, int[])}.
+ * <br>
+ * Like {@link PrimitiveIntersector}, this supplies the actual shape of the primitives, which the spatial structure does not know.
+ **/
+public interface PrimitiveDistance {
+	
+	/**
+	 * @param primitive The index of the primitive.
+	 * @return The squared distance from the point to the nearest point of the primitive.
+	 **/
+	public float distanceSquared(int primitive, float x, float y, float z);
+
+}
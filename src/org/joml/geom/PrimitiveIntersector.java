@@ -0,0 +1,18 @@
+package org.joml.geom;
+
+/**
+ * Tests a ray against a single primitive of a spatial structure.
+ * <br>
+ * Spatial structures like {@link Bvhf} only know the bounds of their primitives,
+ * the actual shape is supplied by the user through this interface.
+ **/
+public interface PrimitiveIntersector {
+	
+	/**
+	 * @param primitive The index of the primitive to test.
+	 * @param ray The ray to test the primitive with.
+	 * @return The distance to the 'hit point', or positive infinity if there is no hit.
+	 **/
+	public float intersectRay(int primitive, Rayf ray);
+
+}
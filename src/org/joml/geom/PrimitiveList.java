@@ -0,0 +1,96 @@
+package org.joml.geom;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of primitive indices, and a {@link PrimitiveVisitor} that collects the results of a query.
+ * Unlike a List&lt;Integer&gt; it stores plain ints, and clearing it keeps the memory, so a list reused every frame stops allocating.
+ *
+ * <br><br>
+ * With {@link #setLimit(int)} the list stops the query once it holds enough primitives, e.g. to find any one primitive in a box.
+ **/
+public class PrimitiveList implements PrimitiveVisitor {
+	
+	/** The primitives, only the first {@link #size} are in use. **/
+	public int[] elements;
+	/** The number of primitives in the list. **/
+	public int size;
+	
+	private int limit = Integer.MAX_VALUE;
+	
+	public PrimitiveList() {
+		this(16);
+	}
+	
+	/**
+	 * @param capacity The initial capacity.
+	 **/
+	public PrimitiveList(int capacity) {
+		this.elements = new int[Math.max(1, capacity)];
+	}
+	
+	/**
+	 * Sets the number of primitives after which {@link #visit(int)} stops the query.
+	 * @param limit The limit, {@link Integer#MAX_VALUE} for no limit (the default).
+	 * @return This {@link PrimitiveList}.
+	 **/
+	public PrimitiveList setLimit(int limit) {
+		this.limit = limit;
+		return this;
+	}
+	
+	public void add(int primitive) {
+		if(size == elements.length)
+			elements = Arrays.copyOf(elements, elements.length*2);
+		elements[size++] = primitive;
+	}
+	
+	public int get(int index) {
+		if(index >= size)
+			throw new IndexOutOfBoundsException("Index " + index + " is out of range [0," + size + ")");
+		return elements[index];
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	
+	/**
+	 * Removes all primitives, but keeps the memory.
+	 **/
+	public void clear() {
+		size = 0;
+	}
+	
+	/**
+	 * Sorts the primitives, e.g. to get results that do not depend on the order of the traversal.
+	 **/
+	public void sort() {
+		Arrays.sort(elements, 0, size);
+	}
+	
+	/**
+	 * @param store The array to store the primitives in. If null or too small, a new array is created.
+	 * @return The array.
+	 **/
+	public int[] toArray(int[] store) {
+		if(store == null || store.length < size)
+			store = new int[size];
+		System.arraycopy(elements, 0, store, 0, size);
+		return store;
+	}
+	
+	/**
+	 * Adds the primitive to the list.
+	 * @return False, if the list reached its limit.
+	 **/
+	public boolean visit(int primitive) {
+		add(primitive);
+		return size < limit;
+	}
+
+}
@@ -0,0 +1,14 @@
+package org.joml.geom;
+
+/**
+ * Receives the primitives found by a query on a spatial structure.
+ **/
+public interface PrimitiveVisitor {
+	
+	/**
+	 * @param primitive The index of the found primitive.
+	 * @return True, if the query should continue. False, if the query should stop right away.
+	 **/
+	public boolean visit(int primitive);
+
+}
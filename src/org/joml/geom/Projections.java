@@ -2,8 +2,24 @@ package org.joml.geom;
 
 import org.joml.Vector3f;
 
+/**
+ * This class contains methods for finding the closest point of a shape to a given point.
+ *
+ * <br><br>
+ * The scalar methods store the three coordinates of the result in a float array at the given offset, so they need no temporary objects.
+ * The batch methods project many points stored in a packed float array (three floats per point), the store array may be the same array.
+ * Solid shapes (boxes, spheres) project points inside of them onto themselves.
+ **/
 public class Projections {
 	
+	// the result of the Vector3f methods that share the code of the float array methods
+	private static final ThreadLocal<float[]> scratch = new ThreadLocal<float[]>() {
+		@Override
+		protected float[] initialValue() {
+			return new float[3];
+		}
+	};
+	
 	// Projects the given point to the nearest point on the given plane.
 	public static final Vector3f projectPointOntoPlane(Vector3f point, Vector3f planeNormal, Vector3f planePoint, Vector3f store) {
 		// q = point
@@ -35,4 +51,301 @@ public class Projections {
 		return store;
 	}
 	
+	/**
+	 * Projects the point p to the nearest point on the triangle abc.
+	 * See 'Real-Time Collision Detection' by Christer Ericson, chapter 5.1.5.
+	 * @param store The array to store the three coordinates in.
+	 * @param offset The index of the first coordinate in the array.
+	 * @return The array.
+	 **/
+	public static final float[] projectPointOntoTriangle(float pX, float pY, float pZ,
+			float aX, float aY, float aZ, float bX, float bY, float bZ, float cX, float cY, float cZ,
+			float[] store, int offset) {
+		float abX = bX - aX, abY = bY - aY, abZ = bZ - aZ;
+		float acX = cX - aX, acY = cY - aY, acZ = cZ - aZ;
+		
+		// vertex region of a
+		float apX = pX - aX, apY = pY - aY, apZ = pZ - aZ;
+		float d1 = abX*apX + abY*apY + abZ*apZ;
+		float d2 = acX*apX + acY*apY + acZ*apZ;
+		if(d1 <= 0 && d2 <= 0)
+			return store(aX, aY, aZ, store, offset);
+		
+		// vertex region of b
+		float bpX = pX - bX, bpY = pY - bY, bpZ = pZ - bZ;
+		float d3 = abX*bpX + abY*bpY + abZ*bpZ;
+		float d4 = acX*bpX + acY*bpY + acZ*bpZ;
+		if(d3 >= 0 && d4 <= d3)
+			return store(bX, bY, bZ, store, offset);
+		
+		// edge region of ab
+		float vc = d1*d4 - d3*d2;
+		if(vc <= 0 && d1 >= 0 && d3 <= 0) {
+			float v = d1 / (d1 - d3);
+			return store(aX + abX*v, aY + abY*v, aZ + abZ*v, store, offset);
+		}
+		
+		// vertex region of c
+		float cpX = pX - cX, cpY = pY - cY, cpZ = pZ - cZ;
+		float d5 = abX*cpX + abY*cpY + abZ*cpZ;
+		float d6 = acX*cpX + acY*cpY + acZ*cpZ;
+		if(d6 >= 0 && d5 <= d6)
+			return store(cX, cY, cZ, store, offset);
+		
+		// edge region of ac
+		float vb = d5*d2 - d1*d6;
+		if(vb <= 0 && d2 >= 0 && d6 <= 0) {
+			float w = d2 / (d2 - d6);
+			return store(aX + acX*w, aY + acY*w, aZ + acZ*w, store, offset);
+		}
+		
+		// edge region of bc
+		float va = d3*d6 - d5*d4;
+		if(va <= 0 && (d4 - d3) >= 0 && (d5 - d6) >= 0) {
+			float w = (d4 - d3) / ((d4 - d3) + (d5 - d6));
+			return store(bX + (cX - bX)*w, bY + (cY - bY)*w, bZ + (cZ - bZ)*w, store, offset);
+		}
+		
+		// inside the face
+		float denom = 1f / (va + vb + vc);
+		float v = vb * denom;
+		float w = vc * denom;
+		return store(aX + abX*v + acX*w, aY + abY*v + acY*w, aZ + abZ*v + acZ*w, store, offset);
+	}
+	
+	/**
+	 * Projects the point p to the nearest point on the segment from a to b.
+	 * @param store The array to store the three coordinates in.
+	 * @param offset The index of the first coordinate in the array.
+	 * @return The array.
+	 **/
+	public static final float[] projectPointOntoSegment(float pX, float pY, float pZ,
+			float aX, float aY, float aZ, float bX, float bY, float bZ,
+			float[] store, int offset) {
+		float abX = bX - aX, abY = bY - aY, abZ = bZ - aZ;
+		float abab = abX*abX + abY*abY + abZ*abZ;
+		float t = abab > 0 ? ((pX - aX)*abX + (pY - aY)*abY + (pZ - aZ)*abZ) / abab : 0;
+		t = t < 0 ? 0 : (t > 1 ? 1 : t);
+		return store(aX + abX*t, aY + abY*t, aZ + abZ*t, store, offset);
+	}
+	
+	/**
+	 * Projects the point p to the nearest point in the box from min to max.
+	 * @param store The array to store the three coordinates in.
+	 * @param offset The index of the first coordinate in the array.
+	 * @return The array.
+	 **/
+	public static final float[] projectPointOntoBox(float pX, float pY, float pZ,
+			float minX, float minY, float minZ, float maxX, float maxY, float maxZ,
+			float[] store, int offset) {
+		return store(
+				Math.max(minX, Math.min(maxX, pX)),
+				Math.max(minY, Math.min(maxY, pY)),
+				Math.max(minZ, Math.min(maxZ, pZ)),
+				store, offset);
+	}
+	
+	/**
+	 * Projects the point p to the nearest point in the {@link Aabbf}.
+	 * @param store The array to store the three coordinates in.
+	 * @param offset The index of the first coordinate in the array.
+	 * @return The array.
+	 **/
+	public static final float[] projectPointOntoAabb(float pX, float pY, float pZ, Aabbf aabb, float[] store, int offset) {
+		return projectPointOntoBox(pX, pY, pZ,
+				aabb.originX - aabb.extentX, aabb.originY - aabb.extentY, aabb.originZ - aabb.extentZ,
+				aabb.originX + aabb.extentX, aabb.originY + aabb.extentY, aabb.originZ + aabb.extentZ,
+				store, offset);
+	}
+	
+	/**
+	 * Projects the point p to the nearest point in the {@link Spheref}.
+	 * @param store The array to store the three coordinates in.
+	 * @param offset The index of the first coordinate in the array.
+	 * @return The array.
+	 **/
+	public static final float[] projectPointOntoSphere(float pX, float pY, float pZ, Spheref sphere, float[] store, int offset) {
+		float dX = pX - sphere.centerX, dY = pY - sphere.centerY, dZ = pZ - sphere.centerZ;
+		float lengthSquared = dX*dX + dY*dY + dZ*dZ;
+		float r = sphere.radius;
+		if(lengthSquared <= r*r)
+			return store(pX, pY, pZ, store, offset);
+		
+		float s = r / (float) Math.sqrt(lengthSquared);
+		return store(sphere.centerX + dX*s, sphere.centerY + dY*s, sphere.centerZ + dZ*s, store, offset);
+	}
+	
+	/**
+	 * Projects the point p to the nearest point in the {@link Obbf}.
+	 * @param store The array to store the three coordinates in.
+	 * @param offset The index of the first coordinate in the array.
+	 * @return The array.
+	 **/
+	public static final float[] projectPointOntoObb(float pX, float pY, float pZ, Obbf obb, float[] store, int offset) {
+		float dX = pX - obb.originX, dY = pY - obb.originY, dZ = pZ - obb.originZ;
+		
+		// clamp the point in the space of the box, the axes are normalized
+		float x = dX*obb.xAxisX + dY*obb.xAxisY + dZ*obb.xAxisZ;
+		float y = dX*obb.yAxisX + dY*obb.yAxisY + dZ*obb.yAxisZ;
+		float z = dX*obb.zAxisX + dY*obb.zAxisY + dZ*obb.zAxisZ;
+		x = Math.max(-obb.extentX, Math.min(obb.extentX, x));
+		y = Math.max(-obb.extentY, Math.min(obb.extentY, y));
+		z = Math.max(-obb.extentZ, Math.min(obb.extentZ, z));
+		
+		return store(
+				obb.originX + obb.xAxisX*x + obb.yAxisX*y + obb.zAxisX*z,
+				obb.originY + obb.xAxisY*x + obb.yAxisY*y + obb.zAxisY*z,
+				obb.originZ + obb.xAxisZ*x + obb.yAxisZ*y + obb.zAxisZ*z,
+				store, offset);
+	}
+	
+	public static final Vector3f projectPointOntoTriangle(Vector3f point, Vector3f a, Vector3f b, Vector3f c, Vector3f store) {
+		float[] result = projectPointOntoTriangle(point.x, point.y, point.z, a.x, a.y, a.z, b.x, b.y, b.z, c.x, c.y, c.z, scratch.get(), 0);
+		return store.set(result[0], result[1], result[2]);
+	}
+	
+	public static final Vector3f projectPointOntoSegment(Vector3f point, Vector3f a, Vector3f b, Vector3f store) {
+		float abX = b.x - a.x, abY = b.y - a.y, abZ = b.z - a.z;
+		float abab = abX*abX + abY*abY + abZ*abZ;
+		float t = abab > 0 ? ((point.x - a.x)*abX + (point.y - a.y)*abY + (point.z - a.z)*abZ) / abab : 0;
+		t = t < 0 ? 0 : (t > 1 ? 1 : t);
+		return store.set(a.x + abX*t, a.y + abY*t, a.z + abZ*t);
+	}
+	
+	public static final Vector3f projectPointOntoAabb(Vector3f point, Aabbf aabb, Vector3f store) {
+		return store.set(
+				Math.max(aabb.originX - aabb.extentX, Math.min(aabb.originX + aabb.extentX, point.x)),
+				Math.max(aabb.originY - aabb.extentY, Math.min(aabb.originY + aabb.extentY, point.y)),
+				Math.max(aabb.originZ - aabb.extentZ, Math.min(aabb.originZ + aabb.extentZ, point.z)));
+	}
+	
+	public static final Vector3f projectPointOntoSphere(Vector3f point, Spheref sphere, Vector3f store) {
+		float dX = point.x - sphere.centerX, dY = point.y - sphere.centerY, dZ = point.z - sphere.centerZ;
+		float lengthSquared = dX*dX + dY*dY + dZ*dZ;
+		float r = sphere.radius;
+		if(lengthSquared <= r*r)
+			return store.set(point.x, point.y, point.z);
+		
+		float s = r / (float) Math.sqrt(lengthSquared);
+		return store.set(sphere.centerX + dX*s, sphere.centerY + dY*s, sphere.centerZ + dZ*s);
+	}
+	
+	public static final Vector3f projectPointOntoObb(Vector3f point, Obbf obb, Vector3f store) {
+		float[] result = projectPointOntoObb(point.x, point.y, point.z, obb, scratch.get(), 0);
+		return store.set(result[0], result[1], result[2]);
+	}
+	
+	/**
+	 * Projects a batch of points to the nearest points on the triangle abc.
+	 * @param points The points, three floats per point.
+	 * @param count The number of points.
+	 * @param store The array to store the projected points in.
+	 * @return The store array.
+	 **/
+	public static final float[] projectPointsOntoTriangle(float[] points, int count,
+			float aX, float aY, float aZ, float bX, float bY, float bZ, float cX, float cY, float cZ,
+			float[] store) {
+		for(int i = 0, end = count*3; i < end; i += 3)
+			projectPointOntoTriangle(points[i], points[i+1], points[i+2], aX, aY, aZ, bX, bY, bZ, cX, cY, cZ, store, i);
+		return store;
+	}
+	
+	/**
+	 * Projects a batch of points to the nearest points on the segment from a to b.
+	 * @param points The points, three floats per point.
+	 * @param count The number of points.
+	 * @param store The array to store the projected points in.
+	 * @return The store array.
+	 **/
+	public static final float[] projectPointsOntoSegment(float[] points, int count,
+			float aX, float aY, float aZ, float bX, float bY, float bZ,
+			float[] store) {
+		float abX = bX - aX, abY = bY - aY, abZ = bZ - aZ;
+		float abab = abX*abX + abY*abY + abZ*abZ;
+		float invLength = abab > 0 ? 1f / abab : 0;
+		
+		for(int i = 0, end = count*3; i < end; i += 3) {
+			float t = ((points[i] - aX)*abX + (points[i+1] - aY)*abY + (points[i+2] - aZ)*abZ) * invLength;
+			t = Math.max(0, Math.min(1, t));
+			store[i  ] = aX + abX*t;
+			store[i+1] = aY + abY*t;
+			store[i+2] = aZ + abZ*t;
+		}
+		return store;
+	}
+	
+	/**
+	 * Projects a batch of points to the nearest points in the {@link Aabbf}.
+	 * @param points The points, three floats per point.
+	 * @param count The number of points.
+	 * @param store The array to store the projected points in.
+	 * @return The store array.
+	 **/
+	public static final float[] projectPointsOntoAabb(float[] points, int count, Aabbf aabb, float[] store) {
+		float minX = aabb.originX - aabb.extentX, minY = aabb.originY - aabb.extentY, minZ = aabb.originZ - aabb.extentZ;
+		float maxX = aabb.originX + aabb.extentX, maxY = aabb.originY + aabb.extentY, maxZ = aabb.originZ + aabb.extentZ;
+		
+		for(int i = 0, end = count*3; i < end; i += 3) {
+			store[i  ] = Math.max(minX, Math.min(maxX, points[i  ]));
+			store[i+1] = Math.max(minY, Math.min(maxY, points[i+1]));
+			store[i+2] = Math.max(minZ, Math.min(maxZ, points[i+2]));
+		}
+		return store;
+	}
+	
+	/**
+	 * Projects a batch of points to the nearest points in the {@link Spheref}.
+	 * @param points The points, three floats per point.
+	 * @param count The number of points.
+	 * @param store The array to store the projected points in.
+	 * @return The store array.
+	 **/
+	public static final float[] projectPointsOntoSphere(float[] points, int count, Spheref sphere, float[] store) {
+		float cX = sphere.centerX, cY = sphere.centerY, cZ = sphere.centerZ, r = sphere.radius;
+		
+		for(int i = 0, end = count*3; i < end; i += 3) {
+			float dX = points[i] - cX, dY = points[i+1] - cY, dZ = points[i+2] - cZ;
+			float length = (float) Math.sqrt(dX*dX + dY*dY + dZ*dZ);
+			// points inside keep their distance to the center
+			float s = length > r ? r / length : 1;
+			store[i  ] = cX + dX*s;
+			store[i+1] = cY + dY*s;
+			store[i+2] = cZ + dZ*s;
+		}
+		return store;
+	}
+	
+	/**
+	 * Projects a batch of points to the nearest points in the {@link Obbf}.
+	 * @param points The points, three floats per point.
+	 * @param count The number of points.
+	 * @param store The array to store the projected points in.
+	 * @return The store array.
+	 **/
+	public static final float[] projectPointsOntoObb(float[] points, int count, Obbf obb, float[] store) {
+		float oX = obb.originX, oY = obb.originY, oZ = obb.originZ;
+		float eX = obb.extentX, eY = obb.extentY, eZ = obb.extentZ;
+		float xX = obb.xAxisX, xY = obb.xAxisY, xZ = obb.xAxisZ;
+		float yX = obb.yAxisX, yY = obb.yAxisY, yZ = obb.yAxisZ;
+		float zX = obb.zAxisX, zY = obb.zAxisY, zZ = obb.zAxisZ;
+		
+		for(int i = 0, end = count*3; i < end; i += 3) {
+			float dX = points[i] - oX, dY = points[i+1] - oY, dZ = points[i+2] - oZ;
+			float x = Math.max(-eX, Math.min(eX, dX*xX + dY*xY + dZ*xZ));
+			float y = Math.max(-eY, Math.min(eY, dX*yX + dY*yY + dZ*yZ));
+			float z = Math.max(-eZ, Math.min(eZ, dX*zX + dY*zY + dZ*zZ));
+			store[i  ] = oX + xX*x + yX*y + zX*z;
+			store[i+1] = oY + xY*x + yY*y + zY*z;
+			store[i+2] = oZ + xZ*x + yZ*y + zZ*z;
+		}
+		return store;
+	}
+	
+	private static float[] store(float x, float y, float z, float[] store, int offset) {
+		store[offset  ] = x;
+		store[offset+1] = y;
+		store[offset+2] = z;
+		return store;
+	}
+	
 }
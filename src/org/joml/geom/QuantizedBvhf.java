@@ -0,0 +1,420 @@
+package org.joml.geom;
+
+import java.util.Arrays;
+
+import org.joml.FrustumCuller;
+
+/**
+ * A compressed copy of a {@link Bvhf}, where the bounds of every node are quantized to 8 or 16 bits relative to the bounds of its parent.
+ *
+ * <br><br>
+ * <b>Layout:</b>
+ * <ul>
+ * <li>Only the root bounds are stored as floats, in {@link #rootBounds}.
+ * <li>{@link #data} holds one record per <i>inner</i> node. A record contains the quantized bounds of both children
+ *     (minX, minY, minZ, maxX, maxY, maxZ of the left child, then the same for the right child),
+ *     followed by one link per child. With 8 bits the twelve values are packed into three ints (five ints per record),
+ *     with 16 bits they are packed into six ints (eight ints per record).
+ * <li>A link that is zero or positive is the index of the record of a inner node.
+ *     A negative link is the bitwise complement (~) of a leaf, encoded as <code>first &lt;&lt; 4 | (count-1)</code>.
+ *     Leaves can therefore hold at most 16 primitives, and there can be at most 2^27 primitives.
+ * <li>{@link #rootLink} is the link to the root node.
+ * </ul>
+ * The bounds are always rounded outwards, so the decoded bounds enclose the original bounds and all queries stay conservative.
+ * Leaves are not stored as records at all, which together with the 8 bit encoding brings a node down to about a third of the size of a {@link Bvhf} node.
+ **/
+public class QuantizedBvhf {
+	
+	/** The maximum number of primitives in a leaf. **/
+	public static final int MAX_LEAF_SIZE = 16;
+	
+	/** The bounds of the root node: minX, minY, minZ, maxX, maxY, maxZ. **/
+	public final float[] rootBounds = new float[6];
+	/** The link to the root node. **/
+	public int rootLink;
+	/** The records of the inner nodes. **/
+	public int[] data;
+	/** The primitive indices referenced by the leaves. **/
+	public int[] primitives;
+	/** The number of records in use. **/
+	public int recordCount;
+	/** The number of bits per quantized value, either 8 or 16. **/
+	public final int bits;
+	
+	// Widens the quantization step a little, so the largest value always reaches the max corner despite rounding.
+	private static final float INFLATE = 1f + 1e-5f;
+	
+	private final int levels;
+	private final int recordSize;
+	
+	/**
+	 * Creates a compressed copy of the given {@link Bvhf}.
+	 * @param source The hierarchy to compress. Its leaves must not hold more than {@link #MAX_LEAF_SIZE} primitives.
+	 * @param bits The number of bits per quantized value, either 8 or 16.
+	 **/
+	public QuantizedBvhf(Bvhf source, int bits) {
+		if(bits != 8 && bits != 16)
+			throw new IllegalArgumentException("bits must be 8 or 16: " + bits);
+		if(source.primitiveCount >= (1 << 27))
+			throw new IllegalArgumentException("too many primitives: " + source.primitiveCount);
+		
+		this.bits = bits;
+		this.levels = (1 << bits) - 1;
+		this.recordSize = bits == 8 ? 5 : 8;
+		this.primitives = Arrays.copyOf(source.primitives, source.primitiveCount);
+		
+		int innerCount = 0;
+		for(int i = 0; i < source.nodeCount; i++) {
+			if(source.isLeaf(i)) {
+				if(source.getLeafCount(i) > MAX_LEAF_SIZE)
+					throw new IllegalArgumentException("leaf " + i + " holds more than " + MAX_LEAF_SIZE + " primitives");
+			} else {
+				innerCount++;
+			}
+		}
+		
+		this.data = new int[innerCount * recordSize];
+		this.recordCount = 0;
+		
+		if(source.nodeCount == 0) {
+			rootLink = ~0;
+			Arrays.fill(rootBounds, Float.NaN);
+			return;
+		}
+		
+		System.arraycopy(source.bounds, 0, rootBounds, 0, 6);
+		rootLink = encode(source, 0, rootBounds);
+	}
+	
+	// Writes the record of the given node (if it is a inner node), and returns the link to it.
+	private int encode(Bvhf source, int node, float[] decodedBounds) {
+		if(source.isLeaf(node))
+			return ~((source.getLeafFirst(node) << 4) | (source.getLeafCount(node)-1));
+		
+		int record = recordCount++;
+		int l = source.nodes[node*2];
+		int r = source.nodes[node*2+1];
+		
+		int[] quantized = new int[12];
+		quantize(decodedBounds, source.bounds, l*6, quantized, 0);
+		quantize(decodedBounds, source.bounds, r*6, quantized, 6);
+		
+		int o = record * recordSize;
+		if(bits == 8) {
+			for(int i = 0; i < 3; i++) {
+				data[o+i] = quantized[i*4] | (quantized[i*4+1] << 8) | (quantized[i*4+2] << 16) | (quantized[i*4+3] << 24);
+			}
+		} else {
+			for(int i = 0; i < 6; i++) {
+				data[o+i] = quantized[i*2] | (quantized[i*2+1] << 16);
+			}
+		}
+		
+		float[] leftBounds = new float[6];
+		float[] rightBounds = new float[6];
+		decode(record, decodedBounds, leftBounds, rightBounds);
+		
+		data[o+recordSize-2] = encode(source, l, leftBounds);
+		data[o+recordSize-1] = encode(source, r, rightBounds);
+		return record;
+	}
+	
+	// Quantizes the box at 'offset' relative to 'parent', rounding outwards.
+	private void quantize(float[] parent, float[] boxes, int offset, int[] store, int storeOffset) {
+		for(int axis = 0; axis < 3; axis++) {
+			float pmin = parent[axis];
+			float scale = (parent[axis+3] - pmin) / levels * INFLATE;
+			float min = boxes[offset+axis];
+			float max = boxes[offset+axis+3];
+			
+			int qmin = 0;
+			int qmax = 0;
+			
+			if(scale > 0) {
+				qmin = clamp((int) Math.floor((min - pmin) / scale));
+				qmax = clamp((int) Math.ceil((max - pmin) / scale));
+				
+				// fix up rounding errors using the exact same arithmetic as the decoder
+				while(qmin > 0 && pmin + qmin * scale > min) qmin--;
+				while(qmax < levels && pmin + qmax * scale < max) qmax++;
+			}
+			
+			store[storeOffset+axis] = qmin;
+			store[storeOffset+axis+3] = qmax;
+		}
+	}
+	
+	private int clamp(int q) {
+		return q < 0 ? 0 : (q > levels ? levels : q);
+	}
+	
+	/**
+	 * Decodes the bounds of both children of a record.
+	 * @param record The record.
+	 * @param parent The decoded bounds of the node the record belongs to.
+	 * @param leftStore The array to store the bounds of the left child in.
+	 * @param rightStore The array to store the bounds of the right child in.
+	 **/
+	public void decode(int record, float[] parent, float[] leftStore, float[] rightStore) {
+		decode(record, parent, 0, leftStore, 0, rightStore, 0);
+	}
+	
+	private void decode(int record, float[] parent, int parentOffset, float[] leftStore, int leftOffset, float[] rightStore, int rightOffset) {
+		int o = record * recordSize;
+		
+		float minX = parent[parentOffset  ];
+		float minY = parent[parentOffset+1];
+		float minZ = parent[parentOffset+2];
+		float scaleX = (parent[parentOffset+3] - minX) / levels * INFLATE;
+		float scaleY = (parent[parentOffset+4] - minY) / levels * INFLATE;
+		float scaleZ = (parent[parentOffset+5] - minZ) / levels * INFLATE;
+		
+		if(bits == 8) {
+			int w0 = data[o], w1 = data[o+1], w2 = data[o+2];
+			leftStore[leftOffset  ] = minX + ( w0         & 0xFF) * scaleX;
+			leftStore[leftOffset+1] = minY + ((w0 >>>  8) & 0xFF) * scaleY;
+			leftStore[leftOffset+2] = minZ + ((w0 >>> 16) & 0xFF) * scaleZ;
+			leftStore[leftOffset+3] = minX + ( w0 >>> 24        ) * scaleX;
+			leftStore[leftOffset+4] = minY + ( w1         & 0xFF) * scaleY;
+			leftStore[leftOffset+5] = minZ + ((w1 >>>  8) & 0xFF) * scaleZ;
+			rightStore[rightOffset  ] = minX + ((w1 >>> 16) & 0xFF) * scaleX;
+			rightStore[rightOffset+1] = minY + ( w1 >>> 24        ) * scaleY;
+			rightStore[rightOffset+2] = minZ + ( w2         & 0xFF) * scaleZ;
+			rightStore[rightOffset+3] = minX + ((w2 >>>  8) & 0xFF) * scaleX;
+			rightStore[rightOffset+4] = minY + ((w2 >>> 16) & 0xFF) * scaleY;
+			rightStore[rightOffset+5] = minZ + ( w2 >>> 24        ) * scaleZ;
+		} else {
+			leftStore[leftOffset  ] = minX + ( data[o  ]          & 0xFFFF) * scaleX;
+			leftStore[leftOffset+1] = minY + ( data[o  ] >>> 16           ) * scaleY;
+			leftStore[leftOffset+2] = minZ + ( data[o+1]          & 0xFFFF) * scaleZ;
+			leftStore[leftOffset+3] = minX + ( data[o+1] >>> 16           ) * scaleX;
+			leftStore[leftOffset+4] = minY + ( data[o+2]          & 0xFFFF) * scaleY;
+			leftStore[leftOffset+5] = minZ + ( data[o+2] >>> 16           ) * scaleZ;
+			rightStore[rightOffset  ] = minX + ( data[o+3]          & 0xFFFF) * scaleX;
+			rightStore[rightOffset+1] = minY + ( data[o+3] >>> 16           ) * scaleY;
+			rightStore[rightOffset+2] = minZ + ( data[o+4]          & 0xFFFF) * scaleZ;
+			rightStore[rightOffset+3] = minX + ( data[o+4] >>> 16           ) * scaleX;
+			rightStore[rightOffset+4] = minY + ( data[o+5]          & 0xFFFF) * scaleY;
+			rightStore[rightOffset+5] = minZ + ( data[o+5] >>> 16           ) * scaleZ;
+		}
+	}
+	
+	/**
+	 * @return The number of bytes used by the arrays of this hierarchy.
+	 **/
+	public long sizeInBytes() {
+		return 4L * (rootBounds.length + data.length + primitives.length);
+	}
+	
+	/**
+	 * Finds the nearest primitive hit by the given ray.
+	 * @param ray The ray.
+	 * @param intersector The ray test for a single primitive.
+	 * @param primitiveStore If not null, the index of the hit primitive (or -1) is stored at index 0.
+	 * @return The distance to the nearest 'hit point', or positive infinity if there is no hit.
+	 **/
+	public float intersectRay(Rayf ray, PrimitiveIntersector intersector, int[] primitiveStore) {
+		float closest = Float.POSITIVE_INFINITY;
+		int closestPrimitive = -1;
+		
+		if(primitives.length == 0) {
+			if(primitiveStore != null)
+				primitiveStore[0] = -1;
+			return closest;
+		}
+		
+		long startTime = GeometryMetrics.ENABLED ? GeometryMetrics.startQuery() : 0;
+		int visited = 0;
+		
+		float orgX = ray.originX;
+		float orgY = ray.originY;
+		float orgZ = ray.originZ;
+		float invDirX = 1f / ray.directionX;
+		float invDirY = 1f / ray.directionY;
+		float invDirZ = 1f / ray.directionZ;
+		
+		// every stack entry holds a link, the entry distance and the decoded bounds of the node
+		TraversalStack traversal = TraversalStack.acquire();
+		try {
+			int[] stack = traversal.nodes;
+			float[] stackT = traversal.distances;
+			float[] stackBounds = traversal.bounds;
+			float[] children = traversal.children;
+			int sp = 0;
+			
+			float t = intersectRayWithBox(rootBounds, 0, orgX, orgY, orgZ, invDirX, invDirY, invDirZ);
+			if(t < closest) {
+				stack[sp] = rootLink;
+				stackT[sp] = t;
+				System.arraycopy(rootBounds, 0, stackBounds, 0, 6);
+				sp++;
+			}
+			
+			while(sp > 0) {
+				int link = stack[--sp];
+				
+				if(stackT[sp] >= closest)
+					continue;
+				
+				visited++;
+				if(link < 0) {
+					int leaf = ~link;
+					for(int i = leaf >>> 4, end = (leaf >>> 4) + (leaf & 15) + 1; i < end; i++) {
+						float tp = intersector.intersectRay(primitives[i], ray);
+						if(tp < closest) {
+							closest = tp;
+							closestPrimitive = primitives[i];
+						}
+					}
+					continue;
+				}
+				
+				decode(link, stackBounds, sp*6, children, 0, children, 6);
+				
+				if(sp + 2 > stack.length) {
+					traversal.grow();
+					stack = traversal.nodes;
+					stackT = traversal.distances;
+					stackBounds = traversal.bounds;
+				}
+				
+				int o = link * recordSize;
+				int a = data[o+recordSize-2];
+				int b = data[o+recordSize-1];
+				int ao = 0;
+				int bo = 6;
+				float ta = intersectRayWithBox(children, ao, orgX, orgY, orgZ, invDirX, invDirY, invDirZ);
+				float tb = intersectRayWithBox(children, bo, orgX, orgY, orgZ, invDirX, invDirY, invDirZ);
+				
+				// push the far child first, so the near child is visited first
+				if(ta > tb) {
+					int swap = a; a = b; b = swap;
+					swap = ao; ao = bo; bo = swap;
+					float swapT = ta; ta = tb; tb = swapT;
+				}
+				if(tb < closest) {
+					stack[sp] = b;
+					stackT[sp] = tb;
+					System.arraycopy(children, bo, stackBounds, sp*6, 6);
+					sp++;
+				}
+				if(ta < closest) {
+					stack[sp] = a;
+					stackT[sp] = ta;
+					System.arraycopy(children, ao, stackBounds, sp*6, 6);
+					sp++;
+				}
+			}
+		} finally {
+			traversal.release();
+		}
+		
+		if(primitiveStore != null)
+			primitiveStore[0] = closestPrimitive;
+		
+		if(GeometryMetrics.ENABLED) GeometryMetrics.countQuery(GeometryMetrics.QUERY_RAY, startTime, visited);
+		return closest;
+	}
+	
+	private static float intersectRayWithBox(float[] box, int o, float orgX, float orgY, float orgZ, float invDirX, float invDirY, float invDirZ) {
+		return Intersections.intersectRayWithBox(orgX, orgY, orgZ, invDirX, invDirY, invDirZ,
+				box[o], box[o+1], box[o+2], box[o+3], box[o+4], box[o+5]);
+	}
+	
+	/**
+	 * Visits all primitives in leaves whose (decoded) bounds overlap the given box.
+	 * @return False, if the visitor stopped the query. True if not.
+	 **/
+	public boolean queryBox(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, PrimitiveVisitor visitor) {
+		return query(minX, minY, minZ, maxX, maxY, maxZ, null, visitor);
+	}
+	
+	/**
+	 * Visits all primitives in leaves whose (decoded) bounds overlap the given {@link Aabbf}.
+	 * @return False, if the visitor stopped the query. True if not.
+	 **/
+	public boolean queryAabb(Aabbf aabb, PrimitiveVisitor visitor) {
+		return query(
+				aabb.originX - aabb.extentX, aabb.originY - aabb.extentY, aabb.originZ - aabb.extentZ,
+				aabb.originX + aabb.extentX, aabb.originY + aabb.extentY, aabb.originZ + aabb.extentZ,
+				null, visitor);
+	}
+	
+	/**
+	 * Visits all primitives in leaves whose (decoded) bounds are inside or intersect the given frustum.
+	 * @return False, if the visitor stopped the query. True if not.
+	 **/
+	public boolean queryFrustum(FrustumCuller culler, PrimitiveVisitor visitor) {
+		return query(0, 0, 0, 0, 0, 0, culler, visitor);
+	}
+	
+	private boolean query(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, FrustumCuller culler, PrimitiveVisitor visitor) {
+		if(primitives.length == 0)
+			return true;
+		
+		int query = culler != null ? GeometryMetrics.QUERY_FRUSTUM : GeometryMetrics.QUERY_BOX;
+		long startTime = GeometryMetrics.ENABLED ? GeometryMetrics.startQuery() : 0;
+		int visited = 0;
+		TraversalStack traversal = TraversalStack.acquire();
+		try {
+			int[] stack = traversal.nodes;
+			float[] stackBounds = traversal.bounds;
+			float[] children = traversal.children;
+			int sp = 0;
+			
+			stack[sp] = rootLink;
+			System.arraycopy(rootBounds, 0, stackBounds, 0, 6);
+			sp++;
+			
+			while(sp > 0) {
+				int link = stack[--sp];
+				int b = sp*6;
+				visited++;
+				
+				if(culler != null) {
+					if(culler.isAabInsideFrustum(stackBounds[b], stackBounds[b+1], stackBounds[b+2], stackBounds[b+3], stackBounds[b+4], stackBounds[b+5]) != -1)
+						continue;
+				} else {
+					if(stackBounds[b  ] > maxX || stackBounds[b+3] < minX) continue;
+					if(stackBounds[b+1] > maxY || stackBounds[b+4] < minY) continue;
+					if(stackBounds[b+2] > maxZ || stackBounds[b+5] < minZ) continue;
+				}
+				
+				if(link < 0) {
+					int leaf = ~link;
+					for(int i = leaf >>> 4, end = (leaf >>> 4) + (leaf & 15) + 1; i < end; i++) {
+						if(!visitor.visit(primitives[i]))
+							return endQuery(query, startTime, visited, false);
+					}
+					continue;
+				}
+				
+				decode(link, stackBounds, b, children, 0, children, 6);
+				
+				if(sp + 2 > stack.length) {
+					traversal.grow();
+					stack = traversal.nodes;
+					stackBounds = traversal.bounds;
+				}
+				
+				int o = link * recordSize;
+				stack[sp] = data[o+recordSize-1];
+				System.arraycopy(children, 6, stackBounds, sp*6, 6);
+				sp++;
+				stack[sp] = data[o+recordSize-2];
+				System.arraycopy(children, 0, stackBounds, sp*6, 6);
+				sp++;
+			}
+		} finally {
+			traversal.release();
+		}
+		
+		return endQuery(query, startTime, visited, true);
+	}
+	
+	private static boolean endQuery(int query, long startTime, int visited, boolean result) {
+		if(GeometryMetrics.ENABLED) GeometryMetrics.countQuery(query, startTime, visited);
+		return result;
+	}
+
+}
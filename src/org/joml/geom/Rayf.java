@@ -62,6 +62,16 @@ public class Rayf {
 		directionZ = direction.z;
 	}
 	
+	public Rayf set(Rayf load) {
+		originX = load.originX;
+		originY = load.originY;
+		originZ = load.originZ;
+		directionX = load.directionX;
+		directionY = load.directionY;
+		directionZ = load.directionZ;
+		return this;
+	}
+	
 	public Vector3f getDirection(Vector3f store) {
 		return store.set(directionX, directionY, directionZ);
 	}
@@ -122,31 +132,44 @@ public class Rayf {
 		return this;
 	}
 	
-	public Rayf transform(Matrix4f load, Vector4f store, boolean normalizeDirection) {
-		// Transform Origin
-		{
-			store.set(originX, originY, originZ, 1f);
-			load.transform(store);
-			originX = store.x;
-			originY = store.y;
-			originZ = store.z;
-		}
+	/**
+	 * Transforms this ray by the given affine matrix.
+	 * The origin is transformed as a point, the direction as a vector (ignoring the translation of the matrix).
+	 * To transform many rays at once, see {@link Transformations#transformRays}.
+	 * @param load The matrix.
+	 * @param normalizeDirection If the direction should be normalized after the transformation.
+	 *        Without normalization, the distances along the ray stay the same, since the whole parametric line is transformed.
+	 * @return This {@link Rayf}.
+	 **/
+	public Rayf transform(Matrix4f load, boolean normalizeDirection) {
+		float ox = originX, oy = originY, oz = originZ;
+		originX = load.m00 * ox + load.m10 * oy + load.m20 * oz + load.m30;
+		originY = load.m01 * ox + load.m11 * oy + load.m21 * oz + load.m31;
+		originZ = load.m02 * ox + load.m12 * oy + load.m22 * oz + load.m32;
 		
-		// Transform Direction
-		{
-			store.set(directionX, directionY, directionZ, 1f);
-			load.transform(store);
-			
-			if(normalizeDirection) {
-				store.normalize();
-			}
-			
-			directionX = store.x;
-			directionY = store.y;
-			directionZ = store.z;
+		float dx = directionX, dy = directionY, dz = directionZ;
+		directionX = load.m00 * dx + load.m10 * dy + load.m20 * dz;
+		directionY = load.m01 * dx + load.m11 * dy + load.m21 * dz;
+		directionZ = load.m02 * dx + load.m12 * dy + load.m22 * dz;
+		
+		if(normalizeDirection) {
+			float invLength = 1f / (float) Math.sqrt(directionX*directionX + directionY*directionY + directionZ*directionZ);
+			directionX *= invLength;
+			directionY *= invLength;
+			directionZ *= invLength;
 		}
 		
 		return this;
 	}
 	
+	/**
+	 * Transforms this ray by the given affine matrix.
+	 * @param store Not used anymore.
+	 * @deprecated Use {@link #transform(Matrix4f, boolean)}, which needs no temporary vector.
+	 **/
+	@Deprecated
+	public Rayf transform(Matrix4f load, Vector4f store, boolean normalizeDirection) {
+		return transform(load, normalizeDirection);
+	}
+	
 }
@@ -0,0 +1,316 @@
+package org.joml.geom;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Builds a {@link Bvhf} using the surface area heuristic (SAH), evaluated over a fixed number of bins per axis.
+ *
+ * <br><br>
+ * For every node, the centroids of its primitives are sorted into bins along each axis,
+ * and the node is split at the bin border with the lowest estimated cost:
+ * <pre>
+ * cost = traversalCost + intersectionCost * (area(left) * count(left) + area(right) * count(right)) / area(node)
+ * </pre>
+ * A node becomes a leaf if splitting is not cheaper than intersecting all of its primitives, as long as it is not larger than the maximum leaf size.
+ * Raising the traversal cost gives shallower trees with larger leaves, which tends to suit frustum culling better than ray tracing.
+ * <br>
+ * The subtrees of large nodes are built in parallel, by the threads of a {@link ForkJoinPool}.
+ **/
+public class SahBuilder {
+	
+	private ForkJoinPool pool = ForkJoinPool.commonPool();
+	private int grainSize = 4096;
+	private int binCount = 16;
+	private int maxLeafSize = 4;
+	private float traversalCost = 1f;
+	private float intersectionCost = 1f;
+	
+	/**
+	 * Sets the pool that runs the build.
+	 * @return This {@link SahBuilder}.
+	 **/
+	public SahBuilder setPool(ForkJoinPool pool) {
+		this.pool = pool;
+		return this;
+	}
+	
+	/**
+	 * Sets the number of primitives below which a subtree is built by a single thread.
+	 * @return This {@link SahBuilder}.
+	 **/
+	public SahBuilder setGrainSize(int grainSize) {
+		this.grainSize = Math.max(1, grainSize);
+		return this;
+	}
+	
+	/**
+	 * Sets the number of bins per axis, 16 to 32 are the usual values.
+	 * @return This {@link SahBuilder}.
+	 **/
+	public SahBuilder setBinCount(int binCount) {
+		this.binCount = Math.max(2, Math.min(256, binCount));
+		return this;
+	}
+	
+	/**
+	 * Sets the maximum number of primitives in a leaf.
+	 * @return This {@link SahBuilder}.
+	 **/
+	public SahBuilder setMaxLeafSize(int maxLeafSize) {
+		this.maxLeafSize = Math.max(1, maxLeafSize);
+		return this;
+	}
+	
+	/**
+	 * Sets the estimated cost of visiting a inner node.
+	 * @return This {@link SahBuilder}.
+	 **/
+	public SahBuilder setTraversalCost(float traversalCost) {
+		this.traversalCost = traversalCost;
+		return this;
+	}
+	
+	/**
+	 * Sets the estimated cost of testing a single primitive.
+	 * @return This {@link SahBuilder}.
+	 **/
+	public SahBuilder setIntersectionCost(float intersectionCost) {
+		this.intersectionCost = intersectionCost;
+		return this;
+	}
+	
+	/**
+	 * Builds a new {@link Bvhf}.
+	 * @param primitiveBounds The bounds of the primitives, six floats per primitive: minX, minY, minZ, maxX, maxY, maxZ.
+	 * @param primitiveCount The number of primitives.
+	 * @return The new {@link Bvhf}.
+	 **/
+	public Bvhf build(float[] primitiveBounds, int primitiveCount) {
+		Bvhf bvh = new Bvhf(primitiveCount);
+		
+		for(int i = 0; i < primitiveCount; i++)
+			bvh.primitives[i] = i;
+		
+		if(primitiveCount == 0)
+			return bvh;
+		
+		AtomicInteger nodeCount = new AtomicInteger(1);
+		BuildTask root = new BuildTask(bvh, primitiveBounds, nodeCount, 0, 0, primitiveCount);
+		
+		if(primitiveCount <= grainSize || pool == null) {
+			root.compute();
+		} else {
+			pool.invoke(root);
+		}
+		
+		bvh.nodeCount = nodeCount.get();
+		return bvh;
+	}
+	
+	private class BuildTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		
+		private final Bvhf bvh;
+		private final float[] primitiveBounds;
+		private final AtomicInteger nodeCount;
+		private final int node;
+		private final int first;
+		private final int count;
+		
+		// per task scratch space: bounds (6 floats) and count of every bin, for every axis
+		private float[] binBounds;
+		private int[] binCounts;
+		private float[] rightAreas;
+		private float[] cMin;
+		private float[] binScale;
+		
+		BuildTask(Bvhf bvh, float[] primitiveBounds, AtomicInteger nodeCount, int node, int first, int count) {
+			this.bvh = bvh;
+			this.primitiveBounds = primitiveBounds;
+			this.nodeCount = nodeCount;
+			this.node = node;
+			this.first = first;
+			this.count = count;
+		}
+		
+		@Override
+		protected void compute() {
+			binBounds = new float[3*binCount*6];
+			binCounts = new int[3*binCount];
+			rightAreas = new float[binCount];
+			cMin = new float[3];
+			binScale = new float[3];
+			build(node, first, count, pool != null && count > grainSize);
+		}
+		
+		private void build(int node, int first, int count, boolean parallel) {
+			float[] bounds = bvh.bounds;
+			int[] primitives = bvh.primitives;
+			Bvhf.computeBounds(primitiveBounds, primitives, first, count, bounds, node*6);
+			
+			int split = count > 1 ? findSplit(node, first, count) : -1;
+			
+			if(split < 0) {
+				bvh.nodes[node*2  ] = ~first;
+				bvh.nodes[node*2+1] = count;
+				return;
+			}
+			
+			int left = nodeCount.getAndAdd(2);
+			bvh.nodes[node*2  ] = left;
+			bvh.nodes[node*2+1] = left+1;
+			
+			int leftCount = split - first;
+			
+			if(parallel) {
+				invokeAll(
+						new BuildTask(bvh, primitiveBounds, nodeCount, left  , first, leftCount),
+						new BuildTask(bvh, primitiveBounds, nodeCount, left+1, split, count-leftCount));
+			} else {
+				build(left  , first, leftCount      , false);
+				build(left+1, split, count-leftCount, false);
+			}
+		}
+		
+		// Partitions the primitives of the node, and returns the offset of the first primitive of the right child, or -1 if the node should be a leaf.
+		private int findSplit(int node, int first, int count) {
+			int[] primitives = bvh.primitives;
+			
+			// centroid bounds, doubled centroids are good enough
+			float cMinX = Float.POSITIVE_INFINITY, cMinY = Float.POSITIVE_INFINITY, cMinZ = Float.POSITIVE_INFINITY;
+			float cMaxX = Float.NEGATIVE_INFINITY, cMaxY = Float.NEGATIVE_INFINITY, cMaxZ = Float.NEGATIVE_INFINITY;
+			for(int i = first, end = first+count; i < end; i++) {
+				int p = primitives[i]*6;
+				float x = primitiveBounds[p  ] + primitiveBounds[p+3];
+				float y = primitiveBounds[p+1] + primitiveBounds[p+4];
+				float z = primitiveBounds[p+2] + primitiveBounds[p+5];
+				cMinX = x < cMinX ? x : cMinX; cMaxX = x > cMaxX ? x : cMaxX;
+				cMinY = y < cMinY ? y : cMinY; cMaxY = y > cMaxY ? y : cMaxY;
+				cMinZ = z < cMinZ ? z : cMinZ; cMaxZ = z > cMaxZ ? z : cMaxZ;
+			}
+			
+			cMin[0] = cMinX;
+			cMin[1] = cMinY;
+			cMin[2] = cMinZ;
+			binScale[0] = cMaxX - cMinX;
+			binScale[1] = cMaxY - cMinY;
+			binScale[2] = cMaxZ - cMinZ;
+			
+			Arrays.fill(binCounts, 0);
+			for(int i = 0; i < binBounds.length; i += 6) {
+				binBounds[i  ] = binBounds[i+1] = binBounds[i+2] = Float.POSITIVE_INFINITY;
+				binBounds[i+3] = binBounds[i+4] = binBounds[i+5] = Float.NEGATIVE_INFINITY;
+			}
+			
+			for(int axis = 0; axis < 3; axis++) {
+				float extent = binScale[axis];
+				// slightly less than binCount, so the largest centroid still lands in the last bin
+				binScale[axis] = extent > 0 ? binCount * (1f - 1e-6f) / extent : 0;
+			}
+			
+			for(int i = first, end = first+count; i < end; i++) {
+				int p = primitives[i]*6;
+				for(int axis = 0; axis < 3; axis++) {
+					int bin = axis*binCount + bin(p, axis);
+					binCounts[bin]++;
+					int b = bin*6;
+					binBounds[b  ] = Math.min(binBounds[b  ], primitiveBounds[p  ]);
+					binBounds[b+1] = Math.min(binBounds[b+1], primitiveBounds[p+1]);
+					binBounds[b+2] = Math.min(binBounds[b+2], primitiveBounds[p+2]);
+					binBounds[b+3] = Math.max(binBounds[b+3], primitiveBounds[p+3]);
+					binBounds[b+4] = Math.max(binBounds[b+4], primitiveBounds[p+4]);
+					binBounds[b+5] = Math.max(binBounds[b+5], primitiveBounds[p+5]);
+				}
+			}
+			
+			float bestCost = Float.POSITIVE_INFINITY;
+			int bestAxis = -1;
+			int bestBin = -1;
+			
+			for(int axis = 0; axis < 3; axis++) {
+				if(binScale[axis] == 0)
+					continue;
+				
+				// sweep from the right, remembering the area of everything right of each border
+				float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+				float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+				for(int bin = binCount-1; bin > 0; bin--) {
+					int b = (axis*binCount + bin)*6;
+					minX = Math.min(minX, binBounds[b  ]); minY = Math.min(minY, binBounds[b+1]); minZ = Math.min(minZ, binBounds[b+2]);
+					maxX = Math.max(maxX, binBounds[b+3]); maxY = Math.max(maxY, binBounds[b+4]); maxZ = Math.max(maxZ, binBounds[b+5]);
+					rightAreas[bin] = halfArea(minX, minY, minZ, maxX, maxY, maxZ);
+				}
+				
+				// sweep from the left, evaluating the cost of splitting left of each bin
+				minX = Float.POSITIVE_INFINITY; minY = Float.POSITIVE_INFINITY; minZ = Float.POSITIVE_INFINITY;
+				maxX = Float.NEGATIVE_INFINITY; maxY = Float.NEGATIVE_INFINITY; maxZ = Float.NEGATIVE_INFINITY;
+				int leftCount = 0;
+				for(int bin = 1; bin < binCount; bin++) {
+					int b = (axis*binCount + bin-1)*6;
+					minX = Math.min(minX, binBounds[b  ]); minY = Math.min(minY, binBounds[b+1]); minZ = Math.min(minZ, binBounds[b+2]);
+					maxX = Math.max(maxX, binBounds[b+3]); maxY = Math.max(maxY, binBounds[b+4]); maxZ = Math.max(maxZ, binBounds[b+5]);
+					leftCount += binCounts[axis*binCount + bin-1];
+					
+					int rightCount = count - leftCount;
+					if(leftCount == 0 || rightCount == 0)
+						continue;
+					
+					float cost = halfArea(minX, minY, minZ, maxX, maxY, maxZ) * leftCount + rightAreas[bin] * rightCount;
+					if(cost < bestCost) {
+						bestCost = cost;
+						bestAxis = axis;
+						bestBin = bin;
+					}
+				}
+			}
+			
+			float[] bounds = bvh.bounds;
+			int o = node*6;
+			float area = halfArea(bounds[o], bounds[o+1], bounds[o+2], bounds[o+3], bounds[o+4], bounds[o+5]);
+			float leafCost = intersectionCost * count;
+			float splitCost = area > 0 ? traversalCost + intersectionCost * bestCost / area : traversalCost;
+			
+			if(bestAxis < 0) {
+				// all centroids are in the same spot, only a split in the middle can make the node small enough
+				if(count <= maxLeafSize)
+					return -1;
+				return first + (count >>> 1);
+			}
+			
+			if(splitCost >= leafCost && count <= maxLeafSize)
+				return -1;
+			
+			// partition the primitives by their bin
+			int i = first;
+			int j = first + count - 1;
+			while(i <= j) {
+				if(bin(primitives[i]*6, bestAxis) < bestBin) {
+					i++;
+				} else {
+					int swap = primitives[i];
+					primitives[i] = primitives[j];
+					primitives[j] = swap;
+					j--;
+				}
+			}
+			return i;
+		}
+		
+		private int bin(int p, int axis) {
+			float centroid = primitiveBounds[p+axis] + primitiveBounds[p+axis+3];
+			int bin = (int) ((centroid - cMin[axis]) * binScale[axis]);
+			return bin < 0 ? 0 : (bin >= binCount ? binCount-1 : bin);
+		}
+	}
+	
+	private static float halfArea(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+		float dx = maxX - minX;
+		float dy = maxY - minY;
+		float dz = maxZ - minZ;
+		return dx*dy + dy*dz + dz*dx;
+	}
+
+}
@@ -0,0 +1,200 @@
+package org.joml.geom;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Bakes {@link SignedDistanceField}s from closed triangle meshes.
+ *
+ * <br><br>
+ * The distance of every sample is found with a nearest-triangle query on a {@link Bvhf} over the mesh,
+ * and its sign with a {@link MeshContainment} test (both per row of samples, so the containment test takes its fast path).
+ * Neighbouring samples are at most one cell size apart in distance, so the query of every sample is limited by the distance of the previous sample of its row.
+ * <br>
+ * With {@link #setNarrowBand(float)} only the bricks near the surface store their samples: A brick whose center is farther from the surface than the band plus
+ * half of the diagonal of the brick gets a single value. This keeps fields of large, mostly empty volumes small.
+ * <br>
+ * The bricks are baked in parallel.
+ **/
+public class SdfBaker {
+	
+	private static final int BRICK_SAMPLES = SignedDistanceField.BRICK_SAMPLES;
+	private static final int BRICK_VOLUME = BRICK_SAMPLES*BRICK_SAMPLES*BRICK_SAMPLES;
+	
+	private final TriangleMeshf mesh;
+	private final Bvhf bvh;
+	private final MeshContainment containment;
+	
+	private ForkJoinPool pool = ForkJoinPool.commonPool();
+	private float band = Float.POSITIVE_INFINITY;
+	
+	/**
+	 * @param mesh The closed mesh.
+	 * @param bvh The hierarchy over the triangles of the mesh, see {@link TriangleMeshf#buildBvh(int)}.
+	 **/
+	public SdfBaker(TriangleMeshf mesh, Bvhf bvh) {
+		this.mesh = mesh;
+		this.bvh = bvh;
+		// the bricks are baked in parallel, every brick classifies its own samples
+		this.containment = new MeshContainment(mesh, bvh).setPool(null);
+	}
+	
+	/**
+	 * Sets the pool that bakes the bricks. If null, the bricks are baked by the calling thread.
+	 * @return This {@link SdfBaker}.
+	 **/
+	public SdfBaker setPool(ForkJoinPool pool) {
+		this.pool = pool;
+		return this;
+	}
+	
+	/**
+	 * Sets the width of the narrow band around the surface. Distances are clamped to the band, and bricks outside of it store a single value.
+	 * @param band The width of the band, positive infinity (the default) to store all bricks.
+	 * @return This {@link SdfBaker}.
+	 **/
+	public SdfBaker setNarrowBand(float band) {
+		if(!(band > 0))
+			throw new IllegalArgumentException("The band has to be positive: " + band);
+		
+		this.band = band;
+		return this;
+	}
+	
+	/**
+	 * Bakes a field covering the given bounds.
+	 * @param bounds The bounds of the field, usually the bounds of the mesh plus a margin.
+	 * @param cellSize The distance between neighbouring samples.
+	 * @return The new field.
+	 **/
+	public SignedDistanceField bake(Aabbf bounds, float cellSize) {
+		return bake(bounds.getMinX(), bounds.getMinY(), bounds.getMinZ(), bounds.getMaxX(), bounds.getMaxY(), bounds.getMaxZ(), cellSize);
+	}
+	
+	/**
+	 * Bakes a field covering the box from min to max. The field may extend a little beyond max, to fit whole cells.
+	 * @param cellSize The distance between neighbouring samples.
+	 * @return The new field.
+	 **/
+	public SignedDistanceField bake(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, float cellSize) {
+		if(!(cellSize > 0))
+			throw new IllegalArgumentException("The cell size has to be positive: " + cellSize);
+		
+		final SignedDistanceField field = new SignedDistanceField(minX, minY, minZ, cellSize,
+				samples(maxX - minX, cellSize), samples(maxY - minY, cellSize), samples(maxZ - minZ, cellSize));
+		
+		// find the bricks near the surface
+		final int brickCount = field.bricks.length;
+		final boolean[] stored = new boolean[brickCount];
+		if(band == Float.POSITIVE_INFINITY) {
+			for(int i = 0; i < brickCount; i++)
+				stored[i] = true;
+		} else {
+			Parallel.forRange(pool, 0, brickCount, 16, new Parallel.Body() {
+				public void run(int from, int to) {
+					PrimitiveDistance distance = distance();
+					for(int i = from; i < to; i++)
+						classifyBrick(field, i, distance, stored);
+				}
+			});
+		}
+		
+		int offset = 0;
+		for(int i = 0; i < brickCount; i++) {
+			if(stored[i]) {
+				field.bricks[i] = offset;
+				offset += BRICK_VOLUME;
+			}
+		}
+		field.data = new float[offset];
+		
+		Parallel.forRange(pool, 0, brickCount, 1, new Parallel.Body() {
+			public void run(int from, int to) {
+				PrimitiveDistance distance = distance();
+				float[] points = new float[BRICK_VOLUME*3];
+				boolean[] inside = new boolean[BRICK_VOLUME];
+				for(int i = from; i < to; i++) {
+					if(stored[i])
+						bakeBrick(field, i, distance, points, inside);
+				}
+			}
+		});
+		return field;
+	}
+	
+	private static int samples(float size, float cellSize) {
+		return Math.max(2, (int) Math.ceil(size / cellSize) + 1);
+	}
+	
+	// The squared distance to a triangle of the mesh. Every task uses its own, for the scratch memory.
+	private PrimitiveDistance distance() {
+		final float[] closest = new float[3];
+		return new PrimitiveDistance() {
+			public float distanceSquared(int primitive, float x, float y, float z) {
+				mesh.closestPoint(primitive, x, y, z, closest, 0);
+				float dX = closest[0] - x, dY = closest[1] - y, dZ = closest[2] - z;
+				return dX*dX + dY*dY + dZ*dZ;
+			}
+		};
+	}
+	
+	// Decides if the brick is near the surface, or sets its single value.
+	private void classifyBrick(SignedDistanceField field, int brick, PrimitiveDistance distance, boolean[] stored) {
+		int bx = brick % field.bricksX;
+		int by = (brick / field.bricksX) % field.bricksY;
+		int bz = brick / (field.bricksX*field.bricksY);
+		float half = SignedDistanceField.BRICK_SIZE * 0.5f;
+		float x = field.minX + (bx*SignedDistanceField.BRICK_SIZE + half) * field.cellSize;
+		float y = field.minY + (by*SignedDistanceField.BRICK_SIZE + half) * field.cellSize;
+		float z = field.minZ + (bz*SignedDistanceField.BRICK_SIZE + half) * field.cellSize;
+		float radius = (float) Math.sqrt(3) * half * field.cellSize;
+		
+		if(bvh.findNearest(x, y, z, band + radius, distance, null) < Float.POSITIVE_INFINITY) {
+			stored[brick] = true;
+		} else {
+			field.values[brick] = containment.isInside(x, y, z) ? -band : band;
+		}
+	}
+	
+	private void bakeBrick(SignedDistanceField field, int brick, PrimitiveDistance distance, float[] points, boolean[] inside) {
+		int bx = brick % field.bricksX;
+		int by = (brick / field.bricksX) % field.bricksY;
+		int bz = brick / (field.bricksX*field.bricksY);
+		float cellSize = field.cellSize;
+		float x0 = field.minX + bx*SignedDistanceField.BRICK_SIZE*cellSize;
+		float y0 = field.minY + by*SignedDistanceField.BRICK_SIZE*cellSize;
+		float z0 = field.minZ + bz*SignedDistanceField.BRICK_SIZE*cellSize;
+		
+		// x fastest, so every row of the brick is a row for the containment test
+		for(int i = 0, lz = 0; lz < BRICK_SAMPLES; lz++) {
+			for(int ly = 0; ly < BRICK_SAMPLES; ly++) {
+				for(int lx = 0; lx < BRICK_SAMPLES; lx++, i++) {
+					points[i*3  ] = x0 + lx*cellSize;
+					points[i*3+1] = y0 + ly*cellSize;
+					points[i*3+2] = z0 + lz*cellSize;
+				}
+			}
+		}
+		containment.classify(points, BRICK_VOLUME, inside);
+		
+		float[] data = field.data;
+		int offset = field.bricks[brick];
+		float previous = Float.POSITIVE_INFINITY;
+		for(int i = 0; i < BRICK_VOLUME; i++) {
+			float x = points[i*3], y = points[i*3+1], z = points[i*3+2];
+			if(i % BRICK_SAMPLES == 0)
+				previous = Float.POSITIVE_INFINITY;
+			
+			// the previous sample of the row is one cell away, so this sample is at most one cell farther from the surface
+			float d = Float.POSITIVE_INFINITY;
+			if(previous < band)
+				d = bvh.findNearest(x, y, z, Math.min(band, (previous + cellSize) * 1.001f + 1e-6f), distance, null);
+			if(d == Float.POSITIVE_INFINITY)
+				d = bvh.findNearest(x, y, z, band, distance, null);
+			d = Math.min(d, band);
+			
+			data[offset + i] = inside[i] ? -d : d;
+			previous = d;
+		}
+	}
+
+}
@@ -0,0 +1,181 @@
+package org.joml.geom;
+
+import java.util.Arrays;
+
+import org.joml.Vector3f;
+
+/**
+ * A signed distance field on a regular grid, stored in sparse bricks: Negative inside of the surface, positive outside.
+ * Fields are baked from triangle meshes with {@link SdfBaker}.
+ *
+ * <br><br>
+ * <b>Layout:</b>
+ * <ul>
+ * <li>The grid has {@link #samplesX} * {@link #samplesY} * {@link #samplesZ} samples, sample (i,j,k) lies at min + (i,j,k) * {@link #cellSize}.
+ * <li>The cells are grouped into bricks of {@link #BRICK_SIZE}^3 cells. A brick either stores all of its samples,
+ *     including those on its far faces (so a cell never reads from two bricks), or a single value for the whole brick.
+ * <li>{@link #bricks} holds the offset of the samples of every brick in {@link #data}, x fastest, or -1 for a brick with a single value in {@link #values}.
+ * </ul>
+ * The bricks that are farther from the surface than the narrow band of the baker store a single value, the band width with the sign of the brick.
+ * So all distances are clamped to the band, and a field with an infinite band stores every brick.
+ * <br>
+ * Sampling is trilinear, and reads the eight samples of one cell. Points outside of the grid are moved onto it first, so their distance is underestimated.
+ * A field is read only after baking, so it can be sampled by any number of threads.
+ **/
+public class SignedDistanceField {
+	
+	/** The number of cells of a brick along each axis. **/
+	public static final int BRICK_SIZE = 8;
+	/** The number of samples of a stored brick along each axis. **/
+	public static final int BRICK_SAMPLES = BRICK_SIZE + 1;
+	
+	/** The position of the first sample. **/
+	public final float minX, minY, minZ;
+	/** The distance between neighbouring samples. **/
+	public final float cellSize;
+	/** The number of samples along each axis, at least two. **/
+	public final int samplesX, samplesY, samplesZ;
+	/** The number of bricks along each axis. **/
+	public final int bricksX, bricksY, bricksZ;
+	
+	/** The offset of the samples of every brick in {@link #data}, or -1. **/
+	public final int[] bricks;
+	/** The value of every brick that does not store its samples. **/
+	public final float[] values;
+	/** The samples of the stored bricks, {@link #BRICK_SAMPLES}^3 per brick. **/
+	public float[] data;
+	
+	// the gradient of the Vector3f method, a field is shared by threads
+	private static final ThreadLocal<float[]> gradient = new ThreadLocal<float[]>() {
+		@Override
+		protected float[] initialValue() {
+			return new float[3];
+		}
+	};
+	
+	/**
+	 * Creates a field whose bricks all have the value zero. The bricks are filled in by {@link SdfBaker}.
+	 **/
+	public SignedDistanceField(float minX, float minY, float minZ, float cellSize, int samplesX, int samplesY, int samplesZ) {
+		if(samplesX < 2 || samplesY < 2 || samplesZ < 2)
+			throw new IllegalArgumentException("A field needs at least two samples along each axis: " + samplesX + "x" + samplesY + "x" + samplesZ);
+		if(!(cellSize > 0))
+			throw new IllegalArgumentException("The cell size has to be positive: " + cellSize);
+		
+		this.minX = minX;
+		this.minY = minY;
+		this.minZ = minZ;
+		this.cellSize = cellSize;
+		this.samplesX = samplesX;
+		this.samplesY = samplesY;
+		this.samplesZ = samplesZ;
+		this.bricksX = (samplesX - 2) / BRICK_SIZE + 1;
+		this.bricksY = (samplesY - 2) / BRICK_SIZE + 1;
+		this.bricksZ = (samplesZ - 2) / BRICK_SIZE + 1;
+		
+		int brickCount = bricksX*bricksY*bricksZ;
+		this.bricks = new int[brickCount];
+		this.values = new float[brickCount];
+		this.data = new float[0];
+		Arrays.fill(bricks, -1);
+	}
+	
+	/**
+	 * @return The signed distance at the given point.
+	 **/
+	public float sample(float x, float y, float z) {
+		return sample(x, y, z, null, 0);
+	}
+	
+	/**
+	 * @return The signed distance at the given point.
+	 **/
+	public float sample(Vector3f point) {
+		return sample(point.x, point.y, point.z, null, 0);
+	}
+	
+	/**
+	 * Samples the distance and its gradient at the given point. The gradient points away from the surface, and has about unit length near it.
+	 * @param gradientStore The array to store the three components of the gradient in. If null, only the distance is sampled.
+	 * @param offset The index of the first component in the array.
+	 * @return The signed distance at the given point.
+	 **/
+	public float sample(float x, float y, float z, float[] gradientStore, int offset) {
+		float invCell = 1f / cellSize;
+		float gx = clamp((x - minX) * invCell, samplesX - 1);
+		float gy = clamp((y - minY) * invCell, samplesY - 1);
+		float gz = clamp((z - minZ) * invCell, samplesZ - 1);
+		
+		// the cell, and the position in it
+		int cx = Math.min((int) gx, samplesX - 2);
+		int cy = Math.min((int) gy, samplesY - 2);
+		int cz = Math.min((int) gz, samplesZ - 2);
+		float fx = gx - cx, fy = gy - cy, fz = gz - cz;
+		
+		int brick = ((cz / BRICK_SIZE) * bricksY + cy / BRICK_SIZE) * bricksX + cx / BRICK_SIZE;
+		int o = bricks[brick];
+		if(o < 0) {
+			if(gradientStore != null) {
+				gradientStore[offset  ] = 0;
+				gradientStore[offset+1] = 0;
+				gradientStore[offset+2] = 0;
+			}
+			return values[brick];
+		}
+		
+		int lx = cx % BRICK_SIZE, ly = cy % BRICK_SIZE, lz = cz % BRICK_SIZE;
+		int i = o + (lz*BRICK_SAMPLES + ly)*BRICK_SAMPLES + lx;
+		int dy = BRICK_SAMPLES, dz = BRICK_SAMPLES*BRICK_SAMPLES;
+		float d000 = data[i], d100 = data[i+1];
+		float d010 = data[i+dy], d110 = data[i+dy+1];
+		float d001 = data[i+dz], d101 = data[i+dz+1];
+		float d011 = data[i+dz+dy], d111 = data[i+dz+dy+1];
+		
+		// along x, then y, then z
+		float d00 = d000 + (d100 - d000)*fx;
+		float d10 = d010 + (d110 - d010)*fx;
+		float d01 = d001 + (d101 - d001)*fx;
+		float d11 = d011 + (d111 - d011)*fx;
+		float d0 = d00 + (d10 - d00)*fy;
+		float d1 = d01 + (d11 - d01)*fy;
+		
+		if(gradientStore != null) {
+			// the derivatives of the trilinear interpolation
+			float ex0 = (d100 - d000) + ((d110 - d010) - (d100 - d000))*fy;
+			float ex1 = (d101 - d001) + ((d111 - d011) - (d101 - d001))*fy;
+			gradientStore[offset  ] = (ex0 + (ex1 - ex0)*fz) * invCell;
+			gradientStore[offset+1] = ((d10 - d00) + ((d11 - d01) - (d10 - d00))*fz) * invCell;
+			gradientStore[offset+2] = (d1 - d0) * invCell;
+		}
+		return d0 + (d1 - d0)*fz;
+	}
+	
+	/**
+	 * Samples the gradient at the given point, see {@link #sample(float, float, float, float[], int)}.
+	 * @return The store vector.
+	 **/
+	public Vector3f sampleGradient(float x, float y, float z, Vector3f store) {
+		float[] g = gradient.get();
+		sample(x, y, z, g, 0);
+		return store.set(g[0], g[1], g[2]);
+	}
+	
+	/**
+	 * @return The number of bricks that store their samples.
+	 **/
+	public int getStoredBricks() {
+		return data.length / (BRICK_SAMPLES*BRICK_SAMPLES*BRICK_SAMPLES);
+	}
+	
+	/**
+	 * @return The number of bytes used by the arrays of this field.
+	 **/
+	public long sizeInBytes() {
+		return 4L * (bricks.length + values.length + data.length);
+	}
+	
+	private static float clamp(float g, int max) {
+		return g < 0 ? 0 : (g > max ? max : g);
+	}
+
+}
@@ -0,0 +1,411 @@
+package org.joml.geom;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.joml.FrustumCuller;
+
+/**
+ * A broadphase over the boxes of bodies that is updated by one thread and queried by any number of other threads, without locks.
+ *
+ * <br><br>
+ * The writer batches its changes ({@link #setBox(int, float, float, float, float, float, float)}, {@link #remove(int)}), and makes them visible with {@link #publish()}:
+ * This builds a new, immutable {@link Snapshot} (a {@link Bvhf} and a copy of the boxes) and swaps it in atomically. Readers never see a half updated hierarchy.
+ * <br>
+ * A reader takes the current snapshot with {@link #acquire()}, queries it as long as it likes, and gives it back with {@link Snapshot#release()}:
+ * <pre>
+ * SnapshotBroadphase.Snapshot snapshot = broadphase.acquire();
+ * try {
+ *     snapshot.queryBox(minX, minY, minZ, maxX, maxY, maxZ, visitor);
+ * } finally {
+ *     snapshot.release();
+ * }
+ * </pre>
+ * Every snapshot counts its readers, plus one while it is the current snapshot. When the last reader of a replaced snapshot leaves, its arrays are handed back to the writer,
+ * and reused by a later {@link #publish()}. So a snapshot must not be used after it was released.
+ * <br>
+ * Snapshots share what did not change: If no body was added or removed since the last snapshot, the new snapshot only refits the bounds, and shares the nodes and primitives
+ * of the last one. The bodies are the primitives of the hierarchy, so queries report body indices.
+ * <br>
+ * All methods except {@link #acquire()} and the methods of {@link Snapshot} must be called by the writer thread only.
+ **/
+public class SnapshotBroadphase {
+	
+	/**
+	 * An immutable state of the broadphase.
+	 **/
+	public static final class Snapshot {
+		
+		/** The hierarchy over the bodies. Its primitives are body indices. **/
+		public final Bvhf bvh;
+		/** The boxes of the bodies, six floats per body. The boxes of removed bodies are undefined. **/
+		public final float[] boxes;
+		/** The number of the publish that created this snapshot. **/
+		public final long version;
+		
+		private final SnapshotBroadphase owner;
+		// the readers, plus one while this is the current snapshot; once zero, the snapshot is reclaimed
+		private final AtomicInteger references = new AtomicInteger(1);
+		
+		private Snapshot(SnapshotBroadphase owner, Bvhf bvh, float[] boxes, long version) {
+			this.owner = owner;
+			this.bvh = bvh;
+			this.boxes = boxes;
+			this.version = version;
+		}
+		
+		// Adds a reader, unless the snapshot was already reclaimed.
+		private boolean retain() {
+			while(true) {
+				int count = references.get();
+				if(count == 0)
+					return false;
+				if(references.compareAndSet(count, count + 1))
+					return true;
+			}
+		}
+		
+		/**
+		 * Gives the snapshot back. The snapshot must not be used afterwards.
+		 **/
+		public void release() {
+			int count = references.decrementAndGet();
+			if(count == 0) {
+				recycle(owner.recycledBoxes, boxes);
+				recycle(owner.recycledBounds, bvh.bounds);
+			} else if(count < 0) {
+				throw new IllegalStateException("The snapshot was released more often than it was acquired");
+			}
+		}
+		
+		/**
+		 * @return The number of bodies in this snapshot.
+		 **/
+		public int getBodyCount() {
+			return bvh.primitiveCount;
+		}
+		
+		/**
+		 * Stores the box of a body in the given {@link Aabbf}.
+		 * @return The {@link Aabbf}.
+		 **/
+		public Aabbf getBox(int body, Aabbf store) {
+			int b = body*6;
+			store.extentX = (boxes[b+3] - boxes[b  ]) * 0.5f;
+			store.extentY = (boxes[b+4] - boxes[b+1]) * 0.5f;
+			store.extentZ = (boxes[b+5] - boxes[b+2]) * 0.5f;
+			store.originX = (boxes[b+3] + boxes[b  ]) * 0.5f;
+			store.originY = (boxes[b+4] + boxes[b+1]) * 0.5f;
+			store.originZ = (boxes[b+5] + boxes[b+2]) * 0.5f;
+			return store;
+		}
+		
+		/**
+		 * Visits all bodies whose boxes overlap the given box.
+		 * @return False, if the visitor stopped the query. True if not.
+		 **/
+		public boolean queryBox(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, PrimitiveVisitor visitor) {
+			return query(minX, minY, minZ, maxX, maxY, maxZ, null, visitor);
+		}
+		
+		/**
+		 * Visits all bodies whose boxes overlap the given {@link Aabbf}.
+		 * @return False, if the visitor stopped the query. True if not.
+		 **/
+		public boolean queryAabb(Aabbf aabb, PrimitiveVisitor visitor) {
+			return query(
+					aabb.originX - aabb.extentX, aabb.originY - aabb.extentY, aabb.originZ - aabb.extentZ,
+					aabb.originX + aabb.extentX, aabb.originY + aabb.extentY, aabb.originZ + aabb.extentZ,
+					null, visitor);
+		}
+		
+		/**
+		 * Visits all bodies whose boxes are inside or intersect the given frustum.
+		 * @return False, if the visitor stopped the query. True if not.
+		 **/
+		public boolean queryFrustum(FrustumCuller culler, PrimitiveVisitor visitor) {
+			float inf = Float.POSITIVE_INFINITY;
+			return query(-inf, -inf, -inf, inf, inf, inf, culler, visitor);
+		}
+		
+		// Unlike a plain Bvhf, the snapshot knows the boxes of its bodies, so the bodies of a leaf are tested one by one.
+		private boolean query(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, FrustumCuller culler, PrimitiveVisitor visitor) {
+			if(bvh.nodeCount == 0)
+				return true;
+			
+			float[] bounds = bvh.bounds;
+			int[] nodes = bvh.nodes;
+			TraversalStack traversal = TraversalStack.acquire();
+			try {
+				int[] stack = traversal.nodes;
+				int sp = 0;
+				stack[sp++] = 0;
+				
+				while(sp > 0) {
+					int node = stack[--sp];
+					if(!overlaps(bounds, node*6, minX, minY, minZ, maxX, maxY, maxZ, culler))
+						continue;
+					
+					int l = nodes[node*2];
+					int r = nodes[node*2+1];
+					
+					if(l < 0) {
+						for(int i = ~l, end = ~l+r; i < end; i++) {
+							int body = bvh.primitives[i];
+							if(overlaps(boxes, body*6, minX, minY, minZ, maxX, maxY, maxZ, culler) && !visitor.visit(body))
+								return false;
+						}
+						continue;
+					}
+					
+					if(sp + 2 > stack.length) {
+						traversal.grow();
+						stack = traversal.nodes;
+					}
+					
+					stack[sp++] = r;
+					stack[sp++] = l;
+				}
+			} finally {
+				traversal.release();
+			}
+			return true;
+		}
+		
+		private static boolean overlaps(float[] bounds, int b, float minX, float minY, float minZ, float maxX, float maxY, float maxZ, FrustumCuller culler) {
+			if(culler != null)
+				return culler.isAabInsideFrustum(bounds[b], bounds[b+1], bounds[b+2], bounds[b+3], bounds[b+4], bounds[b+5]) == -1;
+			
+			return bounds[b  ] <= maxX && bounds[b+3] >= minX &&
+					bounds[b+1] <= maxY && bounds[b+4] >= minY &&
+					bounds[b+2] <= maxZ && bounds[b+5] >= minZ;
+		}
+	
+	}
+	
+	private final int maxLeafSize;
+	private final AtomicReference<Snapshot> current = new AtomicReference<Snapshot>();
+	// the arrays of reclaimed snapshots, handed back by the last reader: a pool for every kind of array and every length
+	private final ConcurrentHashMap<Integer, ConcurrentLinkedQueue<float[]>> recycledBoxes = new ConcurrentHashMap<Integer, ConcurrentLinkedQueue<float[]>>();
+	private final ConcurrentHashMap<Integer, ConcurrentLinkedQueue<float[]>> recycledBounds = new ConcurrentHashMap<Integer, ConcurrentLinkedQueue<float[]>>();
+	
+	// the state of the writer
+	private float[] boxes;
+	private boolean[] live;
+	private int[] bodies;
+	private int bodyCount;
+	private boolean moved;
+	private boolean structureChanged;
+	private long version;
+	
+	/**
+	 * @param capacity The number of bodies the broadphase can hold before it grows.
+	 * @param maxLeafSize The maximum number of bodies in a leaf of the hierarchy.
+	 **/
+	public SnapshotBroadphase(int capacity, int maxLeafSize) {
+		this.maxLeafSize = maxLeafSize;
+		this.boxes = new float[Math.max(1, capacity)*6];
+		this.live = new boolean[Math.max(1, capacity)];
+		this.bodies = new int[0];
+		this.current.set(new Snapshot(this, new Bvhf(0), new float[0], 0));
+	}
+	
+	public SnapshotBroadphase() {
+		this(64, 4);
+	}
+	
+	/**
+	 * Adds or moves a body. The change becomes visible with the next {@link #publish()}.
+	 * @param body The index of the body, a non-negative int. Keep the indices small, the broadphase stores the boxes in a table indexed by them.
+	 **/
+	public void setBox(int body, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+		if(body < 0)
+			throw new IllegalArgumentException("The body has to be non-negative: " + body);
+		
+		if(body >= live.length) {
+			int capacity = Math.max(body + 1, live.length*2);
+			boxes = Arrays.copyOf(boxes, capacity*6);
+			live = Arrays.copyOf(live, capacity);
+			structureChanged = true;
+		}
+		if(!live[body]) {
+			live[body] = true;
+			bodyCount++;
+			structureChanged = true;
+		}
+		
+		int b = body*6;
+		boxes[b  ] = minX;
+		boxes[b+1] = minY;
+		boxes[b+2] = minZ;
+		boxes[b+3] = maxX;
+		boxes[b+4] = maxY;
+		boxes[b+5] = maxZ;
+		moved = true;
+	}
+	
+	/**
+	 * Adds or moves a body. The change becomes visible with the next {@link #publish()}.
+	 **/
+	public void setAabb(int body, Aabbf aabb) {
+		setBox(body,
+				aabb.originX - aabb.extentX, aabb.originY - aabb.extentY, aabb.originZ - aabb.extentZ,
+				aabb.originX + aabb.extentX, aabb.originY + aabb.extentY, aabb.originZ + aabb.extentZ);
+	}
+	
+	/**
+	 * Removes a body. The change becomes visible with the next {@link #publish()}.
+	 * @return True, if the body was in the broadphase.
+	 **/
+	public boolean remove(int body) {
+		if(body < 0 || body >= live.length || !live[body])
+			return false;
+		
+		live[body] = false;
+		bodyCount--;
+		structureChanged = true;
+		return true;
+	}
+	
+	/**
+	 * @return True, if the writer holds the body (published or not).
+	 **/
+	public boolean contains(int body) {
+		return body >= 0 && body < live.length && live[body];
+	}
+	
+	/**
+	 * @return The number of bodies of the writer (published or not).
+	 **/
+	public int getBodyCount() {
+		return bodyCount;
+	}
+	
+	/**
+	 * Publishes the changes since the last publish as a new snapshot.
+	 * The hierarchy is rebuilt if bodies were added or removed, and refitted if they only moved.
+	 * @return The version of the current snapshot.
+	 **/
+	public long publish() {
+		return publish(false);
+	}
+	
+	/**
+	 * Publishes the changes since the last publish as a new snapshot.
+	 * @param rebuild True to always rebuild the hierarchy, e.g. when refitting made it too loose.
+	 * @return The version of the current snapshot.
+	 **/
+	public long publish(boolean rebuild) {
+		if(!moved && !structureChanged && !rebuild)
+			return version;
+		
+		Snapshot last = current.get();
+		float[] snapshotBoxes = obtain(recycledBoxes, boxes.length);
+		System.arraycopy(boxes, 0, snapshotBoxes, 0, boxes.length);
+		
+		Bvhf bvh;
+		if(structureChanged || rebuild) {
+			if(structureChanged) {
+				bodies = new int[bodyCount];
+				for(int body = 0, i = 0; i < bodyCount; body++) {
+					if(live[body])
+						bodies[i++] = body;
+				}
+			}
+			// arrays of other lengths only come back from older layouts
+			int boundsLength = (bodyCount > 0 ? bodyCount*2 - 1 : 0) * 6;
+			retainLength(recycledBoxes, boxes.length);
+			retainLength(recycledBounds, boundsLength);
+			bvh = Bvhf.build(snapshotBoxes, bodies, bodyCount, maxLeafSize, obtain(recycledBounds, boundsLength));
+		} else {
+			bvh = refit(last.bvh, snapshotBoxes);
+		}
+		
+		Snapshot snapshot = new Snapshot(this, bvh, snapshotBoxes, ++version);
+		current.set(snapshot);
+		// the last snapshot is reclaimed as soon as its readers are gone
+		last.release();
+		
+		moved = false;
+		structureChanged = false;
+		return version;
+	}
+	
+	/**
+	 * Takes the current snapshot. It has to be given back with {@link Snapshot#release()}. Can be called by any thread.
+	 * @return The current snapshot.
+	 **/
+	public Snapshot acquire() {
+		while(true) {
+			Snapshot snapshot = current.get();
+			// fails only if the snapshot was replaced and reclaimed in between, then the next one is current
+			if(snapshot.retain())
+				return snapshot;
+		}
+	}
+	
+	/**
+	 * @return The version of the current snapshot. Can be called by any thread.
+	 **/
+	public long getVersion() {
+		return current.get().version;
+	}
+	
+	// A new hierarchy sharing the nodes and primitives of the given one, with the bounds of the given boxes.
+	private Bvhf refit(Bvhf last, float[] boxes) {
+		Bvhf bvh = new Bvhf(0);
+		bvh.nodes = last.nodes;
+		bvh.primitives = last.primitives;
+		bvh.nodeCount = last.nodeCount;
+		bvh.primitiveCount = last.primitiveCount;
+		bvh.bounds = obtain(recycledBounds, last.bounds.length);
+		
+		float[] bounds = bvh.bounds;
+		int[] nodes = bvh.nodes;
+		// children are stored after their parents, so a reverse walk visits them first
+		for(int node = bvh.nodeCount-1; node >= 0; node--) {
+			int l = nodes[node*2];
+			int r = nodes[node*2+1];
+			if(l < 0) {
+				Bvhf.computeBounds(boxes, bvh.primitives, ~l, r, bounds, node*6);
+			} else {
+				int b = node*6, lb = l*6, rb = r*6;
+				for(int axis = 0; axis < 3; axis++) {
+					bounds[b+axis  ] = Math.min(bounds[lb+axis  ], bounds[rb+axis  ]);
+					bounds[b+axis+3] = Math.max(bounds[lb+axis+3], bounds[rb+axis+3]);
+				}
+			}
+		}
+		return bvh;
+	}
+	
+	// A reclaimed array of the given length, or a new one.
+	private static float[] obtain(ConcurrentHashMap<Integer, ConcurrentLinkedQueue<float[]>> pools, int length) {
+		ConcurrentLinkedQueue<float[]> pool = pools.get(length);
+		float[] array = pool != null ? pool.poll() : null;
+		return array != null ? array : new float[length];
+	}
+	
+	private static void recycle(ConcurrentHashMap<Integer, ConcurrentLinkedQueue<float[]>> pools, float[] array) {
+		ConcurrentLinkedQueue<float[]> pool = pools.get(array.length);
+		if(pool == null) {
+			ConcurrentLinkedQueue<float[]> created = new ConcurrentLinkedQueue<float[]>();
+			pool = pools.putIfAbsent(array.length, created);
+			if(pool == null)
+				pool = created;
+		}
+		pool.offer(array);
+	}
+	
+	// Drops the pools of all other lengths.
+	private static void retainLength(ConcurrentHashMap<Integer, ConcurrentLinkedQueue<float[]>> pools, int length) {
+		for(Integer key : pools.keySet()) {
+			if(key.intValue() != length)
+				pools.remove(key);
+		}
+	}
+
+}
@@ -0,0 +1,26 @@
+package org.joml.geom;
+
+/**
+ * Receives the results of a query on a {@link SphereTreef}.
+ * Every result comes with its coverage, a measure of how much of its sphere the query covers (see the queries for the exact meaning), e.g. to select a level of detail.
+ **/
+public interface SphereTreeVisitor {
+	
+	/**
+	 * A primitive was found.
+	 * @param primitive The index of the primitive.
+	 * @param coverage The coverage of the sphere of the primitive.
+	 * @return True, if the query should continue. False, if the query should stop right away.
+	 **/
+	public boolean visitPrimitive(int primitive, float coverage);
+	
+	/**
+	 * A whole subtree was found, without visiting its primitives one by one.
+	 * Its primitives are given by {@link SphereTreef#getFirst(int)} and {@link SphereTreef#getCount(int)}.
+	 * @param node The root of the subtree.
+	 * @param coverage The coverage of the sphere of the node.
+	 * @return True, if the query should continue. False, if the query should stop right away.
+	 **/
+	public boolean visitNode(int node, float coverage);
+
+}
@@ -0,0 +1,466 @@
+package org.joml.geom;
+
+import org.joml.FrustumCuller;
+
+/**
+ * A bounding sphere hierarchy over primitives that are given by their bounding spheres, stored in flat arrays like a {@link Bvhf}.
+ * A node test is a single distance comparison, which makes this cheaper than a {@link Bvhf} for coarse passes over many small or distant objects,
+ * like culling and level of detail selection.
+ *
+ * <br><br>
+ * <b>Layout:</b>
+ * <ul>
+ * <li>{@link #spheres} holds four floats per node: centerX, centerY, centerZ, radius. Every node sphere encloses the spheres of its children.
+ * <li>{@link #nodes} holds two ints per node, as in {@link Bvhf}: the two children of a inner node, or the complement (~) of the first primitive and the number of primitives of a leaf.
+ * <li>{@link #ranges} holds two ints per node: the first entry and the number of entries of {@link #primitives} in the subtree of the node.
+ * <li>The root is node 0, and children are stored after their parent.
+ * </ul>
+ * The tree keeps the array of primitive spheres it was built from. Moving a primitive with {@link #update(int, float, float, float, float)}
+ * refits the spheres of its ancestors, without changing the shape of the tree.
+ **/
+public class SphereTreef {
+	
+	/** The spheres of the nodes, four floats per node. **/
+	public float[] spheres;
+	/** The links of the nodes, two ints per node. **/
+	public int[] nodes;
+	/** The primitives of the subtree of every node, two ints per node. **/
+	public int[] ranges;
+	/** The parent of every node, -1 for the root. **/
+	public int[] parents;
+	/** The primitive indices referenced by the leaves. **/
+	public int[] primitives;
+	/** The leaf of every primitive. **/
+	public int[] leaves;
+	/** The spheres of the primitives, four floats per primitive. This is the array the tree was built from. **/
+	public float[] primitiveSpheres;
+	/** The number of nodes in use. **/
+	public int nodeCount;
+	/** The number of primitives in this tree. **/
+	public int primitiveCount;
+	
+	private SphereTreef(float[] primitiveSpheres, int primitiveCount) {
+		int maxNodes = primitiveCount > 0 ? primitiveCount*2 - 1 : 0;
+		this.spheres = new float[maxNodes * 4];
+		this.nodes = new int[maxNodes * 2];
+		this.ranges = new int[maxNodes * 2];
+		this.parents = new int[maxNodes];
+		this.primitives = new int[primitiveCount];
+		this.leaves = new int[primitiveCount];
+		this.primitiveSpheres = primitiveSpheres;
+		this.primitiveCount = primitiveCount;
+	}
+	
+	/**
+	 * Builds a tree by recursively splitting the primitives at the median of their centers, like {@link Bvhf#build(float[], int, int)}.
+	 * @param primitiveSpheres The spheres of the primitives, four floats per primitive: centerX, centerY, centerZ, radius. The tree keeps this array.
+	 * @param primitiveCount The number of primitives.
+	 * @param maxLeafSize The maximum number of primitives in a leaf.
+	 * @return The new {@link SphereTreef}.
+	 **/
+	public static SphereTreef build(float[] primitiveSpheres, int primitiveCount, int maxLeafSize) {
+		SphereTreef tree = new SphereTreef(primitiveSpheres, primitiveCount);
+		for(int i = 0; i < primitiveCount; i++)
+			tree.primitives[i] = i;
+		
+		if(primitiveCount > 0) {
+			// the splits only need the centers, as degenerate boxes
+			float[] centers = new float[primitiveCount*6];
+			for(int i = 0; i < primitiveCount; i++) {
+				for(int axis = 0; axis < 3; axis++) {
+					centers[i*6+axis] = primitiveSpheres[i*4+axis];
+					centers[i*6+axis+3] = primitiveSpheres[i*4+axis];
+				}
+			}
+			
+			tree.nodeCount = 1;
+			tree.parents[0] = -1;
+			tree.buildMedian(centers, 0, 0, primitiveCount, Math.max(1, maxLeafSize));
+			tree.refit();
+		}
+		return tree;
+	}
+	
+	private void buildMedian(float[] centers, int node, int first, int count, int maxLeafSize) {
+		ranges[node*2  ] = first;
+		ranges[node*2+1] = count;
+		
+		if(count <= maxLeafSize) {
+			nodes[node*2  ] = ~first;
+			nodes[node*2+1] = count;
+			for(int i = first; i < first+count; i++)
+				leaves[primitives[i]] = node;
+			return;
+		}
+		
+		int axis = Bvhf.largestCentroidAxis(centers, primitives, first, count);
+		int half = count >>> 1;
+		Bvhf.selectByCentroid(centers, primitives, first, first+count-1, first+half, axis);
+		
+		int left = nodeCount;
+		nodeCount += 2;
+		nodes[node*2  ] = left;
+		nodes[node*2+1] = left+1;
+		parents[left] = node;
+		parents[left+1] = node;
+		
+		buildMedian(centers, left  , first     , half      , maxLeafSize);
+		buildMedian(centers, left+1, first+half, count-half, maxLeafSize);
+	}
+	
+	/**
+	 * Recomputes the spheres of all nodes from the spheres of the primitives, e.g. after many primitives moved.
+	 **/
+	public void refit() {
+		// children are stored after their parents
+		for(int node = nodeCount-1; node >= 0; node--)
+			fitNode(node);
+	}
+	
+	/**
+	 * Moves a primitive, and refits the spheres of its ancestors.
+	 * The refit stops early at the first ancestor whose sphere does not change.
+	 **/
+	public void update(int primitive, float centerX, float centerY, float centerZ, float radius) {
+		int p = primitive*4;
+		primitiveSpheres[p  ] = centerX;
+		primitiveSpheres[p+1] = centerY;
+		primitiveSpheres[p+2] = centerZ;
+		primitiveSpheres[p+3] = radius;
+		
+		for(int node = leaves[primitive]; node >= 0; node = parents[node]) {
+			if(!fitNode(node))
+				break;
+		}
+	}
+	
+	// Recomputes the sphere of the node from its children. True, if the sphere changed.
+	private boolean fitNode(int node) {
+		int s = node*4;
+		float x, y, z, r;
+		int l = nodes[node*2];
+		int rr = nodes[node*2+1];
+		
+		if(l < 0) {
+			// the center of the bounds of the primitive spheres, and the radius that reaches all of them
+			float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+			float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+			for(int i = ~l, end = ~l+rr; i < end; i++) {
+				int p = primitives[i]*4;
+				float pr = primitiveSpheres[p+3];
+				minX = Math.min(minX, primitiveSpheres[p  ] - pr); maxX = Math.max(maxX, primitiveSpheres[p  ] + pr);
+				minY = Math.min(minY, primitiveSpheres[p+1] - pr); maxY = Math.max(maxY, primitiveSpheres[p+1] + pr);
+				minZ = Math.min(minZ, primitiveSpheres[p+2] - pr); maxZ = Math.max(maxZ, primitiveSpheres[p+2] + pr);
+			}
+			x = (minX + maxX) * 0.5f;
+			y = (minY + maxY) * 0.5f;
+			z = (minZ + maxZ) * 0.5f;
+			r = 0;
+			for(int i = ~l, end = ~l+rr; i < end; i++) {
+				int p = primitives[i]*4;
+				float dX = primitiveSpheres[p] - x, dY = primitiveSpheres[p+1] - y, dZ = primitiveSpheres[p+2] - z;
+				r = Math.max(r, (float) Math.sqrt(dX*dX + dY*dY + dZ*dZ) + primitiveSpheres[p+3]);
+			}
+		} else {
+			// the smallest sphere enclosing both children
+			int a = l*4, b = rr*4;
+			float aX = spheres[a], aY = spheres[a+1], aZ = spheres[a+2], aR = spheres[a+3];
+			float bX = spheres[b], bY = spheres[b+1], bZ = spheres[b+2], bR = spheres[b+3];
+			float dX = bX - aX, dY = bY - aY, dZ = bZ - aZ;
+			float d = (float) Math.sqrt(dX*dX + dY*dY + dZ*dZ);
+			if(d + bR <= aR) {
+				x = aX; y = aY; z = aZ; r = aR;
+			} else if(d + aR <= bR) {
+				x = bX; y = bY; z = bZ; r = bR;
+			} else {
+				r = (d + aR + bR) * 0.5f;
+				float t = (r - aR) / d;
+				x = aX + dX*t;
+				y = aY + dY*t;
+				z = aZ + dZ*t;
+				// cover the rounding of the center
+				r *= 1.000001f;
+			}
+		}
+		
+		if(spheres[s] == x && spheres[s+1] == y && spheres[s+2] == z && spheres[s+3] == r)
+			return false;
+		
+		spheres[s  ] = x;
+		spheres[s+1] = y;
+		spheres[s+2] = z;
+		spheres[s+3] = r;
+		return true;
+	}
+	
+	/**
+	 * @return True, if the given node is a leaf.
+	 **/
+	public boolean isLeaf(int node) {
+		return nodes[node*2] < 0;
+	}
+	
+	/**
+	 * @return The offset of the first primitive of the subtree of the given node in {@link #primitives}.
+	 **/
+	public int getFirst(int node) {
+		return ranges[node*2];
+	}
+	
+	/**
+	 * @return The number of primitives in the subtree of the given node.
+	 **/
+	public int getCount(int node) {
+		return ranges[node*2+1];
+	}
+	
+	/**
+	 * Stores the sphere of the given node in the given {@link Spheref}.
+	 * @return The {@link Spheref}.
+	 **/
+	public Spheref getSphere(int node, Spheref store) {
+		int s = node*4;
+		return store.setCenter(spheres[s], spheres[s+1], spheres[s+2]).setRadius(spheres[s+3]);
+	}
+	
+	/**
+	 * Visits the primitives inside of the frustum, and selects the level of detail with the size of the spheres as seen from the eye.
+	 * <br>
+	 * The coverage of a sphere is its radius divided by its distance from the eye (about half of the angle it covers in radians, for small spheres),
+	 * or positive infinity if the eye is inside of it.
+	 * Nodes whose coverage is less than minCoverage are not refined, but visited as a whole with {@link SphereTreeVisitor#visitNode(int, float)}, e.g. to draw a impostor for the whole cluster.
+	 * @param culler The frustum.
+	 * @param minCoverage The coverage below which nodes are not refined. Zero to always visit the primitives.
+	 * @return False, if the visitor stopped the query. True if not.
+	 **/
+	public boolean queryFrustum(FrustumCuller culler, float eyeX, float eyeY, float eyeZ, float minCoverage, SphereTreeVisitor visitor) {
+		if(nodeCount == 0)
+			return true;
+		
+		long startTime = GeometryMetrics.ENABLED ? GeometryMetrics.startQuery() : 0;
+		int visited = 0;
+		TraversalStack traversal = TraversalStack.acquire();
+		try {
+			int[] stack = traversal.nodes;
+			int sp = 0;
+			stack[sp++] = 0;
+			
+			while(sp > 0) {
+				int node = stack[--sp];
+				int s = node*4;
+				visited++;
+				if(!Intersections.intersectSphereWithFrustum(spheres[s], spheres[s+1], spheres[s+2], spheres[s+3], culler))
+					continue;
+				
+				float coverage = coverageFromEye(spheres, s, eyeX, eyeY, eyeZ);
+				if(coverage < minCoverage) {
+					if(!visitor.visitNode(node, coverage))
+						return endQuery(GeometryMetrics.QUERY_FRUSTUM, startTime, visited, false);
+					continue;
+				}
+				
+				int l = nodes[node*2];
+				int r = nodes[node*2+1];
+				
+				if(l < 0) {
+					for(int i = ~l, end = ~l+r; i < end; i++) {
+						int p = primitives[i]*4;
+						if(!Intersections.intersectSphereWithFrustum(primitiveSpheres[p], primitiveSpheres[p+1], primitiveSpheres[p+2], primitiveSpheres[p+3], culler))
+							continue;
+						if(!visitor.visitPrimitive(primitives[i], coverageFromEye(primitiveSpheres, p, eyeX, eyeY, eyeZ)))
+							return endQuery(GeometryMetrics.QUERY_FRUSTUM, startTime, visited, false);
+					}
+					continue;
+				}
+				
+				if(sp + 2 > stack.length) {
+					traversal.grow();
+					stack = traversal.nodes;
+				}
+				
+				stack[sp++] = r;
+				stack[sp++] = l;
+			}
+		} finally {
+			traversal.release();
+		}
+		return endQuery(GeometryMetrics.QUERY_FRUSTUM, startTime, visited, true);
+	}
+	
+	/**
+	 * Visits the primitives whose spheres overlap the given sphere.
+	 * <br>
+	 * The coverage of a sphere is the part of its diameter, along the line through both centers, that lies inside of the query sphere: One if it is completely inside.
+	 * Inner nodes that are completely inside are visited as a whole with {@link SphereTreeVisitor#visitNode(int, float)}.
+	 * @return False, if the visitor stopped the query. True if not.
+	 **/
+	public boolean querySphere(float centerX, float centerY, float centerZ, float radius, SphereTreeVisitor visitor) {
+		if(nodeCount == 0)
+			return true;
+		
+		long startTime = GeometryMetrics.ENABLED ? GeometryMetrics.startQuery() : 0;
+		int visited = 0;
+		TraversalStack traversal = TraversalStack.acquire();
+		try {
+			int[] stack = traversal.nodes;
+			int sp = 0;
+			stack[sp++] = 0;
+			
+			while(sp > 0) {
+				int node = stack[--sp];
+				visited++;
+				float coverage = coverageBySphere(spheres, node*4, centerX, centerY, centerZ, radius);
+				if(coverage <= 0)
+					continue;
+				
+				int l = nodes[node*2];
+				int r = nodes[node*2+1];
+				
+				if(l < 0) {
+					for(int i = ~l, end = ~l+r; i < end; i++) {
+						float c = coverageBySphere(primitiveSpheres, primitives[i]*4, centerX, centerY, centerZ, radius);
+						if(c > 0 && !visitor.visitPrimitive(primitives[i], c))
+							return endQuery(GeometryMetrics.QUERY_SPHERE, startTime, visited, false);
+					}
+					continue;
+				}
+				
+				if(coverage >= 1) {
+					if(!visitor.visitNode(node, coverage))
+						return endQuery(GeometryMetrics.QUERY_SPHERE, startTime, visited, false);
+					continue;
+				}
+				
+				if(sp + 2 > stack.length) {
+					traversal.grow();
+					stack = traversal.nodes;
+				}
+				
+				stack[sp++] = r;
+				stack[sp++] = l;
+			}
+		} finally {
+			traversal.release();
+		}
+		return endQuery(GeometryMetrics.QUERY_SPHERE, startTime, visited, true);
+	}
+	
+	/**
+	 * Visits the primitives whose spheres overlap the given sphere.
+	 * @see #querySphere(float, float, float, float, SphereTreeVisitor)
+	 **/
+	public boolean querySphere(Spheref sphere, SphereTreeVisitor visitor) {
+		return querySphere(sphere.centerX, sphere.centerY, sphere.centerZ, sphere.radius, visitor);
+	}
+	
+	/**
+	 * Visits the primitives whose spheres are hit by the ray, closer than the given distance.
+	 * <br>
+	 * The coverage of a sphere is the length of the chord the ray cuts through it, divided by its diameter: One through the center, near zero for a ray that grazes it.
+	 * @param maxDistance The length of the ray, in units of its direction.
+	 * @return False, if the visitor stopped the query. True if not.
+	 **/
+	public boolean queryRay(Rayf ray, float maxDistance, SphereTreeVisitor visitor) {
+		if(nodeCount == 0)
+			return true;
+		
+		float oX = ray.originX, oY = ray.originY, oZ = ray.originZ;
+		float dX = ray.directionX, dY = ray.directionY, dZ = ray.directionZ;
+		float invLengthSquared = 1f / (dX*dX + dY*dY + dZ*dZ);
+		
+		long startTime = GeometryMetrics.ENABLED ? GeometryMetrics.startQuery() : 0;
+		int visited = 0;
+		TraversalStack traversal = TraversalStack.acquire();
+		try {
+			int[] stack = traversal.nodes;
+			int sp = 0;
+			stack[sp++] = 0;
+			
+			while(sp > 0) {
+				int node = stack[--sp];
+				visited++;
+				if(coverageByRay(spheres, node*4, oX, oY, oZ, dX, dY, dZ, invLengthSquared, maxDistance) <= 0)
+					continue;
+				
+				int l = nodes[node*2];
+				int r = nodes[node*2+1];
+				
+				if(l < 0) {
+					for(int i = ~l, end = ~l+r; i < end; i++) {
+						float c = coverageByRay(primitiveSpheres, primitives[i]*4, oX, oY, oZ, dX, dY, dZ, invLengthSquared, maxDistance);
+						if(c > 0 && !visitor.visitPrimitive(primitives[i], c))
+							return endQuery(GeometryMetrics.QUERY_RAY, startTime, visited, false);
+					}
+					continue;
+				}
+				
+				if(sp + 2 > stack.length) {
+					traversal.grow();
+					stack = traversal.nodes;
+				}
+				
+				stack[sp++] = r;
+				stack[sp++] = l;
+			}
+		} finally {
+			traversal.release();
+		}
+		return endQuery(GeometryMetrics.QUERY_RAY, startTime, visited, true);
+	}
+	
+	/**
+	 * @return The number of bytes used by the arrays of this tree, without the primitive spheres.
+	 **/
+	public long sizeInBytes() {
+		return 4L * (spheres.length + nodes.length + ranges.length + parents.length + primitives.length + leaves.length);
+	}
+	
+	private static boolean endQuery(int query, long startTime, int visited, boolean result) {
+		if(GeometryMetrics.ENABLED) GeometryMetrics.countQuery(query, startTime, visited);
+		return result;
+	}
+	
+	private static float coverageFromEye(float[] spheres, int s, float eyeX, float eyeY, float eyeZ) {
+		float dX = spheres[s] - eyeX, dY = spheres[s+1] - eyeY, dZ = spheres[s+2] - eyeZ;
+		float distance = (float) Math.sqrt(dX*dX + dY*dY + dZ*dZ);
+		float radius = spheres[s+3];
+		return distance > radius ? radius / distance : Float.POSITIVE_INFINITY;
+	}
+	
+	// The part of the diameter inside of the query sphere, in [0,1]. Zero if the spheres do not overlap.
+	private static float coverageBySphere(float[] spheres, int s, float x, float y, float z, float radius) {
+		float dX = spheres[s] - x, dY = spheres[s+1] - y, dZ = spheres[s+2] - z;
+		float r = spheres[s+3];
+		float reach = radius + r;
+		float distanceSquared = dX*dX + dY*dY + dZ*dZ;
+		boolean hit = distanceSquared <= reach*reach;
+		if(GeometryMetrics.ENABLED) GeometryMetrics.countTest(GeometryMetrics.SPHERE_SPHERE, hit);
+		if(!hit)
+			return 0;
+		
+		// along the line through both centers the query spans [-radius,radius], and the sphere spans [distance-r,distance+r]
+		float distance = (float) Math.sqrt(distanceSquared);
+		float inside = Math.min(distance + r, radius) - Math.max(distance - r, -radius);
+		// points and touching spheres still overlap
+		return r > 0 ? Math.max(Math.min(inside / (2*r), 1), Float.MIN_VALUE) : 1;
+	}
+	
+	// The chord of the ray through the sphere divided by the diameter, in [0,1]. Zero if the ray misses the sphere.
+	private static float coverageByRay(float[] spheres, int s, float oX, float oY, float oZ, float dX, float dY, float dZ, float invLengthSquared, float maxDistance) {
+		float cX = spheres[s] - oX, cY = spheres[s+1] - oY, cZ = spheres[s+2] - oZ;
+		float r = spheres[s+3];
+		// the closest point of the line to the center, in units of the direction
+		float t = (cX*dX + cY*dY + cZ*dZ) * invLengthSquared;
+		float pX = cX - dX*t, pY = cY - dY*t, pZ = cZ - dZ*t;
+		float h = r*r - (pX*pX + pY*pY + pZ*pZ);
+		// the entry and exit of the line, in units of the direction
+		float half = h >= 0 ? (float) Math.sqrt(h * invLengthSquared) : 0;
+		boolean hit = h >= 0 && t + half >= 0 && t - half <= maxDistance;
+		if(GeometryMetrics.ENABLED) GeometryMetrics.countTest(GeometryMetrics.RAY_SPHERE, hit);
+		if(!hit)
+			return 0;
+		
+		return r > 0 ? Math.max((float) Math.sqrt(h) / r, Float.MIN_VALUE) : 1;
+	}
+
+}
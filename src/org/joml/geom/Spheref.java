@@ -2,7 +2,7 @@ package org.joml.geom;
 
 import org.joml.Vector3f;
 
-public class Spheref {
+public class Spheref implements SupportMapping {
 	public float centerX;
 	public float centerY;
 	public float centerZ;
@@ -91,18 +91,29 @@ public class Spheref {
 		return this;
 	}
 	
+	@Override
+	public void getSupport(float dirX, float dirY, float dirZ, float[] store, int offset) {
+		float length = (float) Math.sqrt(dirX*dirX + dirY*dirY + dirZ*dirZ);
+		float scale = length > 0 ? radius / length : 0;
+		store[offset  ] = centerX + dirX * scale;
+		store[offset+1] = centerY + dirY * scale;
+		store[offset+2] = centerZ + dirZ * scale;
+	}
+	
 	public boolean intersect(Spheref sphereIn) {
 		float offX = centerX - sphereIn.centerX;
 		float offY = centerY - sphereIn.centerY;
 		float offZ = centerZ - sphereIn.centerZ;
-		return (offX*offX + offY*offY + offZ*offZ) <= (radius + sphereIn.radius);
+		float radiusSum = radius + sphereIn.radius;
+		return (offX*offX + offY*offY + offZ*offZ) <= radiusSum*radiusSum;
 	}
 	
 	public boolean intersect(Vector3f positionIn, float radiusIn) {
 		float offX = centerX - positionIn.x;
 		float offY = centerY - positionIn.y;
 		float offZ = centerZ - positionIn.z;
-		return (offX*offX + offY*offY + offZ*offZ) <= (radius + radiusIn);
+		float radiusSum = radius + radiusIn;
+		return (offX*offX + offY*offY + offZ*offZ) <= radiusSum*radiusSum;
 	}
 	
 }
@@ -0,0 +1,18 @@
+package org.joml.geom;
+
+/**
+ * A convex shape, given by its support function: The point of the shape that is farthest in a given direction.
+ * This is all {@link Gjk} needs to know about a shape.
+ **/
+public interface SupportMapping {
+	
+	/**
+	 * Stores the point of the shape that is farthest in the given direction.
+	 * If several points are equally far, any of them may be returned.
+	 * @param dirX The direction, which is not normalized and may be zero.
+	 * @param store The array to store the x, y and z coordinate of the point in.
+	 * @param offset The index of the x coordinate in the array.
+	 **/
+	public void getSupport(float dirX, float dirY, float dirZ, float[] store, int offset);
+
+}
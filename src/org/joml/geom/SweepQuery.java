@@ -0,0 +1,211 @@
+package org.joml.geom;
+
+/**
+ * Sweeps a {@link Spheref} or a {@link Aabbf} through the primitives of a {@link Bvhf}, and finds the first contact.
+ * The primitives are either the triangles of a {@link TriangleMeshf}, or boxes given by their bounds (six floats per box, the layout used to build the hierarchy).
+ *
+ * <br><br>
+ * The hierarchy is pruned with the bounds of the swept volume: the union of the shape at the start and at the end of the movement.
+ * While the query runs, the bounds shrink to the earliest contact found so far, and the children nearer to the start are visited first.
+ * The query stops as soon as a contact at the start is found.
+ * <br>
+ * The result of the last sweep is stored in the public fields, see {@link Sweeps} for the meaning of the time and the normal.
+ * A query keeps its scratch state, so it is not thread safe: use one per thread.
+ **/
+public class SweepQuery {
+	
+	/** The time of impact of the last sweep, positive infinity if there was no contact. **/
+	public float time;
+	/** The contact normal of the last sweep. **/
+	public float normalX, normalY, normalZ;
+	/** The primitive that was hit by the last sweep, or -1. **/
+	public int primitive;
+	
+	private final float[] normal = new float[3];
+	
+	// the current sweep
+	private TriangleMeshf mesh;
+	private float[] boxes;
+	private boolean sphere;
+	private float originX, originY, originZ;
+	private float extentX, extentY, extentZ;
+	private float dX, dY, dZ;
+	
+	/**
+	 * Sweeps the sphere by d through the triangles of the mesh.
+	 * @param bvh The hierarchy over the triangles, see {@link TriangleMeshf#buildBvh(int)}.
+	 * @return True, if there is a contact.
+	 **/
+	public boolean sweepSphere(Bvhf bvh, TriangleMeshf mesh, Spheref sphere, float dX, float dY, float dZ) {
+		return sweep(bvh, mesh, null, true, sphere.centerX, sphere.centerY, sphere.centerZ, sphere.radius, sphere.radius, sphere.radius, dX, dY, dZ);
+	}
+	
+	/**
+	 * Sweeps the sphere by d through the boxes.
+	 * @param bvh The hierarchy over the boxes.
+	 * @param boxes The bounds of the boxes, six floats per box: min x, y, z, max x, y, z.
+	 * @return True, if there is a contact.
+	 **/
+	public boolean sweepSphere(Bvhf bvh, float[] boxes, Spheref sphere, float dX, float dY, float dZ) {
+		return sweep(bvh, null, boxes, true, sphere.centerX, sphere.centerY, sphere.centerZ, sphere.radius, sphere.radius, sphere.radius, dX, dY, dZ);
+	}
+	
+	/**
+	 * Sweeps the {@link Aabbf} by d through the triangles of the mesh.
+	 * @param bvh The hierarchy over the triangles, see {@link TriangleMeshf#buildBvh(int)}.
+	 * @return True, if there is a contact.
+	 **/
+	public boolean sweepAabb(Bvhf bvh, TriangleMeshf mesh, Aabbf aabb, float dX, float dY, float dZ) {
+		return sweep(bvh, mesh, null, false, aabb.originX, aabb.originY, aabb.originZ, aabb.extentX, aabb.extentY, aabb.extentZ, dX, dY, dZ);
+	}
+	
+	/**
+	 * Sweeps the {@link Aabbf} by d through the boxes.
+	 * @param bvh The hierarchy over the boxes.
+	 * @param boxes The bounds of the boxes, six floats per box: min x, y, z, max x, y, z.
+	 * @return True, if there is a contact.
+	 **/
+	public boolean sweepAabb(Bvhf bvh, float[] boxes, Aabbf aabb, float dX, float dY, float dZ) {
+		return sweep(bvh, null, boxes, false, aabb.originX, aabb.originY, aabb.originZ, aabb.extentX, aabb.extentY, aabb.extentZ, dX, dY, dZ);
+	}
+	
+	private boolean sweep(Bvhf bvh, TriangleMeshf mesh, float[] boxes, boolean sphere,
+			float originX, float originY, float originZ, float extentX, float extentY, float extentZ,
+			float dX, float dY, float dZ) {
+		this.mesh = mesh;
+		this.boxes = boxes;
+		this.sphere = sphere;
+		this.originX = originX;
+		this.originY = originY;
+		this.originZ = originZ;
+		this.extentX = extentX;
+		this.extentY = extentY;
+		this.extentZ = extentZ;
+		this.dX = dX;
+		this.dY = dY;
+		this.dZ = dZ;
+		
+		time = Float.POSITIVE_INFINITY;
+		normalX = normalY = normalZ = 0;
+		primitive = -1;
+		
+		if(bvh.nodeCount > 0)
+			traverse(bvh);
+		
+		this.mesh = null;
+		this.boxes = null;
+		return primitive >= 0;
+	}
+	
+	// A box query with the swept volume, which shrinks whenever a earlier contact is found.
+	private void traverse(Bvhf bvh) {
+		float[] bounds = bvh.bounds;
+		int[] nodes = bvh.nodes;
+		int[] primitives = bvh.primitives;
+		
+		TraversalStack traversal = TraversalStack.acquire();
+		try {
+			int[] stack = traversal.nodes;
+			int sp = 0;
+			stack[sp++] = 0;
+			
+			while(sp > 0) {
+				int node = stack[--sp];
+				int b = node*6;
+				
+				float t = Math.min(time, 1f);
+				if(bounds[b  ] > originX + extentX + Math.max(0, dX*t) || bounds[b+3] < originX - extentX + Math.min(0, dX*t)) continue;
+				if(bounds[b+1] > originY + extentY + Math.max(0, dY*t) || bounds[b+4] < originY - extentY + Math.min(0, dY*t)) continue;
+				if(bounds[b+2] > originZ + extentZ + Math.max(0, dZ*t) || bounds[b+5] < originZ - extentZ + Math.min(0, dZ*t)) continue;
+				
+				int l = nodes[node*2];
+				int r = nodes[node*2+1];
+				
+				if(l < 0) {
+					for(int i = ~l, end = ~l+r; i < end; i++) {
+						test(primitives[i]);
+						// nothing can be hit earlier than at the start
+						if(time == 0)
+							return;
+					}
+					continue;
+				}
+				
+				if(sp + 2 > stack.length) {
+					traversal.grow();
+					stack = traversal.nodes;
+				}
+				
+				// the child nearer to the start is visited first, so contacts are found early and shrink the volume
+				if(centerAlongMovement(bounds, l*6) <= centerAlongMovement(bounds, r*6)) {
+					stack[sp++] = r;
+					stack[sp++] = l;
+				} else {
+					stack[sp++] = l;
+					stack[sp++] = r;
+				}
+			}
+		} finally {
+			traversal.release();
+		}
+	}
+	
+	// Twice the center of the bounds, projected onto the movement.
+	private float centerAlongMovement(float[] bounds, int b) {
+		return (bounds[b] + bounds[b+3])*dX + (bounds[b+1] + bounds[b+4])*dY + (bounds[b+2] + bounds[b+5])*dZ;
+	}
+	
+	private void test(int p) {
+		if(time == 0)
+			return;
+		
+		float minX, minY, minZ, maxX, maxY, maxZ;
+		float aX = 0, aY = 0, aZ = 0, bX = 0, bY = 0, bZ = 0, cX = 0, cY = 0, cZ = 0;
+		if(mesh != null) {
+			int[] indices = mesh.indices;
+			float[] vertices = mesh.vertices;
+			int a = indices[p*3  ]*3;
+			int b = indices[p*3+1]*3;
+			int c = indices[p*3+2]*3;
+			aX = vertices[a]; aY = vertices[a+1]; aZ = vertices[a+2];
+			bX = vertices[b]; bY = vertices[b+1]; bZ = vertices[b+2];
+			cX = vertices[c]; cY = vertices[c+1]; cZ = vertices[c+2];
+			minX = Math.min(aX, Math.min(bX, cX)); maxX = Math.max(aX, Math.max(bX, cX));
+			minY = Math.min(aY, Math.min(bY, cY)); maxY = Math.max(aY, Math.max(bY, cY));
+			minZ = Math.min(aZ, Math.min(bZ, cZ)); maxZ = Math.max(aZ, Math.max(bZ, cZ));
+		} else {
+			int o = p*6;
+			minX = boxes[o  ]; minY = boxes[o+1]; minZ = boxes[o+2];
+			maxX = boxes[o+3]; maxY = boxes[o+4]; maxZ = boxes[o+5];
+		}
+		
+		// the swept volume up to the earliest contact so far
+		float t = Math.min(time, 1f);
+		if(originX - extentX + Math.min(0, dX*t) > maxX || originX + extentX + Math.max(0, dX*t) < minX) return;
+		if(originY - extentY + Math.min(0, dY*t) > maxY || originY + extentY + Math.max(0, dY*t) < minY) return;
+		if(originZ - extentZ + Math.min(0, dZ*t) > maxZ || originZ + extentZ + Math.max(0, dZ*t) < minZ) return;
+		
+		if(mesh != null) {
+			if(sphere) {
+				t = Sweeps.sweepSphereWithTriangle(originX, originY, originZ, extentX, dX, dY, dZ, aX, aY, aZ, bX, bY, bZ, cX, cY, cZ, normal);
+			} else {
+				t = Sweeps.sweepBoxWithTriangle(originX, originY, originZ, extentX, extentY, extentZ, dX, dY, dZ, aX, aY, aZ, bX, bY, bZ, cX, cY, cZ, normal);
+			}
+		} else {
+			if(sphere) {
+				t = Sweeps.sweepSphereWithBox(originX, originY, originZ, extentX, dX, dY, dZ, minX, minY, minZ, maxX, maxY, maxZ, normal);
+			} else {
+				t = Sweeps.sweepBoxWithBox(originX, originY, originZ, extentX, extentY, extentZ, dX, dY, dZ, minX, minY, minZ, maxX, maxY, maxZ, normal);
+			}
+		}
+		
+		if(t < time) {
+			time = t;
+			normalX = normal[0];
+			normalY = normal[1];
+			normalZ = normal[2];
+			primitive = p;
+		}
+	}
+
+}
@@ -0,0 +1,362 @@
+package org.joml.geom;
+
+/**
+ * Continuous collision detection: The time of impact of a shape moving along a displacement, against a static obstacle.
+ * Testing only the start and the end of a movement misses thin obstacles when the displacement is large (tunneling),
+ * sweeping finds the first contact anywhere along the way.
+ *
+ * <br><br>
+ * All times are fractions of the displacement: Zero is the start, one is the end of the movement.
+ * A sweep returns positive infinity if there is no contact in between, and zero if the shapes already overlap at the start.
+ * To sweep against a moving obstacle, use the displacement relative to the obstacle.
+ * <br>
+ * The contact normal is stored as three floats, if an array is given.
+ * It is normalized and points from the obstacle towards the moving shape, which is the direction to push the shape back.
+ * <br>
+ * Use {@link SweepQuery} to sweep against many obstacles in a {@link Bvhf}.
+ **/
+public class Sweeps {
+	
+	// the closest point of a sweep that has no normal array to use as scratch memory
+	private static final ThreadLocal<float[]> scratch = new ThreadLocal<float[]>() {
+		@Override
+		protected float[] initialValue() {
+			return new float[3];
+		}
+	};
+	
+	private Sweeps() {
+	}
+	
+	/**
+	 * @return The time of impact of the sphere moving by d against the triangle abc.
+	 **/
+	public static final float sweepSphereWithTriangle(Spheref sphere, float dX, float dY, float dZ,
+			float aX, float aY, float aZ, float bX, float bY, float bZ, float cX, float cY, float cZ,
+			float[] normalStore) {
+		return sweepSphereWithTriangle(sphere.centerX, sphere.centerY, sphere.centerZ, sphere.radius, dX, dY, dZ,
+				aX, aY, aZ, bX, bY, bZ, cX, cY, cZ, normalStore);
+	}
+	
+	/**
+	 * @return The time of impact of the sphere at s with radius r, moving by d, against the triangle abc.
+	 **/
+	public static final float sweepSphereWithTriangle(float sX, float sY, float sZ, float r, float dX, float dY, float dZ,
+			float aX, float aY, float aZ, float bX, float bY, float bZ, float cX, float cY, float cZ,
+			float[] normalStore) {
+		// the normal array doubles as scratch memory for the closest point
+		float[] closest = normalStore != null ? normalStore : scratch.get();
+		Projections.projectPointOntoTriangle(sX, sY, sZ, aX, aY, aZ, bX, bY, bZ, cX, cY, cZ, closest, 0);
+		if(distanceSquared(sX, sY, sZ, closest[0], closest[1], closest[2]) <= r*r) {
+			contactNormal(sX, sY, sZ, closest[0], closest[1], closest[2], dX, dY, dZ, normalStore);
+			return 0;
+		}
+		
+		// the center starts outside of the triangle inflated by r, so the first hit of the center on its surface is the contact:
+		// the face, offset by r towards the center, and the capsules around the edges
+		float t = Float.POSITIVE_INFINITY;
+		
+		float abX = bX - aX, abY = bY - aY, abZ = bZ - aZ;
+		float acX = cX - aX, acY = cY - aY, acZ = cZ - aZ;
+		float nX = abY*acZ - abZ*acY;
+		float nY = abZ*acX - abX*acZ;
+		float nZ = abX*acY - abY*acX;
+		float length = (float) Math.sqrt(nX*nX + nY*nY + nZ*nZ);
+		if(length > 0) {
+			nX /= length; nY /= length; nZ /= length;
+			float distance = (sX - aX)*nX + (sY - aY)*nY + (sZ - aZ)*nZ;
+			if(distance < 0) {
+				nX = -nX; nY = -nY; nZ = -nZ;
+				distance = -distance;
+			}
+			
+			float approach = -(dX*nX + dY*nY + dZ*nZ);
+			if(approach > 0 && distance >= r) {
+				float tFace = (distance - r) / approach;
+				// the point where the sphere touches the plane of the triangle
+				float pX = sX + dX*tFace - nX*r;
+				float pY = sY + dY*tFace - nY*r;
+				float pZ = sZ + dZ*tFace - nZ*r;
+				if(tFace <= 1 && insideTriangle(pX, pY, pZ, aX, aY, aZ, bX, bY, bZ, cX, cY, cZ, nX, nY, nZ))
+					t = tFace;
+			}
+		}
+		
+		t = Math.min(t, Intersections.intersectRayWithCapsule(sX, sY, sZ, dX, dY, dZ, aX, aY, aZ, bX, bY, bZ, r));
+		t = Math.min(t, Intersections.intersectRayWithCapsule(sX, sY, sZ, dX, dY, dZ, bX, bY, bZ, cX, cY, cZ, r));
+		t = Math.min(t, Intersections.intersectRayWithCapsule(sX, sY, sZ, dX, dY, dZ, cX, cY, cZ, aX, aY, aZ, r));
+		
+		if(t > 1)
+			return Float.POSITIVE_INFINITY;
+		
+		if(normalStore != null) {
+			sX += dX*t; sY += dY*t; sZ += dZ*t;
+			Projections.projectPointOntoTriangle(sX, sY, sZ, aX, aY, aZ, bX, bY, bZ, cX, cY, cZ, closest, 0);
+			contactNormal(sX, sY, sZ, closest[0], closest[1], closest[2], dX, dY, dZ, normalStore);
+		}
+		return t;
+	}
+	
+	/**
+	 * @return The time of impact of the sphere moving by d against the {@link Aabbf}.
+	 **/
+	public static final float sweepSphereWithAabb(Spheref sphere, float dX, float dY, float dZ, Aabbf aabb, float[] normalStore) {
+		return sweepSphereWithBox(sphere.centerX, sphere.centerY, sphere.centerZ, sphere.radius, dX, dY, dZ,
+				aabb.getMinX(), aabb.getMinY(), aabb.getMinZ(), aabb.getMaxX(), aabb.getMaxY(), aabb.getMaxZ(), normalStore);
+	}
+	
+	/**
+	 * See 'Real-Time Collision Detection' by Christer Ericson, chapter 5.5.7.
+	 * @return The time of impact of the sphere at s with radius r, moving by d, against the box from min to max.
+	 **/
+	public static final float sweepSphereWithBox(float sX, float sY, float sZ, float r, float dX, float dY, float dZ,
+			float minX, float minY, float minZ, float maxX, float maxY, float maxZ, float[] normalStore) {
+		float pX = Math.max(minX, Math.min(maxX, sX));
+		float pY = Math.max(minY, Math.min(maxY, sY));
+		float pZ = Math.max(minZ, Math.min(maxZ, sZ));
+		if(distanceSquared(sX, sY, sZ, pX, pY, pZ) <= r*r) {
+			contactNormal(sX, sY, sZ, pX, pY, pZ, dX, dY, dZ, normalStore);
+			return 0;
+		}
+		
+		// the box inflated by r contains the rounded box, the center has to hit it first
+		float t = Intersections.intersectRayWithBox(sX, sY, sZ, 1f/dX, 1f/dY, 1f/dZ,
+				minX - r, minY - r, minZ - r, maxX + r, maxY + r, maxZ + r);
+		if(!(t <= 1))
+			return Float.POSITIVE_INFINITY;
+		
+		pX = sX + dX*t; pY = sY + dY*t; pZ = sZ + dZ*t;
+		int outside = 0;
+		if(pX < minX || pX > maxX) outside++;
+		if(pY < minY || pY > maxY) outside++;
+		if(pZ < minZ || pZ > maxZ) outside++;
+		
+		if(outside >= 2) {
+			// the center hit the inflated box at an edge or a corner region, where the rounded box is smaller:
+			// test the capsules of the edges at the nearest corner, which cover the whole region
+			float vX = pX < (minX + maxX) * 0.5f ? minX : maxX;
+			float vY = pY < (minY + maxY) * 0.5f ? minY : maxY;
+			float vZ = pZ < (minZ + maxZ) * 0.5f ? minZ : maxZ;
+			float uX = vX == minX ? maxX : minX;
+			float uY = vY == minY ? maxY : minY;
+			float uZ = vZ == minZ ? maxZ : minZ;
+			t = Intersections.intersectRayWithCapsule(sX, sY, sZ, dX, dY, dZ, vX, vY, vZ, uX, vY, vZ, r);
+			t = Math.min(t, Intersections.intersectRayWithCapsule(sX, sY, sZ, dX, dY, dZ, vX, vY, vZ, vX, uY, vZ, r));
+			t = Math.min(t, Intersections.intersectRayWithCapsule(sX, sY, sZ, dX, dY, dZ, vX, vY, vZ, vX, vY, uZ, r));
+			if(t > 1)
+				return Float.POSITIVE_INFINITY;
+		}
+		
+		if(normalStore != null) {
+			sX += dX*t; sY += dY*t; sZ += dZ*t;
+			contactNormal(sX, sY, sZ,
+					Math.max(minX, Math.min(maxX, sX)), Math.max(minY, Math.min(maxY, sY)), Math.max(minZ, Math.min(maxZ, sZ)),
+					dX, dY, dZ, normalStore);
+		}
+		return t;
+	}
+	
+	/**
+	 * @return The time of impact of the moving {@link Aabbf}, displaced by d, against the static one.
+	 **/
+	public static final float sweepAabbWithAabb(Aabbf moving, float dX, float dY, float dZ, Aabbf aabb, float[] normalStore) {
+		return sweepBoxWithBox(moving.originX, moving.originY, moving.originZ, moving.extentX, moving.extentY, moving.extentZ, dX, dY, dZ,
+				aabb.getMinX(), aabb.getMinY(), aabb.getMinZ(), aabb.getMaxX(), aabb.getMaxY(), aabb.getMaxZ(), normalStore);
+	}
+	
+	/**
+	 * @return The time of impact of the box at o with the extent e, moving by d, against the box from min to max.
+	 **/
+	public static final float sweepBoxWithBox(float oX, float oY, float oZ, float eX, float eY, float eZ, float dX, float dY, float dZ,
+			float minX, float minY, float minZ, float maxX, float maxY, float maxZ, float[] normalStore) {
+		float enter = Float.NEGATIVE_INFINITY, exit = Float.POSITIVE_INFINITY;
+		int enterAxis = 0;
+		float enterSign = 0;
+		
+		for(int axis = 0; axis < 3; axis++) {
+			float o, e, d, min, max;
+			if(axis == 0) {
+				o = oX; e = eX; d = dX; min = minX; max = maxX;
+			} else if(axis == 1) {
+				o = oY; e = eY; d = dY; min = minY; max = maxY;
+			} else {
+				o = oZ; e = eZ; d = dZ; min = minZ; max = maxZ;
+			}
+			
+			if(d == 0) {
+				if(o + e < min || o - e > max)
+					return Float.POSITIVE_INFINITY;
+				continue;
+			}
+			
+			// the times where the moving interval starts and stops to overlap [min,max]
+			float t0 = (min - (o + e)) / d;
+			float t1 = (max - (o - e)) / d;
+			float sign = d > 0 ? -1 : 1;
+			if(d < 0) {
+				float t = t0; t0 = t1; t1 = t;
+			}
+			
+			if(t0 > enter) {
+				enter = t0;
+				enterAxis = axis;
+				enterSign = sign;
+			}
+			exit = Math.min(exit, t1);
+			if(enter > exit || enter > 1 || exit < 0)
+				return Float.POSITIVE_INFINITY;
+		}
+		
+		if(normalStore != null) {
+			normalStore[0] = enterAxis == 0 ? enterSign : 0;
+			normalStore[1] = enterAxis == 1 ? enterSign : 0;
+			normalStore[2] = enterAxis == 2 ? enterSign : 0;
+		}
+		return Math.max(0, enter);
+	}
+	
+	/**
+	 * @return The time of impact of the {@link Aabbf} moving by d against the triangle abc.
+	 **/
+	public static final float sweepAabbWithTriangle(Aabbf aabb, float dX, float dY, float dZ,
+			float aX, float aY, float aZ, float bX, float bY, float bZ, float cX, float cY, float cZ,
+			float[] normalStore) {
+		return sweepBoxWithTriangle(aabb.originX, aabb.originY, aabb.originZ, aabb.extentX, aabb.extentY, aabb.extentZ, dX, dY, dZ,
+				aX, aY, aZ, bX, bY, bZ, cX, cY, cZ, normalStore);
+	}
+	
+	/**
+	 * Sweeps the box with the separating axis test: On every axis, the projections overlap during an interval of time,
+	 * and the shapes touch during the intersection of all intervals.
+	 * The axes are the axes of the box, the normal of the triangle and the nine cross products of their edges.
+	 * @return The time of impact of the box at o with the extent e, moving by d, against the triangle abc.
+	 **/
+	public static final float sweepBoxWithTriangle(float oX, float oY, float oZ, float eX, float eY, float eZ, float dX, float dY, float dZ,
+			float aX, float aY, float aZ, float bX, float bY, float bZ, float cX, float cY, float cZ,
+			float[] normalStore) {
+		float enter = Float.NEGATIVE_INFINITY, exit = Float.POSITIVE_INFINITY;
+		float enterX = 0, enterY = 0, enterZ = 0;
+		
+		for(int i = 0; i < 13; i++) {
+			float lX, lY, lZ;
+			if(i < 3) {
+				lX = i == 0 ? 1 : 0;
+				lY = i == 1 ? 1 : 0;
+				lZ = i == 2 ? 1 : 0;
+			} else if(i == 3) {
+				float abX = bX - aX, abY = bY - aY, abZ = bZ - aZ;
+				float acX = cX - aX, acY = cY - aY, acZ = cZ - aZ;
+				lX = abY*acZ - abZ*acY;
+				lY = abZ*acX - abX*acZ;
+				lZ = abX*acY - abY*acX;
+			} else {
+				// the cross product of a box axis and a triangle edge
+				int edge = (i - 4) / 3;
+				float fX, fY, fZ;
+				if(edge == 0) {
+					fX = bX - aX; fY = bY - aY; fZ = bZ - aZ;
+				} else if(edge == 1) {
+					fX = cX - bX; fY = cY - bY; fZ = cZ - bZ;
+				} else {
+					fX = aX - cX; fY = aY - cY; fZ = aZ - cZ;
+				}
+				int axis = (i - 4) % 3;
+				if(axis == 0) {
+					lX = 0; lY = -fZ; lZ = fY;
+				} else if(axis == 1) {
+					lX = fZ; lY = 0; lZ = -fX;
+				} else {
+					lX = -fY; lY = fX; lZ = 0;
+				}
+				
+				// an edge parallel to the box axis gives no axis, and a nearly parallel one only rounding errors
+				if(lX*lX + lY*lY + lZ*lZ <= 1e-6f * (fX*fX + fY*fY + fZ*fZ))
+					continue;
+			}
+			
+			if(lX == 0 && lY == 0 && lZ == 0)
+				continue;
+			
+			float o = oX*lX + oY*lY + oZ*lZ;
+			float e = eX*Math.abs(lX) + eY*Math.abs(lY) + eZ*Math.abs(lZ);
+			float d = dX*lX + dY*lY + dZ*lZ;
+			float pA = aX*lX + aY*lY + aZ*lZ;
+			float pB = bX*lX + bY*lY + bZ*lZ;
+			float pC = cX*lX + cY*lY + cZ*lZ;
+			float min = Math.min(pA, Math.min(pB, pC));
+			float max = Math.max(pA, Math.max(pB, pC));
+			
+			if(d == 0) {
+				if(o + e < min || o - e > max)
+					return Float.POSITIVE_INFINITY;
+				continue;
+			}
+			
+			float t0 = (min - (o + e)) / d;
+			float t1 = (max - (o - e)) / d;
+			float sign = d > 0 ? -1 : 1;
+			if(d < 0) {
+				float t = t0; t0 = t1; t1 = t;
+			}
+			
+			if(t0 > enter) {
+				enter = t0;
+				enterX = lX*sign; enterY = lY*sign; enterZ = lZ*sign;
+			}
+			exit = Math.min(exit, t1);
+			if(enter > exit || enter > 1 || exit < 0)
+				return Float.POSITIVE_INFINITY;
+		}
+		
+		if(normalStore != null) {
+			float length = (float) Math.sqrt(enterX*enterX + enterY*enterY + enterZ*enterZ);
+			float s = length > 0 ? 1f / length : 0;
+			normalStore[0] = enterX*s;
+			normalStore[1] = enterY*s;
+			normalStore[2] = enterZ*s;
+		}
+		return Math.max(0, enter);
+	}
+	
+	// Whether the point in the plane of the triangle (with normal n) is inside of its edges.
+	private static boolean insideTriangle(float pX, float pY, float pZ,
+			float aX, float aY, float aZ, float bX, float bY, float bZ, float cX, float cY, float cZ,
+			float nX, float nY, float nZ) {
+		return edgeSide(pX, pY, pZ, aX, aY, aZ, bX, bY, bZ, nX, nY, nZ) >= 0
+				&& edgeSide(pX, pY, pZ, bX, bY, bZ, cX, cY, cZ, nX, nY, nZ) >= 0
+				&& edgeSide(pX, pY, pZ, cX, cY, cZ, aX, aY, aZ, nX, nY, nZ) >= 0
+				|| edgeSide(pX, pY, pZ, aX, aY, aZ, bX, bY, bZ, nX, nY, nZ) <= 0
+				&& edgeSide(pX, pY, pZ, bX, bY, bZ, cX, cY, cZ, nX, nY, nZ) <= 0
+				&& edgeSide(pX, pY, pZ, cX, cY, cZ, aX, aY, aZ, nX, nY, nZ) <= 0;
+	}
+	
+	private static float edgeSide(float pX, float pY, float pZ, float aX, float aY, float aZ, float bX, float bY, float bZ,
+			float nX, float nY, float nZ) {
+		float eX = bX - aX, eY = bY - aY, eZ = bZ - aZ;
+		float qX = pX - aX, qY = pY - aY, qZ = pZ - aZ;
+		return (eY*qZ - eZ*qY)*nX + (eZ*qX - eX*qZ)*nY + (eX*qY - eY*qX)*nZ;
+	}
+	
+	private static float distanceSquared(float x, float y, float z, float pX, float pY, float pZ) {
+		float dX = x - pX, dY = y - pY, dZ = z - pZ;
+		return dX*dX + dY*dY + dZ*dZ;
+	}
+	
+	// The direction from the closest point of the obstacle to the center, or against the movement if the center is on the obstacle.
+	private static void contactNormal(float sX, float sY, float sZ, float pX, float pY, float pZ, float dX, float dY, float dZ, float[] store) {
+		if(store == null)
+			return;
+		
+		float nX = sX - pX, nY = sY - pY, nZ = sZ - pZ;
+		float length = (float) Math.sqrt(nX*nX + nY*nY + nZ*nZ);
+		if(length == 0) {
+			nX = -dX; nY = -dY; nZ = -dZ;
+			length = (float) Math.sqrt(nX*nX + nY*nY + nZ*nZ);
+		}
+		float s = length > 0 ? 1f / length : 0;
+		store[0] = nX*s;
+		store[1] = nY*s;
+		store[2] = nZ*s;
+	}
+
+}
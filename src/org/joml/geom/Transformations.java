@@ -0,0 +1,176 @@
+package org.joml.geom;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.joml.Matrix4f;
+
+/**
+ * This class contains methods for transforming many rays or boxes at once, stored in packed float arrays.
+ *
+ * <br><br>
+ * Rays are stored as six floats: originX, originY, originZ, directionX, directionY, directionZ.
+ * Boxes are stored as six floats: minX, minY, minZ, maxX, maxY, maxZ (the same layout as the bounds of a {@link Bvhf}).
+ * <br>
+ * The inner loops read the matrix into locals once and have no branches, so the JIT can unroll and vectorize them.
+ * The methods taking a {@link ForkJoinPool} split large batches into parts that are transformed in parallel; a null pool runs them on the calling thread.
+ * The source and the store array may be the same array.
+ * Only affine matrices are supported, the last row of the matrix is ignored.
+ **/
+public class Transformations {
+	
+	// the number of rays or boxes below which a batch is not split further
+	private static final int GRAIN_SIZE = 4096;
+	
+	/**
+	 * Transforms a batch of rays by the given matrix.
+	 * Without normalization, the distances along the rays stay the same.
+	 * @param matrix The matrix.
+	 * @param rays The rays, six floats per ray.
+	 * @param count The number of rays.
+	 * @param normalizeDirection If the directions should be normalized after the transformation.
+	 * @param store The array to store the transformed rays in.
+	 **/
+	public static final void transformRays(Matrix4f matrix, float[] rays, int count, boolean normalizeDirection, float[] store) {
+		transformRays(matrix, rays, 0, count, normalizeDirection, store);
+	}
+	
+	/**
+	 * Transforms a batch of rays by the given matrix, in parallel.
+	 * @see #transformRays(Matrix4f, float[], int, boolean, float[])
+	 **/
+	public static final void transformRays(ForkJoinPool pool, final Matrix4f matrix, final float[] rays, int count, final boolean normalizeDirection, final float[] store) {
+		Parallel.forRange(pool, 0, count, GRAIN_SIZE, new Parallel.Body() {
+			public void run(int from, int to) {
+				transformRays(matrix, rays, from, to, normalizeDirection, store);
+			}
+		});
+	}
+	
+	private static void transformRays(Matrix4f matrix, float[] rays, int from, int to, boolean normalizeDirection, float[] store) {
+		float m00 = matrix.m00, m01 = matrix.m01, m02 = matrix.m02;
+		float m10 = matrix.m10, m11 = matrix.m11, m12 = matrix.m12;
+		float m20 = matrix.m20, m21 = matrix.m21, m22 = matrix.m22;
+		float m30 = matrix.m30, m31 = matrix.m31, m32 = matrix.m32;
+		
+		for(int i = from*6, end = to*6; i < end; i += 6) {
+			float ox = rays[i  ], oy = rays[i+1], oz = rays[i+2];
+			float dx = rays[i+3], dy = rays[i+4], dz = rays[i+5];
+			
+			store[i  ] = m00 * ox + m10 * oy + m20 * oz + m30;
+			store[i+1] = m01 * ox + m11 * oy + m21 * oz + m31;
+			store[i+2] = m02 * ox + m12 * oy + m22 * oz + m32;
+			store[i+3] = m00 * dx + m10 * dy + m20 * dz;
+			store[i+4] = m01 * dx + m11 * dy + m21 * dz;
+			store[i+5] = m02 * dx + m12 * dy + m22 * dz;
+		}
+		
+		// a separate pass, so the loop above stays free of branches
+		if(normalizeDirection) {
+			for(int i = from*6, end = to*6; i < end; i += 6) {
+				float dx = store[i+3], dy = store[i+4], dz = store[i+5];
+				float invLength = 1f / (float) Math.sqrt(dx*dx + dy*dy + dz*dz);
+				store[i+3] = dx * invLength;
+				store[i+4] = dy * invLength;
+				store[i+5] = dz * invLength;
+			}
+		}
+	}
+	
+	/**
+	 * Transforms a batch of boxes by the given matrix, and stores the axis aligned bounds of the results.
+	 * This uses the method of Arvo: The center of the box is transformed, and the extent is transformed by the absolute values of the matrix.
+	 * @param matrix The matrix.
+	 * @param boxes The boxes, six floats per box.
+	 * @param count The number of boxes.
+	 * @param store The array to store the transformed bounds in.
+	 **/
+	public static final void transformBoxes(Matrix4f matrix, float[] boxes, int count, float[] store) {
+		transformBoxes(matrix, boxes, 0, store, 0, count);
+	}
+	
+	/**
+	 * Transforms a batch of boxes by the given matrix, in parallel.
+	 * @see #transformBoxes(Matrix4f, float[], int, float[])
+	 **/
+	public static final void transformBoxes(ForkJoinPool pool, final Matrix4f matrix, final float[] boxes, int count, final float[] store) {
+		Parallel.forRange(pool, 0, count, GRAIN_SIZE, new Parallel.Body() {
+			public void run(int from, int to) {
+				transformBoxes(matrix, boxes, from*6, store, from*6, to-from);
+			}
+		});
+	}
+	
+	/**
+	 * Transforms a single box by the given matrix, and stores the axis aligned bounds of the result.
+	 * @param matrix The matrix.
+	 * @param box The array containing the box.
+	 * @param boxOffset The index of minX of the box.
+	 * @param store The array to store the transformed bounds in.
+	 * @param storeOffset The index to store minX of the transformed bounds at.
+	 **/
+	public static final void transformBox(Matrix4f matrix, float[] box, int boxOffset, float[] store, int storeOffset) {
+		transformBoxes(matrix, box, boxOffset, store, storeOffset, 1);
+	}
+	
+	private static void transformBoxes(Matrix4f matrix, float[] boxes, int boxOffset, float[] store, int storeOffset, int count) {
+		float m00 = matrix.m00, m01 = matrix.m01, m02 = matrix.m02;
+		float m10 = matrix.m10, m11 = matrix.m11, m12 = matrix.m12;
+		float m20 = matrix.m20, m21 = matrix.m21, m22 = matrix.m22;
+		float m30 = matrix.m30, m31 = matrix.m31, m32 = matrix.m32;
+		float a00 = Math.abs(m00), a01 = Math.abs(m01), a02 = Math.abs(m02);
+		float a10 = Math.abs(m10), a11 = Math.abs(m11), a12 = Math.abs(m12);
+		float a20 = Math.abs(m20), a21 = Math.abs(m21), a22 = Math.abs(m22);
+		
+		for(int n = 0; n < count; n++) {
+			int i = boxOffset + n*6;
+			int o = storeOffset + n*6;
+			float cx = (boxes[i  ] + boxes[i+3]) * 0.5f, ex = (boxes[i+3] - boxes[i  ]) * 0.5f;
+			float cy = (boxes[i+1] + boxes[i+4]) * 0.5f, ey = (boxes[i+4] - boxes[i+1]) * 0.5f;
+			float cz = (boxes[i+2] + boxes[i+5]) * 0.5f, ez = (boxes[i+5] - boxes[i+2]) * 0.5f;
+			
+			float tx = m00 * cx + m10 * cy + m20 * cz + m30;
+			float ty = m01 * cx + m11 * cy + m21 * cz + m31;
+			float tz = m02 * cx + m12 * cy + m22 * cz + m32;
+			float tex = a00 * ex + a10 * ey + a20 * ez;
+			float tey = a01 * ex + a11 * ey + a21 * ez;
+			float tez = a02 * ex + a12 * ey + a22 * ez;
+			
+			store[o  ] = tx - tex;
+			store[o+1] = ty - tey;
+			store[o+2] = tz - tez;
+			store[o+3] = tx + tex;
+			store[o+4] = ty + tey;
+			store[o+5] = tz + tez;
+		}
+	}
+	
+	/**
+	 * Transforms every box by its own matrix, and stores the axis aligned bounds of the results.
+	 * This is meant for re-bounding many moving objects, e.g. the local bounds of every object by its current world matrix.
+	 * @param matrices The matrices, one per box.
+	 * @param boxes The boxes, six floats per box.
+	 * @param count The number of boxes.
+	 * @param store The array to store the transformed bounds in.
+	 **/
+	public static final void transformBoxes(Matrix4f[] matrices, float[] boxes, int count, float[] store) {
+		transformBoxes(matrices, boxes, 0, count, store);
+	}
+	
+	/**
+	 * Transforms every box by its own matrix, in parallel.
+	 * @see #transformBoxes(Matrix4f[], float[], int, float[])
+	 **/
+	public static final void transformBoxes(ForkJoinPool pool, final Matrix4f[] matrices, final float[] boxes, int count, final float[] store) {
+		Parallel.forRange(pool, 0, count, GRAIN_SIZE, new Parallel.Body() {
+			public void run(int from, int to) {
+				transformBoxes(matrices, boxes, from, to, store);
+			}
+		});
+	}
+	
+	private static void transformBoxes(Matrix4f[] matrices, float[] boxes, int from, int to, float[] store) {
+		for(int i = from; i < to; i++)
+			transformBoxes(matrices[i], boxes, i*6, store, i*6, 1);
+	}
+
+}
@@ -0,0 +1,65 @@
+package org.joml.geom;
+
+import java.util.Arrays;
+
+/**
+ * The scratch memory of a hierarchy traversal, reused between queries so they do not allocate.
+ *
+ * <br><br>
+ * Every thread keeps a chain of stacks: A query takes the first free stack of its thread with {@link #acquire()},
+ * and gives it back with {@link #release()}. Queries that run inside the visitor of another query (e.g. the bottom levels of a {@link InstancedBvhf})
+ * simply take the next stack of the chain, so after the first few queries no stack is allocated any more.
+ * Stacks that had to grow for a deep hierarchy keep their size.
+ **/
+final class TraversalStack {
+	
+	private static final ThreadLocal<TraversalStack> stacks = new ThreadLocal<TraversalStack>() {
+		@Override
+		protected TraversalStack initialValue() {
+			return new TraversalStack();
+		}
+	};
+	
+	/** The node (or link) of every entry. **/
+	int[] nodes = new int[Bvhf.STACK_SIZE];
+	/** The entry distance of every entry, for ray queries. **/
+	float[] distances = new float[Bvhf.STACK_SIZE];
+	/** Six floats of bounds per entry, for hierarchies that decode their bounds while traversing. **/
+	float[] bounds = new float[Bvhf.STACK_SIZE*6];
+	/** Scratch memory for the bounds of two children. **/
+	final float[] children = new float[12];
+	
+	private boolean used;
+	private TraversalStack next;
+	
+	private TraversalStack() {
+	}
+	
+	/**
+	 * @return A free stack of the calling thread. It has to be given back with {@link #release()}.
+	 **/
+	static TraversalStack acquire() {
+		TraversalStack stack = stacks.get();
+		while(stack.used) {
+			if(stack.next == null)
+				stack.next = new TraversalStack();
+			stack = stack.next;
+		}
+		stack.used = true;
+		return stack;
+	}
+	
+	void release() {
+		used = false;
+	}
+	
+	/**
+	 * Doubles the size of all entries.
+	 **/
+	void grow() {
+		nodes = Arrays.copyOf(nodes, nodes.length*2);
+		distances = Arrays.copyOf(distances, distances.length*2);
+		bounds = Arrays.copyOf(bounds, bounds.length*2);
+	}
+
+}
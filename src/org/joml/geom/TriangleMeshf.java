@@ -0,0 +1,117 @@
+package org.joml.geom;
+
+/**
+ * A indexed triangle mesh, stored in flat arrays.
+ *
+ * <br><br>
+ * <b>Layout:</b>
+ * <ul>
+ * <li>{@link #vertices} holds three floats per vertex: x, y, z.
+ * <li>{@link #indices} holds three vertex indices per triangle.
+ * </ul>
+ * The triangles are the primitives of a {@link Bvhf} built with {@link #buildBvh(int)},
+ * which is why this class is its own {@link PrimitiveIntersector}.
+ **/
+public class TriangleMeshf implements PrimitiveIntersector {
+	
+	/** The vertex positions, three floats per vertex. **/
+	public float[] vertices;
+	/** The vertex indices, three ints per triangle. **/
+	public int[] indices;
+	/** The number of vertices. **/
+	public int vertexCount;
+	/** The number of triangles. **/
+	public int triangleCount;
+	
+	/**
+	 * Creates a new {@link TriangleMeshf} using (not copying) the given arrays.
+	 * @param vertices The vertex positions, three floats per vertex.
+	 * @param indices The vertex indices, three ints per triangle.
+	 **/
+	public TriangleMeshf(float[] vertices, int[] indices) {
+		this.vertices = vertices;
+		this.indices = indices;
+		this.vertexCount = vertices.length / 3;
+		this.triangleCount = indices.length / 3;
+	}
+	
+	/**
+	 * Stores the vertices of the given triangle in the given array.
+	 * @param triangle The triangle.
+	 * @param store The array to store the nine coordinates in.
+	 * @return The array.
+	 **/
+	public float[] getTriangle(int triangle, float[] store) {
+		int a = indices[triangle*3  ]*3;
+		int b = indices[triangle*3+1]*3;
+		int c = indices[triangle*3+2]*3;
+		store[0] = vertices[a]; store[1] = vertices[a+1]; store[2] = vertices[a+2];
+		store[3] = vertices[b]; store[4] = vertices[b+1]; store[5] = vertices[b+2];
+		store[6] = vertices[c]; store[7] = vertices[c+1]; store[8] = vertices[c+2];
+		return store;
+	}
+	
+	/**
+	 * Computes the bounds of every triangle.
+	 * @param store The array to store the bounds in, six floats per triangle. If null, a new array is created.
+	 * @return The array.
+	 **/
+	public float[] computeTriangleBounds(float[] store) {
+		if(store == null)
+			store = new float[triangleCount*6];
+		
+		for(int i = 0; i < triangleCount; i++) {
+			int a = indices[i*3  ]*3;
+			int b = indices[i*3+1]*3;
+			int c = indices[i*3+2]*3;
+			int o = i*6;
+			
+			for(int axis = 0; axis < 3; axis++) {
+				float va = vertices[a+axis];
+				float vb = vertices[b+axis];
+				float vc = vertices[c+axis];
+				store[o+axis  ] = Math.min(va, Math.min(vb, vc));
+				store[o+axis+3] = Math.max(va, Math.max(vb, vc));
+			}
+		}
+		
+		return store;
+	}
+	
+	/**
+	 * Builds a {@link Bvhf} over the triangles of this mesh.
+	 * @param maxLeafSize The maximum number of triangles in a leaf.
+	 * @return The new {@link Bvhf}.
+	 **/
+	public Bvhf buildBvh(int maxLeafSize) {
+		return Bvhf.build(computeTriangleBounds(null), triangleCount, maxLeafSize);
+	}
+	
+	/**
+	 * Finds the point of the triangle nearest to the given point, see {@link Projections#projectPointOntoTriangle(float, float, float, float, float, float, float, float, float, float, float, float, float[], int)}.
+	 * @param store The array to store the three coordinates in.
+	 * @param offset The index of the first coordinate in the array.
+	 * @return The array.
+	 **/
+	public float[] closestPoint(int triangle, float x, float y, float z, float[] store, int offset) {
+		int a = indices[triangle*3  ]*3;
+		int b = indices[triangle*3+1]*3;
+		int c = indices[triangle*3+2]*3;
+		return Projections.projectPointOntoTriangle(x, y, z,
+				vertices[a], vertices[a+1], vertices[a+2],
+				vertices[b], vertices[b+1], vertices[b+2],
+				vertices[c], vertices[c+1], vertices[c+2],
+				store, offset);
+	}
+	
+	public float intersectRay(int triangle, Rayf ray) {
+		int a = indices[triangle*3  ]*3;
+		int b = indices[triangle*3+1]*3;
+		int c = indices[triangle*3+2]*3;
+		return Intersections.intersectRayWithTriangle(ray,
+				vertices[a], vertices[a+1], vertices[a+2],
+				vertices[b], vertices[b+1], vertices[b+2],
+				vertices[c], vertices[c+1], vertices[c+2]);
+	}
+
+}
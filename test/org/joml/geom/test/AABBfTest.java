@@ -2,8 +2,11 @@ package org.joml.geom.test;
 
 import junit.framework.TestCase;
 
+import org.joml.Matrix4f;
 import org.joml.Vector3f;
+import org.joml.Vector4f;
 import org.joml.geom.Aabbf;
+import org.joml.geom.Transformations;
 
 public class AABBfTest extends TestCase {
 	
@@ -29,4 +32,30 @@ public class AABBfTest extends TestCase {
 		assertEquals(12f, new Aabbf().minDistanceSquared(new Vector3f(3,3,3)), Math.ulp(1));
 	}
 	
+	public void testTransform() {
+		Matrix4f m = new Matrix4f().translate(3, -2, 5).rotateY(0.7f).rotateX(-0.3f).scale(2);
+		Aabbf a = new Aabbf(1, 2, 0.5f,/**/ 1, 0, -1).transform(m);
+		
+		// the transformed box has to be the bounds of the transformed corners
+		float[] expected = {Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY,
+				Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY};
+		Vector4f corner = new Vector4f();
+		for(int i = 0; i < 8; i++) {
+			corner.set((i & 1) == 0 ? 0 : 2, (i & 2) == 0 ? -2 : 2, (i & 4) == 0 ? -1.5f : -0.5f, 1);
+			m.transform(corner);
+			expected[0] = Math.min(expected[0], corner.x); expected[3] = Math.max(expected[3], corner.x);
+			expected[1] = Math.min(expected[1], corner.y); expected[4] = Math.max(expected[4], corner.y);
+			expected[2] = Math.min(expected[2], corner.z); expected[5] = Math.max(expected[5], corner.z);
+		}
+		
+		float[] batch = {0, -2, -1.5f, 2, 2, -0.5f};
+		Transformations.transformBoxes(m, batch, 1, batch);
+		
+		float[] actual = {a.getMinX(), a.getMinY(), a.getMinZ(), a.getMaxX(), a.getMaxY(), a.getMaxZ()};
+		for(int i = 0; i < 6; i++) {
+			assertEquals(expected[i], actual[i], 1e-4f);
+			assertEquals(expected[i], batch[i], 1e-4f);
+		}
+	}
+	
 }
@@ -0,0 +1,513 @@
+package org.joml.geom.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.joml.Matrix4f;
+import org.joml.Vector4f;
+import org.joml.geom.Aabbf;
+import org.joml.geom.Bvhf;
+import org.joml.geom.BvhRefitter;
+import org.joml.geom.Frustumf;
+import org.joml.geom.Instancef;
+import org.joml.geom.InstancedBvhf;
+import org.joml.geom.Intersections;
+import org.joml.geom.LbvhBuilder;
+import org.joml.geom.MappedBvhf;
+import org.joml.geom.PrimitiveBitSet;
+import org.joml.geom.PrimitiveDistance;
+import org.joml.geom.PrimitiveIntersector;
+import org.joml.geom.PrimitiveList;
+import org.joml.geom.PrimitiveVisitor;
+import org.joml.geom.QuantizedBvhf;
+import org.joml.geom.Rayf;
+import org.joml.geom.SahBuilder;
+import org.joml.geom.TriangleMeshf;
+
+public class BvhfTest extends TestCase {
+	
+	private static final int COUNT = 500;
+	
+	private final float[] spheres = new float[COUNT*4];
+	private final float[] bounds = new float[COUNT*6];
+	
+	private final PrimitiveIntersector sphereIntersector = new PrimitiveIntersector() {
+		public float intersectRay(int primitive, Rayf ray) {
+			int s = primitive*4;
+			return Intersections.intersectRayWithSphere(ray, spheres[s], spheres[s+1], spheres[s+2], spheres[s+3]);
+		}
+	};
+	
+	@Override
+	protected void setUp() {
+		Random random = new Random(1337);
+		for(int i = 0; i < COUNT; i++) {
+			float x = random.nextFloat()*100 - 50;
+			float y = random.nextFloat()*100 - 50;
+			float z = random.nextFloat()*100 - 50;
+			float r = random.nextFloat()*2 + 0.1f;
+			spheres[i*4  ] = x;
+			spheres[i*4+1] = y;
+			spheres[i*4+2] = z;
+			spheres[i*4+3] = r;
+			bounds[i*6  ] = x-r;
+			bounds[i*6+1] = y-r;
+			bounds[i*6+2] = z-r;
+			bounds[i*6+3] = x+r;
+			bounds[i*6+4] = y+r;
+			bounds[i*6+5] = z+r;
+		}
+	}
+	
+	private float bruteForce(Rayf ray) {
+		float closest = Float.POSITIVE_INFINITY;
+		for(int i = 0; i < COUNT; i++)
+			closest = Math.min(closest, sphereIntersector.intersectRay(i, ray));
+		return closest;
+	}
+	
+	// a bumpy grid of quads in the XZ-plane, from (0,0) to (size,size)
+	private static TriangleMeshf createGrid(int size) {
+		float[] vertices = new float[(size+1)*(size+1)*3];
+		int[] indices = new int[size*size*6];
+		for(int z = 0, v = 0; z <= size; z++) {
+			for(int x = 0; x <= size; x++) {
+				vertices[v++] = x;
+				vertices[v++] = (x*z) % 3;
+				vertices[v++] = z;
+			}
+		}
+		for(int z = 0, i = 0; z < size; z++) {
+			for(int x = 0; x < size; x++) {
+				int a = z*(size+1)+x;
+				indices[i++] = a; indices[i++] = a+size+1; indices[i++] = a+1;
+				indices[i++] = a+1; indices[i++] = a+size+1; indices[i++] = a+size+2;
+			}
+		}
+		
+		return new TriangleMeshf(vertices, indices);
+	}
+	
+	public void testRayMatchesBruteForce() {
+		Bvhf bvh = Bvhf.build(bounds, COUNT, 4);
+		QuantizedBvhf q8 = new QuantizedBvhf(bvh, 8);
+		QuantizedBvhf q16 = new QuantizedBvhf(bvh, 16);
+		
+		Random random = new Random(42);
+		Rayf ray = new Rayf();
+		for(int i = 0; i < 1000; i++) {
+			float dx = random.nextFloat()*2-1;
+			float dy = random.nextFloat()*2-1;
+			float dz = random.nextFloat()*2-1;
+			float len = (float) Math.sqrt(dx*dx+dy*dy+dz*dz);
+			ray.setOrigin(random.nextFloat()*120-60, random.nextFloat()*120-60, random.nextFloat()*120-60);
+			ray.setDirection(dx/len, dy/len, dz/len);
+			
+			float expected = bruteForce(ray);
+			assertEquals(expected, bvh.intersectRay(ray, sphereIntersector), 0f);
+			assertEquals(expected, q8.intersectRay(ray, sphereIntersector, null), 0f);
+			assertEquals(expected, q16.intersectRay(ray, sphereIntersector, null), 0f);
+		}
+	}
+	
+	public void testRayWithBoxDegenerateSlabs() {
+		float inf = Float.POSITIVE_INFINITY;
+		// parallel to x, starting exactly on the face x = 0: the x slab is NaN and must not clip the ray
+		assertEquals(1, Intersections.intersectRayWithBox(0, 0.5f, -1, inf, inf, 1, 0, 0, 0, 1, 1, 1), 0);
+		// the same on the max face, with a negative zero direction
+		assertEquals(1, Intersections.intersectRayWithBox(1, 0.5f, -1, -inf, inf, 1, 0, 0, 0, 1, 1, 1), 0);
+		// a NaN slab must not cancel a miss on another axis
+		assertEquals(inf, Intersections.intersectRayWithBox(0, 5, -1, inf, inf, 1, 0, 0, 0, 1, 1, 1), 0);
+		assertEquals(inf, Intersections.intersectRayWithBox(0, 0.5f, -1, inf, inf, -1, 0, 0, 0, 1, 1, 1), 0);
+		// inside of the box
+		assertEquals(0, Intersections.intersectRayWithBox(0.5f, 0.5f, 0.5f, inf, inf, 1, 0, 0, 0, 1, 1, 1), 0);
+	}
+	
+	public void testQuantizedBoxQueryIsConservative() {
+		Bvhf bvh = Bvhf.build(bounds, COUNT, 4);
+		QuantizedBvhf q8 = new QuantizedBvhf(bvh, 8);
+		
+		final boolean[] found = new boolean[COUNT];
+		PrimitiveVisitor visitor = new PrimitiveVisitor() {
+			public boolean visit(int primitive) {
+				found[primitive] = true;
+				return true;
+			}
+		};
+		
+		Aabbf query = new Aabbf(10, 5, 20, 3, -7, 12);
+		bvh.queryAabb(query, visitor);
+		for(int i = 0; i < COUNT; i++) {
+			if(Intersections.intersectAabbWithAabb(query, Aabbf.createNewAabbFromMinMax(
+					bounds[i*6], bounds[i*6+1], bounds[i*6+2], bounds[i*6+3], bounds[i*6+4], bounds[i*6+5]))) {
+				assertTrue("Bvhf missed primitive " + i, found[i]);
+			}
+		}
+		
+		boolean[] expected = found.clone();
+		Arrays.fill(found, false);
+		q8.queryAabb(query, visitor);
+		for(int i = 0; i < COUNT; i++) {
+			if(expected[i])
+				assertTrue("QuantizedBvhf missed primitive " + i, found[i]);
+		}
+		
+		assertTrue(q8.sizeInBytes() < bvh.sizeInBytes());
+	}
+	
+	public void testSinks() {
+		// one primitive per leaf, so the query finds exactly the overlapping bounds
+		Bvhf bvh = Bvhf.build(bounds, COUNT, 1);
+		PrimitiveList list = new PrimitiveList(4);
+		PrimitiveBitSet set = new PrimitiveBitSet(4);
+		
+		Random random = new Random(7);
+		for(int i = 0; i < 50; i++) {
+			float x = random.nextFloat()*100 - 50, y = random.nextFloat()*100 - 50, z = random.nextFloat()*100 - 50;
+			float size = random.nextFloat()*30;
+			list.clear();
+			set.clear();
+			assertTrue(bvh.queryBox(x, y, z, x+size, y+size, z+size, list));
+			assertTrue(bvh.queryBox(x, y, z, x+size, y+size, z+size, set));
+			
+			int expected = 0;
+			for(int p = 0; p < COUNT; p++) {
+				boolean overlaps = bounds[p*6] <= x+size && bounds[p*6+3] >= x
+						&& bounds[p*6+1] <= y+size && bounds[p*6+4] >= y
+						&& bounds[p*6+2] <= z+size && bounds[p*6+5] >= z;
+				assertEquals(overlaps, set.contains(p));
+				if(overlaps)
+					expected++;
+			}
+			assertEquals(expected, list.size());
+			assertEquals(expected, set.size());
+			
+			// the list holds the same primitives as the set, in ascending order after sorting
+			list.sort();
+			for(int j = 0, p = set.next(0); j < list.size(); j++, p = set.next(p+1))
+				assertEquals(p, list.get(j));
+		}
+		
+		// a limit stops the query early
+		list.clear();
+		list.setLimit(3);
+		assertFalse(bvh.queryBox(-50, -50, -50, 50, 50, 50, list));
+		assertEquals(3, list.size());
+	}
+	
+	public void testTraversalDoesNotAllocate() {
+		com.sun.management.ThreadMXBean counter = allocationCounter();
+		if(counter == null)
+			return;
+		
+		Bvhf bvh = Bvhf.build(bounds, COUNT, 4);
+		PrimitiveList list = new PrimitiveList(4);
+		PrimitiveBitSet set = new PrimitiveBitSet(4);
+		Frustumf frustum = new Frustumf(new Matrix4f().perspective((float) Math.toRadians(60), 1, 0.1f, 100).translate(0, 0, -60));
+		PrimitiveDistance distance = new PrimitiveDistance() {
+			public float distanceSquared(int primitive, float x, float y, float z) {
+				int s = primitive*4;
+				float dX = spheres[s] - x, dY = spheres[s+1] - y, dZ = spheres[s+2] - z;
+				float d = Math.max(0, (float) Math.sqrt(dX*dX + dY*dY + dZ*dZ) - spheres[s+3]);
+				return d*d;
+			}
+		};
+		Rayf ray = new Rayf();
+		int[] hit = new int[1];
+		
+		// the first half creates the traversal stack of this thread, and grows the sinks
+		long thread = Thread.currentThread().getId();
+		long before = 0;
+		for(int round = 0; round < 200; round++) {
+			if(round == 100)
+				before = counter.getThreadAllocatedBytes(thread);
+			for(int i = 0; i < 50; i++) {
+				float x = i*2 - 50;
+				ray.setOrigin(x, -60, 0);
+				ray.setDirection(0, 1, 0);
+				bvh.intersectRay(ray, sphereIntersector, hit);
+				bvh.findNearest(x, 0, 0, Float.POSITIVE_INFINITY, distance, hit);
+				list.clear();
+				bvh.queryBox(x, -50, -50, x+10, 50, 50, list);
+				set.clear();
+				bvh.queryBox(x, -50, -50, x+10, 50, 50, set);
+				list.clear();
+				bvh.queryFrustum(frustum, list);
+			}
+		}
+		long allocated = counter.getThreadAllocatedBytes(thread) - before;
+		// reading the counter may allocate a few bytes itself, a single allocation per query would be hundreds of kilobytes
+		assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+	}
+	
+	// The counter of the bytes allocated by each thread, or null if the JVM does not have one.
+	private static com.sun.management.ThreadMXBean allocationCounter() {
+		try {
+			ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+			if(threads instanceof com.sun.management.ThreadMXBean) {
+				com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean) threads;
+				if(counter.isThreadAllocatedMemorySupported() && counter.isThreadAllocatedMemoryEnabled())
+					return counter;
+			}
+		} catch(NoClassDefFoundError e) {
+			// not a HotSpot based JVM
+		}
+		return null;
+	}
+	
+	public void testMappedRoundTrip() throws IOException {
+		int size = 20;
+		TriangleMeshf mesh = createGrid(size);
+		Bvhf bvh = mesh.buildBvh(4);
+		
+		File file = File.createTempFile("bvh", ".bin");
+		file.deleteOnExit();
+		MappedBvhf.write(file.toPath(), bvh, mesh);
+		MappedBvhf mapped = MappedBvhf.map(file.toPath());
+		
+		assertEquals(bvh.nodeCount, mapped.nodeCount);
+		assertEquals(mesh.triangleCount, mapped.triangleCount);
+		
+		Random random = new Random(7);
+		Rayf ray = new Rayf();
+		int[] expectedHit = new int[1];
+		int[] mappedHit = new int[1];
+		for(int i = 0; i < 200; i++) {
+			ray.setOrigin(random.nextFloat()*size, 10, random.nextFloat()*size);
+			ray.setDirection(random.nextFloat()*0.2f-0.1f, -1, random.nextFloat()*0.2f-0.1f);
+			
+			float expected = bvh.intersectRay(ray, mesh, expectedHit);
+			assertEquals(expected, mapped.intersectRay(ray, mappedHit), 0f);
+			assertEquals(expectedHit[0], mappedHit[0]);
+		}
+	}
+	
+	public void testMappedWithoutMesh() throws IOException {
+		Bvhf bvh = Bvhf.build(bounds, COUNT, 4);
+		File file = File.createTempFile("bvh", ".bin");
+		file.deleteOnExit();
+		MappedBvhf.write(file.toPath(), bvh, null);
+		MappedBvhf mapped = MappedBvhf.map(file.toPath());
+		assertNull(mapped.vertices);
+		
+		Rayf ray = new Rayf();
+		ray.setOrigin(-60, 0, 0);
+		ray.setDirection(1, 0, 0);
+		assertEquals(bvh.intersectRay(ray, sphereIntersector), mapped.intersectRay(ray, sphereIntersector, null), 0f);
+		try {
+			mapped.intersectRay(ray, null);
+			fail("A file without a mesh has no triangles to test");
+		} catch(IllegalStateException e) {
+		}
+		try {
+			mapped.intersectTriangle(0, ray);
+			fail("A file without a mesh has no triangles to test");
+		} catch(IllegalStateException e) {
+		}
+	}
+	
+	public void testMappedHeaderIsValidated() throws IOException {
+		TriangleMeshf mesh = createGrid(4);
+		Bvhf bvh = mesh.buildBvh(4);
+		File file = File.createTempFile("bvh", ".bin");
+		file.deleteOnExit();
+		MappedBvhf.write(file.toPath(), bvh, mesh);
+		long size = file.length();
+		
+		// data after the hierarchy is ignored
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(size + 100);
+		} finally {
+			raf.close();
+		}
+		assertEquals(bvh.nodeCount, MappedBvhf.map(file.toPath()).nodeCount);
+		
+		assertMapFails(file, 0, size - 4);
+		// a negative node count
+		assertMapFails(file, 12, -1);
+		// a node count that does not fit into the file, and would overflow the offsets
+		assertMapFails(file, 12, Integer.MAX_VALUE / 8);
+		assertMapFails(file, 20, Integer.MAX_VALUE);
+	}
+	
+	// Changes the int at the given offset of a copy of the file (or only truncates it, if offset is zero), and expects mapping it to fail.
+	private static void assertMapFails(File file, int offset, long value) throws IOException {
+		File copy = File.createTempFile("bvh", ".bin");
+		copy.deleteOnExit();
+		Files.copy(file.toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		
+		RandomAccessFile raf = new RandomAccessFile(copy, "rw");
+		try {
+			if(offset == 0) {
+				raf.setLength(value);
+			} else {
+				raf.seek(offset);
+				raf.writeInt(Integer.reverseBytes((int) value));
+			}
+		} finally {
+			raf.close();
+		}
+		
+		try {
+			MappedBvhf.map(copy.toPath());
+			fail("A corrupt header must be rejected");
+		} catch(IOException e) {
+		}
+	}
+	
+	public void testRefitAndPartialRebuild() {
+		Bvhf bvh = Bvhf.build(bounds, COUNT, 4);
+		BvhRefitter refitter = new BvhRefitter(bvh).setGrainSize(32).setRebuildThreshold(1.2f);
+		
+		// scramble the spheres, which ruins the quality of the tree
+		Random random = new Random(99);
+		for(int i = 0; i < COUNT; i++) {
+			float dx = random.nextFloat()*60 - 30;
+			spheres[i*4  ] += dx;
+			bounds[i*6  ] += dx;
+			bounds[i*6+3] += dx;
+		}
+		
+		refitter.refit(bounds);
+		assertTrue(refitter.getRebuiltSubtrees() > 0);
+		
+		Rayf ray = new Rayf();
+		for(int i = 0; i < 500; i++) {
+			ray.setOrigin(random.nextFloat()*120-60, random.nextFloat()*120-60, -100);
+			ray.setDirection(0, 0, 1);
+			assertEquals(bruteForce(ray), bvh.intersectRay(ray, sphereIntersector), 0f);
+		}
+	}
+	
+	public void testRootRebuildKeepsReference() {
+		Bvhf bvh = Bvhf.build(bounds, COUNT, 4);
+		BvhRefitter refitter = new BvhRefitter(bvh).setGrainSize(32);
+		float reference = refitter.getReferenceCost();
+		
+		// stretch the spheres along z, so the split planes of the build are far from optimal
+		Random random = new Random(98);
+		for(int i = 0; i < COUNT; i++) {
+			float dz = random.nextFloat()*400 - 200;
+			bounds[i*6+2] += dz;
+			bounds[i*6+5] += dz;
+		}
+		float drift = refitter.refit(bounds);
+		assertTrue(drift > 1.2f);
+		
+		// the root itself is degraded, and is rebuilt as a whole
+		refitter.setRebuildThreshold(1.1f);
+		float degradation = refitter.refit(bounds);
+		assertEquals(1, refitter.getRebuiltSubtrees());
+		
+		// the degradation is still measured against the original reference, and not reset to one by the rebuild
+		assertEquals(reference, refitter.getReferenceCost(), 0f);
+		assertEquals(refitter.getCost() / reference, degradation, 1e-6f);
+		assertTrue(Math.abs(degradation - 1) > 0.05f);
+		
+		refitter.resetReference();
+		assertEquals(1f, refitter.getDegradation(), 1e-6f);
+	}
+	
+	public void testBuildersMatchBruteForce() {
+		LbvhBuilder builder = new LbvhBuilder().setGrainSize(16).setMaxLeafSize(3);
+		Bvhf bvh30 = builder.build(bounds, COUNT);
+		Bvhf bvh63 = builder.setMortonBits(63).build(bounds, COUNT);
+		Bvhf sah = new SahBuilder().setGrainSize(16).setBinCount(24).build(bounds, COUNT);
+		
+		Random random = new Random(5);
+		Rayf ray = new Rayf();
+		for(int i = 0; i < 500; i++) {
+			ray.setOrigin(random.nextFloat()*120-60, random.nextFloat()*120-60, -100);
+			float dx = random.nextFloat()*0.4f-0.2f;
+			float dy = random.nextFloat()*0.4f-0.2f;
+			float len = (float) Math.sqrt(dx*dx+dy*dy+1);
+			ray.setDirection(dx/len, dy/len, 1/len);
+			float expected = bruteForce(ray);
+			assertEquals(expected, bvh30.intersectRay(ray, sphereIntersector), 0f);
+			assertEquals(expected, bvh63.intersectRay(ray, sphereIntersector), 0f);
+			assertEquals(expected, sah.intersectRay(ray, sphereIntersector), 0f);
+		}
+		
+		// all primitives at the same spot share one Morton code
+		float[] same = new float[64*6];
+		for(int i = 0; i < 64; i++) {
+			same[i*6+3] = same[i*6+4] = same[i*6+5] = 1;
+		}
+		Bvhf bvh = builder.build(same, 64);
+		final int[] visited = new int[1];
+		bvh.queryBox(0, 0, 0, 1, 1, 1, new PrimitiveVisitor() {
+			public boolean visit(int primitive) {
+				visited[0]++;
+				return true;
+			}
+		});
+		assertEquals(64, visited[0]);
+	}
+	
+	public void testInstancesMatchFlattenedMesh() {
+		int size = 8;
+		TriangleMeshf grid = createGrid(size);
+		Bvhf gridBvh = grid.buildBvh(4);
+		
+		// the reference: all instances copied into one mesh in world space
+		int instanceCount = 30;
+		Instancef[] instances = new Instancef[instanceCount];
+		float[] vertices = new float[instanceCount*grid.vertexCount*3];
+		int[] indices = new int[instanceCount*grid.triangleCount*3];
+		Random random = new Random(31);
+		Matrix4f matrix = new Matrix4f();
+		Vector4f v = new Vector4f();
+		for(int i = 0; i < instanceCount; i++) {
+			matrix.identity().translate(random.nextFloat()*40-20, random.nextFloat()*4, random.nextFloat()*40-20)
+					.rotateY(random.nextFloat()*6).scale(0.5f + random.nextFloat());
+			instances[i] = new Instancef(gridBvh, grid, matrix);
+			
+			for(int j = 0; j < grid.vertexCount; j++) {
+				v.set(grid.vertices[j*3], grid.vertices[j*3+1], grid.vertices[j*3+2], 1f);
+				matrix.transform(v);
+				int o = (i*grid.vertexCount + j)*3;
+				vertices[o  ] = v.x;
+				vertices[o+1] = v.y;
+				vertices[o+2] = v.z;
+			}
+			for(int j = 0; j < grid.triangleCount*3; j++)
+				indices[i*grid.triangleCount*3 + j] = grid.indices[j] + i*grid.vertexCount;
+		}
+		TriangleMeshf flat = new TriangleMeshf(vertices, indices);
+		Bvhf flatBvh = flat.buildBvh(4);
+		
+		InstancedBvhf scene = new InstancedBvhf(instances, instanceCount);
+		
+		Rayf ray = new Rayf();
+		int[] expectedHit = new int[1];
+		int[] hit = new int[2];
+		int hits = 0;
+		for(int i = 0; i < 500; i++) {
+			ray.setOrigin(random.nextFloat()*50-25, 20, random.nextFloat()*50-25);
+			ray.setDirection(random.nextFloat()-0.5f, -1, random.nextFloat()-0.5f);
+			
+			float expected = flatBvh.intersectRay(ray, flat, expectedHit);
+			float t = scene.intersectRay(ray, hit);
+			assertEquals(expected, t, 1e-3f * Math.max(1, t));
+			if(expectedHit[0] >= 0) {
+				hits++;
+				assertEquals(expectedHit[0] / grid.triangleCount, hit[0]);
+			} else {
+				assertEquals(-1, hit[0]);
+			}
+		}
+		assertTrue(hits > 50);
+		assertTrue(scene.sizeInBytes() < flatBvh.sizeInBytes());
+	}
+	
+}
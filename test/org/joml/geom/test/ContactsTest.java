@@ -0,0 +1,77 @@
+package org.joml.geom.test;
+
+import junit.framework.TestCase;
+
+import org.joml.geom.Aabbf;
+import org.joml.geom.ContactBuffer;
+import org.joml.geom.Contacts;
+import org.joml.geom.Spheref;
+
+public class ContactsTest extends TestCase {
+	
+	public void testAabbs() {
+		float[] boxes = {
+				0, 0, 0, 2, 2, 2,
+				1.5f, 0.5f, -1, 3.5f, 1.5f, 3,
+				5, 5, 5, 6, 6, 6 };
+		int[] pairs = { 0, 1, 1, 0, 0, 2 };
+		ContactBuffer contacts = new ContactBuffer(1);
+		
+		assertEquals(8, Contacts.collideAabbs(boxes, pairs, 3, contacts));
+		for(int i = 0; i < 4; i++) {
+			assertEquals(0, contacts.bodyA[i]);
+			assertEquals(1, contacts.bodyB[i]);
+			assertEquals(1f, contacts.normalX[i]);
+			assertEquals(0.5f, contacts.depth[i]);
+			assertEquals(1.75f, contacts.pointX[i]);
+		}
+		// the same pair the other way around
+		assertEquals(1, contacts.bodyA[4]);
+		assertEquals(-1f, contacts.normalX[4]);
+		
+		// every overlap gets the four corners of the overlap region
+		contacts.clear();
+		assertTrue(Contacts.collide(new Aabbf(1, 1, 1, 0, 0, 0), new Aabbf(1, 1, 1, 1.5f, 1.5f, 0), 0, 1, contacts));
+		assertEquals(4, contacts.size);
+		// touching boxes, on a face or on a edge, do not collide
+		assertFalse(Contacts.collide(new Aabbf(1, 1, 1, 0, 0, 0), new Aabbf(1, 1, 1, 2, 0, 0), 0, 1, contacts));
+		assertFalse(Contacts.collide(new Aabbf(1, 1, 1, 0, 0, 0), new Aabbf(1, 1, 1, 2, 2, 0), 0, 1, contacts));
+		assertEquals(4, contacts.size);
+	}
+	
+	public void testSpheres() {
+		float[] spheres = { 0, 0, 0, 1, 1.5f, 0, 0, 1, 0, 3, 0, 1 };
+		ContactBuffer contacts = new ContactBuffer();
+		
+		assertEquals(1, Contacts.collideSpheres(spheres, new int[] { 0, 1, 0, 2 }, 2, contacts));
+		assertEquals(1f, contacts.normalX[0]);
+		assertEquals(0.5f, contacts.depth[0], 1e-6f);
+		assertEquals(0.75f, contacts.pointX[0], 1e-6f);
+		
+		contacts.clear();
+		assertTrue(Contacts.collide(new Spheref(1, 1, 1, 1), new Spheref(1, 1, 1, 2), 3, 4, contacts));
+		assertEquals(3f, contacts.depth[0], 1e-6f);
+	}
+	
+	public void testSpheresWithAabbs() {
+		float[] spheres = { 0, 0, 0, 1, 1.2f, 0.5f, 0.8f, 1 };
+		float[] boxes = { 0.5f, -1, -1, 2, 1, 1 };
+		ContactBuffer contacts = new ContactBuffer();
+		
+		assertEquals(2, Contacts.collideSpheresWithAabbs(spheres, boxes, new int[] { 0, 0, 1, 0 }, 2, contacts));
+		
+		// the sphere touches the face at x = 0.5
+		assertEquals(1f, contacts.normalX[0]);
+		assertEquals(0.5f, contacts.depth[0], 1e-6f);
+		assertEquals(0.75f, contacts.pointX[0], 1e-6f);
+		
+		// the center is inside of the box, nearest to the face at z = 1
+		assertEquals(-1f, contacts.normalZ[1]);
+		assertEquals(1.2f, contacts.depth[1], 1e-6f);
+		
+		contacts.clear();
+		assertFalse(Contacts.collide(new Spheref(0, 0, 0, 1), new Aabbf(1, 1, 1, 2, 2, 0), 0, 1, contacts));
+		assertEquals(0, contacts.size);
+	}
+
+}
@@ -0,0 +1,161 @@
+package org.joml.geom.test;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * A small harness for differential tests: A optimized kernel is run against a slow reference on the same random inputs, and the first disagreement fails the test.
+ *
+ * <br><br>
+ * The random inputs are biased towards the cases where fast paths usually break: zero and negative zero, NaN, infinities, huge and tiny values,
+ * coordinates that repeat exactly (rays that graze a face, boxes that touch), degenerate boxes and axis parallel directions.
+ * <br>
+ * {@link #time(String, int, Kernel, Kernel)} records the throughput of both sides, so a change to a kernel shows its speedup (or slowdown) next to its correctness.
+ * The timings are printed by {@link DifferentialBenchmark}, which is run by hand and is not part of the tests.
+ * <br>
+ * The number of cases is set with the system property <code>joml.geom.differential.cases</code>.
+ **/
+public class Differential {
+	
+	/** The number of random cases per check. **/
+	public static final int CASES = Integer.getInteger("joml.geom.differential.cases", 20000);
+	
+	/** A single random case. **/
+	public interface Case {
+		/**
+		 * Runs the case.
+		 * @return Null, if the kernel and the reference agree. A description of the disagreement if not.
+		 **/
+		public String run(int index);
+	}
+	
+	/** A kernel to time. **/
+	public interface Kernel {
+		/**
+		 * Runs the kernel once over its inputs.
+		 * @return Some value of the results, so the work cannot be optimized away.
+		 **/
+		public float run();
+	}
+	
+	private final Random random;
+	// recent values, reused to create exact coincidences
+	private final float[] recent = new float[8];
+	private int recentCount;
+	
+	public Differential(long seed) {
+		this.random = new Random(seed);
+	}
+	
+	public Random getRandom() {
+		return random;
+	}
+	
+	/**
+	 * @return A coordinate in [-range, range], or with a small probability a edge case value. Values repeat every now and then.
+	 **/
+	public float nextCoordinate(float range) {
+		float value;
+		int pick = random.nextInt(100);
+		if(pick < 10 && recentCount > 0) {
+			value = recent[random.nextInt(Math.min(recentCount, recent.length))];
+		} else if(pick < 13) {
+			value = 0;
+		} else if(pick < 14) {
+			value = -0f;
+		} else if(pick < 15) {
+			value = random.nextBoolean() ? Float.MIN_VALUE : -Float.MIN_VALUE;
+		} else if(pick < 17) {
+			// a integer, so sums and differences are exact
+			value = random.nextInt((int) Math.max(1, range) * 2 + 1) - (int) Math.max(1, range);
+		} else {
+			value = (random.nextFloat()*2 - 1) * range;
+		}
+		recent[recentCount++ % recent.length] = value;
+		return value;
+	}
+	
+	/**
+	 * @return A coordinate like {@link #nextCoordinate(float)}, or with a small probability NaN or a infinity.
+	 **/
+	public float nextSpecial(float range) {
+		int pick = random.nextInt(200);
+		if(pick == 0) return Float.NaN;
+		if(pick == 1) return Float.POSITIVE_INFINITY;
+		if(pick == 2) return Float.NEGATIVE_INFINITY;
+		if(pick == 3) return random.nextBoolean() ? 1e30f : -1e30f;
+		return nextCoordinate(range);
+	}
+	
+	/**
+	 * Stores a random direction. Often one or two of its components are exactly zero (axis parallel), and sometimes a component is negative zero.
+	 **/
+	public void nextDirection(float[] store, int offset) {
+		do {
+			for(int k = 0; k < 3; k++) {
+				int pick = random.nextInt(10);
+				store[offset+k] = pick < 3 ? (pick == 0 ? -0f : 0) : random.nextFloat()*2 - 1;
+			}
+		} while(store[offset] == 0 && store[offset+1] == 0 && store[offset+2] == 0);
+	}
+	
+	/**
+	 * Stores a random box: minX, minY, minZ, maxX, maxY, maxZ. Sometimes the box is flat along some axes, or a single point.
+	 **/
+	public void nextBox(float[] store, int offset, float range) {
+		for(int k = 0; k < 3; k++) {
+			float a = nextCoordinate(range);
+			float b = random.nextInt(8) == 0 ? a : nextCoordinate(range);
+			store[offset+k  ] = Math.min(a, b);
+			store[offset+k+3] = Math.max(a, b);
+		}
+	}
+	
+	/**
+	 * Runs the given number of cases, and fails with the description of the first disagreement.
+	 **/
+	public static void check(String name, int cases, Case test) {
+		for(int i = 0; i < cases; i++) {
+			String failure = test.run(i);
+			if(failure != null)
+				TestCase.fail(name + ", case " + i + ": " + failure);
+		}
+	}
+	
+	/**
+	 * Times the kernel and the reference, and prints the time per run of both and the speedup of the kernel.
+	 * Both sides are warmed up first, then they are timed in alternating rounds, and the fastest round of each counts.
+	 * @return The speedup of the kernel over the reference: Greater than one, if the kernel is faster.
+	 **/
+	public static double time(String name, int runs, Kernel kernel, Kernel reference) {
+		sink += run(kernel, runs) + run(reference, runs);
+		
+		long kernelTime = Long.MAX_VALUE, referenceTime = Long.MAX_VALUE;
+		for(int round = 0; round < 7; round++) {
+			long start = System.nanoTime();
+			sink += run(kernel, runs);
+			kernelTime = Math.min(kernelTime, System.nanoTime() - start);
+			
+			start = System.nanoTime();
+			sink += run(reference, runs);
+			referenceTime = Math.min(referenceTime, System.nanoTime() - start);
+		}
+		
+		double speedup = (double) referenceTime / kernelTime;
+		System.out.println(String.format("%-40s kernel %10.1f ns, reference %10.1f ns, speedup %6.2f",
+				name, (double) kernelTime / runs, (double) referenceTime / runs, speedup));
+		return speedup;
+	}
+	
+	// keeps the results alive
+	private static volatile float sink;
+	
+	private static float run(Kernel kernel, int runs) {
+		float sum = 0;
+		for(int i = 0; i < runs; i++)
+			sum += kernel.run();
+		return sum;
+	}
+
+}
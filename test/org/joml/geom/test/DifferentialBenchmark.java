@@ -0,0 +1,62 @@
+package org.joml.geom.test;
+
+import org.joml.geom.Intersections;
+import org.joml.geom.Overlaps;
+import org.joml.geom.Spheref;
+
+/**
+ * Times the optimized kernels of {@link DifferentialTest} against their references, and prints the speedups.
+ * This is not part of the tests, run it by hand after changing a kernel.
+ **/
+public class DifferentialBenchmark {
+	
+	public static void main(String[] args) {
+		Differential random = new Differential(53);
+		final int count = 1024;
+		final float[] boxes = new float[count*6];
+		final float[] rays = new float[count*6];
+		for(int i = 0; i < count; i++) {
+			random.nextBox(boxes, i*6, DifferentialTest.RANGE);
+			for(int k = 0; k < 3; k++)
+				rays[i*6+k] = random.nextCoordinate(DifferentialTest.RANGE*2);
+			random.nextDirection(rays, i*6+3);
+		}
+		final long[] mask = new long[count >>> 6];
+		final float[] ray = new float[6];
+		
+		Differential.time("ray with box: slab / double reference", 200, new Differential.Kernel() {
+			public float run() {
+				float sum = 0;
+				for(int i = 0; i < count; i++) {
+					System.arraycopy(rays, i*6, ray, 0, 6);
+					sum += DifferentialTest.slab(ray, boxes, i*6) < Float.POSITIVE_INFINITY ? 1 : 0;
+				}
+				return sum;
+			}
+		}, new Differential.Kernel() {
+			public float run() {
+				float sum = 0;
+				for(int i = 0; i < count; i++) {
+					System.arraycopy(rays, i*6, ray, 0, 6);
+					sum += DifferentialTest.referenceRayBox(ray, boxes, i*6, 0) < Double.POSITIVE_INFINITY ? 1 : 0;
+				}
+				return sum;
+			}
+		});
+		
+		Differential.time("sphere with boxes: batch / Aabbf", 200, new Differential.Kernel() {
+			public float run() {
+				return Overlaps.overlapSphereWithBoxes(1, 2, 3, 4, boxes, count, mask);
+			}
+		}, new Differential.Kernel() {
+			public float run() {
+				Spheref sphere = new Spheref(1, 2, 3, 4);
+				float sum = 0;
+				for(int i = 0; i < count; i++)
+					sum += Intersections.intersectAabbWithSphere(DifferentialTest.toAabb(boxes, i*6), sphere) ? 1 : 0;
+				return sum;
+			}
+		});
+	}
+
+}
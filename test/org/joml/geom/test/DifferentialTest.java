@@ -0,0 +1,330 @@
+package org.joml.geom.test;
+
+import junit.framework.TestCase;
+
+import org.joml.Matrix4f;
+import org.joml.geom.Aabbf;
+import org.joml.geom.Bvhf;
+import org.joml.geom.Intersections;
+import org.joml.geom.Overlaps;
+import org.joml.geom.PrimitiveIntersector;
+import org.joml.geom.PrimitiveList;
+import org.joml.geom.Projections;
+import org.joml.geom.QuantizedBvhf;
+import org.joml.geom.Rayf;
+import org.joml.geom.Spheref;
+import org.joml.geom.Transformations;
+
+/**
+ * Runs the optimized kernels against slow reference implementations, see {@link Differential}.
+ * <br>
+ * Where float rounding makes the exact answer ambiguous (a ray that grazes a face, boxes that touch), the reference is evaluated
+ * with the shapes grown and shrunk by a small margin, and only cases where both agree have to match.
+ **/
+public class DifferentialTest extends TestCase {
+	
+	static final float RANGE = 10;
+	private static final double MARGIN = 1e-4;
+	
+	// Clips the ray against the box grown by the margin, in double precision. The entry distance, zero inside, or positive infinity.
+	static double referenceRayBox(float[] ray, float[] box, int b, double margin) {
+		double tmin = Double.NEGATIVE_INFINITY, tmax = Double.POSITIVE_INFINITY;
+		for(int k = 0; k < 3; k++) {
+			double min = box[b+k] - margin, max = box[b+k+3] + margin;
+			double org = ray[k], dir = ray[k+3];
+			if(min > max)
+				return Double.POSITIVE_INFINITY;
+			if(dir == 0) {
+				if(org < min || org > max)
+					return Double.POSITIVE_INFINITY;
+				continue;
+			}
+			double t1 = (min - org) / dir, t2 = (max - org) / dir;
+			tmin = Math.max(tmin, Math.min(t1, t2));
+			tmax = Math.min(tmax, Math.max(t1, t2));
+		}
+		if(tmax < 0 || tmin > tmax)
+			return Double.POSITIVE_INFINITY;
+		return Math.max(tmin, 0);
+	}
+	
+	static float slab(float[] ray, float[] box, int b) {
+		return Intersections.intersectRayWithBox(ray[0], ray[1], ray[2], 1f / ray[3], 1f / ray[4], 1f / ray[5],
+				box[b], box[b+1], box[b+2], box[b+3], box[b+4], box[b+5]);
+	}
+	
+	// Checks a entry distance against the reference with the box grown and shrunk. Null if it agrees.
+	private static String checkDistance(float t, double grown, double shrunk) {
+		boolean hitGrown = grown < Double.POSITIVE_INFINITY, hitShrunk = shrunk < Double.POSITIVE_INFINITY;
+		if(hitGrown && !hitShrunk)
+			return null; // grazing, both answers are right
+		if(hitGrown != (t < Float.POSITIVE_INFINITY))
+			return "hit " + (t < Float.POSITIVE_INFINITY) + ", reference " + hitGrown;
+		if(hitGrown && !(t >= grown - 1e-4 * (1 + grown) && t <= shrunk + 1e-4 * (1 + shrunk)))
+			return "distance " + t + ", reference between " + grown + " and " + shrunk;
+		return null;
+	}
+	
+	static Aabbf toAabb(float[] box, int b) {
+		return new Aabbf(
+				(box[b+3] - box[b  ]) * 0.5f, (box[b+4] - box[b+1]) * 0.5f, (box[b+5] - box[b+2]) * 0.5f,
+				(box[b+3] + box[b  ]) * 0.5f, (box[b+4] + box[b+1]) * 0.5f, (box[b+5] + box[b+2]) * 0.5f);
+	}
+	
+	private static String describe(float[] values, int offset, int count) {
+		StringBuilder builder = new StringBuilder("(");
+		for(int i = 0; i < count; i++)
+			builder.append(i > 0 ? ", " : "").append(values[offset+i]);
+		return builder.append(")").toString();
+	}
+	
+	public void testRayBox() {
+		final Differential random = new Differential(48);
+		final float[] ray = new float[6];
+		final float[] box = new float[6];
+		
+		Differential.check("slab test", Differential.CASES, new Differential.Case() {
+			public String run(int index) {
+				for(int k = 0; k < 3; k++)
+					ray[k] = random.nextCoordinate(RANGE*2);
+				random.nextDirection(ray, 3);
+				random.nextBox(box, 0, RANGE);
+				
+				String failure = checkDistance(slab(ray, box, 0), referenceRayBox(ray, box, 0, MARGIN), referenceRayBox(ray, box, 0, -MARGIN));
+				return failure == null ? null : failure + " for ray " + describe(ray, 0, 6) + " and box " + describe(box, 0, 6);
+			}
+		});
+		
+		// the scalar test through the faces of a Aabbf, for rays from outside of the box
+		Differential.check("ray with Aabbf", Differential.CASES, new Differential.Case() {
+			public String run(int index) {
+				for(int k = 0; k < 3; k++)
+					ray[k] = random.nextCoordinate(RANGE*2);
+				random.nextDirection(ray, 3);
+				random.nextBox(box, 0, RANGE);
+				if(referenceRayBox(ray, box, 0, MARGIN) == 0)
+					return null;
+				
+				Rayf r = new Rayf(ray[3], ray[4], ray[5]);
+				r.originX = ray[0];
+				r.originY = ray[1];
+				r.originZ = ray[2];
+				float t = Intersections.intersectRayWithAabb(r, toAabb(box, 0));
+				String failure = checkDistance(t, referenceRayBox(ray, box, 0, MARGIN), referenceRayBox(ray, box, 0, -MARGIN));
+				return failure == null ? null : failure + " for ray " + describe(ray, 0, 6) + " and box " + describe(box, 0, 6);
+			}
+		});
+		
+		// NaN, infinities and huge values: no NaN distances, and nothing behind the ray
+		Differential.check("slab test with special values", Differential.CASES, new Differential.Case() {
+			public String run(int index) {
+				for(int k = 0; k < 3; k++) {
+					ray[k] = random.nextSpecial(RANGE*2);
+					ray[k+3] = random.nextSpecial(1);
+				}
+				for(int k = 0; k < 6; k++)
+					box[k] = random.nextSpecial(RANGE);
+				float t = slab(ray, box, 0);
+				return t >= 0 ? null : "distance " + t + " for ray " + describe(ray, 0, 6) + " and box " + describe(box, 0, 6);
+			}
+		});
+		
+		// a ray parallel to a face, starting exactly on it, counts as a hit
+		ray[0] = 1; ray[1] = 0; ray[2] = 0.5f;
+		ray[3] = 0; ray[4] = 1; ray[5] = 0;
+		box[0] = 1; box[1] = 2; box[2] = 0;
+		box[3] = 2; box[4] = 3; box[5] = 1;
+		assertEquals(2, slab(ray, box, 0), 0);
+	}
+	
+	public void testSphereOverlaps() {
+		final Differential random = new Differential(49);
+		final int count = 100;
+		final float[] boxes = new float[count*6];
+		final float[] spheres = new float[count*4];
+		final long[] mask = new long[(count + 63) >>> 6];
+		final int[] indices = new int[count];
+		
+		Differential.check("sphere with boxes and spheres", Differential.CASES / count, new Differential.Case() {
+			public String run(int index) {
+				for(int i = 0; i < count; i++) {
+					random.nextBox(boxes, i*6, RANGE);
+					for(int k = 0; k < 3; k++)
+						spheres[i*4+k] = random.nextCoordinate(RANGE);
+					spheres[i*4+3] = Math.abs(random.nextCoordinate(2));
+				}
+				float x = random.nextCoordinate(RANGE), y = random.nextCoordinate(RANGE), z = random.nextCoordinate(RANGE);
+				float radius = Math.abs(random.nextCoordinate(4));
+				
+				Overlaps.overlapSphereWithBoxes(x, y, z, radius, boxes, count, mask);
+				int hits = Overlaps.overlapSphereWithBoxes(x, y, z, radius, boxes, count, indices);
+				for(int i = 0, next = 0; i < count; i++) {
+					boolean hit = (mask[i >>> 6] & (1L << i)) != 0;
+					if(hit != (next < hits && indices[next] == i))
+						return "mask and indices disagree for box " + i;
+					if(hit)
+						next++;
+					
+					Aabbf box = toAabb(boxes, i*6);
+					boolean grown = Intersections.intersectAabbWithSphere(box, new Spheref(x, y, z, radius + (float) MARGIN));
+					boolean shrunk = radius > MARGIN && Intersections.intersectAabbWithSphere(box, new Spheref(x, y, z, radius - (float) MARGIN));
+					if(grown == shrunk && hit != grown)
+						return "box " + describe(boxes, i*6, 6) + ": hit " + hit + ", reference " + grown;
+				}
+				
+				Overlaps.overlapSphereWithSpheres(x, y, z, radius, spheres, count, mask);
+				for(int i = 0; i < count; i++) {
+					boolean hit = (mask[i >>> 6] & (1L << i)) != 0;
+					Spheref sphere = new Spheref(spheres[i*4], spheres[i*4+1], spheres[i*4+2], spheres[i*4+3]);
+					boolean grown = new Spheref(x, y, z, radius + (float) MARGIN).intersect(sphere);
+					boolean shrunk = radius > MARGIN && new Spheref(x, y, z, radius - (float) MARGIN).intersect(sphere);
+					if(grown == shrunk && hit != grown)
+						return "sphere " + describe(spheres, i*4, 4) + ": hit " + hit + ", reference " + grown;
+				}
+				return null;
+			}
+		});
+	}
+	
+	public void testTransformBoxes() {
+		final Differential random = new Differential(50);
+		final int count = 64;
+		final float[] boxes = new float[count*6];
+		final float[] store = new float[count*6];
+		final Matrix4f matrix = new Matrix4f();
+		
+		Differential.check("box transform", Differential.CASES / count, new Differential.Case() {
+			public String run(int index) {
+				matrix.identity()
+						.translate(random.nextCoordinate(RANGE), random.nextCoordinate(RANGE), random.nextCoordinate(RANGE))
+						.rotateX(random.nextCoordinate(4)).rotateY(random.nextCoordinate(4))
+						.scale(random.nextCoordinate(2), random.nextCoordinate(2), random.nextCoordinate(2));
+				for(int i = 0; i < count; i++)
+					random.nextBox(boxes, i*6, RANGE);
+				Transformations.transformBoxes(matrix, boxes, count, store);
+				
+				// the reference transforms all eight corners
+				for(int i = 0; i < count; i++) {
+					int b = i*6;
+					double[] bounds = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+							Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+					for(int corner = 0; corner < 8; corner++) {
+						double x = boxes[b + ((corner & 1) != 0 ? 3 : 0)];
+						double y = boxes[b + ((corner & 2) != 0 ? 4 : 1)];
+						double z = boxes[b + ((corner & 4) != 0 ? 5 : 2)];
+						double[] p = {
+								matrix.m00*x + matrix.m10*y + matrix.m20*z + matrix.m30,
+								matrix.m01*x + matrix.m11*y + matrix.m21*z + matrix.m31,
+								matrix.m02*x + matrix.m12*y + matrix.m22*z + matrix.m32};
+						for(int k = 0; k < 3; k++) {
+							bounds[k] = Math.min(bounds[k], p[k]);
+							bounds[k+3] = Math.max(bounds[k+3], p[k]);
+						}
+					}
+					for(int k = 0; k < 6; k++) {
+						double tolerance = 1e-4 * (1 + Math.abs(bounds[k]));
+						if(Math.abs(store[b+k] - bounds[k]) > tolerance)
+							return "box " + describe(boxes, b, 6) + ": bound " + k + " is " + store[b+k] + ", reference " + bounds[k];
+					}
+				}
+				return null;
+			}
+		});
+	}
+	
+	public void testProjectPoints() {
+		final Differential random = new Differential(51);
+		final int count = 64;
+		final float[] points = new float[count*3];
+		final float[] store = new float[count*3];
+		final float[] box = new float[6];
+		final float[] single = new float[3];
+		
+		Differential.check("point projection", Differential.CASES / count, new Differential.Case() {
+			public String run(int index) {
+				random.nextBox(box, 0, RANGE);
+				Aabbf aabb = toAabb(box, 0);
+				for(int i = 0; i < count*3; i++)
+					points[i] = random.nextCoordinate(RANGE*2);
+				
+				Projections.projectPointsOntoAabb(points, count, aabb, store);
+				for(int i = 0; i < count; i++) {
+					Projections.projectPointOntoAabb(points[i*3], points[i*3+1], points[i*3+2], aabb, single, 0);
+					for(int k = 0; k < 3; k++) {
+						if(Float.floatToIntBits(store[i*3+k]) != Float.floatToIntBits(single[k]) && store[i*3+k] != single[k])
+							return "point " + describe(points, i*3, 3) + ": " + describe(store, i*3, 3) + ", scalar " + describe(single, 0, 3);
+					}
+				}
+				return null;
+			}
+		});
+	}
+	
+	public void testHierarchies() {
+		final Differential random = new Differential(52);
+		final int count = 300;
+		final float[] boxes = new float[count*6];
+		for(int i = 0; i < count; i++)
+			random.nextBox(boxes, i*6, RANGE);
+		final Bvhf bvh = Bvhf.build(boxes, count, 4);
+		final QuantizedBvhf quantized = new QuantizedBvhf(bvh, 16);
+		final float[] ray = new float[6];
+		final PrimitiveIntersector intersector = new PrimitiveIntersector() {
+			public float intersectRay(int primitive, Rayf r) {
+				return slab(ray, boxes, primitive*6);
+			}
+		};
+		
+		Differential.check("hierarchy ray", Differential.CASES / 10, new Differential.Case() {
+			public String run(int index) {
+				for(int k = 0; k < 3; k++)
+					ray[k] = random.nextCoordinate(RANGE*2);
+				random.nextDirection(ray, 3);
+				Rayf r = new Rayf(ray[3], ray[4], ray[5]);
+				r.originX = ray[0];
+				r.originY = ray[1];
+				r.originZ = ray[2];
+				
+				float expected = Float.POSITIVE_INFINITY;
+				for(int i = 0; i < count; i++)
+					expected = Math.min(expected, slab(ray, boxes, i*6));
+				float t = bvh.intersectRay(r, intersector);
+				float q = quantized.intersectRay(r, intersector, null);
+				if(t != expected || q != expected)
+					return "nearest " + t + " (quantized " + q + "), brute force " + expected + " for ray " + describe(ray, 0, 6);
+				return null;
+			}
+		});
+		
+		final float[] query = new float[6];
+		final PrimitiveList list = new PrimitiveList(count);
+		final PrimitiveList quantizedList = new PrimitiveList(count);
+		Differential.check("hierarchy box query", Differential.CASES / 10, new Differential.Case() {
+			public String run(int index) {
+				random.nextBox(query, 0, RANGE);
+				list.clear();
+				quantizedList.clear();
+				bvh.queryBox(query[0], query[1], query[2], query[3], query[4], query[5], list);
+				quantized.queryBox(query[0], query[1], query[2], query[3], query[4], query[5], quantizedList);
+				boolean[] found = new boolean[count];
+				for(int i = 0; i < list.size(); i++)
+					found[list.get(i)] = true;
+				boolean[] foundQuantized = new boolean[count];
+				for(int i = 0; i < quantizedList.size(); i++)
+					foundQuantized[quantizedList.get(i)] = true;
+				
+				// the hierarchies report candidates: every overlapping box has to be among them
+				for(int i = 0; i < count; i++) {
+					int b = i*6;
+					boolean overlap = boxes[b] <= query[3] && boxes[b+3] >= query[0] &&
+							boxes[b+1] <= query[4] && boxes[b+4] >= query[1] &&
+							boxes[b+2] <= query[5] && boxes[b+5] >= query[2];
+					if(overlap && !(found[i] && foundQuantized[i]))
+						return "box " + describe(boxes, b, 6) + " missing for query " + describe(query, 0, 6);
+				}
+				return null;
+			}
+		});
+	}
+
+}
@@ -0,0 +1,223 @@
+package org.joml.geom.test;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import junit.framework.TestCase;
+
+import org.joml.Matrix4f;
+import org.joml.geom.Bvhf;
+import org.joml.geom.DualTreeQuery;
+import org.joml.geom.Intersections;
+import org.joml.geom.PairVisitor;
+import org.joml.geom.TriangleMeshf;
+
+public class DualTreeQueryTest extends TestCase {
+	
+	public void testTriangles() {
+		// crossing, and apart
+		assertTrue(Intersections.intersectTriangleWithTriangle(0, 0, 0, 2, 0, 0, 0, 2, 0, 0.5f, 0.5f, -1, 0.5f, 0.5f, 1, 1, 1, 1));
+		assertFalse(Intersections.intersectTriangleWithTriangle(0, 0, 0, 2, 0, 0, 0, 2, 0, 0.5f, 0.5f, 0.5f, 0.5f, 0.5f, 1, 1, 1, 1));
+		// coplanar, overlapping and apart
+		assertTrue(Intersections.intersectTriangleWithTriangle(0, 0, 0, 2, 0, 0, 0, 2, 0, 0.5f, 0.5f, 0, 3, 0.5f, 0, 0.5f, 3, 0));
+		assertFalse(Intersections.intersectTriangleWithTriangle(0, 0, 0, 2, 0, 0, 0, 2, 0, 1.5f, 1.5f, 0, 3, 1.5f, 0, 1.5f, 3, 0));
+		// touching at a vertex
+		assertTrue(Intersections.intersectTriangleWithTriangle(0, 0, 0, 2, 0, 0, 0, 2, 0, 2, 0, 0, 3, 0, 1, 3, 1, -1));
+	}
+	
+	public void testTrianglesMatchReference() {
+		Random random = new Random(44);
+		float[] t = new float[18];
+		int[] hits = new int[2];
+		int[] misses = new int[2];
+		for(int test = 0; test < 30000; test++) {
+			int kind = test % 3;
+			for(int i = 0; i < 18; i++)
+				t[i] = random.nextFloat()*2 - 1;
+			if(kind == 1) {
+				// coplanar, in the plane z = 0
+				for(int i = 2; i < 18; i += 3)
+					t[i] = 0;
+			} else if(kind == 2) {
+				// touching at a shared vertex, or overlapping beyond it
+				int a = random.nextInt(3)*3, b = 9 + random.nextInt(3)*3;
+				t[b] = t[a];
+				t[b+1] = t[a+1];
+				t[b+2] = t[a+2];
+			}
+			
+			boolean hit = Intersections.intersectTriangleWithTriangle(t[0], t[1], t[2], t[3], t[4], t[5], t[6], t[7], t[8],
+					t[9], t[10], t[11], t[12], t[13], t[14], t[15], t[16], t[17]);
+			if(kind == 2) {
+				assertTrue(hit);
+				continue;
+			}
+			
+			// slightly shrunk triangles that still overlap, or slightly grown triangles that are still apart, are not close to touching
+			if(reference(t, 0.999)) {
+				assertTrue(hit);
+				hits[kind]++;
+			} else if(!reference(t, 1.001)) {
+				assertFalse(hit);
+				misses[kind]++;
+			}
+		}
+		for(int kind = 0; kind < 2; kind++) {
+			assertTrue(hits[kind] > 500);
+			assertTrue(misses[kind] > 500);
+		}
+	}
+	
+	// The triangles t[0-8] and t[9-17] in double precision, scaled about their centroids: Do any of their edges hit the other triangle?
+	private static boolean reference(float[] t, double scale) {
+		// the last three entries hold the point where a edge crosses the plane of a triangle
+		double[] p = new double[21];
+		for(int i = 0; i < 18; i++) {
+			int first = i - i % 9 + i % 3;
+			double center = ((double) t[first] + t[first+3] + t[first+6]) / 3;
+			p[i] = center + (t[i] - center) * scale;
+		}
+		for(int e = 0; e < 3; e++) {
+			if(edgeHitsTriangle(p, e*3, (e+1) % 3 * 3, 9) || edgeHitsTriangle(p, 9 + e*3, 9 + (e+1) % 3 * 3, 0))
+				return true;
+		}
+		return false;
+	}
+	
+	private static boolean edgeHitsTriangle(double[] p, int s0, int s1, int tri) {
+		int v0 = tri, v1 = tri+3, v2 = tri+6;
+		double[] n = {
+				(p[v1+1]-p[v0+1])*(p[v2+2]-p[v0+2]) - (p[v1+2]-p[v0+2])*(p[v2+1]-p[v0+1]),
+				(p[v1+2]-p[v0+2])*(p[v2  ]-p[v0  ]) - (p[v1  ]-p[v0  ])*(p[v2+2]-p[v0+2]),
+				(p[v1  ]-p[v0  ])*(p[v2+1]-p[v0+1]) - (p[v1+1]-p[v0+1])*(p[v2  ]-p[v0  ]) };
+		double d0 = n[0]*(p[s0]-p[v0]) + n[1]*(p[s0+1]-p[v0+1]) + n[2]*(p[s0+2]-p[v0+2]);
+		double d1 = n[0]*(p[s1]-p[v0]) + n[1]*(p[s1+1]-p[v0+1]) + n[2]*(p[s1+2]-p[v0+2]);
+		if(d0 > 0 && d1 > 0 || d0 < 0 && d1 < 0)
+			return false;
+		
+		if(d0 == 0 && d1 == 0) {
+			// the edge lies in the plane of the triangle: A end point inside, or crossing one of the edges
+			if(inside(p, s0, tri, n) || inside(p, s1, tri, n))
+				return true;
+			for(int e = 0; e < 3; e++) {
+				if(edgesCross(p, s0, s1, tri + e*3, tri + (e+1) % 3 * 3, n))
+					return true;
+			}
+			return false;
+		}
+		
+		double s = d0 / (d0 - d1);
+		for(int k = 0; k < 3; k++)
+			p[18+k] = p[s0+k] + (p[s1+k] - p[s0+k]) * s;
+		return inside(p, 18, tri, n);
+	}
+	
+	// If the point is inside of the triangle or on its boundary, both in the plane with the normal n.
+	private static boolean inside(double[] p, int point, int tri, double[] n) {
+		for(int e = 0; e < 3; e++) {
+			if(orient(p, tri + e*3, tri + (e+1) % 3 * 3, point, n) < 0)
+				return false;
+		}
+		return true;
+	}
+	
+	// If the segments ab and cd, in the plane with the normal n, cross or touch.
+	private static boolean edgesCross(double[] p, int a, int b, int c, int d, double[] n) {
+		double oC = orient(p, a, b, c, n), oD = orient(p, a, b, d, n);
+		double oA = orient(p, c, d, a, n), oB = orient(p, c, d, b, n);
+		if(oC == 0 && oD == 0) {
+			// collinear: do the segments overlap along ab?
+			double length = 0, tC = 0, tD = 0;
+			for(int k = 0; k < 3; k++) {
+				double u = p[b+k] - p[a+k];
+				length += u*u;
+				tC += u * (p[c+k] - p[a+k]);
+				tD += u * (p[d+k] - p[a+k]);
+			}
+			return Math.max(tC, tD) >= 0 && Math.min(tC, tD) <= length;
+		}
+		return oC*oD <= 0 && oA*oB <= 0;
+	}
+	
+	// The orientation of c relative to the line ab, seen along the normal n: Positive on the left, zero on the line.
+	private static double orient(double[] p, int a, int b, int c, double[] n) {
+		double uX = p[b] - p[a], uY = p[b+1] - p[a+1], uZ = p[b+2] - p[a+2];
+		double vX = p[c] - p[a], vY = p[c+1] - p[a+1], vZ = p[c+2] - p[a+2];
+		return n[0]*(uY*vZ - uZ*vY) + n[1]*(uZ*vX - uX*vZ) + n[2]*(uX*vY - uY*vX);
+	}
+	
+	public void testMatchesBruteForce() {
+		Random random = new Random(43);
+		TriangleMeshf a = soup(random, 300);
+		TriangleMeshf b = soup(random, 200);
+		Bvhf bvhA = a.buildBvh(2);
+		Bvhf bvhB = b.buildBvh(2);
+		Matrix4f bToA = new Matrix4f().translate(0.5f, -0.3f, 0.2f).rotateY(0.7f).rotateX(-0.4f);
+		
+		Set<Long> expected = new HashSet<Long>();
+		for(int i = 0; i < a.triangleCount; i++) {
+			for(int j = 0; j < b.triangleCount; j++) {
+				float[] t = new float[9];
+				for(int k = 0; k < 3; k++) {
+					int v = b.indices[j*3+k]*3;
+					float x = b.vertices[v], y = b.vertices[v+1], z = b.vertices[v+2];
+					t[k*3  ] = bToA.m00*x + bToA.m10*y + bToA.m20*z + bToA.m30;
+					t[k*3+1] = bToA.m01*x + bToA.m11*y + bToA.m21*z + bToA.m31;
+					t[k*3+2] = bToA.m02*x + bToA.m12*y + bToA.m22*z + bToA.m32;
+				}
+				int a0 = a.indices[i*3]*3, a1 = a.indices[i*3+1]*3, a2 = a.indices[i*3+2]*3;
+				float[] v = a.vertices;
+				if(Intersections.intersectTriangleWithTriangle(v[a0], v[a0+1], v[a0+2], v[a1], v[a1+1], v[a1+2], v[a2], v[a2+1], v[a2+2],
+						t[0], t[1], t[2], t[3], t[4], t[5], t[6], t[7], t[8]))
+					expected.add(((long) i << 32) | j);
+			}
+		}
+		assertFalse(expected.isEmpty());
+		
+		final Set<Long> found = Collections.synchronizedSet(new HashSet<Long>());
+		PairVisitor collect = new PairVisitor() {
+			public boolean visit(int triangleA, int triangleB) {
+				assertTrue(found.add(((long) triangleA << 32) | triangleB));
+				return true;
+			}
+		};
+		assertTrue(DualTreeQuery.queryTriangleOverlaps(a, bvhA, b, bvhB, bToA, collect));
+		assertEquals(expected, found);
+		
+		found.clear();
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			assertTrue(DualTreeQuery.queryTriangleOverlaps(pool, a, bvhA, b, bvhB, bToA, collect));
+		} finally {
+			pool.shutdown();
+		}
+		assertEquals(expected, found);
+		
+		// stopping at the first pair
+		assertFalse(DualTreeQuery.queryOverlaps(ForkJoinPool.commonPool(), bvhA, bvhB, bToA, new PairVisitor() {
+			public boolean visit(int primitiveA, int primitiveB) {
+				return false;
+			}
+		}));
+	}
+	
+	// small random triangles in the unit cube
+	private static TriangleMeshf soup(Random random, int count) {
+		float[] vertices = new float[count*9];
+		int[] indices = new int[count*3];
+		for(int i = 0; i < count; i++) {
+			float x = random.nextFloat()*2 - 1, y = random.nextFloat()*2 - 1, z = random.nextFloat()*2 - 1;
+			for(int k = 0; k < 3; k++) {
+				vertices[i*9 + k*3  ] = x + random.nextFloat()*0.3f;
+				vertices[i*9 + k*3+1] = y + random.nextFloat()*0.3f;
+				vertices[i*9 + k*3+2] = z + random.nextFloat()*0.3f;
+				indices[i*3+k] = i*3+k;
+			}
+		}
+		return new TriangleMeshf(vertices, indices);
+	}
+
+}
@@ -0,0 +1,144 @@
+package org.joml.geom.test;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.joml.Matrix4f;
+import org.joml.geom.Aabbf;
+import org.joml.geom.Bvhf;
+import org.joml.geom.Frustumf;
+import org.joml.geom.Intersections;
+import org.joml.geom.PrimitiveList;
+import org.joml.geom.Spheref;
+
+public class FrustumfTest extends TestCase {
+	
+	// looks down -z from the origin
+	private static Frustumf createFrustum() {
+		return new Frustumf(new Matrix4f().perspective((float) Math.toRadians(90), 1, 1, 100));
+	}
+	
+	public void testPlanes() {
+		Frustumf frustum = createFrustum();
+		for(int i = 0; i < Frustumf.PLANES; i++) {
+			assertTrue(frustum.distanceToPlane(i, 0, 0, -50) > 0);
+			float length = frustum.normalX[i]*frustum.normalX[i] + frustum.normalY[i]*frustum.normalY[i] + frustum.normalZ[i]*frustum.normalZ[i];
+			assertEquals(1, length, 1e-5f);
+		}
+		// near and far
+		assertEquals(0, frustum.distanceToPlane(4, 0, 0, -1), 1e-4f);
+		assertEquals(0, frustum.distanceToPlane(5, 0, 0, -100), 1e-2f);
+	}
+	
+	public void testClassifySphere() {
+		Frustumf frustum = createFrustum();
+		assertEquals(Frustumf.INSIDE, Intersections.classifySphereWithFrustum(new Spheref(0, 0, -10, 1), frustum));
+		assertEquals(Frustumf.INTERSECTING, Intersections.classifySphereWithFrustum(new Spheref(0, 0, -10, 20), frustum));
+		assertEquals(Frustumf.INTERSECTING, Intersections.classifySphereWithFrustum(new Spheref(10, 0, -10, 1), frustum));
+		assertEquals(Frustumf.OUTSIDE, Intersections.classifySphereWithFrustum(new Spheref(0, 0, 10, 1), frustum));
+		assertEquals(Frustumf.OUTSIDE, Intersections.classifySphereWithFrustum(new Spheref(0, 0, -0.5f, 0.1f), frustum));
+		assertEquals(Frustumf.OUTSIDE, Intersections.classifySphereWithFrustum(new Spheref(20, 0, -10, 1), frustum));
+	}
+	
+	public void testClassifyBox() {
+		Frustumf frustum = createFrustum();
+		assertEquals(Frustumf.INSIDE, Intersections.classifyAabbWithFrustum(new Aabbf(1, 1, 1, 0, 0, -10), frustum));
+		assertEquals(Frustumf.INTERSECTING, Intersections.classifyAabbWithFrustum(new Aabbf(1, 1, 1, 10, 0, -10), frustum));
+		assertEquals(Frustumf.OUTSIDE, Intersections.classifyAabbWithFrustum(new Aabbf(1, 1, 1, 0, 0, 10), frustum));
+		
+		// against the corners: inside if all corners are inside of all planes, outside if all corners are outside of one plane
+		Random random = new Random(49);
+		for(int test = 0; test < 2000; test++) {
+			float[] box = randomBox(random);
+			boolean inside = true, outside = false;
+			for(int p = 0; p < Frustumf.PLANES; p++) {
+				boolean allOutside = true;
+				for(int corner = 0; corner < 8; corner++) {
+					float d = frustum.distanceToPlane(p, box[(corner & 1) != 0 ? 3 : 0], box[(corner & 2) != 0 ? 4 : 1], box[(corner & 4) != 0 ? 5 : 2]);
+					inside &= d >= 0;
+					allOutside &= d < 0;
+				}
+				outside |= allOutside;
+			}
+			int expected = outside ? Frustumf.OUTSIDE : (inside ? Frustumf.INSIDE : Frustumf.INTERSECTING);
+			assertEquals(expected, frustum.classifyBox(box[0], box[1], box[2], box[3], box[4], box[5]));
+		}
+	}
+	
+	private static float[] randomBox(Random random) {
+		float[] box = new float[6];
+		for(int k = 0; k < 3; k++) {
+			float center = (random.nextFloat()*2 - 1) * 60 - (k == 2 ? 50 : 0);
+			float extent = random.nextFloat()*5;
+			box[k] = center - extent;
+			box[k+3] = center + extent;
+		}
+		return box;
+	}
+	
+	public void testBatches() {
+		Frustumf frustum = createFrustum();
+		Random random = new Random(50);
+		int count = 500;
+		float[] spheres = new float[count*4];
+		float[] boxes = new float[count*6];
+		for(int i = 0; i < count; i++) {
+			System.arraycopy(randomBox(random), 0, boxes, i*6, 6);
+			spheres[i*4  ] = (random.nextFloat()*2 - 1) * 60;
+			spheres[i*4+1] = (random.nextFloat()*2 - 1) * 60;
+			spheres[i*4+2] = (random.nextFloat()*2 - 1) * 60 - 50;
+			spheres[i*4+3] = random.nextFloat()*5;
+		}
+		
+		byte[] store = new byte[count];
+		int visible = frustum.classifySpheres(spheres, count, store);
+		int expectedVisible = 0;
+		for(int i = 0; i < count; i++) {
+			int expected = frustum.classifySphere(spheres[i*4], spheres[i*4+1], spheres[i*4+2], spheres[i*4+3]);
+			assertEquals(expected, store[i]);
+			expectedVisible += expected != Frustumf.OUTSIDE ? 1 : 0;
+		}
+		assertEquals(expectedVisible, visible);
+		
+		visible = frustum.classifyBoxes(boxes, count, store);
+		expectedVisible = 0;
+		for(int i = 0; i < count; i++) {
+			int expected = frustum.classifyBox(boxes[i*6], boxes[i*6+1], boxes[i*6+2], boxes[i*6+3], boxes[i*6+4], boxes[i*6+5]);
+			assertEquals(expected, store[i]);
+			expectedVisible += expected != Frustumf.OUTSIDE ? 1 : 0;
+		}
+		assertEquals(expectedVisible, visible);
+	}
+	
+	public void testBvhQuery() {
+		Frustumf frustum = createFrustum();
+		Random random = new Random(51);
+		int count = 1000;
+		float[] boxes = new float[count*6];
+		for(int i = 0; i < count; i++)
+			System.arraycopy(randomBox(random), 0, boxes, i*6, 6);
+		Bvhf bvh = Bvhf.build(boxes, count, 4);
+		
+		PrimitiveList list = new PrimitiveList(count);
+		assertTrue(bvh.queryFrustum(frustum, list));
+		boolean[] found = new boolean[count];
+		for(int i = 0; i < list.size(); i++) {
+			assertFalse(found[list.get(i)]);
+			found[list.get(i)] = true;
+		}
+		for(int i = 0; i < count; i++) {
+			if(frustum.classifyBox(boxes[i*6], boxes[i*6+1], boxes[i*6+2], boxes[i*6+3], boxes[i*6+4], boxes[i*6+5]) != Frustumf.OUTSIDE)
+				assertTrue(found[i]);
+		}
+		
+		// a frustum around everything reports every primitive
+		list.clear();
+		Frustumf all = new Frustumf();
+		for(int i = 0; i < Frustumf.PLANES; i++)
+			all.setPlane(i, i == 0 ? 1 : 0, i == 1 ? 1 : 0, i > 1 ? 1 : 0, 1000);
+		bvh.queryFrustum(all, list);
+		assertEquals(count, list.size());
+	}
+
+}
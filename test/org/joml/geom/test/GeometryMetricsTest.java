@@ -0,0 +1,226 @@
+package org.joml.geom.test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+import junit.framework.TestCase;
+
+import org.joml.FrustumCuller;
+import org.joml.Matrix4f;
+import org.joml.geom.Aabbf;
+import org.joml.geom.Bvhf;
+import org.joml.geom.GeometryMetrics;
+import org.joml.geom.Instancef;
+import org.joml.geom.InstancedBvhf;
+import org.joml.geom.Intersections;
+import org.joml.geom.MappedBvhf;
+import org.joml.geom.PrimitiveDistance;
+import org.joml.geom.PrimitiveIntersector;
+import org.joml.geom.PrimitiveVisitor;
+import org.joml.geom.QuantizedBvhf;
+import org.joml.geom.Rayf;
+import org.joml.geom.SphereTreeVisitor;
+import org.joml.geom.SphereTreef;
+import org.joml.geom.TriangleMeshf;
+
+public class GeometryMetricsTest extends TestCase {
+	
+	public void testStripesAreSummed() throws InterruptedException {
+		GeometryMetrics.reset();
+		
+		Thread[] threads = new Thread[4];
+		for(int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					for(int j = 0; j < 1000; j++) {
+						GeometryMetrics.countTest(GeometryMetrics.RAY_TRIANGLE, j % 4 == 0);
+						GeometryMetrics.countQuery(GeometryMetrics.QUERY_BOX, GeometryMetrics.startQuery(), 3);
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for(Thread thread : threads)
+			thread.join();
+		
+		assertEquals(4000, GeometryMetrics.getTests(GeometryMetrics.RAY_TRIANGLE));
+		assertEquals(1000, GeometryMetrics.getHits(GeometryMetrics.RAY_TRIANGLE));
+		assertEquals(0.25f, GeometryMetrics.getHitRatio(GeometryMetrics.RAY_TRIANGLE), 1e-6f);
+		assertEquals(4000, GeometryMetrics.getQueries(GeometryMetrics.QUERY_BOX));
+		assertEquals(12000, GeometryMetrics.getNodesVisited(GeometryMetrics.QUERY_BOX));
+		
+		long sum = 0;
+		for(long count : GeometryMetrics.getLatencyHistogram(GeometryMetrics.QUERY_BOX, null))
+			sum += count;
+		assertEquals(4000, sum);
+		
+		GeometryMetrics.reset();
+		assertEquals(0, GeometryMetrics.getTests(GeometryMetrics.RAY_TRIANGLE));
+	}
+	
+	public void testInstrumentation() {
+		GeometryMetrics.reset();
+		Intersections.intersectAabbWithAabb(new Aabbf(1, 1, 1), new Aabbf(1, 1, 1));
+		
+		// the tests are only counted if the metrics are enabled
+		assertEquals(GeometryMetrics.ENABLED ? 1 : 0, GeometryMetrics.getTests(GeometryMetrics.AABB_AABB));
+	}
+	
+	public void testEnabled() throws IOException, InterruptedException {
+		if(GeometryMetrics.ENABLED) {
+			Enabled.main(new String[0]);
+			return;
+		}
+		
+		// ENABLED is read once, so the counters can only be tested in a new JVM
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		Process process = new ProcessBuilder(java, "-Djoml.geom.metrics=true", "-cp", System.getProperty("java.class.path"), Enabled.class.getName())
+				.redirectErrorStream(true).start();
+		
+		StringBuilder output = new StringBuilder();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+		try {
+			for(String line = reader.readLine(); line != null; line = reader.readLine())
+				output.append(line).append('\n');
+		} finally {
+			reader.close();
+		}
+		assertEquals(output.toString(), 0, process.waitFor());
+	}
+	
+	/**
+	 * The checks of {@link GeometryMetricsTest#testEnabled()}, run in a JVM with the metrics enabled.
+	 **/
+	public static class Enabled {
+		
+		private static final PrimitiveIntersector MISS = new PrimitiveIntersector() {
+			public float intersectRay(int primitive, Rayf ray) {
+				return Float.POSITIVE_INFINITY;
+			}
+		};
+		private static final PrimitiveVisitor ALL = new PrimitiveVisitor() {
+			public boolean visit(int primitive) {
+				return true;
+			}
+		};
+		private static final SphereTreeVisitor ALL_SPHERES = new SphereTreeVisitor() {
+			public boolean visitPrimitive(int primitive, float coverage) {
+				return true;
+			}
+			
+			public boolean visitNode(int node, float coverage) {
+				return true;
+			}
+		};
+		
+		public static void main(String[] args) throws IOException {
+			assertTrue("the metrics are not enabled", GeometryMetrics.ENABLED);
+			
+			// unit boxes, and the spheres inside of them, on a 8x8 grid in the XZ-plane
+			int count = 64;
+			final float[] boxes = new float[count*6];
+			float[] spheres = new float[count*4];
+			for(int i = 0; i < count; i++) {
+				float x = (i % 8) * 2, z = (i / 8) * 2;
+				boxes[i*6  ] = x;
+				boxes[i*6+1] = 0;
+				boxes[i*6+2] = z;
+				boxes[i*6+3] = x + 1;
+				boxes[i*6+4] = 1;
+				boxes[i*6+5] = z + 1;
+				spheres[i*4  ] = x + 0.5f;
+				spheres[i*4+1] = 0.5f;
+				spheres[i*4+2] = z + 0.5f;
+				spheres[i*4+3] = 0.5f;
+			}
+			// along the first row of the grid
+			Rayf ray = new Rayf();
+			ray.setOrigin(-1, 0.5f, 0.5f);
+			ray.setDirection(1, 0, 0);
+			FrustumCuller culler = new FrustumCuller(new Matrix4f().perspective((float) Math.toRadians(90), 1, 0.1f, 100).translate(-8, -0.5f, -20));
+			
+			Bvhf bvh = Bvhf.build(boxes, count, 4);
+			GeometryMetrics.reset();
+			// halfway between the first two boxes
+			int[] nearest = new int[1];
+			assertEquals(0.5f, bvh.findNearest(1.5f, 0.5f, 0.5f, Float.POSITIVE_INFINITY, new PrimitiveDistance() {
+				public float distanceSquared(int primitive, float x, float y, float z) {
+					int b = primitive*6;
+					float dX = Math.max(0, Math.max(boxes[b  ] - x, x - boxes[b+3]));
+					float dY = Math.max(0, Math.max(boxes[b+1] - y, y - boxes[b+4]));
+					float dZ = Math.max(0, Math.max(boxes[b+2] - z, z - boxes[b+5]));
+					return dX*dX + dY*dY + dZ*dZ;
+				}
+			}, nearest), 1e-6f);
+			assertTrue(nearest[0] == 1 || nearest[0] == 0);
+			assertQueries(GeometryMetrics.QUERY_NEAREST, 1);
+			
+			File file = File.createTempFile("bvh", ".bin");
+			file.deleteOnExit();
+			MappedBvhf.write(file.toPath(), bvh, null);
+			MappedBvhf mapped = MappedBvhf.map(file.toPath());
+			GeometryMetrics.reset();
+			mapped.intersectRay(ray, MISS, null);
+			assertQueries(GeometryMetrics.QUERY_RAY, 1);
+			mapped.queryBox(0, 0, 0, 1, 1, 1, ALL);
+			assertQueries(GeometryMetrics.QUERY_BOX, 1);
+			mapped.queryFrustum(culler, ALL);
+			assertQueries(GeometryMetrics.QUERY_FRUSTUM, 1);
+			
+			QuantizedBvhf quantized = new QuantizedBvhf(bvh, 8);
+			GeometryMetrics.reset();
+			quantized.intersectRay(ray, MISS, null);
+			assertTrue(GeometryMetrics.getHits(GeometryMetrics.RAY_BOX) > 0);
+			assertQueries(GeometryMetrics.QUERY_RAY, 1);
+			quantized.queryBox(0, 0, 0, 1, 1, 1, ALL);
+			assertQueries(GeometryMetrics.QUERY_BOX, 1);
+			quantized.queryFrustum(culler, ALL);
+			assertQueries(GeometryMetrics.QUERY_FRUSTUM, 1);
+			
+			SphereTreef tree = SphereTreef.build(spheres, count, 4);
+			GeometryMetrics.reset();
+			tree.querySphere(0.5f, 0.5f, 0.5f, 1, ALL_SPHERES);
+			// the root, and at least the sphere at the center of the query
+			assertTrue(GeometryMetrics.getHits(GeometryMetrics.SPHERE_SPHERE) >= 2);
+			assertQueries(GeometryMetrics.QUERY_SPHERE, 1);
+			tree.queryRay(ray, 100, ALL_SPHERES);
+			// the eight spheres of the first row, and the nodes above them
+			assertTrue(GeometryMetrics.getHits(GeometryMetrics.RAY_SPHERE) > 8);
+			assertQueries(GeometryMetrics.QUERY_RAY, 1);
+			tree.queryFrustum(culler, 8, 0.5f, 20, 0, ALL_SPHERES);
+			assertTrue(GeometryMetrics.getTests(GeometryMetrics.SPHERE_FRUSTUM) > 0);
+			assertQueries(GeometryMetrics.QUERY_FRUSTUM, 1);
+			
+			// a single unit square at y = 0
+			TriangleMeshf square = new TriangleMeshf(new float[] { 0, 0, 0, 1, 0, 0, 0, 0, 1, 1, 0, 1 }, new int[] { 0, 2, 1, 1, 2, 3 });
+			InstancedBvhf scene = new InstancedBvhf(new Instancef[] { new Instancef(square.buildBvh(4), square, new Matrix4f()) }, 1);
+			GeometryMetrics.reset();
+			ray.setOrigin(0.5f, 5, 0.5f);
+			ray.setDirection(0, -1, 0);
+			assertEquals(5, scene.intersectRay(ray, null), 1e-6f);
+			// the top level, and the bottom level of the instance
+			assertQueries(GeometryMetrics.QUERY_RAY, 2);
+			ray.setOrigin(5, 5, 5);
+			assertEquals(Float.POSITIVE_INFINITY, scene.intersectRay(ray, null), 0);
+			// the ray misses the root of the top level
+			assertEquals(1, GeometryMetrics.getQueries(GeometryMetrics.QUERY_RAY));
+			assertEquals(0, GeometryMetrics.getNodesVisited(GeometryMetrics.QUERY_RAY));
+		}
+		
+		// checks the queries counted since the last reset, and resets the counts
+		private static void assertQueries(int query, long count) {
+			assertEquals(count, GeometryMetrics.getQueries(query));
+			assertTrue(GeometryMetrics.getNodesVisited(query) >= count);
+			
+			long sum = 0;
+			for(long latency : GeometryMetrics.getLatencyHistogram(query, null))
+				sum += latency;
+			assertEquals(count, sum);
+			GeometryMetrics.reset();
+		}
+	}
+
+}
@@ -0,0 +1,99 @@
+package org.joml.geom.test;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.joml.Matrix4f;
+import org.joml.geom.Aabbf;
+import org.joml.geom.Gjk;
+import org.joml.geom.Intersections;
+import org.joml.geom.Obbf;
+import org.joml.geom.PointCloudf;
+import org.joml.geom.Spheref;
+
+public class GjkTest extends TestCase {
+	
+	public void testSpheres() {
+		Gjk gjk = new Gjk();
+		Spheref a = new Spheref(0, 0, 0, 1);
+		Spheref b = new Spheref(3, 1, 0, 0.5f);
+		float[] closest = new float[6];
+		
+		float expected = (float) Math.sqrt(10) - 1.5f;
+		assertEquals(expected, gjk.distance(a, b, closest), 1e-3f);
+		assertEquals(3 / (float) Math.sqrt(10), closest[0], 1e-2f);
+		assertFalse(gjk.intersect(a, b));
+		
+		b.setCenter(1, 0.5f, 0);
+		assertTrue(gjk.intersect(a, b));
+		assertEquals(0f, gjk.distance(a, b, null));
+		
+		float[] contact = new float[9];
+		float depth = gjk.penetration(a, b, contact);
+		assertEquals(1.5f - (float) Math.sqrt(1.25f), depth, 1e-2f);
+		// the normal points from a to b
+		assertEquals(1 / (float) Math.sqrt(1.25f), contact[0], 1e-2f);
+		assertEquals(0.5f / (float) Math.sqrt(1.25f), contact[1], 1e-2f);
+	}
+	
+	public void testBoxes() {
+		Gjk gjk = new Gjk();
+		Aabbf a = new Aabbf(1, 1, 1);
+		Aabbf b = new Aabbf(1, 1, 1,/**/ 3, 2.5f, 0);
+		assertEquals((float) Math.sqrt(1 + 0.25f), gjk.distance(a, b, null), 1e-4f);
+		
+		b.setOrigin(1.5f, 0.2f, 0.1f);
+		float[] contact = new float[9];
+		assertEquals(0.5f, gjk.penetration(a, b, contact), 1e-4f);
+		assertEquals(1f, contact[0], 1e-4f);
+		
+		// the same queries again, warm started
+		assertEquals(0.5f, gjk.penetration(a, b, contact), 1e-4f);
+		b.setOrigin(3, 2.5f, 0);
+		assertEquals((float) Math.sqrt(1 + 0.25f), gjk.distance(a, b, null), 1e-4f);
+	}
+	
+	public void testMatchesSeparatingAxisTest() {
+		Gjk gjk = new Gjk();
+		Random random = new Random(17);
+		Aabbf unit = new Aabbf(1, 0.5f, 2);
+		Matrix4f matrix = new Matrix4f();
+		float[] corners = new float[8*3];
+		PointCloudf cloud = new PointCloudf(corners, 8);
+		
+		for(int i = 0; i < 2000; i++) {
+			Obbf a = new Obbf(unit, matrix.identity().rotateY(random.nextFloat()*6).rotateX(random.nextFloat()*6));
+			Obbf b = new Obbf(unit, matrix.identity().translate(random.nextFloat()*6-3, random.nextFloat()*6-3, random.nextFloat()*6-3)
+					.rotateZ(random.nextFloat()*6).rotateX(random.nextFloat()*6));
+			
+			// the second box again, as the hull of its corners
+			for(int c = 0; c < 8; c++) {
+				float sx = (c & 1) == 0 ? -1 : 1, sy = (c & 2) == 0 ? -1 : 1, sz = (c & 4) == 0 ? -1 : 1;
+				corners[c*3  ] = b.originX + (b.xAxisX*sx*b.extentX + b.yAxisX*sy*b.extentY + b.zAxisX*sz*b.extentZ);
+				corners[c*3+1] = b.originY + (b.xAxisY*sx*b.extentX + b.yAxisY*sy*b.extentY + b.zAxisY*sz*b.extentZ);
+				corners[c*3+2] = b.originZ + (b.xAxisZ*sx*b.extentX + b.yAxisZ*sy*b.extentY + b.zAxisZ*sz*b.extentZ);
+			}
+			
+			boolean expected = Intersections.intersectObbWithObb(a, b);
+			float distance = gjk.distance(a, cloud, null);
+			if(distance > 1e-3f || distance == 0)
+				assertEquals(expected, distance == 0);
+			if(distance > 1e-3f)
+				assertFalse(gjk.intersect(a, b));
+			
+			if(expected) {
+				// moving b along the normal by the depth makes them touch
+				float[] contact = new float[9];
+				float depth = gjk.penetration(a, b, contact);
+				if(depth > 1e-2f) {
+					b.move(contact[0]*(depth+1e-2f), contact[1]*(depth+1e-2f), contact[2]*(depth+1e-2f));
+					assertFalse(Intersections.intersectObbWithObb(a, b));
+					b.move(-contact[0]*4e-2f, -contact[1]*4e-2f, -contact[2]*4e-2f);
+					assertTrue(Intersections.intersectObbWithObb(a, b));
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,133 @@
+package org.joml.geom.test;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.joml.Matrix4f;
+import org.joml.geom.Aabbf;
+import org.joml.geom.Capsulef;
+import org.joml.geom.Intersections;
+import org.joml.geom.Obbf;
+import org.joml.geom.Rayf;
+
+public class IntersectionsTest extends TestCase {
+	
+	public void testObbWithObb() {
+		Aabbf unit = new Aabbf(1, 1, 1);
+		Obbf a = new Obbf(unit);
+		
+		// rotated by 45 degrees, its corner reaches sqrt(2) along X
+		Obbf b = new Obbf(unit, new Matrix4f().translate(2.3f, 0, 0).rotateY((float) Math.PI / 4));
+		assertTrue(Intersections.intersectObbWithObb(a, b));
+		assertTrue(Intersections.intersectObbWithAabb(b, unit));
+		
+		b.move(0.2f, 0, 0);
+		assertFalse(Intersections.intersectObbWithObb(a, b));
+		assertFalse(Intersections.intersectObbWithAabb(b, unit));
+		
+		// separated only by the cross product of two edges: The edge of c along (1,-1,0) points at the edge of a along z.
+		// On the axis (1,1,0) both reach sqrt(2) from their centers, which are 3 apart, but on every face axis they overlap.
+		float offset = 3 / (float) Math.sqrt(2);
+		Obbf c = new Obbf(unit, new Matrix4f().translate(offset, offset, 0).rotateZ((float) -Math.PI / 4).rotateX((float) Math.PI / 4));
+		assertFalse(Intersections.intersectObbWithObb(a, c));
+		assertFalse(Intersections.intersectObbWithObb(c, a));
+		assertFalse(Intersections.intersectObbWithAabb(c, unit));
+		// 2.6 apart, the edges cross
+		offset = 2.6f / (float) Math.sqrt(2);
+		Obbf d = new Obbf(unit, new Matrix4f().translate(offset, offset, 0).rotateZ((float) -Math.PI / 4).rotateX((float) Math.PI / 4));
+		assertTrue(Intersections.intersectObbWithObb(a, d));
+		assertTrue(Intersections.intersectObbWithObb(d, a));
+		assertTrue(Intersections.intersectObbWithAabb(d, unit));
+		
+		// the same box, in any orientation, overlaps itself
+		Obbf e = new Obbf(new Aabbf(3, 0.1f, 2), new Matrix4f().translate(5, 5, 5).rotateY(1).rotateX(2));
+		assertTrue(Intersections.intersectObbWithObb(e, e));
+	}
+	
+	public void testCapsules() {
+		Capsulef a = new Capsulef(0, 0, 0, 4, 0, 0, 0.5f);
+		Capsulef b = new Capsulef(2, -3, 0.9f, 2, 3, 0.9f, 0.5f);
+		assertTrue(Intersections.intersectCapsuleWithCapsule(a, b));
+		b.move(0, 0, 0.2f);
+		assertFalse(Intersections.intersectCapsuleWithCapsule(a, b));
+		
+		// parallel capsules
+		Capsulef c = new Capsulef(1, 0.9f, 0, 3, 0.9f, 0, 0.5f);
+		assertTrue(Intersections.intersectCapsuleWithCapsule(a, c));
+		
+		// capsule against box, compared to sampling the distance along the segment
+		Random random = new Random(3);
+		Aabbf box = new Aabbf(1, 2, 0.5f);
+		for(int i = 0; i < 2000; i++) {
+			Capsulef capsule = new Capsulef(
+					random.nextFloat()*8-4, random.nextFloat()*8-4, random.nextFloat()*8-4,
+					random.nextFloat()*8-4, random.nextFloat()*8-4, random.nextFloat()*8-4,
+					random.nextFloat()*1.5f);
+			
+			float min = Float.POSITIVE_INFINITY;
+			for(int s = 0; s <= 1000; s++) {
+				float t = s / 1000f;
+				min = Math.min(min, box.minDistanceSquared(
+						capsule.aX + (capsule.bX-capsule.aX)*t,
+						capsule.aY + (capsule.bY-capsule.aY)*t,
+						capsule.aZ + (capsule.bZ-capsule.aZ)*t));
+			}
+			float distance = (float) Math.sqrt(min);
+			
+			// sampling can miss the closest point by a little, skip the borderline cases
+			if(Math.abs(distance - capsule.radius) > 0.02f)
+				assertEquals(distance <= capsule.radius, Intersections.intersectCapsuleWithAabb(capsule, box));
+		}
+	}
+	
+	public void testRays() {
+		Random random = new Random(11);
+		Obbf obb = new Obbf(new Aabbf(1, 2, 3), new Matrix4f().translate(1, 2, 3).rotateY(0.6f).rotateX(0.3f));
+		Capsulef capsule = new Capsulef(-1, 0, 2, 2, 1, -1, 0.75f);
+		Rayf ray = new Rayf();
+		
+		for(int i = 0; i < 500; i++) {
+			ray.setOrigin(random.nextFloat()*20-10, random.nextFloat()*20-10, random.nextFloat()*20-10);
+			// aimed roughly at the shapes
+			float dX = random.nextFloat()*6-2 - ray.originX;
+			float dY = random.nextFloat()*6-2 - ray.originY;
+			float dZ = random.nextFloat()*6-2 - ray.originZ;
+			float length = (float) Math.sqrt(dX*dX + dY*dY + dZ*dZ);
+			ray.setDirection(dX/length, dY/length, dZ/length);
+			
+			float t = Intersections.intersectRayWithObb(ray, obb);
+			float expected = march(ray, obb, null);
+			if(!nearBorder(ray, expected, obb, null))
+				assertEquals(expected, t, 0.01f);
+			
+			t = Intersections.intersectRayWithCapsule(ray, capsule);
+			expected = march(ray, null, capsule);
+			if(!nearBorder(ray, expected, null, capsule))
+				assertEquals(expected, t, 0.01f);
+		}
+	}
+	
+	// the first point along the ray inside the shape, in small steps
+	private static float march(Rayf ray, Obbf obb, Capsulef capsule) {
+		for(int i = 0; i < 8000; i++) {
+			float t = i * 0.005f;
+			if(inside(ray, t, obb, capsule))
+				return t;
+		}
+		return Float.POSITIVE_INFINITY;
+	}
+	
+	// grazing rays are not found reliably by marching
+	private static boolean nearBorder(Rayf ray, float t, Obbf obb, Capsulef capsule) {
+		if(t == Float.POSITIVE_INFINITY)
+			return false;
+		return !inside(ray, t + 0.02f, obb, capsule);
+	}
+	
+	private static boolean inside(Rayf ray, float t, Obbf obb, Capsulef capsule) {
+		float x = ray.originX + ray.directionX*t, y = ray.originY + ray.directionY*t, z = ray.originZ + ray.directionZ*t;
+		return obb != null ? obb.inside(x, y, z) : capsule.inside(x, y, z);
+	}
+
+}
@@ -0,0 +1,127 @@
+package org.joml.geom.test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.joml.Matrix4f;
+import org.joml.geom.LightClusters;
+import org.joml.geom.Spheref;
+
+public class LightClustersTest extends TestCase {
+	
+	private static final float FOV = (float) Math.toRadians(60);
+	
+	private static LightClusters createClusters() {
+		return new LightClusters(16, 9, 24).setPerspective(FOV, 16f/9, 0.5f, 200);
+	}
+	
+	// lights around the camera at (5, 0, 10), which looks down -z
+	private static Spheref[] randomLights(Random random, int count) {
+		Spheref[] lights = new Spheref[count];
+		for(int i = 0; i < count; i++) {
+			float depth = (float) Math.pow(random.nextFloat(), 2) * 220 - 10;
+			float x = (random.nextFloat()*2 - 1) * (depth + 5) * 1.2f;
+			float y = (random.nextFloat()*2 - 1) * (depth + 5) * 0.7f;
+			lights[i] = new Spheref(5 + x, y, 10 - depth, 0.2f + random.nextFloat()*random.nextFloat()*15);
+		}
+		return lights;
+	}
+	
+	public void testSlices() {
+		LightClusters clusters = createClusters();
+		assertEquals(-1, clusters.getSlice(0.4f));
+		assertEquals(0, clusters.getSlice(0.5f));
+		assertEquals(23, clusters.getSlice(199.9f));
+		assertEquals(-1, clusters.getSlice(200));
+		
+		int previous = 0;
+		for(float depth = 0.5f; depth < 200; depth *= 1.01f) {
+			int slice = clusters.getSlice(depth);
+			assertTrue(slice == previous || slice == previous + 1);
+			int cluster = clusters.getCluster(0, 0, slice);
+			assertTrue(-depth >= clusters.bounds[cluster*6+2] && -depth <= clusters.bounds[cluster*6+5]);
+			previous = slice;
+		}
+		assertEquals(23, previous);
+		
+		try {
+			clusters.setPerspective(FOV, 1, 10, 5);
+			fail("A far plane in front of the near plane is invalid");
+		} catch(IllegalArgumentException e) {
+		}
+	}
+	
+	public void testAgainstBruteForce() {
+		Random random = new Random(50);
+		int count = 2000;
+		Spheref[] lights = randomLights(random, count);
+		Matrix4f view = new Matrix4f().translate(-5, 0, -10);
+		
+		LightClusters clusters = createClusters();
+		int total = clusters.assign(view, lights, count);
+		assertEquals(total, clusters.getFirst(clusters.getClusterCount()));
+		assertTrue(total > 0);
+		
+		int[] expected = new int[count];
+		for(int cluster = 0; cluster < clusters.getClusterCount(); cluster++) {
+			int expectedCount = 0;
+			for(int i = 0; i < count; i++) {
+				Spheref light = lights[i];
+				if(clusters.intersects(cluster, light.centerX - 5, light.centerY, light.centerZ - 10, light.radius))
+					expected[expectedCount++] = i;
+			}
+			int first = clusters.getFirst(cluster);
+			assertEquals(expectedCount, clusters.getCount(cluster));
+			assertTrue(Arrays.equals(Arrays.copyOf(expected, expectedCount), Arrays.copyOfRange(clusters.indices, first, first + expectedCount)));
+		}
+		
+		// the calling thread alone assigns the same lights
+		int[] parallel = Arrays.copyOf(clusters.indices, total);
+		assertEquals(total, clusters.setPool(null).assign(view, lights, count));
+		assertTrue(Arrays.equals(parallel, Arrays.copyOf(clusters.indices, total)));
+	}
+	
+	public void testConservative() {
+		Random random = new Random(51);
+		int count = 1000;
+		Spheref[] lights = randomLights(random, count);
+		Matrix4f view = new Matrix4f().translate(-5, 0, -10);
+		LightClusters clusters = createClusters();
+		clusters.assign(view, lights, count);
+		
+		// every light that reaches a point is in the cluster of the point
+		int tested = 0;
+		for(int test = 0; test < 20000; test++) {
+			Spheref light = lights[random.nextInt(count)];
+			float x = (random.nextFloat()*2 - 1) * light.radius * 0.57f;
+			float y = (random.nextFloat()*2 - 1) * light.radius * 0.57f;
+			float z = (random.nextFloat()*2 - 1) * light.radius * 0.57f;
+			int cluster = clusters.getCluster(light.centerX + x - 5, light.centerY + y, light.centerZ + z - 10);
+			if(cluster < 0)
+				continue;
+			
+			boolean found = false;
+			for(int i = clusters.getFirst(cluster), end = i + clusters.getCount(cluster); i < end; i++)
+				found |= lights[clusters.indices[i]] == light;
+			assertTrue(found);
+			tested++;
+		}
+		assertTrue(tested > 1000);
+		
+		// the clusters are tighter than their bounds alone
+		int inBounds = 0;
+		for(int cluster = 0; cluster < clusters.getClusterCount(); cluster++) {
+			float[] b = clusters.bounds;
+			for(Spheref light : lights) {
+				float dX = Math.max(0, Math.max(b[cluster*6  ] - (light.centerX - 5), (light.centerX - 5) - b[cluster*6+3]));
+				float dY = Math.max(0, Math.max(b[cluster*6+1] - light.centerY, light.centerY - b[cluster*6+4]));
+				float dZ = Math.max(0, Math.max(b[cluster*6+2] - (light.centerZ - 10), (light.centerZ - 10) - b[cluster*6+5]));
+				inBounds += dX*dX + dY*dY + dZ*dZ <= light.radius*light.radius ? 1 : 0;
+			}
+		}
+		assertTrue(clusters.getFirst(clusters.getClusterCount()) < inBounds);
+	}
+
+}
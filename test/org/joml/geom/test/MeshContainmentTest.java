@@ -0,0 +1,70 @@
+package org.joml.geom.test;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.joml.geom.MeshContainment;
+import org.joml.geom.TriangleMeshf;
+
+public class MeshContainmentTest extends TestCase {
+	
+	// the octahedron |x| + |y| + |z| <= 1: Its vertices at x = -1 and x = 1 lie on the ray through y = z = 0, and its edges on the rays through y = 0 or z = 0
+	private static TriangleMeshf octahedron() {
+		float[] vertices = { 1, 0, 0, -1, 0, 0, 0, 1, 0, 0, -1, 0, 0, 0, 1, 0, 0, -1 };
+		int[] indices = {
+				0, 2, 4, 0, 4, 3, 0, 3, 5, 0, 5, 2,
+				1, 4, 2, 1, 3, 4, 1, 5, 3, 1, 2, 5 };
+		return new TriangleMeshf(vertices, indices);
+	}
+	
+	public void testGrid() {
+		TriangleMeshf mesh = octahedron();
+		MeshContainment containment = new MeshContainment(mesh, mesh.buildBvh(1));
+		
+		assertTrue(containment.isInside(0, 0, 0));
+		assertFalse(containment.isInside(-2, 0, 0));
+		assertFalse(containment.isInside(2, 0, 0));
+		assertEquals(0, containment.getWindingNumber(-2, 0, 0.25f));
+		
+		// rows along x, with y and z on the edges of the projected triangles
+		int count = 0;
+		float[] points = new float[30*9*9*3];
+		for(int iy = -4; iy <= 4; iy++) {
+			for(int iz = -4; iz <= 4; iz++) {
+				for(int ix = 0; ix < 30; ix++) {
+					points[count*3  ] = -1.47f + ix*0.1f;
+					points[count*3+1] = iy*0.25f;
+					points[count*3+2] = iz*0.25f;
+					count++;
+				}
+			}
+		}
+		
+		boolean[] inside = containment.classify(points, count, new boolean[count]);
+		boolean[] sequential = containment.setPool(null).classify(points, count, new boolean[count]);
+		for(int i = 0; i < count; i++) {
+			float x = points[i*3], y = points[i*3+1], z = points[i*3+2];
+			boolean expected = Math.abs(x) + Math.abs(y) + Math.abs(z) < 1;
+			assertEquals(expected, inside[i]);
+			assertEquals(expected, sequential[i]);
+			assertEquals(expected, containment.isInside(x, y, z));
+		}
+	}
+	
+	public void testVolume() {
+		TriangleMeshf mesh = octahedron();
+		MeshContainment containment = new MeshContainment(mesh, mesh.buildBvh(2));
+		
+		Random random = new Random(44);
+		int count = 100000;
+		float[] points = new float[count*3];
+		for(int i = 0; i < points.length; i++)
+			points[i] = random.nextFloat()*2 - 1;
+		
+		// the octahedron fills 1/6 of the cube around it
+		float fraction = containment.countInside(points, count) / (float) count;
+		assertEquals(1/6f, fraction, 0.01f);
+	}
+
+}
@@ -0,0 +1,59 @@
+package org.joml.geom.test;
+
+import junit.framework.TestCase;
+
+import org.joml.Matrix4f;
+import org.joml.geom.Aabbf;
+import org.joml.geom.OcclusionBuffer;
+
+public class OcclusionBufferTest extends TestCase {
+	
+	// the camera is at the origin and looks along -z
+	private static OcclusionBuffer wall() {
+		OcclusionBuffer buffer = new OcclusionBuffer(128, 64);
+		buffer.begin(new Matrix4f().perspective((float) Math.toRadians(90), 2f, 0.1f, 100f));
+		// a wall at z = -10, from x = -5 to 5 and y = -5 to 5
+		buffer.addOccluder(new Aabbf(5, 5, 0.5f, 0, 0, -10.5f));
+		return buffer;
+	}
+	
+	public void testWall() {
+		OcclusionBuffer buffer = wall();
+		buffer.rasterize();
+		assertEquals(12, buffer.getOccluderCount());
+		assertTrue(buffer.getDepth(64, 32) < 1);
+		assertEquals(1f, buffer.getDepth(0, 0));
+		
+		// behind the wall
+		assertFalse(buffer.isVisible(new Aabbf(1, 1, 1, 0, 0, -20)));
+		assertFalse(buffer.isVisible(new Aabbf(1, 1, 1, 3, -3, -15)));
+		// in front of the wall, beside it, or partly behind it
+		assertTrue(buffer.isVisible(new Aabbf(1, 1, 1, 0, 0, -5)));
+		assertTrue(buffer.isVisible(new Aabbf(1, 1, 1, 15, 0, -20)));
+		assertTrue(buffer.isVisible(new Aabbf(2, 1, 1, 10, 0, -20)));
+		// around the camera, or behind it
+		assertTrue(buffer.isVisible(new Aabbf(1, 1, 1, 0, 0, 0)));
+		assertFalse(buffer.isVisible(new Aabbf(1, 1, 1, 0, 0, 20)));
+	}
+	
+	public void testSequential() {
+		OcclusionBuffer parallel = wall();
+		parallel.rasterize();
+		OcclusionBuffer sequential = wall().setPool(null);
+		sequential.rasterize();
+		
+		for(int y = 0; y < sequential.height; y++) {
+			for(int x = 0; x < sequential.width; x++)
+				assertEquals(sequential.getDepth(x, y), parallel.getDepth(x, y));
+		}
+	}
+	
+	public void testSize() {
+		try {
+			new OcclusionBuffer(100, 64);
+			fail("The size is not a multiple of the tile size");
+		} catch(IllegalArgumentException e) {
+		}
+	}
+
+}
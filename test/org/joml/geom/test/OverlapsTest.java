@@ -0,0 +1,71 @@
+package org.joml.geom.test;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.joml.geom.Aabbf;
+import org.joml.geom.Intersections;
+import org.joml.geom.Overlaps;
+import org.joml.geom.Spheref;
+
+public class OverlapsTest extends TestCase {
+	
+	public void testMatchesScalar() {
+		Random random = new Random(41);
+		int count = 150;
+		float[] spheres = new float[count*4];
+		float[] boxes = new float[count*6];
+		for(int i = 0; i < count; i++) {
+			for(int k = 0; k < 3; k++) {
+				spheres[i*4+k] = random.nextFloat()*10;
+				float center = random.nextFloat()*10, extent = random.nextFloat();
+				boxes[i*6+k] = center - extent;
+				boxes[i*6+k+3] = center + extent;
+			}
+			spheres[i*4+3] = random.nextFloat();
+		}
+		
+		long[] mask = new long[3];
+		int[] indices = new int[count];
+		for(int test = 0; test < 20; test++) {
+			Spheref sphere = new Spheref(random.nextFloat()*10, random.nextFloat()*10, random.nextFloat()*10, random.nextFloat()*2);
+			
+			int hits = Overlaps.overlapSphereWithSpheres(sphere.centerX, sphere.centerY, sphere.centerZ, sphere.radius, spheres, count, mask);
+			assertEquals(hits, Overlaps.overlapSphereWithSpheres(sphere.centerX, sphere.centerY, sphere.centerZ, sphere.radius, spheres, count, indices));
+			int next = 0;
+			for(int i = 0; i < count; i++) {
+				boolean expected = sphere.intersect(new Spheref(spheres[i*4], spheres[i*4+1], spheres[i*4+2], spheres[i*4+3]));
+				assertEquals(expected, (mask[i >>> 6] & (1L << i)) != 0);
+				if(expected)
+					assertEquals(i, indices[next++]);
+			}
+			assertEquals(hits, next);
+			
+			hits = Overlaps.overlapSphereWithBoxes(sphere.centerX, sphere.centerY, sphere.centerZ, sphere.radius, boxes, count, mask);
+			assertEquals(hits, Overlaps.overlapSphereWithBoxes(sphere.centerX, sphere.centerY, sphere.centerZ, sphere.radius, boxes, count, indices));
+			next = 0;
+			for(int i = 0; i < count; i++) {
+				Aabbf box = new Aabbf(
+						(boxes[i*6+3] - boxes[i*6]) * 0.5f, (boxes[i*6+4] - boxes[i*6+1]) * 0.5f, (boxes[i*6+5] - boxes[i*6+2]) * 0.5f,
+						(boxes[i*6+3] + boxes[i*6]) * 0.5f, (boxes[i*6+4] + boxes[i*6+1]) * 0.5f, (boxes[i*6+5] + boxes[i*6+2]) * 0.5f);
+				boolean expected = Intersections.intersectAabbWithSphere(box, sphere);
+				assertEquals(expected, (mask[i >>> 6] & (1L << i)) != 0);
+				if(expected)
+					assertEquals(i, indices[next++]);
+			}
+			assertEquals(hits, next);
+		}
+	}
+	
+	public void testCluster() {
+		float[] spheres = { 0, 0, 0, 1, 1.5f, 0, 0, 1, 3.5f, 0, 0, 1, 10, 0, 0, 1 };
+		int[] pairs = new int[12];
+		assertEquals(2, Overlaps.overlapSpheres(spheres, 4, pairs));
+		assertEquals(0, pairs[0]);
+		assertEquals(1, pairs[1]);
+		assertEquals(1, pairs[2]);
+		assertEquals(2, pairs[3]);
+	}
+
+}
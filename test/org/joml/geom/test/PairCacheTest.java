@@ -0,0 +1,104 @@
+package org.joml.geom.test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.joml.geom.PairCache;
+
+public class PairCacheTest extends TestCase {
+	
+	// collects the events as strings like "began 1 2"
+	private static final class Events implements PairCache.Listener<float[]> {
+		final Set<String> events = new HashSet<String>();
+		
+		public void began(PairCache<float[]> cache, int a, int b, int slot) {
+			events.add("began " + a + " " + b);
+		}
+		
+		public void persisted(PairCache<float[]> cache, int a, int b, int slot) {
+			events.add("persisted " + a + " " + b);
+		}
+		
+		public void ended(PairCache<float[]> cache, int a, int b, int slot) {
+			events.add("ended " + a + " " + b);
+		}
+	}
+	
+	public void testEvents() {
+		PairCache<float[]> cache = new PairCache<float[]>();
+		Events events = new Events();
+		
+		cache.beginFrame();
+		cache.setUserData(cache.addPair(2, 1), new float[] { 0.5f });
+		cache.addPair(3, 4);
+		cache.addPair(4, 3);
+		cache.endFrame(events);
+		assertEquals(2, cache.size());
+		assertEquals(2, events.events.size());
+		assertTrue(events.events.contains("began 1 2"));
+		assertTrue(events.events.contains("began 3 4"));
+		
+		events.events.clear();
+		cache.beginFrame();
+		cache.addPair(1, 2);
+		cache.addPair(5, 6);
+		cache.endFrame(events);
+		assertEquals(3, events.events.size());
+		assertTrue(events.events.contains("persisted 1 2"));
+		assertTrue(events.events.contains("began 5 6"));
+		assertTrue(events.events.contains("ended 3 4"));
+		assertEquals(2, cache.size());
+		assertEquals(-1, cache.findPair(3, 4));
+		
+		// the user data persists with the pair
+		int slot = cache.findPair(2, 1);
+		assertEquals(1, cache.getA(slot));
+		assertEquals(2, cache.getB(slot));
+		assertEquals(0.5f, cache.getUserData(slot)[0]);
+		
+		try {
+			cache.addPair(3, 3);
+			fail("A pair of a body with itself was accepted");
+		} catch(IllegalArgumentException e) {
+		}
+	}
+	
+	public void testMatchesHashMap() {
+		Random random = new Random(42);
+		PairCache<Integer> cache = new PairCache<Integer>(4);
+		Map<Long, Integer> expected = new HashMap<Long, Integer>();
+		
+		for(int frame = 0; frame < 50; frame++) {
+			cache.beginFrame();
+			Set<Long> added = new HashSet<Long>();
+			for(int i = 0, count = random.nextInt(300); i < count; i++) {
+				int a = random.nextInt(40), b = random.nextInt(40);
+				if(a == b)
+					continue;
+				
+				long key = ((long) Math.min(a, b) << 32) | Math.max(a, b);
+				int slot = cache.addPair(a, b);
+				if(added.add(key) && !expected.containsKey(key)) {
+					cache.setUserData(slot, frame);
+					expected.put(key, frame);
+				}
+			}
+			expected.keySet().retainAll(added);
+			
+			cache.endFrame(null);
+			assertEquals(expected.size(), cache.size());
+			for(Map.Entry<Long, Integer> entry : expected.entrySet()) {
+				long key = entry.getKey();
+				int slot = cache.findPair((int) (key >>> 32), (int) key);
+				assertTrue(slot >= 0);
+				assertEquals(entry.getValue(), cache.getUserData(slot));
+			}
+		}
+	}
+
+}
@@ -0,0 +1,131 @@
+package org.joml.geom.test;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.joml.geom.Aabbf;
+import org.joml.geom.Obbf;
+import org.joml.geom.Projections;
+import org.joml.geom.Spheref;
+
+public class ProjectionsTest extends TestCase {
+	
+	public void testScalar() {
+		float[] p = new float[3];
+		
+		// above the face, beyond an edge and beyond a vertex of the triangle
+		Projections.projectPointOntoTriangle(0.2f, 0.2f, 5, 0, 0, 0, 1, 0, 0, 0, 1, 0, p, 0);
+		assertPoint(0.2f, 0.2f, 0, p, 0);
+		Projections.projectPointOntoTriangle(1, 1, -1, 0, 0, 0, 1, 0, 0, 0, 1, 0, p, 0);
+		assertPoint(0.5f, 0.5f, 0, p, 0);
+		Projections.projectPointOntoTriangle(-1, -2, 0, 0, 0, 0, 1, 0, 0, 0, 1, 0, p, 0);
+		assertPoint(0, 0, 0, p, 0);
+		
+		Projections.projectPointOntoSegment(3, 1, 0, 0, 0, 0, 2, 0, 0, p, 0);
+		assertPoint(2, 0, 0, p, 0);
+		
+		Projections.projectPointOntoAabb(3, 0.5f, -4, new Aabbf(1, 1, 1), p, 0);
+		assertPoint(1, 0.5f, -1, p, 0);
+		
+		Projections.projectPointOntoSphere(0, 4, 0, new Spheref(0, 1, 0, 2), p, 0);
+		assertPoint(0, 3, 0, p, 0);
+		
+		// the unit box, rotated by 45 degrees around Z
+		Obbf obb = new Obbf(new Aabbf(1, 1, 1), new Matrix4f().rotateZ((float) Math.PI / 4));
+		Projections.projectPointOntoObb(3, 0, 0, obb, p, 0);
+		assertPoint((float) Math.sqrt(2), 0, 0, p, 0);
+	}
+	
+	public void testVectorMatchesScalar() {
+		Random random = new Random(6);
+		Aabbf aabb = new Aabbf(1, 2, 0.5f, 0.5f, 0, -1);
+		Spheref sphere = new Spheref(0.5f, -1, 0, 1.5f);
+		Obbf obb = new Obbf(aabb, new Matrix4f().rotateZ(0.3f));
+		Vector3f a = new Vector3f(0, 0, 0), b = new Vector3f(2, 1, 0), c = new Vector3f(0, 2, 1);
+		Vector3f store = new Vector3f();
+		float[] p = new float[3];
+		for(int i = 0; i < 100; i++) {
+			Vector3f point = new Vector3f(random.nextFloat()*6 - 3, random.nextFloat()*6 - 3, random.nextFloat()*6 - 3);
+			
+			Projections.projectPointOntoTriangle(point, a, b, c, store);
+			assertVector(Projections.projectPointOntoTriangle(point.x, point.y, point.z, a.x, a.y, a.z, b.x, b.y, b.z, c.x, c.y, c.z, p, 0), store);
+			Projections.projectPointOntoSegment(point, a, b, store);
+			assertVector(Projections.projectPointOntoSegment(point.x, point.y, point.z, a.x, a.y, a.z, b.x, b.y, b.z, p, 0), store);
+			Projections.projectPointOntoAabb(point, aabb, store);
+			assertVector(Projections.projectPointOntoAabb(point.x, point.y, point.z, aabb, p, 0), store);
+			Projections.projectPointOntoSphere(point, sphere, store);
+			assertVector(Projections.projectPointOntoSphere(point.x, point.y, point.z, sphere, p, 0), store);
+			Projections.projectPointOntoObb(point, obb, store);
+			assertVector(Projections.projectPointOntoObb(point.x, point.y, point.z, obb, p, 0), store);
+		}
+	}
+	
+	private static void assertVector(float[] expected, Vector3f actual) {
+		assertEquals(expected[0], actual.x, 0f);
+		assertEquals(expected[1], actual.y, 0f);
+		assertEquals(expected[2], actual.z, 0f);
+	}
+	
+	public void testBatchMatchesScalar() {
+		Random random = new Random(5);
+		int count = 257;
+		float[] points = new float[count*3];
+		for(int i = 0; i < points.length; i++)
+			points[i] = random.nextFloat()*10 - 5;
+		
+		Aabbf aabb = new Aabbf(1, 2, 0.5f, 0.3f, -0.2f, 1);
+		Spheref sphere = new Spheref(1, 0, -1, 2);
+		Obbf obb = new Obbf(aabb, new Matrix4f().translate(1, 2, 3).rotateY(0.7f).rotateX(0.3f));
+		float[] batch = new float[count*3];
+		float[] scalar = new float[count*3];
+		
+		Projections.projectPointsOntoTriangle(points, count, 0, 0, 0, 3, 1, 0, -1, 2, 2, batch);
+		for(int i = 0; i < count*3; i += 3)
+			Projections.projectPointOntoTriangle(points[i], points[i+1], points[i+2], 0, 0, 0, 3, 1, 0, -1, 2, 2, scalar, i);
+		assertArrays(scalar, batch);
+		
+		Projections.projectPointsOntoSegment(points, count, 0, 1, 0, 3, -1, 2, batch);
+		for(int i = 0; i < count*3; i += 3)
+			Projections.projectPointOntoSegment(points[i], points[i+1], points[i+2], 0, 1, 0, 3, -1, 2, scalar, i);
+		assertArrays(scalar, batch);
+		
+		Projections.projectPointsOntoAabb(points, count, aabb, batch);
+		for(int i = 0; i < count*3; i += 3)
+			Projections.projectPointOntoAabb(points[i], points[i+1], points[i+2], aabb, scalar, i);
+		assertArrays(scalar, batch);
+		
+		Projections.projectPointsOntoSphere(points, count, sphere, batch);
+		for(int i = 0; i < count*3; i += 3)
+			Projections.projectPointOntoSphere(points[i], points[i+1], points[i+2], sphere, scalar, i);
+		assertArrays(scalar, batch);
+		
+		Projections.projectPointsOntoObb(points, count, obb, batch);
+		for(int i = 0; i < count*3; i += 3) {
+			Projections.projectPointOntoObb(points[i], points[i+1], points[i+2], obb, scalar, i);
+			// the projection is inside (or on) the box
+			assertTrue(obb.inside(scalar[i] + (obb.originX - scalar[i])*1e-4f, scalar[i+1] + (obb.originY - scalar[i+1])*1e-4f, scalar[i+2] + (obb.originZ - scalar[i+2])*1e-4f));
+		}
+		assertArrays(scalar, batch);
+		
+		// in place
+		float[] copy = points.clone();
+		Projections.projectPointsOntoAabb(copy, count, aabb, copy);
+		Projections.projectPointsOntoAabb(points, count, aabb, batch);
+		assertArrays(batch, copy);
+	}
+	
+	private static void assertPoint(float x, float y, float z, float[] p, int offset) {
+		assertEquals(x, p[offset  ], 1e-5f);
+		assertEquals(y, p[offset+1], 1e-5f);
+		assertEquals(z, p[offset+2], 1e-5f);
+	}
+	
+	private static void assertArrays(float[] expected, float[] actual) {
+		for(int i = 0; i < expected.length; i++)
+			assertEquals(expected[i], actual[i], 1e-5f);
+	}
+
+}
@@ -0,0 +1,86 @@
+package org.joml.geom.test;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.joml.Vector3f;
+import org.joml.geom.SdfBaker;
+import org.joml.geom.SignedDistanceField;
+import org.joml.geom.TriangleMeshf;
+
+public class SdfBakerTest extends TestCase {
+	
+	// the box from -0.5 to 0.5
+	private static TriangleMeshf cube() {
+		float[] vertices = new float[8*3];
+		for(int i = 0; i < 8; i++) {
+			vertices[i*3  ] = (i & 1) == 0 ? -0.5f : 0.5f;
+			vertices[i*3+1] = (i & 2) == 0 ? -0.5f : 0.5f;
+			vertices[i*3+2] = (i & 4) == 0 ? -0.5f : 0.5f;
+		}
+		int[] indices = {
+				0, 2, 3, 0, 3, 1, 4, 5, 7, 4, 7, 6,
+				0, 4, 6, 0, 6, 2, 1, 3, 7, 1, 7, 5,
+				0, 1, 5, 0, 5, 4, 2, 6, 7, 2, 7, 3 };
+		return new TriangleMeshf(vertices, indices);
+	}
+	
+	private static float exact(float x, float y, float z) {
+		float qx = Math.abs(x) - 0.5f, qy = Math.abs(y) - 0.5f, qz = Math.abs(z) - 0.5f;
+		float ox = Math.max(qx, 0), oy = Math.max(qy, 0), oz = Math.max(qz, 0);
+		return (float) Math.sqrt(ox*ox + oy*oy + oz*oz) + Math.min(Math.max(qx, Math.max(qy, qz)), 0);
+	}
+	
+	public void testDense() {
+		TriangleMeshf mesh = cube();
+		SignedDistanceField field = new SdfBaker(mesh, mesh.buildBvh(2)).bake(-1.23f, -1.23f, -1.23f, 1.23f, 1.23f, 1.23f, 0.1f);
+		assertEquals(field.bricks.length, field.getStoredBricks());
+		
+		// exact at the samples
+		for(int k = 0; k < field.samplesZ; k += 3) {
+			for(int j = 0; j < field.samplesY; j++) {
+				for(int i = 0; i < field.samplesX; i++) {
+					float x = field.minX + i*field.cellSize, y = field.minY + j*field.cellSize, z = field.minZ + k*field.cellSize;
+					assertEquals(exact(x, y, z), field.sample(x, y, z), 1e-4f);
+				}
+			}
+		}
+		
+		// close in between
+		Random random = new Random(45);
+		for(int i = 0; i < 1000; i++) {
+			float x = random.nextFloat()*2 - 1, y = random.nextFloat()*2 - 1, z = random.nextFloat()*2 - 1;
+			assertEquals(exact(x, y, z), field.sample(x, y, z), 0.05f);
+		}
+		
+		float[] gradient = new float[3];
+		assertEquals(0.3f, field.sample(0.8f, 0.05f, 0.05f, gradient, 0), 1e-4f);
+		assertEquals(1f, gradient[0], 1e-3f);
+		assertEquals(0f, gradient[1], 1e-3f);
+		assertEquals(-0.2f, field.sample(0.05f, -0.3f, 0.05f, gradient, 0), 1e-4f);
+		assertEquals(-1f, gradient[1], 1e-3f);
+		
+		Vector3f store = new Vector3f();
+		assertSame(store, field.sampleGradient(0.05f, -0.3f, 0.05f, store));
+		assertEquals(gradient[0], store.x, 0f);
+		assertEquals(gradient[1], store.y, 0f);
+		assertEquals(gradient[2], store.z, 0f);
+	}
+	
+	public void testNarrowBand() {
+		TriangleMeshf mesh = cube();
+		SdfBaker baker = new SdfBaker(mesh, mesh.buildBvh(2)).setNarrowBand(0.3f).setPool(null);
+		SignedDistanceField field = baker.bake(-4, -4, -4, 4, 4, 4, 0.1f);
+		assertTrue(field.getStoredBricks() < field.bricks.length / 4);
+		
+		Random random = new Random(46);
+		for(int i = 0; i < 1000; i++) {
+			float x = random.nextFloat()*8 - 4, y = random.nextFloat()*8 - 4, z = random.nextFloat()*8 - 4;
+			float expected = Math.max(-0.3f, Math.min(0.3f, exact(x, y, z)));
+			assertEquals(expected, field.sample(x, y, z), 0.05f);
+		}
+		assertEquals(0.3f, field.sample(3, 3, 3), 0);
+	}
+
+}
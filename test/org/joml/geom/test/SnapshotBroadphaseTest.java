@@ -0,0 +1,179 @@
+package org.joml.geom.test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+import org.joml.geom.PrimitiveList;
+import org.joml.geom.SnapshotBroadphase;
+
+public class SnapshotBroadphaseTest extends TestCase {
+	
+	private static void setRandomBox(SnapshotBroadphase broadphase, int body, Random random) {
+		float x = random.nextFloat()*50, y = random.nextFloat()*50, z = random.nextFloat()*50, size = random.nextFloat()*2;
+		broadphase.setBox(body, x, y, z, x + size, y + size, z + size);
+	}
+	
+	// Compares a box query with a brute force test of the boxes of the snapshot.
+	private static String checkQuery(SnapshotBroadphase.Snapshot snapshot, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+		PrimitiveList list = new PrimitiveList();
+		snapshot.queryBox(minX, minY, minZ, maxX, maxY, maxZ, list);
+		list.sort();
+		
+		int[] bodies = snapshot.bvh.primitives;
+		int expected = 0;
+		for(int i = 0; i < snapshot.getBodyCount(); i++) {
+			int b = bodies[i]*6;
+			float[] boxes = snapshot.boxes;
+			if(boxes[b] <= maxX && boxes[b+3] >= minX && boxes[b+1] <= maxY && boxes[b+4] >= minY && boxes[b+2] <= maxZ && boxes[b+5] >= minZ)
+				expected++;
+		}
+		if(list.size() != expected)
+			return "version " + snapshot.version + ": " + list.size() + " bodies instead of " + expected;
+		return null;
+	}
+	
+	public void testPublish() {
+		SnapshotBroadphase broadphase = new SnapshotBroadphase(4, 2);
+		broadphase.setBox(3, 0, 0, 0, 1, 1, 1);
+		broadphase.setBox(10, 5, 5, 5, 6, 6, 6);
+		
+		// nothing is visible before the publish
+		SnapshotBroadphase.Snapshot empty = broadphase.acquire();
+		assertEquals(0, empty.getBodyCount());
+		empty.release();
+		
+		assertEquals(1, broadphase.publish());
+		SnapshotBroadphase.Snapshot snapshot = broadphase.acquire();
+		PrimitiveList list = new PrimitiveList();
+		snapshot.queryBox(-1, -1, -1, 10, 10, 10, list);
+		list.sort();
+		assertEquals(2, list.size());
+		assertEquals(3, list.get(0));
+		assertEquals(10, list.get(1));
+		snapshot.release();
+		
+		// no changes, no new snapshot
+		assertEquals(1, broadphase.publish());
+		
+		assertTrue(broadphase.remove(3));
+		assertFalse(broadphase.remove(3));
+		broadphase.publish();
+		snapshot = broadphase.acquire();
+		list.clear();
+		snapshot.queryBox(-1, -1, -1, 10, 10, 10, list);
+		assertEquals(1, list.size());
+		assertEquals(10, list.get(0));
+		snapshot.release();
+	}
+	
+	public void testSnapshotIsolation() {
+		Random random = new Random(47);
+		SnapshotBroadphase broadphase = new SnapshotBroadphase();
+		for(int body = 0; body < 100; body++)
+			setRandomBox(broadphase, body, random);
+		broadphase.publish();
+		
+		SnapshotBroadphase.Snapshot old = broadphase.acquire();
+		float[] before = old.boxes.clone();
+		float[] boundsBefore = old.bvh.bounds.clone();
+		
+		// moves only: the next snapshot refits, and shares the structure
+		for(int body = 0; body < 100; body++)
+			setRandomBox(broadphase, body, random);
+		broadphase.publish();
+		SnapshotBroadphase.Snapshot moved = broadphase.acquire();
+		assertSame(old.bvh.nodes, moved.bvh.nodes);
+		assertNull(checkQuery(moved, 10, 10, 10, 30, 30, 30));
+		moved.release();
+		
+		for(int body = 0; body < 100; body++)
+			setRandomBox(broadphase, body, random);
+		broadphase.publish();
+		
+		// the old snapshot is not touched while it is held
+		assertTrue(Arrays.equals(before, old.boxes));
+		assertTrue(Arrays.equals(boundsBefore, old.bvh.bounds));
+		assertNull(checkQuery(old, 10, 10, 10, 30, 30, 30));
+		
+		// once released, its memory is reused
+		float[] reclaimed = old.boxes;
+		old.release();
+		boolean reused = false;
+		for(int i = 0; i < 2; i++) {
+			setRandomBox(broadphase, 0, random);
+			broadphase.publish();
+			SnapshotBroadphase.Snapshot next = broadphase.acquire();
+			reused |= next.boxes == reclaimed;
+			next.release();
+		}
+		assertTrue(reused);
+		
+		// while nobody holds on to old snapshots, the arrays are reused, also when rebuilds and refits take turns
+		Set<float[]> boxes = Collections.newSetFromMap(new IdentityHashMap<float[], Boolean>());
+		Set<float[]> bounds = Collections.newSetFromMap(new IdentityHashMap<float[], Boolean>());
+		for(int i = 0; i < 20; i++) {
+			setRandomBox(broadphase, i % 8, random);
+			broadphase.publish(i % 2 == 0);
+			SnapshotBroadphase.Snapshot next = broadphase.acquire();
+			boxes.add(next.boxes);
+			bounds.add(next.bvh.bounds);
+			next.release();
+		}
+		assertTrue(boxes.size() <= 3);
+		assertTrue(bounds.size() <= 3);
+	}
+	
+	public void testConcurrentReaders() throws InterruptedException {
+		final SnapshotBroadphase broadphase = new SnapshotBroadphase(16, 4);
+		final AtomicBoolean done = new AtomicBoolean();
+		final AtomicReference<String> error = new AtomicReference<String>();
+		
+		Thread[] readers = new Thread[4];
+		for(int t = 0; t < readers.length; t++) {
+			final Random random = new Random(t);
+			readers[t] = new Thread() {
+				public void run() {
+					while(!done.get() && error.get() == null) {
+						SnapshotBroadphase.Snapshot snapshot = broadphase.acquire();
+						try {
+							float x = random.nextFloat()*50, y = random.nextFloat()*50, z = random.nextFloat()*50;
+							String result = checkQuery(snapshot, x, y, z, x + 10, y + 10, z + 10);
+							if(result != null)
+								error.compareAndSet(null, result);
+						} finally {
+							snapshot.release();
+						}
+					}
+				}
+			};
+			readers[t].start();
+		}
+		
+		Random random = new Random(48);
+		for(int frame = 0; frame < 300; frame++) {
+			for(int i = 0; i < 50; i++) {
+				int body = random.nextInt(200);
+				if(random.nextInt(10) == 0) {
+					broadphase.remove(body);
+				} else {
+					setRandomBox(broadphase, body, random);
+				}
+			}
+			broadphase.publish(frame % 50 == 0);
+		}
+		
+		done.set(true);
+		for(Thread reader : readers)
+			reader.join();
+		assertNull(error.get());
+		assertEquals(300, broadphase.getVersion());
+	}
+
+}
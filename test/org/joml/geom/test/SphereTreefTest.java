@@ -0,0 +1,214 @@
+package org.joml.geom.test;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.joml.FrustumCuller;
+import org.joml.Matrix4f;
+import org.joml.geom.Rayf;
+import org.joml.geom.SphereTreeVisitor;
+import org.joml.geom.SphereTreef;
+
+public class SphereTreefTest extends TestCase {
+	
+	private static float[] randomSpheres(Random random, int count) {
+		float[] spheres = new float[count*4];
+		for(int i = 0; i < count; i++) {
+			spheres[i*4  ] = random.nextFloat()*20;
+			spheres[i*4+1] = random.nextFloat()*20;
+			spheres[i*4+2] = random.nextFloat()*20;
+			spheres[i*4+3] = random.nextFloat()*0.5f;
+		}
+		return spheres;
+	}
+	
+	// Collects the primitives, expanding the nodes that are visited as a whole.
+	private static class Collector implements SphereTreeVisitor {
+		final SphereTreef tree;
+		final boolean[] hits;
+		int nodes;
+		
+		Collector(SphereTreef tree) {
+			this.tree = tree;
+			this.hits = new boolean[tree.primitiveCount];
+		}
+		
+		public boolean visitPrimitive(int primitive, float coverage) {
+			assertFalse(hits[primitive]);
+			assertTrue(coverage > 0);
+			hits[primitive] = true;
+			return true;
+		}
+		
+		public boolean visitNode(int node, float coverage) {
+			nodes++;
+			for(int i = tree.getFirst(node), end = i + tree.getCount(node); i < end; i++)
+				visitPrimitive(tree.primitives[i], coverage);
+			return true;
+		}
+	}
+	
+	private static void assertEnclosed(SphereTreef tree) {
+		for(int node = 0; node < tree.nodeCount; node++) {
+			float[] s = tree.spheres;
+			for(int i = tree.getFirst(node), end = i + tree.getCount(node); i < end; i++) {
+				int p = tree.primitives[i]*4;
+				float dX = tree.primitiveSpheres[p] - s[node*4], dY = tree.primitiveSpheres[p+1] - s[node*4+1], dZ = tree.primitiveSpheres[p+2] - s[node*4+2];
+				float distance = (float) Math.sqrt(dX*dX + dY*dY + dZ*dZ);
+				assertTrue(distance + tree.primitiveSpheres[p+3] <= s[node*4+3] * 1.0001f + 1e-5f);
+			}
+		}
+	}
+	
+	private static void assertSphereQuery(SphereTreef tree, float x, float y, float z, float r) {
+		Collector collector = new Collector(tree);
+		assertTrue(tree.querySphere(x, y, z, r, collector));
+		float[] s = tree.primitiveSpheres;
+		for(int i = 0; i < tree.primitiveCount; i++) {
+			float dX = s[i*4] - x, dY = s[i*4+1] - y, dZ = s[i*4+2] - z;
+			float reach = r + s[i*4+3];
+			boolean expected = dX*dX + dY*dY + dZ*dZ <= reach*reach;
+			assertEquals(expected, collector.hits[i]);
+		}
+	}
+	
+	public void testBuild() {
+		Random random = new Random(46);
+		SphereTreef tree = SphereTreef.build(randomSpheres(random, 500), 500, 4);
+		assertTrue(tree.nodeCount <= 2*500 - 1);
+		assertEquals(500, tree.getCount(0));
+		assertEnclosed(tree);
+		
+		assertEquals(0, SphereTreef.build(new float[0], 0, 4).nodeCount);
+	}
+	
+	public void testQuerySphere() {
+		Random random = new Random(47);
+		SphereTreef tree = SphereTreef.build(randomSpheres(random, 400), 400, 4);
+		for(int test = 0; test < 30; test++)
+			assertSphereQuery(tree, random.nextFloat()*20, random.nextFloat()*20, random.nextFloat()*20, random.nextFloat()*6);
+		
+		// a large query is answered with whole nodes
+		Collector collector = new Collector(tree);
+		tree.querySphere(10, 10, 10, 100, collector);
+		assertEquals(1, collector.nodes);
+	}
+	
+	public void testCoverageOfSmallQuery() {
+		// a large sphere and a few small ones around it
+		float[] spheres = {0, 0, 0, 10,  20, 0, 0, 0.5f,  0, 20, 0, 0.5f,  0, 0, 20, 0.5f};
+		SphereTreef tree = SphereTreef.build(spheres, 4, 1);
+		final float[] coverages = new float[4];
+		assertTrue(tree.querySphere(0, 0, 0, 1, new SphereTreeVisitor() {
+			public boolean visitPrimitive(int primitive, float coverage) {
+				coverages[primitive] = coverage;
+				return true;
+			}
+			public boolean visitNode(int node, float coverage) {
+				fail("A small query inside of a large node covers only a part of it");
+				return true;
+			}
+		}));
+		// the query covers 2 of the 20 units of the diameter
+		assertEquals(0.1f, coverages[0], 1e-5f);
+		assertEquals(0, coverages[1], 0);
+		
+		// off center, the part of the diameter inside of the query is clamped to the sphere
+		tree.querySphere(9.5f, 0, 0, 1, new SphereTreeVisitor() {
+			public boolean visitPrimitive(int primitive, float coverage) {
+				coverages[primitive] = coverage;
+				return true;
+			}
+			public boolean visitNode(int node, float coverage) {
+				return true;
+			}
+		});
+		assertEquals(1.5f / 20, coverages[0], 1e-5f);
+	}
+	
+	public void testUpdate() {
+		Random random = new Random(48);
+		SphereTreef tree = SphereTreef.build(randomSpheres(random, 300), 300, 4);
+		for(int i = 0; i < 100; i++) {
+			int primitive = random.nextInt(300);
+			tree.update(primitive, random.nextFloat()*30 - 5, random.nextFloat()*30 - 5, random.nextFloat()*30 - 5, random.nextFloat());
+		}
+		assertEnclosed(tree);
+		for(int test = 0; test < 20; test++)
+			assertSphereQuery(tree, random.nextFloat()*20, random.nextFloat()*20, random.nextFloat()*20, random.nextFloat()*6);
+	}
+	
+	public void testQueryRay() {
+		Random random = new Random(49);
+		SphereTreef tree = SphereTreef.build(randomSpheres(random, 400), 400, 4);
+		float[] s = tree.primitiveSpheres;
+		for(int test = 0; test < 30; test++) {
+			Rayf ray = new Rayf(random.nextFloat() - 0.5f, random.nextFloat() - 0.5f, random.nextFloat() - 0.5f);
+			ray.originX = random.nextFloat()*20;
+			ray.originY = random.nextFloat()*20;
+			ray.originZ = random.nextFloat()*20;
+			float maxDistance = random.nextFloat()*20;
+			
+			Collector collector = new Collector(tree);
+			tree.queryRay(ray, maxDistance, collector);
+			for(int i = 0; i < tree.primitiveCount; i++) {
+				// brute force: the closest point of the segment to the center
+				float dX = ray.directionX, dY = ray.directionY, dZ = ray.directionZ;
+				float cX = s[i*4] - ray.originX, cY = s[i*4+1] - ray.originY, cZ = s[i*4+2] - ray.originZ;
+				float t = Math.max(0, Math.min(maxDistance, (cX*dX + cY*dY + cZ*dZ) / (dX*dX + dY*dY + dZ*dZ)));
+				float pX = cX - dX*t, pY = cY - dY*t, pZ = cZ - dZ*t;
+				boolean expected = pX*pX + pY*pY + pZ*pZ <= s[i*4+3]*s[i*4+3];
+				assertEquals(expected, collector.hits[i]);
+			}
+		}
+	}
+	
+	public void testQueryFrustumCoverage() {
+		Random random = new Random(50);
+		// the camera is at the origin and looks down -z, the spheres are far in front of it
+		float[] spheres = randomSpheres(random, 400);
+		for(int i = 0; i < 400; i++) {
+			spheres[i*4  ] -= 10;
+			spheres[i*4+1] -= 10;
+			spheres[i*4+2] -= 90;
+		}
+		SphereTreef tree = SphereTreef.build(spheres, 400, 4);
+		FrustumCuller culler = new FrustumCuller(new Matrix4f().perspective((float) Math.toRadians(90), 1, 0.1f, 100));
+		
+		// without a coverage limit every primitive in the frustum is visited on its own
+		Collector all = new Collector(tree);
+		tree.queryFrustum(culler, 0, 0, 0, 0, all);
+		assertEquals(0, all.nodes);
+		int hits = 0;
+		for(int i = 0; i < tree.primitiveCount; i++)
+			hits += all.hits[i] ? 1 : 0;
+		assertTrue(hits > 0);
+		
+		// from far away the clusters are visited as a whole: They cover at least the same primitives
+		final float minCoverage = 0.05f;
+		Collector coarse = new Collector(tree) {
+			public boolean visitNode(int node, float coverage) {
+				assertTrue(coverage < minCoverage);
+				return super.visitNode(node, coverage);
+			}
+		};
+		tree.queryFrustum(culler, 0, 0, 0, minCoverage, coarse);
+		assertTrue(coarse.nodes > 0);
+		for(int i = 0; i < tree.primitiveCount; i++) {
+			if(all.hits[i])
+				assertTrue(coarse.hits[i]);
+		}
+		
+		// stopping the query
+		assertFalse(tree.queryFrustum(culler, 0, 0, 0, 0, new SphereTreeVisitor() {
+			public boolean visitPrimitive(int primitive, float coverage) {
+				return false;
+			}
+			public boolean visitNode(int node, float coverage) {
+				return false;
+			}
+		}));
+	}
+
+}
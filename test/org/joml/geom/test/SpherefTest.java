@@ -0,0 +1,25 @@
+package org.joml.geom.test;
+
+import junit.framework.TestCase;
+
+import org.joml.Vector3f;
+import org.joml.geom.Spheref;
+
+public class SpherefTest extends TestCase {
+	
+	public void testIntersect() {
+		Spheref a = new Spheref(0, 0, 0, 0.3f);
+		
+		// the squared distance is less than the sum of the radii, but the distance is not
+		assertFalse(a.intersect(new Spheref(0.7f, 0, 0, 0.3f)));
+		assertFalse(a.intersect(new Vector3f(0.7f, 0, 0), 0.3f));
+		assertTrue(a.intersect(new Spheref(0.5f, 0, 0, 0.3f)));
+		
+		// the squared distance is more than the sum of the radii, but the distance is not
+		Spheref b = new Spheref(0, 0, 0, 2);
+		assertTrue(b.intersect(new Spheref(3, 0, 0, 2)));
+		assertTrue(b.intersect(new Vector3f(0, 3, 0), 2));
+		assertFalse(b.intersect(new Spheref(0, 0, 4.5f, 2)));
+	}
+
+}
@@ -0,0 +1,129 @@
+package org.joml.geom.test;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.joml.geom.Aabbf;
+import org.joml.geom.Bvhf;
+import org.joml.geom.Gjk;
+import org.joml.geom.PointCloudf;
+import org.joml.geom.Spheref;
+import org.joml.geom.SweepQuery;
+import org.joml.geom.Sweeps;
+import org.joml.geom.TriangleMeshf;
+
+public class SweepsTest extends TestCase {
+	
+	public void testThinWall() {
+		// a wall at x = 5, much thinner than the movement in one step
+		TriangleMeshf wall = new TriangleMeshf(
+				new float[] { 5, -10, -10, 5, 10, -10, 5, 10, 10, 5, -10, 10 },
+				new int[] { 0, 1, 2, 0, 2, 3 });
+		Bvhf bvh = wall.buildBvh(1);
+		SweepQuery query = new SweepQuery();
+		
+		assertTrue(query.sweepSphere(bvh, wall, new Spheref(0, 1, 2, 0.5f), 100, 0, 0));
+		assertEquals(0.045f, query.time, 1e-5f);
+		assertEquals(-1f, query.normalX, 1e-5f);
+		
+		assertTrue(query.sweepAabb(bvh, wall, new Aabbf(0.5f, 0.5f, 0.5f, 0, 1, 2), 100, 0, 0));
+		assertEquals(0.045f, query.time, 1e-5f);
+		assertEquals(-1f, query.normalX, 1e-5f);
+		
+		// moving away, or stopping short
+		assertFalse(query.sweepSphere(bvh, wall, new Spheref(0, 1, 2, 0.5f), -100, 0, 0));
+		assertFalse(query.sweepAabb(bvh, wall, new Aabbf(0.5f, 0.5f, 0.5f, 0, 1, 2), 4, 0, 0));
+		
+		float[] boxes = { 5, -10, -10, 5.01f, 10, 10 };
+		bvh = Bvhf.build(boxes, 1, 1);
+		assertTrue(query.sweepSphere(bvh, boxes, new Spheref(0, 1, 2, 0.5f), 100, 0, 0));
+		assertEquals(0.045f, query.time, 1e-5f);
+		assertTrue(query.sweepAabb(bvh, boxes, new Aabbf(0.5f, 0.5f, 0.5f, 0, 1, 2), 100, 0, 0));
+		assertEquals(0.045f, query.time, 1e-5f);
+		assertEquals(0, query.primitive);
+	}
+	
+	public void testQueryMatchesBruteForce() {
+		Random random = new Random(4);
+		int count = 400;
+		float[] boxes = new float[count*6];
+		for(int i = 0; i < count; i++) {
+			float x = random.nextFloat()*40 - 20, y = random.nextFloat()*40 - 20, z = random.nextFloat()*40 - 20;
+			boxes[i*6  ] = x; boxes[i*6+1] = y; boxes[i*6+2] = z;
+			boxes[i*6+3] = x + random.nextFloat(); boxes[i*6+4] = y + random.nextFloat(); boxes[i*6+5] = z + random.nextFloat();
+		}
+		Bvhf bvh = Bvhf.build(boxes, count, 4);
+		SweepQuery query = new SweepQuery();
+		
+		for(int test = 0; test < 200; test++) {
+			Spheref sphere = new Spheref(random.nextFloat()*40 - 20, random.nextFloat()*40 - 20, random.nextFloat()*40 - 20, 0.1f + random.nextFloat());
+			float dX = random.nextFloat()*30 - 15, dY = random.nextFloat()*30 - 15, dZ = random.nextFloat()*30 - 15;
+			
+			float expected = Float.POSITIVE_INFINITY;
+			for(int i = 0; i < count; i++) {
+				expected = Math.min(expected, Sweeps.sweepSphereWithBox(sphere.centerX, sphere.centerY, sphere.centerZ, sphere.radius, dX, dY, dZ,
+						boxes[i*6], boxes[i*6+1], boxes[i*6+2], boxes[i*6+3], boxes[i*6+4], boxes[i*6+5], null));
+			}
+			assertEquals(expected < Float.POSITIVE_INFINITY, query.sweepSphere(bvh, boxes, sphere, dX, dY, dZ));
+			assertEquals(expected, query.time, 0f);
+		}
+	}
+	
+	public void testSphereWithBoxCorner() {
+		// aimed diagonally at the corner, the sphere touches it at the distance of its radius
+		float[] normal = new float[3];
+		float t = Sweeps.sweepSphereWithBox(-2, -2, -2, 1, 2, 2, 2, -1, -1, -1, 0, 0, 0, normal);
+		float expected = 0.5f - 1 / (2 * (float) Math.sqrt(3));
+		assertEquals(expected, t, 1e-4f);
+		assertEquals(-1 / (float) Math.sqrt(3), normal[0], 1e-4f);
+		
+		// passing the corner in a distance a bit larger than the radius
+		assertEquals(Float.POSITIVE_INFINITY, Sweeps.sweepSphereWithBox(0.8f, 0.8f, -3, 1, 0, 0, 6, -1, -1, -1, 0, 0, 0, null));
+	}
+	
+	public void testMatchesSampling() {
+		Random random = new Random(3);
+		Gjk gjk = new Gjk();
+		float[] triangle = new float[9];
+		PointCloudf hull = new PointCloudf(triangle, 3);
+		Spheref sphere = new Spheref();
+		Aabbf aabb = new Aabbf();
+		
+		for(int i = 0; i < 300; i++) {
+			for(int j = 0; j < 9; j++)
+				triangle[j] = random.nextFloat()*4 - 2;
+			float sX = random.nextFloat()*8 - 4, sY = random.nextFloat()*8 - 4, sZ = random.nextFloat()*8 - 4;
+			float dX = random.nextFloat()*8 - 4, dY = random.nextFloat()*8 - 4, dZ = random.nextFloat()*8 - 4;
+			float size = 0.2f + random.nextFloat();
+			
+			float tSphere = Sweeps.sweepSphereWithTriangle(sX, sY, sZ, size, dX, dY, dZ,
+					triangle[0], triangle[1], triangle[2], triangle[3], triangle[4], triangle[5], triangle[6], triangle[7], triangle[8], null);
+			float tBox = Sweeps.sweepBoxWithTriangle(sX, sY, sZ, size, size*0.5f, size, dX, dY, dZ,
+					triangle[0], triangle[1], triangle[2], triangle[3], triangle[4], triangle[5], triangle[6], triangle[7], triangle[8], null);
+			
+			for(int step = 0; step <= 100; step++) {
+				float s = step / 100f;
+				sphere.setCenter(sX + dX*s, sY + dY*s, sZ + dZ*s).radius = size;
+				aabb.originX = sX + dX*s; aabb.originY = sY + dY*s; aabb.originZ = sZ + dZ*s;
+				aabb.extentX = size; aabb.extentY = size*0.5f; aabb.extentZ = size;
+				
+				// no contact before the time of impact, and touching at it
+				if(s < tSphere - 1e-3f)
+					assertTrue(gjk.distance(sphere, hull, null) > 0);
+				if(s < tBox - 1e-3f)
+					assertTrue(gjk.distance(aabb, hull, null) > 0);
+			}
+			
+			if(tSphere <= 1) {
+				sphere.setCenter(sX + dX*tSphere, sY + dY*tSphere, sZ + dZ*tSphere);
+				assertEquals(0f, gjk.distance(sphere, hull, null), 1e-3f);
+			}
+			if(tBox <= 1) {
+				aabb.originX = sX + dX*tBox; aabb.originY = sY + dY*tBox; aabb.originZ = sZ + dZ*tBox;
+				assertEquals(0f, gjk.distance(aabb, hull, null), 1e-3f);
+			}
+		}
+	}
+
+}